@@ -1,30 +1,47 @@
 package bor.tools.simplerag.controller;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import bor.tools.simplerag.dto.BatchSearchRequest;
+import bor.tools.simplerag.dto.BatchSearchResponse;
+import bor.tools.simplerag.dto.IndexHealthDTO;
 import bor.tools.simplerag.dto.LibraryDTO;
+import bor.tools.simplerag.dto.MetadataFilter;
+import bor.tools.simplerag.dto.SearchCacheStatsDTO;
+import bor.tools.simplerag.dto.SearchProfile;
 import bor.tools.simplerag.dto.SearchRequest;
 import bor.tools.simplerag.dto.SearchResponse;
 import bor.tools.simplerag.dto.SearchResultDTO;
 import bor.tools.simplerag.dto.SemanticSearchRequest;
 import bor.tools.simplerag.dto.TextualSearchRequest;
-import bor.tools.simplerag.entity.Chapter;
 import bor.tools.simplerag.entity.DocumentEmbedding;
-import bor.tools.simplerag.entity.Documento;
 import bor.tools.simplerag.entity.Library;
-import bor.tools.simplerag.repository.ChapterRepository;
 import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
-import bor.tools.simplerag.repository.DocumentoRepository;
+import bor.tools.simplerag.service.BatchSearchService;
+import bor.tools.simplerag.service.ContextExpansionService;
+import bor.tools.simplerag.service.DiversityRerankService;
+import bor.tools.simplerag.service.EmbeddingMaintenanceService;
+import bor.tools.simplerag.service.KeysetSearchService;
 import bor.tools.simplerag.service.LibraryService;
+import bor.tools.simplerag.service.RerankService;
+import bor.tools.simplerag.service.SearchResultCacheService;
+import bor.tools.simplerag.service.SearchStreamService;
+import bor.tools.simplerag.service.TitleCacheService;
 import bor.tools.splitter.EmbeddingProcessorInterface;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -105,6 +122,60 @@ import lombok.extern.slf4j.Slf4j;
  *   <li>General content: 60% semantic, 40% textual (balanced approach)</li>
  * </ul>
  *
+ * <h3>Explain Mode</h3>
+ * <p>Setting <code>explain=true</code> in the request adds a {@link SearchProfile}
+ * to the response with the time spent in query preprocessing, embedding generation,
+ * each SQL statement and result enrichment. <code>explainAnalyze=true</code> also
+ * attaches the PostgreSQL EXPLAIN ANALYZE plan of each statement.</p>
+ *
+ * <h3>Diversity</h3>
+ * <p><code>mmrLambda</code> (hybrid and semantic) re-ranks a larger candidate set
+ * with Maximal Marginal Relevance, and <code>maxPerDocumento</code> caps the
+ * results of a single documento, so adjacent chunks of one article do not fill
+ * the top-k. See {@link DiversityRerankService}.</p>
+ *
+ * <h3>Re-ranking</h3>
+ * <p><code>rerank=true</code> (hybrid) re-scores the top candidates with the
+ * configured scorer (LLM or local) within a latency budget, before any
+ * diversity re-ranking. See {@link RerankService}.</p>
+ *
+ * <h3>Context Window</h3>
+ * <p><code>contextWindow=N</code> returns each result with its N neighbor chunks
+ * before and after it in the chapter, and <code>contextChapter=true</code> with
+ * the chapter text, in one query for all results. See {@link ContextExpansionService}.</p>
+ *
+ * <h3>Batch</h3>
+ * <p><code>POST /api/v1/search/batch</code> answers many queries against the same
+ * libraries with concurrent embedding and a single SQL round trip.
+ * See {@link BatchSearchService}.</p>
+ *
+ * <h3>Streaming</h3>
+ * <p><code>POST /api/v1/search/hybrid/stream</code> writes results as NDJSON or
+ * Server-Sent Events while they are produced: textual hits first, then the
+ * fused ranking read from a cursor. See {@link SearchStreamService}.</p>
+ *
+ * <h3>Pagination</h3>
+ * <p><code>paginate=true</code> returns a <code>nextCursor</code> with the
+ * results; sending it back as <code>cursor</code> (same query, libraries and
+ * weights) continues after the last result, without skipping or repeating
+ * results. Not combinable with diversity or re-ranking; paginated requests
+ * bypass the result cache. See {@link KeysetSearchService}.</p>
+ *
+ * <h3>Metadata Filter</h3>
+ * <p><code>filter</code> restricts any search to embeddings whose metadados
+ * match <code>equals</code>, <code>in</code>, <code>range</code> and
+ * <code>exists</code> conditions, evaluated by PostgreSQL in the same query
+ * (GIN index on <code>metadados</code>). See {@link MetadataFilter}.</p>
+ *
+ * <h3>Result Cache</h3>
+ * <p>Identical requests are answered from {@link SearchResultCacheService}
+ * without embedding generation or SQL, until a document of one of the searched
+ * libraries changes. Statistics per library: <code>GET /api/v1/search/cache/stats</code>.</p>
+ *
+ * <h3>Index Health</h3>
+ * <p><code>GET /api/v1/search/index/health</code> reports table and index
+ * statistics and the last run of {@link EmbeddingMaintenanceService}.</p>
+ *
  * @see DocEmbeddingJdbcRepository#pesquisaHibrida
  * @see DocEmbeddingJdbcRepository#query_phraseto_websearch
  * @since 0.0.1
@@ -116,11 +187,22 @@ import lombok.extern.slf4j.Slf4j;
 @Tag(name = "RAG Search", description = "Hybrid search endpoints (semantic + textual)")
 public class SearchController {
 
+    /** Profile phase names (explain mode) */
+    private static final String PHASE_EMBEDDING = "embedding";
+    private static final String PHASE_ENRICH = "enrich";
+
     private final DocEmbeddingJdbcRepository embeddingRepository;
     private final EmbeddingProcessorInterface embeddingProcessor;
-    private final DocumentoRepository documentoRepository;
-    private final ChapterRepository chapterRepository;
+    private final TitleCacheService titleCacheService;
+    private final SearchResultCacheService searchResultCache;
     private final LibraryService libraryService;
+    private final DiversityRerankService diversityRerank;
+    private final RerankService rerankService;
+    private final ContextExpansionService contextExpansion;
+    private final BatchSearchService batchSearchService;
+    private final SearchStreamService searchStreamService;
+    private final KeysetSearchService keysetSearch;
+    private final EmbeddingMaintenanceService embeddingMaintenance;
 
     /**
      * Hybrid search combining semantic (embedding-based) and textual (full-text) search
@@ -142,6 +224,9 @@ public class SearchController {
             - Weighted by metadata: titles > descriptions > content
 
             **Performance**: Typical response < 50ms for 10k documents
+
+            **Diagnostics**: `explain=true` returns a per-phase timing profile;
+            `explainAnalyze=true` adds PostgreSQL EXPLAIN ANALYZE plans
             """,
         tags = {"Search"}
     )
@@ -163,22 +248,62 @@ public class SearchController {
                 );
             }
 
-            LibraryDTO library = loadLibrary(request.getLibraryIds());
-	    // Generate query embedding
-            float[] queryEmbedding = embeddingProcessor.createSearchEmbeddings(request.getQuery(), library );
+            SearchProfile profile = SearchProfile.of(request.getExplain(), request.getExplainAnalyze());
+            boolean diversify = diversityRerank.isActive(request.getMmrLambda(), request.getMaxPerDocumento());
+            boolean rescore = rerankService.isActive(request.getRerank());
 
-            // Execute hybrid search
-            List<DocumentEmbedding> embeddings = embeddingRepository.pesquisaHibrida(
-                    queryEmbedding,
-                    request.getQuery(),
-                    request.getLibraryIds(),
-                    request.getLimit(),
-                    request.getPesoSemantico(),
-                    request.getPesoTextual()
-            );
+            if (KeysetSearchService.isActive(request.getPaginate(), request.getCursor())) {
+                SearchResponse page = pagedSearch(KeysetSearchService.TIPO_HYBRID, request.getQuery(),
+                        request.getLibraryIds(), request.getLimit(), request.getPesoSemantico(),
+                        request.getPesoTextual(), request.getFilter(), request.getCursor(), diversify || rescore,
+                        request.getContextWindow(), request.getContextChapter(), profile);
+                return ResponseEntity.ok(completed("Hybrid", page, profile, startTime));
+            }
 
-            // Enrich results with document/chapter information
-            List<SearchResultDTO> results = enrichResults(embeddings);
+            int k = request.getLimit() != null && request.getLimit() > 0 ? request.getLimit() : 10;
+            int fetch = diversify ? diversityRerank.candidateLimit(k) : k;
+            if (rescore) {
+                fetch = Math.max(fetch, rerankService.candidateLimit(k));
+            }
+            int candidateLimit = fetch;
+
+            // Cached results skip embedding generation and SQL
+            List<SearchResultDTO> results = searchResultCache.getOrSearch(
+                    cacheTipo("hybrid", request.getMmrLambda(), request.getMaxPerDocumento(),
+                              rescore ? rerankService.getScorerName() : null)
+                    + contextTipo(request.getContextWindow(), request.getContextChapter())
+                    + filterTipo(request.getFilter()),
+                    request.getQuery(), request.getLibraryIds(), request.getLimit(),
+                    request.getPesoSemantico(), request.getPesoTextual(), profile, () -> {
+
+                LibraryDTO library = loadLibrary(request.getLibraryIds());
+                // Generate query embedding
+                float[] queryEmbedding = SearchProfile.measure(profile, PHASE_EMBEDDING,
+                        () -> embeddingProcessor.createSearchEmbeddings(request.getQuery(), library));
+
+                // Execute hybrid search (more candidates, with vectors, for diversity re-ranking)
+                List<DocumentEmbedding> candidates = embeddingRepository.pesquisaHibrida(
+                        queryEmbedding,
+                        request.getQuery(),
+                        request.getLibraryIds(),
+                        candidateLimit,
+                        request.getPesoSemantico(),
+                        request.getPesoTextual(),
+                        profile,
+                        diversify,
+                        request.getFilter()
+                );
+                if (rescore) {
+                    candidates = rescore(request.getQuery(), candidates, k, profile);
+                }
+                List<DocumentEmbedding> embeddings = diversify
+                        ? rerank(candidates, k, request.getMmrLambda(), request.getMaxPerDocumento(), profile)
+                        : candidates.subList(0, Math.min(k, candidates.size()));
+
+                // Enrich results with document/chapter information and context
+                return expand(SearchProfile.measure(profile, PHASE_ENRICH, () -> enrichResults(embeddings)),
+                              request.getContextWindow(), request.getContextChapter(), profile);
+            });
 
             // Build response
             SearchResponse response = SearchResponse.from(
@@ -191,6 +316,7 @@ public class SearchController {
 
             long executionTime = System.currentTimeMillis() - startTime;
             response.setExecutionTimeMs(executionTime);
+            response.setProfile(profile);
 
             log.info("Hybrid search completed: {} results in {}ms", results.size(), executionTime);
 
@@ -202,6 +328,176 @@ public class SearchController {
         }
     }
 
+    /**
+     * Streaming hybrid search (NDJSON or Server-Sent Events)
+     */
+    @PostMapping(value = "/hybrid/stream",
+                 produces = { MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE })
+    @Operation(
+        summary = "Streaming hybrid search",
+        description = """
+            Hybrid search whose results are written as they are produced, as
+            NDJSON (default) or Server-Sent Events (`Accept: text/event-stream`).
+
+            **Events**:
+            - `textual`: best textual hits, before the query embedding is ready
+            - `result`: fused hybrid ranking, one event per result (`rank`, `result`)
+            - `done`: `totalResults`, `executionTimeMs` (or `error`: `message`)
+
+            Results are read from a database cursor and enriched page by page, so
+            large `limit`s (export) do not build the whole list in memory.
+            Diversity, re-ranking, context and cache options do not apply.
+            """,
+        tags = {"Search"}
+    )
+    public ResponseEntity<StreamingResponseBody> hybridSearchStream(
+            @Valid @RequestBody SearchRequest request,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        log.info("Streaming hybrid search: query='{}', libraries={}, limit={}",
+                request.getQuery(), request.getLibraryIds(), request.getLimit());
+
+        // Validate before the response is committed
+        validateTextQuery(request.getQuery());
+        if (!request.isWeightValid()) {
+            throw new IllegalArgumentException(
+                    String.format("Pesos inválidos: semântico=%.2f + textual=%.2f != 1.0",
+                            request.getPesoSemantico(), request.getPesoTextual())
+            );
+        }
+        if (request.getLimit() != null && request.getLimit() > searchStreamService.getMaxLimit()) {
+            throw new IllegalArgumentException("limit máximo em streaming: " + searchStreamService.getMaxLimit());
+        }
+        LibraryDTO library = loadLibrary(request.getLibraryIds());
+        boolean sse = accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+
+        StreamingResponseBody body = out -> searchStreamService.stream(request, library, sse,
+                                                                       this::enrichResults, out);
+        return ResponseEntity.ok()
+                .contentType(sse ? MediaType.TEXT_EVENT_STREAM : MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Batch search: many queries against the same libraries in one request
+     */
+    @PostMapping("/batch")
+    @Operation(
+        summary = "Batch search (hybrid or semantic)",
+        description = """
+            Executes many queries against the same libraries in one request.
+
+            Query embeddings are generated concurrently (duplicates once) and all
+            queries run in a single SQL statement (LATERAL join over the query
+            vectors and tsqueries), so evaluation jobs and agent tools avoid one
+            HTTP call and one database round trip per query.
+
+            Results come back per query, in request order. The batch path always
+            searches the full-precision vectors and bypasses the result cache.
+            """,
+        tags = {"Search"}
+    )
+    public ResponseEntity<BatchSearchResponse> batchSearch(@Valid @RequestBody BatchSearchRequest request) {
+        log.info("Batch search: {} queries, libraries={}, limit={}, tipo={}",
+                request.getQueries().size(), request.getLibraryIds(), request.getLimit(), request.getTipo());
+
+        long startTime = System.currentTimeMillis();
+
+        try {
+            boolean semantic = request.isSemantic();
+            if (!semantic && !"hybrid".equalsIgnoreCase(request.getTipo())) {
+                throw new IllegalArgumentException("Tipo de pesquisa em lote inválido: " + request.getTipo());
+            }
+            if (!semantic) {
+                request.getQueries().forEach(this::validateTextQuery);
+                if (!request.isWeightValid()) {
+                    throw new IllegalArgumentException(
+                            String.format("Pesos inválidos: semântico=%.2f + textual=%.2f != 1.0",
+                                    request.getPesoSemantico(), request.getPesoTextual())
+                    );
+                }
+            }
+            Float pesoSemantico = semantic ? 1.0f : request.getPesoSemantico();
+            Float pesoTextual = semantic ? 0.0f : request.getPesoTextual();
+            int k = request.getLimit() != null && request.getLimit() > 0 ? request.getLimit() : 10;
+
+            SearchProfile profile = SearchProfile.of(request.getExplain(), false);
+            LibraryDTO library = loadLibrary(request.getLibraryIds());
+            List<List<DocumentEmbedding>> perQuery = batchSearchService.search(
+                    request.getQueries(), library, request.getLibraryIds(), k, semantic,
+                    pesoSemantico, pesoTextual, profile);
+
+            // Enrich all results at once (one title lookup for the batch)
+            List<DocumentEmbedding> all = new ArrayList<>();
+            perQuery.forEach(all::addAll);
+            List<SearchResultDTO> enriched = SearchProfile.measure(profile, PHASE_ENRICH, () -> enrichResults(all));
+
+            List<SearchResponse> responses = new ArrayList<>(perQuery.size());
+            int offset = 0;
+            for (int i = 0; i < perQuery.size(); i++) {
+                int size = perQuery.get(i).size();
+                responses.add(SearchResponse.from(request.getQueries().get(i), request.getLibraryIds(),
+                        pesoSemantico, pesoTextual, new ArrayList<>(enriched.subList(offset, offset + size))));
+                offset += size;
+            }
+
+            long executionTime = System.currentTimeMillis() - startTime;
+            log.info("Batch search completed: {} queries, {} results in {}ms",
+                    responses.size(), all.size(), executionTime);
+
+            return ResponseEntity.ok(BatchSearchResponse.builder()
+                    .responses(responses)
+                    .totalQueries(responses.size())
+                    .executionTimeMs(executionTime)
+                    .profile(profile)
+                    .build());
+
+        } catch (Exception e) {
+            log.error("Error in batch search: {}", e.getMessage(), e);
+            throw new RuntimeException("Erro ao executar pesquisa em lote: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Search result cache statistics
+     */
+    @GetMapping("/cache/stats")
+    @Operation(
+        summary = "Search result cache statistics",
+        description = "Global and per-library hit rates of the search result cache",
+        tags = {"Search"}
+    )
+    public ResponseEntity<SearchCacheStatsDTO> cacheStats() {
+        return ResponseEntity.ok(searchResultCache.getStats());
+    }
+
+    /**
+     * Clears the search result cache
+     */
+    @DeleteMapping("/cache")
+    @Operation(
+        summary = "Clear search result cache",
+        description = "Removes all cached search results and resets statistics",
+        tags = {"Search"}
+    )
+    public ResponseEntity<Void> clearCache() {
+        searchResultCache.clear();
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Health of the embedding table and its indexes
+     */
+    @GetMapping("/index/health")
+    @Operation(
+        summary = "Embedding index health",
+        description = "Live and dead tuples, embeddings pending purge, index sizes and validity, "
+                    + "and the last purge / reindex of the maintenance job",
+        tags = {"Search"}
+    )
+    public ResponseEntity<IndexHealthDTO> indexHealth() {
+        return ResponseEntity.ok(embeddingMaintenance.getHealth());
+    }
+
     /**
      * Loads the library details for the first library ID specified.
      * Throws exception if no libraries specified or library not found.
@@ -305,20 +601,48 @@ public class SearchController {
         long startTime = System.currentTimeMillis();
 
         try {
-            // Generate query embedding
-            LibraryDTO library = loadLibrary(request.getLibraryIds());
-	    // Generate query embedding
-            float[] queryEmbedding = embeddingProcessor.createSearchEmbeddings(request.getQuery(), library );
+            SearchProfile profile = SearchProfile.of(request.getExplain(), request.getExplainAnalyze());
+            boolean diversify = diversityRerank.isActive(request.getMmrLambda(), request.getMaxPerDocumento());
+            int k = request.getLimit() != null && request.getLimit() > 0 ? request.getLimit() : 10;
+
+            if (KeysetSearchService.isActive(request.getPaginate(), request.getCursor())) {
+                SearchResponse page = pagedSearch(KeysetSearchService.TIPO_SEMANTIC, request.getQuery(),
+                        request.getLibraryIds(), k, 1.0f, 0.0f, request.getFilter(), request.getCursor(),
+                        diversify, request.getContextWindow(), request.getContextChapter(), profile);
+                return ResponseEntity.ok(completed("Semantic", page, profile, startTime));
+            }
 
-            // Execute semantic search
-            List<DocumentEmbedding> embeddings = embeddingRepository.pesquisaSemantica(
-                    queryEmbedding,
-                    request.getLibraryIds(),
-                    request.getLimit()
-            );
+            // Cached results skip embedding generation and SQL
+            List<SearchResultDTO> results = searchResultCache.getOrSearch(
+                    cacheTipo("semantic", request.getMmrLambda(), request.getMaxPerDocumento(), null)
+                    + contextTipo(request.getContextWindow(), request.getContextChapter())
+                    + filterTipo(request.getFilter()),
+                    request.getQuery(), request.getLibraryIds(), k,
+                    null, null, profile, () -> {
+
+                LibraryDTO library = loadLibrary(request.getLibraryIds());
+                // Generate query embedding
+                float[] queryEmbedding = SearchProfile.measure(profile, PHASE_EMBEDDING,
+                        () -> embeddingProcessor.createSearchEmbeddings(request.getQuery(), library));
+
+                // Execute semantic search (more candidates, with vectors, for diversity re-ranking)
+                List<DocumentEmbedding> candidates = embeddingRepository.pesquisaSemantica(
+                        queryEmbedding,
+                        request.getLibraryIds(),
+                        diversify ? diversityRerank.candidateLimit(k) : k,
+                        profile,
+                        diversify,
+                        request.getFilter()
+                );
+                List<DocumentEmbedding> embeddings = diversify
+                        ? rerank(candidates, k, request.getMmrLambda(),
+                                 request.getMaxPerDocumento(), profile)
+                        : candidates;
 
-            // Enrich results
-            List<SearchResultDTO> results = enrichResults(embeddings);
+                // Enrich results and context
+                return expand(SearchProfile.measure(profile, PHASE_ENRICH, () -> enrichResults(embeddings)),
+                              request.getContextWindow(), request.getContextChapter(), profile);
+            });
 
             // Build response
             SearchResponse response = SearchResponse.from(
@@ -331,6 +655,7 @@ public class SearchController {
 
             long executionTime = System.currentTimeMillis() - startTime;
             response.setExecutionTimeMs(executionTime);
+            response.setProfile(profile);
 
             log.info("Semantic search completed: {} results in {}ms", results.size(), executionTime);
 
@@ -382,15 +707,35 @@ public class SearchController {
             // Validate query
             validateTextQuery(request.getQuery());
 
-            // Execute textual search
-            List<DocumentEmbedding> embeddings = embeddingRepository.pesquisaTextual(
-                    request.getQuery(),
-                    request.getLibraryIds(),
-                    request.getLimit()
-            );
+            SearchProfile profile = SearchProfile.of(request.getExplain(), request.getExplainAnalyze());
 
-            // Enrich results
-            List<SearchResultDTO> results = enrichResults(embeddings);
+            if (KeysetSearchService.isActive(request.getPaginate(), request.getCursor())) {
+                SearchResponse page = pagedSearch(KeysetSearchService.TIPO_TEXTUAL, request.getQuery(),
+                        request.getLibraryIds(), request.getLimit(), 0.0f, 1.0f, request.getFilter(), request.getCursor(),
+                        false, request.getContextWindow(), request.getContextChapter(), profile);
+                return ResponseEntity.ok(completed("Textual", page, profile, startTime));
+            }
+
+            List<SearchResultDTO> results = searchResultCache.getOrSearch(
+                    "textual" + contextTipo(request.getContextWindow(), request.getContextChapter())
+                    + filterTipo(request.getFilter()),
+                    request.getQuery(), request.getLibraryIds(), request.getLimit(),
+                    null, null, profile, () -> {
+
+                // Execute textual search
+                List<DocumentEmbedding> embeddings = embeddingRepository.pesquisaTextual(
+                        request.getQuery(),
+                        request.getLibraryIds(),
+                        request.getLimit(),
+                        profile,
+                        false,
+                        request.getFilter()
+                );
+
+                // Enrich results and context
+                return expand(SearchProfile.measure(profile, PHASE_ENRICH, () -> enrichResults(embeddings)),
+                              request.getContextWindow(), request.getContextChapter(), profile);
+            });
 
             // Build response
             SearchResponse response = SearchResponse.from(
@@ -403,6 +748,7 @@ public class SearchController {
 
             long executionTime = System.currentTimeMillis() - startTime;
             response.setExecutionTimeMs(executionTime);
+            response.setProfile(profile);
 
             log.info("Textual search completed: {} results in {}ms", results.size(), executionTime);
 
@@ -414,6 +760,114 @@ public class SearchController {
         }
     }
 
+    /**
+     * One page of a keyset-paginated search (bypasses the result cache)
+     *
+     * @param reranked - diversity or re-ranking requested: not supported with a cursor
+     */
+    private SearchResponse pagedSearch(String tipo, String query, Integer[] libraryIds, Integer limit,
+                                       Float pesoSemantico, Float pesoTextual, MetadataFilter filter,
+                                       String cursor, boolean reranked,
+                                       Integer contextWindow, Boolean contextChapter, SearchProfile profile) {
+        if (reranked) {
+            throw new IllegalArgumentException(
+                    "Paginação por cursor não pode ser combinada com mmrLambda, maxPerDocumento ou rerank");
+        }
+        KeysetSearchService.Page page = keysetSearch.search(tipo, query, libraryIds, limit,
+                pesoSemantico, pesoTextual, filter, cursor,
+                () -> embeddingProcessor.createSearchEmbeddings(query, loadLibrary(libraryIds)), profile);
+
+        List<SearchResultDTO> results = expand(
+                SearchProfile.measure(profile, PHASE_ENRICH, () -> enrichResults(page.getResults())),
+                contextWindow, contextChapter, profile);
+        SearchResponse response = SearchResponse.from(query, libraryIds, pesoSemantico, pesoTextual, results);
+        response.setNextCursor(page.getNextCursor());
+        return response;
+    }
+
+    /**
+     * Sets execution time and profile of a response
+     */
+    private static SearchResponse completed(String tipo, SearchResponse response, SearchProfile profile,
+                                            long startTime) {
+        long executionTime = System.currentTimeMillis() - startTime;
+        response.setExecutionTimeMs(executionTime);
+        response.setProfile(profile);
+        log.info("{} search completed: {} results in {}ms", tipo, response.getTotalResults(), executionTime);
+        return response;
+    }
+
+    /**
+     * Diversity re-ranking of the candidates (MMR / per-documento cap)
+     */
+    private List<DocumentEmbedding> rerank(List<DocumentEmbedding> candidates, Integer limit, Float mmrLambda,
+                                           Integer maxPerDocumento, SearchProfile profile) {
+        int k = limit != null && limit > 0 ? limit : 10;
+        List<DocumentEmbedding> selected = SearchProfile.measure(profile, DiversityRerankService.PHASE_MMR,
+                () -> diversityRerank.rerank(candidates, k, mmrLambda, maxPerDocumento));
+        if (profile != null) {
+            profile.getLastPhase().setRows(selected.size());
+            profile.getLastPhase().setDetail("candidates=" + candidates.size() + ", lambda=" + mmrLambda
+                                             + ", maxPerDocumento=" + maxPerDocumento);
+        }
+        return selected;
+    }
+
+    /**
+     * Relevance re-ranking of the top candidates (pluggable scorer, latency budget)
+     */
+    private List<DocumentEmbedding> rescore(String query, List<DocumentEmbedding> candidates, int k,
+                                            SearchProfile profile) {
+        RerankService.Outcome outcome = SearchProfile.measure(profile, RerankService.PHASE_RERANK,
+                () -> rerankService.rerank(query, candidates, k));
+        if (profile != null) {
+            profile.getLastPhase().setRows(outcome.getScored() + outcome.getCached());
+            profile.getLastPhase().setDetail("scorer=" + rerankService.getScorerName() + ", " + outcome.getDetail());
+        }
+        return outcome.getResults();
+    }
+
+    /**
+     * Result cache "tipo": the search type plus the re-ranking parameters,
+     * which change the results
+     */
+    private static String cacheTipo(String tipo, Float mmrLambda, Integer maxPerDocumento, String scorer) {
+        String cacheTipo = tipo;
+        if (mmrLambda != null || maxPerDocumento != null) {
+            cacheTipo += "|mmr=" + mmrLambda + "|cap=" + maxPerDocumento;
+        }
+        if (scorer != null) {
+            cacheTipo += "|rerank=" + scorer;
+        }
+        return cacheTipo;
+    }
+
+    /**
+     * Context-window expansion of the enriched results (neighbor chunks or chapter text)
+     */
+    private List<SearchResultDTO> expand(List<SearchResultDTO> results, Integer contextWindow,
+                                         Boolean contextChapter, SearchProfile profile) {
+        contextExpansion.expand(results, contextWindow, contextChapter, profile);
+        return results;
+    }
+
+    /**
+     * Result cache "tipo" suffix of the context parameters
+     */
+    private static String contextTipo(Integer contextWindow, Boolean contextChapter) {
+        if (Boolean.TRUE.equals(contextChapter)) {
+            return "|ctx=chapter";
+        }
+        return contextWindow != null && contextWindow > 0 ? "|ctx=" + contextWindow : "";
+    }
+
+    /**
+     * Result cache "tipo" suffix of the metadados filter
+     */
+    private static String filterTipo(MetadataFilter filter) {
+        return filter == null || filter.isEmpty() ? "" : "|filter=" + filter;
+    }
+
     /**
      * Enriches search results with document and chapter information
      */
@@ -430,32 +884,20 @@ public class SearchController {
                 .distinct()
                 .collect(Collectors.toList());
 
-        // Load all documents and chapters in batch
-        Map<Integer, Documento> documentoMap = documentoRepository.findAllById(documentoIds).stream()
-                .collect(Collectors.toMap(Documento::getId, doc -> doc));
-
-        Map<Integer, Chapter> chapterMap = new HashMap<>();
-        if (!chapterIds.isEmpty()) {
-            chapterMap = chapterRepository.findAllById(chapterIds).stream()
-                    .collect(Collectors.toMap(Chapter::getId, cap -> cap));
-        }
+        // Load titles only (cached projections, never the full content)
+        Map<Integer, String> documentoTitles = titleCacheService.getDocumentoTitles(documentoIds);
+        Map<Integer, String> chapterTitles = chapterIds.isEmpty()
+                ? Map.of()
+                : titleCacheService.getChapterTitles(chapterIds);
 
         // Build enriched results
-        final Map<Integer, Chapter> finalChapterMap = chapterMap;
         return embeddings.stream()
                 .map(emb -> {
                     SearchResultDTO result = SearchResultDTO.from(emb);
-
-                    // Add document information
-                    Documento doc = documentoMap.get(emb.getDocumentoId());
-                    String docTitulo = doc != null ? doc.getTitulo() : null;
-
-                    // Add chapter information
-                    String capTitulo = null;
-                    if (emb.getChapterId() != null) {
-                        Chapter chapter = finalChapterMap.get(emb.getChapterId());
-                        capTitulo = chapter != null ? chapter.getTitulo() : null;
-                    }
+                    String docTitulo = documentoTitles.get(emb.getDocumentoId());
+                    String capTitulo = emb.getChapterId() != null
+                            ? chapterTitles.get(emb.getChapterId())
+                            : null;
 
                     // Enrich and extract scores
                     return result.enrich(docTitulo, capTitulo).extractScores();
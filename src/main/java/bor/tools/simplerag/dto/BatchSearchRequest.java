@@ -0,0 +1,85 @@
+package bor.tools.simplerag.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Request DTO for batch search: several queries against the same libraries.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BatchSearchRequest {
+
+    /**
+     * Query texts, answered in the same order
+     */
+    @NotEmpty(message = "At least one query is required")
+    private List<String> queries;
+
+    /**
+     * Library IDs to search in
+     */
+    @NotNull(message = "Library IDs are required")
+    private Integer[] libraryIds;
+
+    /**
+     * Maximum number of results per query (default: 10)
+     */
+    @Builder.Default
+    private Integer limit = 10;
+
+    /**
+     * Search type: "hybrid" (default) or "semantic"
+     */
+    @Builder.Default
+    private String tipo = "hybrid";
+
+    /**
+     * Semantic search weight (hybrid, default: 0.6)
+     */
+    @Builder.Default
+    private Float pesoSemantico = 0.6f;
+
+    /**
+     * Textual search weight (hybrid, default: 0.4)
+     */
+    @Builder.Default
+    private Float pesoTextual = 0.4f;
+
+    /**
+     * Explain mode: per-phase timing of the whole batch
+     */
+    @Builder.Default
+    private Boolean explain = false;
+
+    /**
+     * True for semantic-only search
+     */
+    public boolean isSemantic() {
+        return "semantic".equalsIgnoreCase(tipo);
+    }
+
+    /**
+     * Validates that semantic and textual weights sum to 1.0
+     */
+    public boolean isWeightValid() {
+        if (pesoSemantico != null && pesoTextual != null) {
+            float sum = pesoSemantico + pesoTextual;
+            return Math.abs(sum - 1.0f) <= 0.001f;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,44 @@
+package bor.tools.simplerag.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Response DTO for batch search: one {@link SearchResponse} per query, in
+ * request order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BatchSearchResponse {
+
+    /**
+     * Results of each query
+     */
+    private List<SearchResponse> responses;
+
+    /**
+     * Number of queries
+     */
+    private Integer totalQueries;
+
+    /**
+     * Total execution time of the batch in milliseconds
+     */
+    private Long executionTimeMs;
+
+    /**
+     * Per-phase timing of the batch (explain mode only)
+     */
+    private SearchProfile profile;
+}
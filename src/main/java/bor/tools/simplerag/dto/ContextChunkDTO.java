@@ -0,0 +1,48 @@
+package bor.tools.simplerag.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Neighbor chunk of a search result (context window expansion).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ContextChunkDTO {
+
+    /**
+     * Document embedding ID
+     */
+    private Integer embeddingId;
+
+    /**
+     * Position of the chunk in its chapter
+     */
+    private Integer orderChapter;
+
+    /**
+     * Chunk text
+     */
+    private String texto;
+
+    /**
+     * Create ContextChunkDTO from DocumentEmbedding
+     */
+    public static ContextChunkDTO from(DocumentEmbedding embedding) {
+        return ContextChunkDTO.builder()
+                .embeddingId(embedding.getId())
+                .orderChapter(embedding.getOrderChapter())
+                .texto(embedding.getTexto())
+                .build();
+    }
+}
@@ -0,0 +1,102 @@
+package bor.tools.simplerag.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Health of doc_embedding and its indexes: table tuple statistics, rows
+ * waiting to be purged and the state of the last maintenance run.
+ *
+ * @see bor.tools.simplerag.service.EmbeddingMaintenanceService
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class IndexHealthDTO {
+
+    /**
+     * Live tuples (pg_stat_user_tables estimate)
+     */
+    private Long liveRows;
+
+    /**
+     * Dead tuples not yet vacuumed
+     */
+    private Long deadRows;
+
+    /**
+     * deadRows / (liveRows + deadRows)
+     */
+    private Double deadRatio;
+
+    /**
+     * Rows updated or deleted since the last reindex, relative to liveRows
+     */
+    private Double churnRatio;
+
+    /**
+     * Soft-deleted embeddings (deleted = true) still stored
+     */
+    private Long deletedRows;
+
+    /**
+     * Embeddings of revoked documents (vigente = false) still stored
+     */
+    private Long revokedRows;
+
+    private LocalDateTime lastVacuum;
+
+    private LocalDateTime lastAnalyze;
+
+    /**
+     * Last maintenance run of this instance
+     */
+    private LocalDateTime lastRunAt;
+
+    /**
+     * Rows hard-deleted by the last maintenance run
+     */
+    private Long lastPurgedRows;
+
+    /**
+     * Last reindex of the ANN and GIN indexes by this instance
+     */
+    private LocalDateTime lastReindexAt;
+
+    /**
+     * Indexes of doc_embedding, ordered by name
+     */
+    private List<IndexStats> indexes;
+
+    /**
+     * Size and usage of a single index
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class IndexStats {
+        private String name;
+        /** Access method: hnsw, ivfflat, gin, btree */
+        private String method;
+        private Long sizeBytes;
+        /** Index scans since the statistics reset */
+        private Long scans;
+        /** False for a failed concurrent build, which must be dropped */
+        private Boolean valid;
+        /** Partial index predicate, or null */
+        private String predicate;
+    }
+}
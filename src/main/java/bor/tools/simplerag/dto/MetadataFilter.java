@@ -0,0 +1,88 @@
+package bor.tools.simplerag.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Filter on the metadados of the embeddings (e.g. <code>area_conhecimento</code>,
+ * <code>autor</code>, <code>tipo</code>, <code>data_publicacao</code>), applied
+ * by PostgreSQL inside the search SQL. All conditions must hold (AND).
+ *
+ * <pre>
+ * "filter": {
+ *   "equals": { "area_conhecimento": "Direito", "keywords": ["licitação"] },
+ *   "in":     { "autor": ["Silva", "Souza"] },
+ *   "range":  { "data_publicacao": { "gte": "2020-01-01", "lte": "2023-12-31" } },
+ *   "exists": ["isbn"]
+ * }
+ * </pre>
+ *
+ * <p>Field names are top-level metadados keys (letters, digits and
+ * <code>_</code>). <code>equals</code> and <code>in</code> use jsonb
+ * containment, so an array value matches arrays containing those elements;
+ * they are served by the GIN index on <code>doc_embedding.metadados</code>.
+ * <code>range</code> compares numbers, or strings such as ISO-8601 dates.</p>
+ *
+ * @see bor.tools.simplerag.repository.MetadataFilterSql
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MetadataFilter {
+
+    /**
+     * Field equal to (or, for arrays, containing) the value
+     */
+    private Map<String, Object> equals;
+
+    /**
+     * Field equal to any of the values
+     */
+    private Map<String, List<Object>> in;
+
+    /**
+     * Field within an inclusive range
+     */
+    private Map<String, Range> range;
+
+    /**
+     * Fields that must be present
+     */
+    private List<String> exists;
+
+    /**
+     * Inclusive bounds of a range condition; a null bound is open
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Range {
+        /** Lower bound (number or string) */
+        private Object gte;
+        /** Upper bound (number or string) */
+        private Object lte;
+    }
+
+    /**
+     * True when the filter has no condition
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return (equals == null || equals.isEmpty()) && (in == null || in.isEmpty())
+               && (range == null || range.isEmpty()) && (exists == null || exists.isEmpty());
+    }
+}
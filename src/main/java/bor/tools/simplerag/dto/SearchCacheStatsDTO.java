@@ -0,0 +1,67 @@
+package bor.tools.simplerag.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Statistics of the search result cache, global and per library.
+ *
+ * @see bor.tools.simplerag.service.SearchResultCacheService
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SearchCacheStatsDTO {
+
+    /**
+     * Cached entries
+     */
+    private Integer size;
+
+    /**
+     * Maximum number of entries
+     */
+    private Integer capacity;
+
+    private Long hits;
+
+    private Long misses;
+
+    private Long evictions;
+
+    /**
+     * hits / (hits + misses)
+     */
+    private Double hitRate;
+
+    /**
+     * Per-library counters, ordered by library id
+     */
+    private List<LibraryStats> libraries;
+
+    /**
+     * Cache counters of a single library
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class LibraryStats {
+        private Integer libraryId;
+        /** Incremented on every change to the library content */
+        private Long version;
+        private Long hits;
+        private Long misses;
+        private Double hitRate;
+    }
+}
@@ -0,0 +1,147 @@
+package bor.tools.simplerag.dto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Continuation point of a keyset-paginated search.
+ *
+ * <p>Results are ordered by an ascending <code>cursor_key</code> (distance in
+ * semantic search, negated score in textual and hybrid search) and then by id;
+ * the next page starts after (<code>lastKey</code>, <code>lastId</code>), so
+ * the previous pages are not transferred again. The query vector travels in
+ * the cursor, so continuation pages need no embedding call.</p>
+ *
+ * <p>Sent to clients as an opaque URL-safe Base64 token ({@link #encode()}).
+ * The <code>fingerprint</code> ties the cursor to the search that created it
+ * (type, query, libraries, weights and metadados filter).</p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SearchCursor {
+
+    /** Formato binário do token */
+    private static final byte VERSION = 1;
+
+    /** Maior vetor aceito em um token */
+    private static final int MAX_DIMENSION = 16384;
+
+    /**
+     * Search type: hybrid, semantic or textual
+     */
+    private String tipo;
+
+    /**
+     * Hash of the search parameters ({@link #fingerprint})
+     */
+    private int fingerprint;
+
+    /**
+     * <code>cursor_key</code> of the last result returned
+     */
+    private double lastKey;
+
+    /**
+     * Id of the last result returned (tie-break)
+     */
+    private int lastId;
+
+    /**
+     * Results returned so far
+     */
+    private int depth;
+
+    /**
+     * RRF constant of the hybrid fusion, fixed by the first page
+     */
+    private int rrfK;
+
+    /**
+     * Query embedding (null for textual search)
+     */
+    private float[] vector;
+
+    /**
+     * Hash of the parameters that define a search. Stable across JVMs (only
+     * String, number, collection and Lombok hash codes are involved), so a
+     * cursor can be continued by any instance.
+     */
+    public static int fingerprint(String tipo, String query, Integer[] libraryIds, Float pesoSemantico,
+                                  Float pesoTextual, MetadataFilter filter) {
+        return Objects.hash(tipo, query, Arrays.hashCode(libraryIds), pesoSemantico, pesoTextual,
+                            filter == null || filter.isEmpty() ? null : filter);
+    }
+
+    /**
+     * Opaque token sent to the client
+     */
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(tipo);
+            out.writeInt(fingerprint);
+            out.writeDouble(lastKey);
+            out.writeInt(lastId);
+            out.writeInt(depth);
+            out.writeInt(rrfK);
+            out.writeInt(vector != null ? vector.length : -1);
+            if (vector != null) {
+                for (float v : vector) {
+                    out.writeFloat(v);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Parses a token created by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static SearchCursor decode(String token) {
+        SearchCursor cursor = new SearchCursor();
+        int version;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            version = in.readByte();
+            cursor.tipo = in.readUTF();
+            cursor.fingerprint = in.readInt();
+            cursor.lastKey = in.readDouble();
+            cursor.lastId = in.readInt();
+            cursor.depth = in.readInt();
+            cursor.rrfK = in.readInt();
+            int dimension = in.readInt();
+            if (dimension > MAX_DIMENSION) {
+                throw new IOException("dimension " + dimension);
+            }
+            if (dimension >= 0) {
+                cursor.vector = new float[dimension];
+                for (int i = 0; i < dimension; i++) {
+                    cursor.vector[i] = in.readFloat();
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor inválido", e);
+        }
+        if (version != VERSION || cursor.depth < 0 || cursor.rrfK < 0 || Double.isNaN(cursor.lastKey)) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+        return cursor;
+    }
+}
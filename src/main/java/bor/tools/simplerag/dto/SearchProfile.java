@@ -0,0 +1,166 @@
+package bor.tools.simplerag.dto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Execution profile of a single search request (explain mode).
+ *
+ * <p>Collects the wall-clock time spent in each phase of the search pipeline,
+ * in execution order:</p>
+ * <ul>
+ *   <li><b>query_preprocessing</b> - tsquery compilation (websearch_to_tsquery)</li>
+ *   <li><b>embedding</b> - query embedding generation by the LLM provider</li>
+ *   <li><b>sql_*</b> - each SQL statement sent to PostgreSQL. For hybrid search the
+ *       semantic and textual legs and the score fusion run in a single statement;
+ *       their individual costs are visible in the EXPLAIN ANALYZE plan</li>
+ *   <li><b>enrich</b> - loading of document/chapter titles</li>
+ * </ul>
+ *
+ * <p>When {@link #isExplainAnalyze()} is set, the repository also runs
+ * <code>EXPLAIN (ANALYZE, BUFFERS)</code> for every SQL phase and stores the plan
+ * in {@link #getPlans()}. Note that EXPLAIN ANALYZE executes the query again.</p>
+ *
+ * @see SearchRequest#getExplain()
+ * @see bor.tools.simplerag.repository.DocEmbeddingJdbcRepository#pesquisaHibrida
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SearchProfile {
+
+    /**
+     * Phases in execution order
+     */
+    @Builder.Default
+    private List<Phase> phases = new ArrayList<>();
+
+    /**
+     * EXPLAIN ANALYZE output by SQL phase name (only when explainAnalyze=true)
+     */
+    private Map<String, List<String>> plans;
+
+    /**
+     * Whether EXPLAIN ANALYZE must be collected for SQL phases
+     */
+    @Builder.Default
+    private boolean explainAnalyze = false;
+
+    /**
+     * Creates an empty profile.
+     * @param explainAnalyze - true to collect EXPLAIN ANALYZE plans
+     */
+    public SearchProfile(boolean explainAnalyze) {
+        this.phases = new ArrayList<>();
+        this.explainAnalyze = explainAnalyze;
+    }
+
+    /**
+     * Creates a profile for a request, or null when explain mode is off.
+     *
+     * @param explain - request explain flag
+     * @param explainAnalyze - request explainAnalyze flag
+     * @return new profile or null
+     */
+    public static SearchProfile of(Boolean explain, Boolean explainAnalyze) {
+        if (!Boolean.TRUE.equals(explain) && !Boolean.TRUE.equals(explainAnalyze)) {
+            return null;
+        }
+        return new SearchProfile(Boolean.TRUE.equals(explainAnalyze));
+    }
+
+    /**
+     * Executes a step and records its duration. Null-safe: if profile is null
+     * the step is simply executed.
+     *
+     * @param profile - profile (may be null)
+     * @param phase - phase name
+     * @param step - step to execute
+     * @return step result
+     */
+    public static <T> T measure(SearchProfile profile, String phase, Supplier<T> step) {
+        if (profile == null) {
+            return step.get();
+        }
+        return profile.time(phase, step);
+    }
+
+    /**
+     * Executes a step and records its duration as a new phase.
+     */
+    public <T> T time(String phase, Supplier<T> step) {
+        long start = System.nanoTime();
+        try {
+            return step.get();
+        } finally {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a phase with the given duration in nanoseconds.
+     */
+    public Phase record(String phase, long nanos) {
+        Phase p = new Phase(phase, nanos / 1_000_000.0, null, null);
+        phases.add(p);
+        return p;
+    }
+
+    /**
+     * Adds an EXPLAIN ANALYZE plan for a SQL phase.
+     */
+    public void addPlan(String phase, List<String> plan) {
+        if (plans == null) {
+            plans = new LinkedHashMap<>();
+        }
+        plans.put(phase, plan);
+    }
+
+    /**
+     * Last recorded phase, or null
+     */
+    @JsonIgnore
+    public Phase getLastPhase() {
+        return phases.isEmpty() ? null : phases.get(phases.size() - 1);
+    }
+
+    /**
+     * Sum of all recorded phases, in milliseconds
+     */
+    public double getTotalMs() {
+        return phases.stream().mapToDouble(Phase::getDurationMs).sum();
+    }
+
+    /**
+     * A single timed phase of the search pipeline.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Phase {
+        /** Phase name (query_preprocessing, embedding, sql_hybrid, enrich...) */
+        private String name;
+        /** Duration in milliseconds */
+        private double durationMs;
+        /** Number of rows returned (SQL phases) */
+        private Integer rows;
+        /** Free-form detail (e.g. cache hit) */
+        private String detail;
+    }
+}
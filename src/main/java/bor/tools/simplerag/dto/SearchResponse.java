@@ -51,11 +51,22 @@ public class SearchResponse {
      */
     private List<SearchResultDTO> results;
 
+    /**
+     * Keyset pagination: token of the next page (null on the last page or
+     * when pagination was not requested)
+     */
+    private String nextCursor;
+
     /**
      * Search execution time in milliseconds
      */
     private Long executionTimeMs;
 
+    /**
+     * Execution profile (only present when explain mode was requested)
+     */
+    private SearchProfile profile;
+
     /**
      * Create response from search results
      */
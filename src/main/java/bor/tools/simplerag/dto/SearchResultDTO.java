@@ -7,6 +7,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
@@ -73,6 +74,24 @@ public class SearchResultDTO {
      */
     private Float score;
 
+    /**
+     * Re-ranker score, when the search was re-ranked and this result was scored
+     */
+    private Float scoreRerank;
+
+    /**
+     * Neighbor chunks of the same chapter, in chapter order, when the search
+     * asked for a context window. Chunks already in the window of a better
+     * ranked result are not repeated.
+     */
+    private List<ContextChunkDTO> contexto;
+
+    /**
+     * Full text of the chapter, when the search asked for chapter context;
+     * only on the first result of each chapter
+     */
+    private String capituloTexto;
+
     /**
      * Additional metadata
      */
@@ -113,6 +132,7 @@ public class SearchResultDTO {
             this.scoreSemantico = (Float) metadados.get("score_semantic");
             this.scoreTextual = (Float) metadados.get("score_text");
             this.score = (Float) metadados.get("score");
+            this.scoreRerank = (Float) metadados.get("score_rerank");
         }
         return this;
     }
@@ -3,6 +3,10 @@ package bor.tools.simplerag.dto;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -38,4 +42,66 @@ public class SemanticSearchRequest {
      */
     @Builder.Default
     private Integer limit = 10;
+
+    /**
+     * Explain mode: when true the response includes a per-phase
+     * timing breakdown ({@link SearchProfile}) of this search
+     */
+    @Builder.Default
+    private Boolean explain = false;
+
+    /**
+     * When true (implies explain), the profile also carries the
+     * PostgreSQL EXPLAIN ANALYZE output of each SQL statement.
+     * The SQL is executed twice, use for diagnosis only.
+     */
+    @Builder.Default
+    private Boolean explainAnalyze = false;
+
+    /**
+     * MMR diversity re-ranking: relevance / diversity trade-off in [0, 1]
+     * (1 = retrieval order, lower = more diverse). Null disables MMR.
+     */
+    @DecimalMin(value = "0.0", message = "mmrLambda must be between 0 and 1")
+    @DecimalMax(value = "1.0", message = "mmrLambda must be between 0 and 1")
+    private Float mmrLambda;
+
+    /**
+     * Maximum results from the same documento. Null or 0 disables the cap.
+     */
+    @Min(value = 0, message = "maxPerDocumento must not be negative")
+    private Integer maxPerDocumento;
+
+    /**
+     * Context window: return each result with up to this many neighbor chunks
+     * before and after it in its chapter (0 or null disables)
+     */
+    @Min(value = 0, message = "contextWindow must not be negative")
+    @Max(value = 10, message = "contextWindow must be at most 10")
+    private Integer contextWindow;
+
+    /**
+     * Return the full chapter text of the results (once per chapter)
+     */
+    @Builder.Default
+    private Boolean contextChapter = false;
+
+    /**
+     * Keyset pagination: when true the response carries <code>nextCursor</code>
+     * to continue the search after its last result
+     */
+    @Builder.Default
+    private Boolean paginate = false;
+
+    /**
+     * Continuation token (<code>nextCursor</code> of the previous page). The
+     * other parameters must match those of the first page.
+     */
+    private String cursor;
+
+    /**
+     * Filter on the metadados of the embeddings, applied inside the search SQL
+     * (see {@link MetadataFilter})
+     */
+    private MetadataFilter filter;
 }
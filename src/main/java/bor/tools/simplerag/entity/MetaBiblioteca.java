@@ -4,10 +4,17 @@ package bor.tools.simplerag.entity;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import bor.tools.simplerag.entity.enums.MetricaDistancia;
+import bor.tools.simplerag.entity.enums.TipoArmazenamentoVetor;
+
 /**
  * Metadata for Library and Documento entities.
  * Must include the key 'language' for document processing.
  * Optional keys: 'embedding_model' and 'embedding_dimension'.
+ * Search tuning keys: 'vector_storage' (full, halfvec, binary) and
+ * 'rerank_factor' (candidates per result for quantized storage),
+ * 'distance_metric' (cosine, inner_product, l2).
+ * Lexical engine key: 'text_engine' (postgres, lucene).
  *
  * Example:
  * {
@@ -31,6 +38,18 @@ public class MetaBiblioteca extends Metadata{
 	public static final String lANG_KEY = "language";
 	public static final String MODEL_KEY = "embedding_model";
 	public static final String DIMENSION_KEY = "embedding_dimension";
+	public static final String VECTOR_STORAGE_KEY = "vector_storage";
+	public static final String RERANK_FACTOR_KEY = "rerank_factor";
+	public static final String PREFIX_DIMENSION_KEY = "prefix_dimension";
+	public static final String IN_MEMORY_INDEX_KEY = "in_memory_index";
+	public static final String DISTANCE_METRIC_KEY = "distance_metric";
+	public static final String TEXT_ENGINE_KEY = "text_engine";
+
+	/** text_engine value: embedded Lucene BM25 index as the textual leg of hybrid search */
+	public static final String TEXT_ENGINE_LUCENE = "lucene";
+
+	/** Prefix dimension used by matryoshka storage when not configured */
+	public static final int DEFAULT_PREFIX_DIMENSION = 256;
 
 
     public MetaBiblioteca() {
@@ -79,4 +98,113 @@ public class MetaBiblioteca extends Metadata{
    public void setEmbeddingDimension(Integer embeddingDimension) {
 	   this.put(DIMENSION_KEY, embeddingDimension);
    }
+
+   /**
+    * Vector storage mode used for candidate generation (default FULL)
+    */
+   public TipoArmazenamentoVetor getVectorStorage() {
+	   Object mode = this.get(VECTOR_STORAGE_KEY);
+	   try {
+		   return TipoArmazenamentoVetor.fromString(mode != null ? mode.toString() : null);
+	   } catch (IllegalArgumentException e) {
+		   return TipoArmazenamentoVetor.FULL;
+	   }
+   }
+
+   public void setVectorStorage(TipoArmazenamentoVetor mode) {
+	   this.put(VECTOR_STORAGE_KEY, mode != null ? mode.getDbValue() : null);
+   }
+
+   /**
+    * Candidates fetched per requested result when re-ranking quantized
+    * search; defaults to the storage mode's factor
+    */
+   public int getRerankFactor() {
+	   Object factor = this.get(RERANK_FACTOR_KEY);
+	   if (factor instanceof Number n && n.intValue() > 0)
+		   return n.intValue();
+	   if (factor instanceof String str) {
+		   try {
+			   int f = Integer.parseInt(str.trim());
+			   if (f > 0)
+				   return f;
+		   } catch (NumberFormatException e) {
+			   // fall through to default
+		   }
+	   }
+	   return getVectorStorage().getDefaultRerankFactor();
+   }
+
+   public void setRerankFactor(Integer factor) {
+	   this.put(RERANK_FACTOR_KEY, factor);
+   }
+
+   /**
+    * Number of leading dimensions indexed for matryoshka candidate search
+    * (default {@value #DEFAULT_PREFIX_DIMENSION})
+    */
+   public int getPrefixDimension() {
+	   Object dim = this.get(PREFIX_DIMENSION_KEY);
+	   if (dim instanceof Number n && n.intValue() > 0)
+		   return n.intValue();
+	   if (dim instanceof String str) {
+		   try {
+			   int d = Integer.parseInt(str.trim());
+			   if (d > 0)
+				   return d;
+		   } catch (NumberFormatException e) {
+			   // fall through to default
+		   }
+	   }
+	   return DEFAULT_PREFIX_DIMENSION;
+   }
+
+   public void setPrefixDimension(Integer prefixDimension) {
+	   this.put(PREFIX_DIMENSION_KEY, prefixDimension);
+   }
+
+   /**
+    * Whether semantic search on this library is served by an in-process
+    * HNSW index (requires rag.pesquisa.hnsw.enabled)
+    */
+   public boolean isInMemoryIndex() {
+	   Object flag = this.get(IN_MEMORY_INDEX_KEY);
+	   if (flag instanceof Boolean b)
+		   return b;
+	   return flag != null && Boolean.parseBoolean(flag.toString().trim());
+   }
+
+   public void setInMemoryIndex(Boolean inMemoryIndex) {
+	   this.put(IN_MEMORY_INDEX_KEY, inMemoryIndex);
+   }
+
+   /**
+    * True if the library keeps an embedded Lucene (BM25) index for lexical search.
+    * Default: PostgreSQL full text search (ts_rank_cd)
+    */
+   public boolean isLuceneTextEngine() {
+	   Object engine = this.get(TEXT_ENGINE_KEY);
+	   return engine != null && TEXT_ENGINE_LUCENE.equalsIgnoreCase(engine.toString().trim());
+   }
+
+   public void setTextEngine(String textEngine) {
+	   this.put(TEXT_ENGINE_KEY, textEngine);
+   }
+
+   /**
+    * Distance metric of semantic search (default COSINE).
+    * Changing it does not renormalize stored embeddings (see {@link MetricaDistancia}).
+    */
+   public MetricaDistancia getDistanceMetric() {
+	   Object metric = this.get(DISTANCE_METRIC_KEY);
+	   try {
+		   return MetricaDistancia.fromString(metric != null ? metric.toString() : null);
+	   } catch (IllegalArgumentException e) {
+		   return MetricaDistancia.COSINE;
+	   }
+   }
+
+   public void setDistanceMetric(MetricaDistancia metric) {
+	   this.put(DISTANCE_METRIC_KEY, metric != null ? metric.getDbValue() : null);
+   }
 }
@@ -0,0 +1,125 @@
+package bor.tools.simplerag.entity.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Distance metric used to rank the semantic part of the searches of a library.
+ *
+ * <p>All search modes (semantic, hybrid, quantized re-rank, in-memory index)
+ * rank with the library metric and report the same similarity score:</p>
+ *
+ * <table border="1">
+ *   <tr><th>Metric</th><th>pgvector operator</th><th>Full-precision index</th><th>halfvec index</th><th>Score</th><th>Vectors</th></tr>
+ *   <tr><td>cosine</td><td><code>&lt;=&gt;</code></td><td>idx_embedding_vector (ivfflat, vector_cosine_ops)</td><td>idx_embedding_live_halfvec_hnsw</td><td>1 - d</td><td>normalized at ingestion</td></tr>
+ *   <tr><td>inner_product</td><td><code>&lt;#&gt;</code></td><td>idx_embedding_live_ip_hnsw (vector_ip_ops)</td><td>idx_embedding_live_halfvec_ip_hnsw</td><td>-d</td><td>normalized at ingestion</td></tr>
+ *   <tr><td>l2</td><td><code>&lt;-&gt;</code></td><td>none (exact scan)</td><td>idx_embedding_live_halfvec_l2_hnsw</td><td>1 / (1 + d)</td><td>as given</td></tr>
+ * </table>
+ *
+ * <p>The <code>idx_embedding_live_*</code> indexes are partial on
+ * <code>vigente AND NOT deleted</code>. Binary (Hamming) and Matryoshka prefix
+ * (cosine) candidate indexes are shared by all metrics; their candidates are
+ * re-ranked with the library metric.</p>
+ *
+ * <p>For unit vectors the inner product equals the cosine similarity, so
+ * cosine and inner_product rank and score identically; inner_product skips the
+ * norm computation and is the cheapest distance in the index.</p>
+ *
+ * <p>Vectors are normalized only at ingestion (and once for existing rows by
+ * changelog 016): changing the metric of a library that already has
+ * embeddings never renormalizes them. Switching from l2 to cosine is harmless
+ * (cosine is scale invariant); switching from l2 to inner_product requires
+ * reprocessing the documents, and switching to l2 keeps the unit-length
+ * vectors.</p>
+ *
+ * Stored in library metadados under the key <code>distance_metric</code>.
+ */
+public enum MetricaDistancia {
+    /**
+     * Cosine distance (default)
+     */
+    COSINE("cosine", "<=>", true),
+
+    /**
+     * Negative inner product; requires normalized vectors to mean cosine similarity
+     */
+    INNER_PRODUCT("inner_product", "<#>", true),
+
+    /**
+     * Euclidean distance
+     */
+    L2("l2", "<->", false);
+
+    /**
+     * Valor persistente
+     */
+    private final String dbValue;
+
+    /**
+     * pgvector distance operator
+     */
+    private final String operator;
+
+    /**
+     * Vectors (stored and query) are normalized to unit length
+     */
+    private final boolean normalized;
+
+    private MetricaDistancia(String dbValue, String operator, boolean normalized) {
+        this.dbValue = dbValue;
+        this.operator = operator;
+        this.normalized = normalized;
+    }
+
+    @JsonValue
+    public String getDbValue() {
+        return dbValue;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public boolean isNormalized() {
+        return normalized;
+    }
+
+    /**
+     * SQL similarity score (higher is better) of a distance expression of this metric
+     *
+     * @param distance - SQL expression, e.g. <code>embedding_vector &lt;=&gt; q</code>
+     */
+    public String scoreExpression(String distance) {
+        return switch (this) {
+            case COSINE -> "(1.0 - (" + distance + "))";
+            case INNER_PRODUCT -> "(-(" + distance + "))";
+            case L2 -> "(1.0 / (1.0 + (" + distance + ")))";
+        };
+    }
+
+    /**
+     * Similarity score from an Euclidean distance (e.g. of the in-memory
+     * index), equal to {@link #scoreExpression} for normalized vectors:
+     * cosine similarity is <code>1 - d^2/2</code> for unit vectors.
+     */
+    public float scoreFromL2(float l2Distance) {
+        return normalized ? 1.0f - l2Distance * l2Distance / 2.0f : 1.0f / (1.0f + l2Distance);
+    }
+
+    /**
+     * Get enum from string value (case-insensitive). Null or blank returns COSINE.
+     * @param value - string representation
+     */
+    @JsonCreator
+    public static MetricaDistancia fromString(String value) {
+        if (value == null || value.isBlank()) {
+            return COSINE;
+        }
+        String v = value.trim().toLowerCase();
+        for (MetricaDistancia metrica : values()) {
+            if (metrica.dbValue.equals(v))
+                return metrica;
+        }
+        throw new IllegalArgumentException("Unknown distance_metric value: " + value);
+    }
+}
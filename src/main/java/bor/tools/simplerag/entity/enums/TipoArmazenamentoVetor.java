@@ -0,0 +1,98 @@
+package bor.tools.simplerag.entity.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Vector storage / candidate generation mode of a library.
+ *
+ * <p>Full-precision vectors are always kept in <code>embedding_vector</code>;
+ * quantized modes generate candidates through a compact ANN index
+ * (halfvec, binary or a truncated prefix) and re-rank them against the
+ * full-precision vectors.</p>
+ *
+ * <table border="1">
+ *   <tr><th>Mode</th><th>Index size (768d)</th><th>Recall</th><th>Default re-rank factor</th></tr>
+ *   <tr><td>full</td><td>3072 bytes/vector</td><td>exact</td><td>-</td></tr>
+ *   <tr><td>halfvec</td><td>1536 bytes/vector</td><td>near exact</td><td>2</td></tr>
+ *   <tr><td>binary</td><td>96 bytes/vector</td><td>lower, recovered by re-rank</td><td>10</td></tr>
+ *   <tr><td>matryoshka</td><td>512 / 1024 bytes/vector (128 / 256d prefix)</td><td>good for Matryoshka models</td><td>4</td></tr>
+ *   <tr><td>pq</td><td>96 bytes/vector, in memory (96 subspaces)</td><td>lower, recovered by re-rank</td><td>10</td></tr>
+ * </table>
+ *
+ * Stored in library metadados under the key <code>vector_storage</code>.
+ */
+public enum TipoArmazenamentoVetor {
+    /**
+     * Full precision vector(768), exact search
+     */
+    FULL("full", 1),
+
+    /**
+     * Half precision candidates (halfvec HNSW index of the library distance metric), re-ranked
+     */
+    HALFVEC("halfvec", 2),
+
+    /**
+     * Binary quantized candidates (bit HNSW index, Hamming distance), re-ranked
+     */
+    BINARY("binary", 10),
+
+    /**
+     * Matryoshka two-stage search: candidates from an HNSW index over the first
+     * <code>prefix_dimension</code> components (cosine), re-ranked with the full
+     * vector. Only meaningful for models trained with Matryoshka representation
+     * learning (e.g. nomic-embed), whose leading dimensions carry most of the signal.
+     */
+    MATRYOSHKA("matryoshka", 4),
+
+    /**
+     * Product-quantized candidates scored in memory with asymmetric distances
+     * (no database index), re-ranked with the full vector. Falls back to FULL
+     * until the library codes are loaded.
+     *
+     * @see bor.tools.simplerag.service.ProductQuantizationService
+     */
+    PQ("pq", 10);
+
+    /**
+     * Valor persistente
+     */
+    private final String dbValue;
+
+    /**
+     * Default number of candidates per requested result
+     */
+    private final int defaultRerankFactor;
+
+    private TipoArmazenamentoVetor(String dbValue, int defaultRerankFactor) {
+        this.dbValue = dbValue;
+        this.defaultRerankFactor = defaultRerankFactor;
+    }
+
+    @JsonValue
+    public String getDbValue() {
+        return dbValue;
+    }
+
+    public int getDefaultRerankFactor() {
+        return defaultRerankFactor;
+    }
+
+    /**
+     * Get enum from string value (case-insensitive). Null or blank returns FULL.
+     * @param value - string representation
+     */
+    @JsonCreator
+    public static TipoArmazenamentoVetor fromString(String value) {
+        if (value == null || value.isBlank()) {
+            return FULL;
+        }
+        String v = value.trim().toLowerCase();
+        for (TipoArmazenamentoVetor tipo : values()) {
+            if (tipo.dbValue.equals(v))
+                return tipo;
+        }
+        throw new IllegalArgumentException("Unknown vector_storage value: " + value);
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +18,35 @@ import java.util.Optional;
 @Repository
 public interface ChapterRepository extends JpaRepository<Chapter, Integer> {
 
+    /**
+     * Projeção leve (id, documento, título) - evita carregar conteudo
+     */
+    interface TituloView {
+        Integer getId();
+        Integer getDocumentoId();
+        String getTitulo();
+    }
+
+    /**
+     * Busca apenas id, documento e título dos capítulos informados
+     */
+    @Query("SELECT c.id AS id, c.documentoId AS documentoId, c.titulo AS titulo FROM Chapter c WHERE c.id IN :ids")
+    List<TituloView> findTitulosByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Projeção (id, conteúdo) para expansão de contexto dos resultados de pesquisa
+     */
+    interface ConteudoView {
+        Integer getId();
+        String getConteudo();
+    }
+
+    /**
+     * Busca apenas id e conteúdo dos capítulos informados
+     */
+    @Query("SELECT c.id AS id, c.conteudo AS conteudo FROM Chapter c WHERE c.id IN :ids")
+    List<ConteudoView> findConteudosByIdIn(@Param("ids") Collection<Integer> ids);
+
     /**
      * Busca capítulos por documento, ordenados por ordem
      */
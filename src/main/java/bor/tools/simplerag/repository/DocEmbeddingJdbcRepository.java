@@ -1,37 +1,70 @@
 
 package bor.tools.simplerag.repository;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.time.LocalTime;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import org.postgresql.PGConnection;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pgvector.PGvector;
 
+import bor.tools.simplerag.dto.MetadataFilter;
+import bor.tools.simplerag.dto.SearchCursor;
+import bor.tools.simplerag.dto.SearchProfile;
 import bor.tools.simplerag.entity.DocumentEmbedding;
 import bor.tools.simplerag.entity.MetaBiblioteca;
 import bor.tools.simplerag.entity.MetaDoc;
+import bor.tools.simplerag.entity.enums.MetricaDistancia;
+import bor.tools.simplerag.entity.enums.TipoArmazenamentoVetor;
 import bor.tools.simplerag.entity.enums.TipoEmbedding;
+import bor.tools.simplerag.service.InMemoryVectorIndexService;
+import bor.tools.simplerag.service.LuceneTextIndexService;
+import bor.tools.simplerag.service.ProductQuantizationService;
+import bor.tools.simplerag.util.AfterCommit;
+import bor.tools.simplerag.util.HnswIndex;
+import bor.tools.simplerag.util.VectorCodec;
 import bor.tools.simplerag.util.VectorUtil;
+import bor.tools.utils.LRUCache;
 import jakarta.annotation.PostConstruct;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Repositório JDBC para DocumentEmbedding adaptado para JSimpleRag.
@@ -57,104 +90,213 @@ import lombok.Setter;
  * Fornece métodos CRUD básicos e avançados, incluindo pesquisa semântica,
  */
 @Repository
+@Slf4j
 @SuppressWarnings("null")
 public class DocEmbeddingJdbcRepository {
 
     private static final String TAG_EXCLUSAO = " & !";
     private static final String TAG_HOLD = " <#-#> ";
 
+    /** Nome da fase de pré-processamento da query no perfil de execução */
+    public static final String PHASE_QUERY_PREPROCESSING = "query_preprocessing";
+
+    /** Nome da fase de pesquisa no índice HNSW em memória */
+    public static final String PHASE_IN_MEMORY_INDEX = "hnsw_in_memory";
+
+    /** Nome da fase de geração de candidatos por product quantization */
+    public static final String PHASE_PQ_CANDIDATES = "pq_candidates";
+
+    /** Nome da fase de pesquisa textual BM25 no índice Lucene embutido */
+    public static final String PHASE_LUCENE_BM25 = "lucene_bm25";
+
+    /**
+     * Compilação da tsquery em um único round trip: aplica websearch_to_tsquery sobre
+     * a frase e novamente sobre o resultado (ou sobre a própria frase, se vazio),
+     * reproduzindo fixQuery + query_phraseto_websearch.
+     */
+    static final String SQL_COMPILE_TSQUERY = """
+            SELECT websearch_to_tsquery('portuguese'::regconfig,
+                   COALESCE(NULLIF(websearch_to_tsquery('portuguese'::regconfig, ?)::text, ''), ?))
+            """;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    /**
+     * Índices HNSW em memória das bibliotecas marcadas com in_memory_index
+     */
+    @Autowired(required = false)
+    private InMemoryVectorIndexService vectorIndex;
+
+    /**
+     * Códigos PQ das bibliotecas com vector_storage=pq
+     */
+    @Autowired(required = false)
+    private ProductQuantizationService pqCodes;
+
+    /**
+     * Índices Lucene (BM25) das bibliotecas com text_engine=lucene
+     */
+    @Autowired(required = false)
+    private LuceneTextIndexService textIndex;
+
+    /**
+     * Transações das pesquisas filtradas com iterative scan ({@link #withIterativeScan})
+     */
+    @Autowired(required = false)
+    private PlatformTransactionManager transactionManager;
+
     private boolean isInitialized = false;
 
     /**
-     * Cache de configurações de embedding por biblioteca
+     * Snapshot imutável das configurações de embedding por biblioteca.
+     * Substituído por inteiro a cada recarga (copy-on-write): leitores nunca bloqueiam.
      */
-    private Map<Integer, MetaBiblioteca> mapBibliotecaConfig = new HashMap<>();
+    private volatile Map<Integer, MetaBiblioteca> libraryConfigSnapshot = Map.of();
 
+    /** Instante (epoch ms) da última carga do snapshot; 0 força recarga */
     @Getter
-    private LocalTime lastUpdate = LocalTime.now().minusHours(10);
+    private volatile long libraryConfigLoadedAt = 0L;
+
+    /** Garante uma única recarga em andamento */
+    private final AtomicBoolean libraryConfigRefreshing = new AtomicBoolean();
 
     /** Tempo para expirar cache local */
     @Getter
     @Setter
     private int expireTimeMin = 30; // em minutos
 
-    /** Número padrão de resultados para pesquisa semântica/textual */
+    /**
+     * Cache LRU de tsquery compiladas, indexado pela frase normalizada
+     */
     @Getter
-    @Setter
-    private int k_pesquisa = 10;
+    private LRUCache<String, String> tsQueryCache = new LRUCache<>(2048);
 
     /**
-     * Mapeamento de biblioteca_id para dimensão do vetor de embeddings
+     * Truncamento de texto nos resultados de pesquisa, em caracteres
+     * (rag.pesquisa.max-texto-length). Zero retorna o texto completo.
      */
-    private Map<Integer, Integer> mapBibliotecaId2VecLen = new HashMap<>();
+    @Getter
+    @Setter
+    @Value("${rag.pesquisa.max-texto-length:0}")
+    private int maxTextoLength = 0;
 
     /**
-     * RowMapper para DocumentEmbedding
+     * Linhas por ida ao servidor nas pesquisas em streaming ({@link #streamHibrida})
      */
-    private RowMapper<DocumentEmbedding> rowMapper = (rs, rowNum) -> {
-        DocumentEmbedding doc = DocumentEmbedding.builder()
-            .id(rs.getInt("id"))
-            .libraryId(rs.getInt("library_id"))
-            .documentoId(rs.getInt("documento_id"))
-            .chapterId(rs.getObject("chapter_id", Integer.class))
-            .tipoEmbedding(TipoEmbedding.fromString(rs.getString("tipo_embedding")))
-            .texto(rs.getString("texto"))
-            .orderChapter(rs.getObject("order_chapter", Integer.class))
-            .createdAt(rs.getTimestamp("created_at") != null ? rs.getTimestamp("created_at").toLocalDateTime() : null)
-            .updatedAt(rs.getTimestamp("updated_at") != null ? rs.getTimestamp("updated_at").toLocalDateTime() : null)
-            .build();
+    @Setter
+    @Value("${rag.pesquisa.stream.fetch-size:500}")
+    private int streamFetchSize = 500;
 
-        // Parse metadados JSON
-        String metadataJson = rs.getString("metadados");
-        if (metadataJson != null && !metadataJson.isEmpty() && !metadataJson.equals("{}")) {
-            // TODO: Usar Jackson para parse adequado do JSON
-            // Por enquanto, criamos um mapa vazio para evitar NPE
-            doc.setMetadados(new MetaDoc());
-        }
+    /** Limites de hnsw.ef_search no pgvector (o mínimo é o padrão da extensão) */
+    private static final int MIN_EF_SEARCH = 40;
+    private static final int MAX_EF_SEARCH = 1000;
 
-        // Processa embedding vector
-        Object pg = rs.getObject("embedding_vector");
-        MetaBiblioteca config = getBibliotecaConfig(doc.getLibraryId());
-        if (config != null && config.getEmbeddingDimension() != null) {
-            Integer vecLength = config.getEmbeddingDimension();
-            pg = fixEmbeddingLength(pg, vecLength);
-        }
+    /** Valores aceitos de hnsw.iterative_scan */
+    private static final Set<String> ITERATIVE_SCAN_MODES = Set.of("off", "relaxed_order", "strict_order");
 
-        if (pg instanceof PGvector pgVector) {
-            doc.setEmbeddingVector(pgVector.toArray());
-        } else if (pg instanceof float[] floatArray) {
-            doc.setEmbeddingVector(floatArray);
-        }
+    /**
+     * Iterative scan do índice HNSW nas pesquisas filtradas por metadados
+     * (off, relaxed_order ou strict_order). Exige pgvector &gt;= 0.8.0.
+     */
+    @Setter
+    @Value("${rag.pesquisa.filter.iterative-scan:relaxed_order}")
+    private String iterativeScan = "relaxed_order";
 
-        return doc;
-    };
+    /**
+     * Versão instalada do pgvector suporta hnsw.iterative_scan (&gt;= 0.8.0).
+     * Verificada em {@link #doOnce()}; abaixo disso os SET de iterative scan são
+     * omitidos (hnsw.ef_search continua valendo).
+     */
+    private volatile boolean iterativeScanSupported = true;
+
+    /** Número padrão de resultados para pesquisa semântica/textual */
+    @Getter
+    @Setter
+    private int k_pesquisa = 10;
 
     /**
-     * RowMapper para DocumentEmbedding com scores de pesquisa
+     * Define a capacidade do cache de tsquery (rag.pesquisa.tsquery-cache-size).
+     * Zero desabilita o cache.
      */
-    private RowMapper<DocumentEmbedding> rowMapperWithScores = (rs, rowNum) -> {
-        DocumentEmbedding doc = rowMapper.mapRow(rs, rowNum);
+    @Value("${rag.pesquisa.tsquery-cache-size:2048}")
+    public void setTsQueryCacheSize(int size) {
+        this.tsQueryCache = new LRUCache<>(size);
+    }
 
-        // Adiciona scores aos metadados
-        MetaDoc metadados = doc.getMetadados();
-        if (metadados == null) {
-            metadados = new MetaDoc();
-            doc.setMetadados(metadados);
-        }
+    /**
+     * Cria um RowMapper para DocumentEmbedding. A configuração das bibliotecas é
+     * resolvida uma única vez, na criação do mapper (uma vez por consulta), e não
+     * a cada linha.
+     *
+     * @param configs - snapshot das configurações por biblioteca
+     * @param withScores - se true, copia score_semantic, score_text e score para os metadados
+     * @param withVector - se false, a consulta não seleciona embedding_vector_bin
+     */
+    private static RowMapper<DocumentEmbedding> newRowMapper(Map<Integer, MetaBiblioteca> configs,
+                                                             boolean withScores,
+                                                             boolean withVector) {
+        return (rs, rowNum) -> {
+            DocumentEmbedding doc = DocumentEmbedding.builder()
+                .id(rs.getInt("id"))
+                .libraryId(rs.getInt("library_id"))
+                .documentoId(rs.getInt("documento_id"))
+                .chapterId(rs.getObject("chapter_id", Integer.class))
+                .tipoEmbedding(TipoEmbedding.fromString(rs.getString("tipo_embedding")))
+                .texto(rs.getString("texto"))
+                .orderChapter(rs.getObject("order_chapter", Integer.class))
+                .createdAt(rs.getTimestamp("created_at") != null ? rs.getTimestamp("created_at").toLocalDateTime() : null)
+                .updatedAt(rs.getTimestamp("updated_at") != null ? rs.getTimestamp("updated_at").toLocalDateTime() : null)
+                .build();
+
+            // Parse metadados JSON
+            String metadataJson = rs.getString("metadados");
+            if (metadataJson != null && !metadataJson.isEmpty() && !metadataJson.equals("{}")) {
+                doc.setMetadados(parseMetaDoc(metadataJson));
+            }
 
-        try {
-            metadados.put("score_semantic", rs.getFloat("score_semantic"));
-            metadados.put("score_text", rs.getFloat("score_text"));
-            metadados.put("score", rs.getFloat("score"));
-        } catch (SQLException e) {
-            // Scores podem não estar presentes em todas as consultas
-        }
+            // Processa embedding vector
+            if (withVector) {
+                Object pg = VectorCodec.decode(rs.getBytes("embedding_vector_bin"));
+                MetaBiblioteca config = configs.get(doc.getLibraryId());
+                if (config != null && config.getEmbeddingDimension() != null) {
+                    Integer vecLength = config.getEmbeddingDimension();
+                    pg = fixEmbeddingLength(pg, vecLength);
+                }
+
+                if (pg instanceof float[] floatArray) {
+                    doc.setEmbeddingVector(floatArray);
+                }
+            }
+
+            if (withScores) {
+                // Adiciona scores aos metadados
+                MetaDoc metadados = doc.getMetadados();
+                if (metadados == null) {
+                    metadados = new MetaDoc();
+                    doc.setMetadados(metadados);
+                }
 
-        return doc;
-    };
+                try {
+                    metadados.put("score_semantic", rs.getFloat("score_semantic"));
+                    metadados.put("score_text", rs.getFloat("score_text"));
+                    metadados.put("score", rs.getFloat("score"));
+                } catch (SQLException e) {
+                    // Scores podem não estar presentes em todas as consultas
+                }
+            }
+            return doc;
+        };
+    }
+
+    /**
+     * RowMapper para DocumentEmbedding (todas as colunas)
+     */
+    private RowMapper<DocumentEmbedding> rowMapper() {
+        return newRowMapper(getLibraryConfigs(), false, true);
+    }
 
     /**
      * Inicializa o banco de dados com as extensões PGVector
@@ -172,7 +314,15 @@ public class DocEmbeddingJdbcRepository {
             PGvector.registerTypes(conn);
             conn.close();
 
-            updateMapLibraryId2VecLen();
+            String version = jdbcTemplate.queryForObject(
+                    "SELECT extversion FROM pg_extension WHERE extname = 'vector'", String.class);
+            iterativeScanSupported = supportsIterativeScan(version);
+            if (!iterativeScanSupported) {
+                log.warn("pgvector {} não suporta iterative scan (>= 0.8.0): pesquisas filtradas e paginação "
+                        + "keyset ficam limitadas a hnsw.ef_search candidatos", version);
+            }
+
+            loadLibraryConfig();
         } catch (Exception e) {
             System.out.println("Error initializing the database with PGVector extensions");
             e.printStackTrace();
@@ -181,77 +331,126 @@ public class DocEmbeddingJdbcRepository {
     }
 
     /**
-     * Atualiza o mapeamento de biblioteca_id para dimensão do vetor
+     * Se a versão do pgvector (<code>extversion</code>) tem hnsw.iterative_scan (0.8.0)
      */
-    private void updateMapLibraryId2VecLen() throws SQLException {
-        java.sql.Connection conn = jdbcTemplate.getDataSource().getConnection();
-
-        String sql = "SELECT id, metadados FROM library";
-        PreparedStatement ps = conn.prepareStatement(sql);
-        ResultSet rs = ps.executeQuery();
-
-        synchronized (mapBibliotecaId2VecLen) {
-            mapBibliotecaId2VecLen.clear();
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String metadataJson = rs.getString("metadados");
+    static boolean supportsIterativeScan(String version) {
+        if (version == null) {
+            return false;
+        }
+        String[] parts = version.split("\\.");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major > 0 || minor >= 8;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
 
-                // Parse básico do JSON para extrair embedding_dimension
-                // Em uma implementação real, usaria Jackson
-                if (metadataJson != null && metadataJson.contains("embedding_dimension")) {
-                    // Valor padrão se não conseguir fazer parse
-                    mapBibliotecaId2VecLen.put(id, 1536);
-                } else {
-                    mapBibliotecaId2VecLen.put(id, 1536); // Valor padrão
-                }
+    /**
+     * Retorna o snapshot atual das configurações de embedding por biblioteca.
+     *
+     * <p>Nunca bloqueia: se o snapshot expirou, a primeira thread a perceber faz a
+     * recarga enquanto as demais seguem com o snapshot anterior. A recarga
+     * periódica normalmente ocorre em background ({@link #refreshLibraryConfig()}).</p>
+     */
+    public Map<Integer, MetaBiblioteca> getLibraryConfigs() {
+        long age = System.currentTimeMillis() - libraryConfigLoadedAt;
+        if (age > expireTimeMin * 60_000L && libraryConfigRefreshing.compareAndSet(false, true)) {
+            try {
+                loadLibraryConfig();
+            } finally {
+                libraryConfigRefreshing.set(false);
             }
-            rs.close();
         }
-
-        conn.close();
+        return libraryConfigSnapshot;
     }
 
     /**
-     * Recupera configuração de embedding de uma biblioteca
+     * Recarrega o snapshot de configurações em background.
+     * Intervalo: rag.pesquisa.library-config-refresh-ms.
      */
-    private MetaBiblioteca getBibliotecaConfig(Integer bibliotecaId) throws SQLException {
-        if (bibliotecaId == null) {
-            return null;
+    @Scheduled(fixedDelayString = "${rag.pesquisa.library-config-refresh-ms:300000}",
+               initialDelayString = "${rag.pesquisa.library-config-refresh-ms:300000}")
+    public void refreshLibraryConfig() {
+        if (libraryConfigRefreshing.compareAndSet(false, true)) {
+            try {
+                loadLibraryConfig();
+            } finally {
+                libraryConfigRefreshing.set(false);
+            }
         }
+    }
 
-        boolean expired = lastUpdate.plusMinutes(expireTimeMin).isBefore(LocalTime.now());
-
-        synchronized (mapBibliotecaConfig) {
-            if (mapBibliotecaConfig.isEmpty() || expired) {
-                String sql = "SELECT id, metadados FROM biblioteca";
-                List<Map<String, Object>> results = jdbcTemplate.queryForList(sql);
-
-                mapBibliotecaConfig.clear();
-                for (Map<String, Object> row : results) {
-                    Integer id = (Integer) row.get("id");
-                    String metadataJson = (String) row.get("metadados");
+    /**
+     * Marca o snapshot como expirado; a próxima consulta o recarrega.
+     * Deve ser chamado depois do commit da criação, alteração ou remoção de
+     * uma biblioteca.
+     */
+    public void invalidateLibraryConfig() {
+        libraryConfigLoadedAt = 0L;
+    }
 
-                    MetaBiblioteca meta = new MetaBiblioteca();
-                    if (metadataJson != null) {
-                        // Parse básico - em implementação real usaria Jackson
-                        meta.setLanguage("pt");
-                        meta.setEmbeddingModel("text-embedding-ada-002");
-                        meta.setEmbeddingDimension(1536);
-                    }
-                    mapBibliotecaConfig.put(id, meta);
-                }
-                lastUpdate = LocalTime.now();
+    /**
+     * Lê id e metadados de todas as bibliotecas e publica um novo snapshot imutável.
+     * Em caso de erro mantém o snapshot anterior.
+     */
+    private void loadLibraryConfig() {
+        try {
+            Map<Integer, MetaBiblioteca> configs = new HashMap<>();
+            jdbcTemplate.query("SELECT id, metadados FROM library", rs -> {
+                configs.put(rs.getInt("id"), parseMetaBiblioteca(rs.getString("metadados")));
+            });
+            libraryConfigSnapshot = Map.copyOf(configs);
+            log.debug("Library config snapshot reloaded: {} libraries", configs.size());
+            if (vectorIndex != null) {
+                vectorIndex.sync(libraryConfigSnapshot);
             }
+            if (pqCodes != null) {
+                pqCodes.sync(libraryConfigSnapshot);
+            }
+            if (textIndex != null) {
+                textIndex.sync(libraryConfigSnapshot);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to reload library config snapshot, keeping previous: {}", e.getMessage());
+        }
+        // Also on failure, so a broken query is not retried on every search
+        libraryConfigLoadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Converte o JSON de metadados da biblioteca. JSON inválido ou ausente resulta
+     * em configuração vazia (sem ajuste de dimensão).
+     */
+    static MetaBiblioteca parseMetaBiblioteca(String json) {
+        if (json == null || json.isBlank()) {
+            return new MetaBiblioteca();
+        }
+        try {
+            return JSON.readValue(json, MetaBiblioteca.class);
+        } catch (JsonProcessingException e) {
+            return new MetaBiblioteca();
         }
+    }
 
-        updateMapLibraryId2VecLen();
-        return mapBibliotecaConfig.get(bibliotecaId);
+    /**
+     * Converte o JSON de metadados de um embedding. JSON inválido resulta em
+     * metadados vazios.
+     */
+    static MetaDoc parseMetaDoc(String json) {
+        try {
+            return JSON.readValue(json, MetaDoc.class);
+        } catch (JsonProcessingException e) {
+            log.debug("Invalid embedding metadados JSON: {}", e.getMessage());
+            return new MetaDoc();
+        }
     }
 
     /**
      * Corrige o tamanho do vetor de embedding
      */
-    private Object fixEmbeddingLength(Object embedding, Integer vecLength) {
+    private static Object fixEmbeddingLength(Object embedding, Integer vecLength) {
         if (embedding == null || vecLength == null || vecLength <= 1) {
             return embedding;
         }
@@ -286,7 +485,7 @@ public class DocEmbeddingJdbcRepository {
      * Retorna todos os registros da tabela doc_embedding
      */
     public List<DocumentEmbedding> findAll() {
-        return jdbcTemplate.query("SELECT * FROM doc_embedding ORDER BY id", rowMapper);
+        return jdbcTemplate.query("SELECT " + ALL_COLUMNS + " FROM doc_embedding d ORDER BY id", rowMapper());
     }
 
     /**
@@ -294,8 +493,8 @@ public class DocEmbeddingJdbcRepository {
      */
     public Optional<DocumentEmbedding> findById(@NonNull Integer id)
             throws DataAccessException, SQLException {
-        var obj = jdbcTemplate.queryForObject("SELECT * FROM doc_embedding WHERE id = ?",
-                                            rowMapper,
+        var obj = jdbcTemplate.queryForObject("SELECT " + ALL_COLUMNS + " FROM doc_embedding d WHERE id = ?",
+                                            rowMapper(),
                                             new Object[]{id});
         return Optional.ofNullable(obj);
     }
@@ -305,8 +504,8 @@ public class DocEmbeddingJdbcRepository {
      */
     public List<DocumentEmbedding> findByDocumentoId(Integer documentoId)
             throws DataAccessException, SQLException {
-        return jdbcTemplate.query("SELECT * FROM doc_embedding WHERE documento_id = ? ORDER BY order_chapter",
-                                  rowMapper,
+        return jdbcTemplate.query("SELECT " + ALL_COLUMNS + " FROM doc_embedding d WHERE documento_id = ? ORDER BY order_chapter",
+                                  rowMapper(),
                                   new Object[]{documentoId});
     }
 
@@ -315,8 +514,8 @@ public class DocEmbeddingJdbcRepository {
      */
     public List<DocumentEmbedding> findByBibliotecaId(Integer bibliotecaId)
             throws DataAccessException, SQLException {
-        return jdbcTemplate.query("SELECT * FROM doc_embedding WHERE library_id = ? ORDER BY documento_id, order_chapter",
-                                  rowMapper,
+        return jdbcTemplate.query("SELECT " + ALL_COLUMNS + " FROM doc_embedding d WHERE library_id = ? ORDER BY documento_id, order_chapter",
+                                  rowMapper(),
                                   new Object[]{bibliotecaId});
     }
 
@@ -325,8 +524,8 @@ public class DocEmbeddingJdbcRepository {
      */
     public List<DocumentEmbedding> findByCapituloId(Integer capituloId)
             throws DataAccessException, SQLException {
-        return jdbcTemplate.query("SELECT * FROM doc_embedding WHERE chapter_id = ? ORDER BY order_chapter",
-                                  rowMapper,
+        return jdbcTemplate.query("SELECT " + ALL_COLUMNS + " FROM doc_embedding d WHERE chapter_id = ? ORDER BY order_chapter",
+                                  rowMapper(),
                                   new Object[]{capituloId});
     }
 
@@ -335,42 +534,47 @@ public class DocEmbeddingJdbcRepository {
      */
     public List<DocumentEmbedding> findByTipoEmbedding(TipoEmbedding tipoEmbedding)
             throws DataAccessException, SQLException {
-        return jdbcTemplate.query("SELECT * FROM doc_embedding WHERE tipo_embedding = ? ORDER BY id",
-                                  rowMapper,
+        return jdbcTemplate.query("SELECT " + ALL_COLUMNS + " FROM doc_embedding d WHERE tipo_embedding = ? ORDER BY id",
+                                  rowMapper(),
                                   new Object[]{tipoEmbedding.getDbValue()});
     }
 
     // ======== MÉTODOS DE PESQUISA ========
 
     /**
-     * Realiza pesquisa híbrida (semântica + textual) com filtro por bibliotecas
+     * Colunas de doc_embedding retornadas pelas pesquisas, sem embedding_vector.
+     * O texto pode ser truncado (ver {@link #searchColumns(boolean, int)}).
      */
-    public List<DocumentEmbedding> pesquisaHibrida(float[] embedding,
-                                             String query,
-                                             Integer[] bibliotecaIds,
-                                             Integer k,
-                                             Float pesoSemantico,
-                                             Float pesoTextual) {
-        if (k == null || k < 1) k = k_pesquisa;
-        if (pesoSemantico == null) pesoSemantico = 0.6f;
-        if (pesoTextual == null) pesoTextual = 0.4f;
+    static final String SEARCH_COLUMNS = "d.id, d.library_id, d.documento_id, d.chapter_id, d.tipo_embedding, "
+            + "%s, d.order_chapter, d.metadados, d.created_at, d.updated_at";
 
-        String queryProcessed = query_phraseto_websearch(query);
-        String libIds = Arrays.stream(bibliotecaIds)
-                             .map(String::valueOf)
-                             .collect(Collectors.joining(", "));
+    /**
+     * Vetor em formato binário (vector_send), decodificado por {@link VectorCodec#decode(byte[])}
+     * sem parse de texto
+     */
+    static final String VECTOR_COLUMN = ", vector_send(d.embedding_vector) AS embedding_vector_bin";
 
-        // Assume dimensão padrão - em implementação real pegaria da biblioteca
-        // @TODO Recuperar dimensão correta do vetor da biblioteca
-        //Integer vecLength = 1536;
+    /**
+     * Todas as colunas de doc_embedding (alias d), com o vetor em formato binário
+     */
+    static final String ALL_COLUMNS = SEARCH_COLUMNS.formatted("d.texto") + VECTOR_COLUMN;
 
-        String sql = """
-            WITH semantic_search AS (
+    /**
+     * SQL da pesquisa híbrida. Texto estável (filtro de bibliotecas por array),
+     * preparável no servidor e reaproveitado pelo cache de statements do driver.
+     * <code>%1$s</code> recebe a lista de colunas ({@link #searchColumns(boolean, int)}) e
+     * <code>%2$s</code> a origem dos candidatos semânticos ({@link #vectorSource}).
+     */
+    static final String SQL_PESQUISA_HIBRIDA = """
+            WITH qv AS MATERIALIZED (
+                SELECT ?::real[]::vector AS v
+            ),
+            semantic_search AS (
                 SELECT id,
-                       1.0 / (? + RANK() OVER (ORDER BY embedding_vector <=> ? ASC)) AS score_semantic,
-                       RANK() OVER (ORDER BY embedding_vector <=> ? ASC) AS rank_semantic
-                FROM doc_embedding de
-                WHERE de.library_id IN (%s)
+                       1.0 / (? + RANK() OVER (ORDER BY embedding_vector %3$s (SELECT v FROM qv) ASC)) AS score_semantic,
+                       RANK() OVER (ORDER BY embedding_vector %3$s (SELECT v FROM qv) ASC) AS rank_semantic
+                FROM %2$s
+                ORDER BY rank_semantic
                 LIMIT ?
             ),
             text_search AS (
@@ -378,211 +582,1476 @@ public class DocEmbeddingJdbcRepository {
                        1.0 / (? + RANK() OVER (ORDER BY ts_rank_cd(text_search_tsv, ?::tsquery) DESC)) AS score_text,
                        RANK() OVER (ORDER BY ts_rank_cd(text_search_tsv, ?::tsquery) DESC) AS rank_text
                 FROM doc_embedding
-                WHERE library_id IN (%s)
-                AND text_search_tsv @@ ?::tsquery
+                WHERE library_id = ANY(?) AND vigente AND NOT deleted
+                AND text_search_tsv @@ ?::tsquery%5$s
+                ORDER BY rank_text
                 LIMIT ?
             )
-            SELECT d.*,
+            SELECT %1$s,
                    COALESCE(s.score_semantic, 0.0) AS score_semantic,
                    COALESCE(t.score_text, 0.0) AS score_text,
                    (COALESCE(s.score_semantic, 0.0) * ? + COALESCE(t.score_text, 0.0) * ?) AS score
             FROM doc_embedding d
             LEFT JOIN semantic_search s ON d.id = s.id
             LEFT JOIN text_search t ON d.id = t.id
-            WHERE d.library_id IN (%s)
+            WHERE d.library_id = ANY(?)
             AND (s.id IS NOT NULL OR t.id IS NOT NULL)
             ORDER BY score DESC
             LIMIT ?
-            """.formatted(libIds, libIds, libIds);
-
-        Object[] params = new Object[] {
-            k, // normalization factor for semantic
-            new PGvector(embedding), // for semantic_search
-            new PGvector(embedding), // for semantic_search (duplicate in RANK)
-            k * 2, // expanded limit for semantic_search
-            k, // normalization factor for text
-            queryProcessed, // for text_search
-            queryProcessed, // for text_search (duplicate in RANK)
-            k * 2, // expanded limit for text_search
-            queryProcessed, // for text_search WHERE clause
-            pesoSemantico,
-            pesoTextual,
-            k // final results limit
-        };
-
-        return jdbcTemplate.query(sql, rowMapperWithScores, params);
-    }
+            """;
 
     /**
-     * Pesquisa semântica em bibliotecas específicas
+     * Pesquisa híbrida com a parte textual ranqueada pelo índice Lucene (BM25,
+     * {@link LuceneTextIndexService}): os ids chegam em ordem de relevância e o
+     * rank é a posição no array, com a mesma fusão de {@link #SQL_PESQUISA_HIBRIDA}.
+     * Ids que deixaram de ser pesquisáveis são descartados pelo filtro da
+     * seleção final. Sem filtro de metadados.
      */
-    public List<DocumentEmbedding> pesquisaSemantica(@NonNull float[] vec,
-                                               @NonNull Integer[] bibliotecaIds,
-                                               Integer k) {
-        if (k == null) 
-            k = k_pesquisa;
-
-        String libIds = Arrays.stream(bibliotecaIds)
-                             .map(String::valueOf)
-                             .collect(Collectors.joining(", "));
-
-        String sql = """
-                SELECT d.*,
-                1.0 / (1 + (embedding_vector <-> ?)) AS score_semantic,
-                0.0 AS score_text,
-                1.0 / (1 + (embedding_vector <-> ?)) AS score
-                FROM doc_embedding d
-                WHERE library_id IN (%s)
-                ORDER BY embedding_vector <-> ?
+    static final String SQL_PESQUISA_HIBRIDA_LUCENE = """
+            WITH qv AS MATERIALIZED (
+                SELECT ?::real[]::vector AS v
+            ),
+            semantic_search AS (
+                SELECT id,
+                       1.0 / (? + RANK() OVER (ORDER BY embedding_vector %3$s (SELECT v FROM qv) ASC)) AS score_semantic,
+                       RANK() OVER (ORDER BY embedding_vector %3$s (SELECT v FROM qv) ASC) AS rank_semantic
+                FROM %2$s
+                ORDER BY rank_semantic
                 LIMIT ?
-                """.formatted(libIds);
-
-        PGvector pgVector = new PGvector(vec);
-        Object[] params = new Object[] { pgVector, pgVector, pgVector, k };
-
-        return jdbcTemplate.query(sql, rowMapperWithScores, params);
-    }
+            ),
+            text_search AS (
+                SELECT t.id,
+                       1.0 / (? + t.rank_text) AS score_text,
+                       t.rank_text
+                FROM unnest(?::integer[]) WITH ORDINALITY AS t(id, rank_text)
+            )
+            SELECT %1$s,
+                   COALESCE(s.score_semantic, 0.0) AS score_semantic,
+                   COALESCE(t.score_text, 0.0) AS score_text,
+                   (COALESCE(s.score_semantic, 0.0) * ? + COALESCE(t.score_text, 0.0) * ?) AS score
+            FROM doc_embedding d
+            LEFT JOIN semantic_search s ON d.id = s.id
+            LEFT JOIN text_search t ON d.id = t.id
+            WHERE d.library_id = ANY(?) AND d.vigente AND NOT d.deleted
+            AND (s.id IS NOT NULL OR t.id IS NOT NULL)
+            ORDER BY score DESC
+            LIMIT ?
+            """;
 
     /**
-     * Pesquisa textual em bibliotecas específicas
+     * SQL da pesquisa semântica. O vetor da consulta é enviado uma única vez
+     * (CTE qv) e lido pelos demais pontos como InitPlan. <code>%3$s</code>: operador
+     * de distância e <code>%4$s</code>: expressão de score da métrica da biblioteca
+     * ({@link MetricaDistancia}).
      */
-    public List<DocumentEmbedding> pesquisaTextual(@NonNull String queryString,
-                                            @NonNull Integer[] bibliotecaIds,
-                                            Integer k) {
-        if (k == null) k = k_pesquisa;
-
-        String queryProcessed = query_phraseto_websearch(queryString);
-        String libIds = Arrays.stream(bibliotecaIds)
-                             .map(String::valueOf)
-                             .collect(Collectors.joining(", "));
+    static final String SQL_PESQUISA_SEMANTICA = """
+            WITH qv AS MATERIALIZED (
+                SELECT ?::real[]::vector AS v
+            )
+            SELECT %1$s,
+            %4$s AS score_semantic,
+            0.0 AS score_text,
+            %4$s AS score
+            FROM %2$s
+            ORDER BY embedding_vector %3$s (SELECT v FROM qv)
+            LIMIT ?
+            """;
 
-        String sql = """
-            SELECT d.*,
+    /**
+     * SQL da pesquisa textual (ts_rank_cd)
+     */
+    static final String SQL_PESQUISA_TEXTUAL = """
+            SELECT %1$s,
                    0.0 AS score_semantic,
                    ts_rank_cd(text_search_tsv, ?::tsquery) AS score_text,
                    ts_rank_cd(text_search_tsv, ?::tsquery) AS score
             FROM doc_embedding d
-            WHERE library_id IN (%s)
-            AND text_search_tsv @@ ?::tsquery
+            WHERE library_id = ANY(?) AND vigente AND NOT deleted
+            AND text_search_tsv @@ ?::tsquery%5$s
             ORDER BY score DESC
             LIMIT ?
-            """.formatted(libIds);
+            """;
+
+    /** Dimensão da coluna embedding_vector (e dos índices quantizados, changelog 014) */
+    static final int VECTOR_DIM = 768;
+
+    /**
+     * Prefixos com índice HNSW próprio (changelog 015), em ordem crescente.
+     * Usados pelo modo MATRYOSHKA.
+     */
+    static final int[] PREFIX_DIMENSIONS = { 128, 256 };
+
+    /**
+     * Candidatos gerados pelo índice quantizado, re-ranqueados depois com o vetor
+     * completo. <code>%1$s</code>: expressão de distância indexada; <code>%2$s</code>: alias;
+     * <code>%3$s</code>: filtro de metadados ({@link MetadataFilterSql}).
+     */
+    static final String SQL_QUANTIZED_CANDIDATES = """
+            (SELECT c.* FROM doc_embedding c
+             WHERE c.library_id = ANY(?) AND c.vigente AND NOT c.deleted%3$s
+             ORDER BY %1$s
+             LIMIT ?) %2$s""";
+
+    /**
+     * Candidatos pré-selecionados em memória (PQ) por id, re-ranqueados depois
+     * com o vetor completo. <code>%1$s</code>: alias.
+     */
+    static final String SQL_ID_CANDIDATES = """
+            (SELECT c.* FROM doc_embedding c
+             WHERE c.library_id = ANY(?) AND c.id = ANY(?) AND c.vigente AND NOT c.deleted) %1$s""";
 
-        Object[] params = { queryProcessed, queryProcessed, queryProcessed, k };
-        return jdbcTemplate.query(sql, rowMapperWithScores, params);
+    /**
+     * Origem das linhas para a parte semântica das pesquisas, conforme o modo de
+     * armazenamento, com o prefixo padrão para MATRYOSHKA.
+     *
+     * @see #vectorSource(TipoArmazenamentoVetor, String, int)
+     */
+    static String vectorSource(TipoArmazenamentoVetor mode, String alias) {
+        return vectorSource(mode, alias, MetaBiblioteca.DEFAULT_PREFIX_DIMENSION);
     }
 
-    // ======== MÉTODOS DE PROCESSAMENTO DE QUERY ========
+    /**
+     * Origem das linhas para a parte semântica das pesquisas, conforme o modo de
+     * armazenamento. FULL varre a biblioteca com precisão total; HALFVEC, BINARY
+     * (changelog 014) e MATRYOSHKA (changelog 015) usam índices HNSW de expressão
+     * (as expressões devem ser idênticas às indexadas) e exigem um parâmetro
+     * adicional com o número de candidatos. PQ exige, no lugar dele, os ids
+     * candidatos ({@link #candidatesParam}).
+     *
+     * @param mode - modo de armazenamento
+     * @param alias - alias da tabela na consulta
+     * @param prefixDimension - dimensões do prefixo (MATRYOSHKA), uma de {@link #PREFIX_DIMENSIONS}
+     */
+    static String vectorSource(TipoArmazenamentoVetor mode, String alias, int prefixDimension) {
+        return vectorSource(mode, alias, prefixDimension, "", MetricaDistancia.COSINE);
+    }
 
     /**
-     * Transforma uma frase em query para PostgreSQL websearch_to_tsquery
+     * Origem das linhas para a parte semântica, com o predicado de um filtro de
+     * metadados ({@link MetadataFilterSql#getSql()}, parâmetros logo após o filtro
+     * de bibliotecas) aplicado antes do limite de candidatos. PQ não é filtrável
+     * (candidatos gerados em memória); filtros usam FULL nesse caso.
+     * <p>
+     * HALFVEC usa o operador da métrica (índices halfvec por métrica, changelogs
+     * 019 e 021). BINARY só tem distância de Hamming, que aproxima cosine /
+     * inner_product (vetores normalizados) e, para L2, só serve como pré-seleção
+     * grosseira; MATRYOSHKA ordena os prefixos por cosine. Em todos os casos o
+     * re-rank final usa a métrica da biblioteca.
+     *
+     * @param metric - métrica de distância da biblioteca
      */
-    public String query_phraseto_websearch(String frase) {
-        return query_phraseto_websearch(frase, true);
+    static String vectorSource(TipoArmazenamentoVetor mode, String alias, int prefixDimension, String filter,
+                               MetricaDistancia metric) {
+        return switch (mode) {
+            case HALFVEC -> SQL_QUANTIZED_CANDIDATES.formatted(
+                    "c.embedding_vector::halfvec(%1$d) %2$s (SELECT v FROM qv)::halfvec(%1$d)"
+                            .formatted(VECTOR_DIM, metric.getOperator()),
+                    alias, filter);
+            case BINARY -> SQL_QUANTIZED_CANDIDATES.formatted(
+                    "binary_quantize(c.embedding_vector)::bit(%1$d) <~> binary_quantize((SELECT v FROM qv))::bit(%1$d)"
+                            .formatted(VECTOR_DIM),
+                    alias, filter);
+            case MATRYOSHKA -> SQL_QUANTIZED_CANDIDATES.formatted(
+                    "subvector(c.embedding_vector, 1, %1$d)::vector(%1$d) <=> subvector((SELECT v FROM qv), 1, %1$d)::vector(%1$d)"
+                            .formatted(prefixDimension),
+                    alias, filter);
+            case PQ -> SQL_ID_CANDIDATES.formatted(alias);
+            default -> "doc_embedding %1$s WHERE %1$s.library_id = ANY(?) AND %1$s.vigente AND NOT %1$s.deleted"
+                    .formatted(alias) + filter;
+        };
     }
 
     /**
-     * Transforma uma frase em query para PostgreSQL websearch_to_tsquery 
-     * dando opção de pesquisa ampla
-     * 
-     * 
+     * Modo de armazenamento vetorial das bibliotecas pesquisadas. Se as bibliotecas
+     * divergirem, usa FULL (exato); PQ também usa FULL enquanto os códigos das
+     * bibliotecas não estiverem carregados.
      */
-    public String query_phraseto_websearch(String frase, boolean pesquisaAmpla) {
-        if (frase == null || frase.trim().isEmpty()) {
-            throw new IllegalArgumentException("Frase não pode ser nula ou vazia");
+    TipoArmazenamentoVetor resolveVectorStorage(Map<Integer, MetaBiblioteca> configs, Integer[] bibliotecaIds) {
+        TipoArmazenamentoVetor mode = null;
+        for (Integer id : bibliotecaIds) {
+            MetaBiblioteca config = configs.get(id);
+            TipoArmazenamentoVetor m = config != null ? config.getVectorStorage() : TipoArmazenamentoVetor.FULL;
+            if (mode != null && mode != m) {
+                return TipoArmazenamentoVetor.FULL;
+            }
+            mode = m;
         }
-
-        String normalizedFrase = fixQuery(frase);
-        if (normalizedFrase == null) {
-            throw new IllegalArgumentException("Frase inválida após normalização");
+        if (mode == TipoArmazenamentoVetor.PQ && (pqCodes == null || !pqCodes.isReady(bibliotecaIds))) {
+            return TipoArmazenamentoVetor.FULL;
         }
+        return mode != null ? mode : TipoArmazenamentoVetor.FULL;
+    }
 
-        String tsQuery = jdbcTemplate.queryForObject(
-            "SELECT websearch_to_tsquery('portuguese'::regconfig, ?)",
-            String.class,
-            normalizedFrase
-        );
+    /**
+     * Modo de armazenamento vetorial de uma pesquisa com filtro de metadados: PQ
+     * gera os candidatos em memória, sem ver os metadados, e usa FULL.
+     */
+    TipoArmazenamentoVetor resolveVectorStorage(Map<Integer, MetaBiblioteca> configs, Integer[] bibliotecaIds,
+                                                MetadataFilterSql filter) {
+        TipoArmazenamentoVetor mode = resolveVectorStorage(configs, bibliotecaIds);
+        return mode == TipoArmazenamentoVetor.PQ && !filter.isEmpty() ? TipoArmazenamentoVetor.FULL : mode;
+    }
 
-        if (pesquisaAmpla && tsQuery != null) {
-            return tsQuery
-                .replace(TAG_EXCLUSAO, TAG_HOLD)
-                .replace(" & ", " | ")
-                .replace(TAG_HOLD, TAG_EXCLUSAO);
+    /**
+     * Métrica de distância das bibliotecas pesquisadas. Se as bibliotecas
+     * divergirem, usa COSINE.
+     */
+    MetricaDistancia resolveDistanceMetric(Map<Integer, MetaBiblioteca> configs, Integer[] bibliotecaIds) {
+        MetricaDistancia metric = null;
+        for (Integer id : bibliotecaIds) {
+            MetaBiblioteca config = configs.get(id);
+            MetricaDistancia m = config != null ? config.getDistanceMetric() : MetricaDistancia.COSINE;
+            if (metric != null && metric != m) {
+                return MetricaDistancia.COSINE;
+            }
+            metric = m;
         }
+        return metric != null ? metric : MetricaDistancia.COSINE;
+    }
 
-        return tsQuery;
+    /**
+     * Vetor a gravar ou pesquisar conforme a métrica: normalizado (norma 1) para
+     * cosine e inner_product, inalterado para l2.
+     */
+    static float[] vectorForMetric(float[] vec, MetricaDistancia metric) {
+        return vec != null && vec.length > 0 && metric.isNormalized() ? VectorUtil.normalize(vec) : vec;
     }
 
     /**
-     * Corrige uma query textual
+     * Parâmetro adicional da origem quantizada ({@link #vectorSource}): o número de
+     * candidatos, ou em PQ os ids dos candidatos selecionados em memória.
      */
-    public String fixQuery(String query) {
-        if (query == null || query.isEmpty()) {
-            return query;
+    private Object candidatesParam(TipoArmazenamentoVetor storage, float[] vec, Integer[] bibliotecaIds,
+                                   int candidates, SearchProfile profile) {
+        if (storage != TipoArmazenamentoVetor.PQ) {
+            return candidates;
         }
-
-        // Limpeza e conversão de operadores lógicos
-        query = query.replaceAll("[^\\p{L}\\p{Nd}\\s]+", " ");
-        query = query.replaceAll(" AND ", " ");
-        query = query.replaceAll(" NOT ", " -");
-
-        try {
-            String tsquery = jdbcTemplate
-                    .queryForObject("SELECT websearch_to_tsquery('portuguese'::regconfig, ?) ",
-                                    String.class,
-                                    new Object[] { query });
-            return tsquery != null && !tsquery.isEmpty() ? tsquery : query;
-        } catch (Exception e) {
-            return null;
+        Integer[] ids = SearchProfile.measure(profile, PHASE_PQ_CANDIDATES,
+                                              () -> pqCodes.candidates(bibliotecaIds, vec, candidates));
+        if (profile != null) {
+            profile.getLastPhase().setRows(ids.length);
         }
+        return toIntArray(ids);
     }
 
-    // ======== MÉTODOS CRUD AVANÇADOS ========
-
     /**
-     * Salva um DocumentEmbedding
+     * Dimensão do prefixo indexado para MATRYOSHKA: o menor prefixo com índice que
+     * cobre o maior <code>prefix_dimension</code> configurado entre as bibliotecas
+     * (ou o maior prefixo disponível).
      */
-    public Integer save(@NonNull DocumentEmbedding doc) throws DataAccessException, SQLException {
-        doOnce();
-
-        if (doc.getId() != null) {
-            update(doc);
-            return doc.getId();
+    int resolvePrefixDimension(Map<Integer, MetaBiblioteca> configs, Integer[] bibliotecaIds) {
+        int requested = 0;
+        for (Integer id : bibliotecaIds) {
+            MetaBiblioteca config = configs.get(id);
+            requested = Math.max(requested,
+                    config != null ? config.getPrefixDimension() : MetaBiblioteca.DEFAULT_PREFIX_DIMENSION);
+        }
+        for (int dim : PREFIX_DIMENSIONS) {
+            if (dim >= requested) {
+                return dim;
+            }
         }
+        return PREFIX_DIMENSIONS[PREFIX_DIMENSIONS.length - 1];
+    }
 
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        final String sql = """
-            INSERT INTO doc_embedding
-            (library_id, documento_id, chapter_id, tipo_embedding,
-             texto, order_chapter, embedding_vector, metadados, created_at)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?::jsonb, CURRENT_TIMESTAMP)
-            """;
+    /**
+     * Maior fator de re-rank entre as bibliotecas pesquisadas
+     */
+    int resolveRerankFactor(Map<Integer, MetaBiblioteca> configs, Integer[] bibliotecaIds, TipoArmazenamentoVetor mode) {
+        int factor = mode.getDefaultRerankFactor();
+        for (Integer id : bibliotecaIds) {
+            MetaBiblioteca config = configs.get(id);
+            if (config != null) {
+                factor = Math.max(factor, config.getRerankFactor());
+            }
+        }
+        return factor;
+    }
 
+    /**
+     * Realiza pesquisa híbrida (semântica + textual) com filtro por bibliotecas
+     */
+    public List<DocumentEmbedding> pesquisaHibrida(float[] embedding,
+                                             String query,
+                                             Integer[] bibliotecaIds,
+                                             Integer k,
+                                             Float pesoSemantico,
+                                             Float pesoTextual) {
+        return pesquisaHibrida(embedding, query, bibliotecaIds, k, pesoSemantico, pesoTextual, null, false);
+    }
+
+    /**
+     * Realiza pesquisa híbrida (semântica + textual) com filtro por bibliotecas,
+     * registrando o tempo de cada fase em <code>profile</code> (explain mode).
+     *
+     * @param profile - perfil de execução, ou null para desabilitar
+     */
+    public List<DocumentEmbedding> pesquisaHibrida(float[] embedding,
+                                             String query,
+                                             Integer[] bibliotecaIds,
+                                             Integer k,
+                                             Float pesoSemantico,
+                                             Float pesoTextual,
+                                             SearchProfile profile) {
+        return pesquisaHibrida(embedding, query, bibliotecaIds, k, pesoSemantico, pesoTextual, profile, false);
+    }
+
+    /**
+     * Pesquisa híbrida completa.
+     *
+     * @param profile - perfil de execução, ou null para desabilitar
+     * @param includeVector - se true, retorna também embedding_vector. Por padrão os
+     *        vetores não são transferidos nem convertidos (os resultados de pesquisa
+     *        não os utilizam)
+     */
+    public List<DocumentEmbedding> pesquisaHibrida(float[] embedding,
+                                             String query,
+                                             Integer[] bibliotecaIds,
+                                             Integer k,
+                                             Float pesoSemantico,
+                                             Float pesoTextual,
+                                             SearchProfile profile,
+                                             boolean includeVector) {
+        return pesquisaHibrida(embedding, query, bibliotecaIds, k, pesoSemantico, pesoTextual, profile,
+                               includeVector, null);
+    }
+
+    /**
+     * Pesquisa híbrida completa, com filtro de metadados aplicado nas duas
+     * partes (semântica e textual) da consulta.
+     *
+     * @param filter - filtro de metadados, ou null
+     */
+    public List<DocumentEmbedding> pesquisaHibrida(float[] embedding,
+                                             String query,
+                                             Integer[] bibliotecaIds,
+                                             Integer k,
+                                             Float pesoSemantico,
+                                             Float pesoTextual,
+                                             SearchProfile profile,
+                                             boolean includeVector,
+                                             MetadataFilter filter) {
+        return pesquisaHibrida(embedding, query, bibliotecaIds, k, pesoSemantico, pesoTextual, profile,
+                               includeVector, MetadataFilterSql.compile(filter), null);
+    }
+
+    /**
+     * Pesquisa híbrida com entrega das linhas, na ordem do ranking, a
+     * <code>sink</code> à medida que são lidas do banco (cursor com
+     * <code>rag.pesquisa.stream.fetch-size</code> linhas por ida ao servidor), sem
+     * materializar a lista de resultados. Para exportações com <code>k</code> grande.
+     *
+     * <p>O cursor exige uma transação (autocommit desligado); a conexão fica em
+     * uso até o consumidor terminar.</p>
+     */
+    @Transactional(readOnly = true)
+    public void streamHibrida(float[] embedding,
+                              String query,
+                              Integer[] bibliotecaIds,
+                              Integer k,
+                              Float pesoSemantico,
+                              Float pesoTextual,
+                              MetadataFilter filter,
+                              SearchProfile profile,
+                              Consumer<DocumentEmbedding> sink) {
+        pesquisaHibrida(embedding, query, bibliotecaIds, k, pesoSemantico, pesoTextual, profile, false,
+                        MetadataFilterSql.compile(filter), sink);
+    }
+
+    private List<DocumentEmbedding> pesquisaHibrida(float[] embedding,
+                                             String query,
+                                             Integer[] bibliotecaIds,
+                                             Integer k,
+                                             Float pesoSemantico,
+                                             Float pesoTextual,
+                                             SearchProfile profile,
+                                             boolean includeVector,
+                                             MetadataFilterSql filter,
+                                             Consumer<DocumentEmbedding> sink) {
+        if (k == null || k < 1) k = k_pesquisa;
+        if (pesoSemantico == null) pesoSemantico = 0.6f;
+        if (pesoTextual == null) pesoTextual = 0.4f;
+
+        // Parte textual no índice Lucene (BM25) quando todas as bibliotecas o têm
+        boolean lucene = filter.isEmpty() && textIndex != null && textIndex.isReady(bibliotecaIds);
+        String queryProcessed = lucene ? null : SearchProfile.measure(profile, PHASE_QUERY_PREPROCESSING,
+                                                                      () -> query_phraseto_websearch(query));
+        SqlTypeValue libIds = toIntArray(bibliotecaIds);
+        Map<Integer, MetaBiblioteca> configs = getLibraryConfigs();
+        MetricaDistancia metric = resolveDistanceMetric(configs, bibliotecaIds);
+        float[] vec = vectorForMetric(embedding, metric);
+        SqlTypeValue queryVector = VectorCodec.toFloat4Array(vec);
+        TipoArmazenamentoVetor storage = resolveVectorStorage(configs, bibliotecaIds, filter);
+        int candidates = k * 2 * resolveRerankFactor(configs, bibliotecaIds, storage);
+
+        // Assume dimensão padrão - em implementação real pegaria da biblioteca
+        // @TODO Recuperar dimensão correta do vetor da biblioteca
+        //Integer vecLength = 1536;
+
+        List<Object> params = new ArrayList<>(Arrays.asList(
+            queryVector, // query vector (qv), bound once
+            k, // normalization factor for semantic
+            libIds // library filter for semantic_search
+        ));
+        params.addAll(filter.getParams()); // metadados filter for semantic_search
+        if (storage != TipoArmazenamentoVetor.FULL) {
+            // quantized ANN candidates to re-rank
+            params.add(candidatesParam(storage, vec, bibliotecaIds, candidates, profile));
+        }
+        if (lucene) {
+            params.addAll(Arrays.asList(
+                k * 2, // expanded limit for semantic_search
+                k, // normalization factor for text
+                luceneHits(query, bibliotecaIds, k * 2, profile) // ranked ids for text_search
+            ));
+        } else {
+            params.addAll(Arrays.asList(
+                k * 2, // expanded limit for semantic_search
+                k, // normalization factor for text
+                queryProcessed, // for text_search
+                queryProcessed, // for text_search (duplicate in RANK)
+                libIds, // library filter for text_search
+                queryProcessed // for text_search WHERE clause
+            ));
+            params.addAll(filter.getParams()); // metadados filter for text_search
+            params.add(k * 2); // expanded limit for text_search
+        }
+        params.addAll(Arrays.asList(
+            pesoSemantico,
+            pesoTextual,
+            libIds, // library filter for final selection
+            k // final results limit
+        ));
+
+        String source = vectorSource(storage, "de", resolvePrefixDimension(configs, bibliotecaIds), filter.getSql(),
+                                     metric);
+        if (lucene) {
+            return withIterativeScan(filter, storage, candidates, () -> executeSearch("sql_hybrid_lucene",
+                    SQL_PESQUISA_HIBRIDA_LUCENE, source, "", params.toArray(), profile, includeVector, storage,
+                    candidates, metric, sink));
+        }
+        return withIterativeScan(filter, storage, candidates, () -> executeSearch("sql_hybrid", SQL_PESQUISA_HIBRIDA, source,
+                filter.getSql(), params.toArray(), profile, includeVector, storage, candidates, metric, sink));
+    }
+
+    /**
+     * Ids dos <code>limit</code> melhores resultados BM25 do índice Lucene, em
+     * ordem de relevância
+     */
+    private SqlTypeValue luceneHits(String query, Integer[] bibliotecaIds, int limit, SearchProfile profile) {
+        List<LuceneTextIndexService.Hit> hits = SearchProfile.measure(profile, PHASE_LUCENE_BM25,
+                () -> textIndex.search(bibliotecaIds, query, limit));
+        if (profile != null) {
+            profile.getLastPhase().setRows(hits.size());
+        }
+        return toIntArray(hits.stream().map(LuceneTextIndexService.Hit::getId).toArray(Integer[]::new));
+    }
+
+    /**
+     * Pesquisa semântica em bibliotecas específicas
+     */
+    public List<DocumentEmbedding> pesquisaSemantica(@NonNull float[] vec,
+                                               @NonNull Integer[] bibliotecaIds,
+                                               Integer k) {
+        return pesquisaSemantica(vec, bibliotecaIds, k, null, false);
+    }
+
+    /**
+     * Pesquisa semântica em bibliotecas específicas, com perfil de execução
+     *
+     * @param profile - perfil de execução, ou null para desabilitar
+     */
+    public List<DocumentEmbedding> pesquisaSemantica(@NonNull float[] vec,
+                                               @NonNull Integer[] bibliotecaIds,
+                                               Integer k,
+                                               SearchProfile profile) {
+        return pesquisaSemantica(vec, bibliotecaIds, k, profile, false);
+    }
+
+    /**
+     * Pesquisa semântica completa.
+     *
+     * @param profile - perfil de execução, ou null para desabilitar
+     * @param includeVector - se true, retorna também embedding_vector
+     */
+    public List<DocumentEmbedding> pesquisaSemantica(@NonNull float[] vec,
+                                               @NonNull Integer[] bibliotecaIds,
+                                               Integer k,
+                                               SearchProfile profile,
+                                               boolean includeVector) {
+        return pesquisaSemantica(vec, bibliotecaIds, k, profile, includeVector, null);
+    }
+
+    /**
+     * Pesquisa semântica completa, com filtro de metadados. Pesquisas filtradas
+     * não usam o índice em memória (que não conhece os metadados) e, no índice
+     * ANN, usam iterative scan ({@link #withIterativeScan}).
+     *
+     * @param filter - filtro de metadados, ou null
+     */
+    public List<DocumentEmbedding> pesquisaSemantica(@NonNull float[] vec,
+                                               @NonNull Integer[] bibliotecaIds,
+                                               Integer k,
+                                               SearchProfile profile,
+                                               boolean includeVector,
+                                               MetadataFilter metadataFilter) {
+        if (k == null) 
+            k = k_pesquisa;
+
+        MetadataFilterSql filter = MetadataFilterSql.compile(metadataFilter);
+        Map<Integer, MetaBiblioteca> configs = getLibraryConfigs();
+        MetricaDistancia metric = resolveDistanceMetric(configs, bibliotecaIds);
+        vec = vectorForMetric(vec, metric);
+        if (filter.isEmpty() && vectorIndex != null && vectorIndex.isReady(bibliotecaIds)) {
+            return pesquisaSemanticaInMemory(vec, bibliotecaIds, k, profile, includeVector, configs, metric);
+        }
+        TipoArmazenamentoVetor storage = resolveVectorStorage(configs, bibliotecaIds, filter);
+        int candidates = k * resolveRerankFactor(configs, bibliotecaIds, storage);
+
+        List<Object> params = new ArrayList<>();
+        params.add(VectorCodec.toFloat4Array(vec));
+        params.add(toIntArray(bibliotecaIds));
+        params.addAll(filter.getParams());
+        if (storage != TipoArmazenamentoVetor.FULL) {
+            params.add(candidatesParam(storage, vec, bibliotecaIds, candidates, profile));
+        }
+        params.add(k);
+
+        String source = vectorSource(storage, "d", resolvePrefixDimension(configs, bibliotecaIds), filter.getSql(),
+                                     metric);
+        List<DocumentEmbedding> results = withIterativeScan(filter, storage, candidates, () -> executeSearch("sql_semantic",
+                SQL_PESQUISA_SEMANTICA, source, "", params.toArray(), profile, includeVector, storage, candidates,
+                metric, null));
+        if (!filter.isEmpty() && storage == TipoArmazenamentoVetor.FULL) {
+            // relaxed_order iterative scans may return the index order slightly out of order
+            results.sort(Comparator.comparing((DocumentEmbedding d) -> (Float) d.getMetadados().get("score"))
+                                   .reversed());
+        }
+        return results;
+    }
+
+    /**
+     * Leitura das linhas selecionadas pelo índice em memória, por chave primária
+     */
+    static final String SQL_FETCH_BY_IDS = """
+            SELECT %1$s
+            FROM doc_embedding d
+            WHERE d.id = ANY(?) AND d.vigente AND NOT d.deleted
+            """;
+
+    /**
+     * Pesquisa semântica no índice HNSW em memória: os vizinhos (distância L2)
+     * vêm do índice e as linhas são lidas por chave primária. Ids ausentes no banco
+     * (p.ex. removidos entre a busca e a leitura) são descartados. Para vetores normalizados a
+     * ordem L2 coincide com a de cosine / inner_product, e o score é convertido
+     * para o da métrica ({@link MetricaDistancia#scoreFromL2(float)}).
+     */
+    private List<DocumentEmbedding> pesquisaSemanticaInMemory(float[] vec,
+                                                              Integer[] bibliotecaIds,
+                                                              int k,
+                                                              SearchProfile profile,
+                                                              boolean includeVector,
+                                                              Map<Integer, MetaBiblioteca> configs,
+                                                              MetricaDistancia metric) {
+        List<HnswIndex.Result> hits = SearchProfile.measure(profile, PHASE_IN_MEMORY_INDEX,
+                                                            () -> vectorIndex.search(bibliotecaIds, vec, k));
+        if (profile != null) {
+            profile.getLastPhase().setRows(hits.size());
+        }
+        if (hits.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Integer[] ids = hits.stream().map(HnswIndex.Result::getId).toArray(Integer[]::new);
+        String sql = SQL_FETCH_BY_IDS.formatted(searchColumns(includeVector, maxTextoLength));
+        RowMapper<DocumentEmbedding> mapper = newRowMapper(configs, false, includeVector);
+        List<DocumentEmbedding> rows = SearchProfile.measure(profile, "sql_fetch_by_id",
+                () -> jdbcTemplate.query(sql, mapper, toIntArray(ids)));
+
+        Map<Integer, DocumentEmbedding> byId = new HashMap<>();
+        for (DocumentEmbedding row : rows) {
+            byId.put(row.getId(), row);
+        }
+        List<DocumentEmbedding> results = new ArrayList<>(hits.size());
+        for (HnswIndex.Result hit : hits) {
+            DocumentEmbedding doc = byId.get(hit.getId());
+            if (doc == null) {
+                continue;
+            }
+            MetaDoc metadados = doc.getMetadados();
+            if (metadados == null) {
+                metadados = new MetaDoc();
+                doc.setMetadados(metadados);
+            }
+            float score = metric.scoreFromL2(hit.getDistance());
+            metadados.put("score_semantic", score);
+            metadados.put("score_text", 0.0f);
+            metadados.put("score", score);
+            results.add(doc);
+        }
+        return results;
+    }
+
+    /**
+     * Janelas de vizinhos dos resultados, em uma única consulta. Para cada hit,
+     * os chunks do mesmo capítulo e tipo até <code>?</code> posições antes e depois
+     * (posição = ordem por order_chapter, robusta a lacunas na numeração).
+     * Janelas sobrepostas são deduplicadas: cada chunk pertence a um só hit,
+     * ele mesmo se for um hit, senão o hit de melhor posição no ranking.
+     */
+    static final String SQL_NEIGHBOR_WINDOWS = """
+            WITH hits AS (
+                SELECT h.id, r.rank
+                FROM unnest(?::int[]) WITH ORDINALITY AS r(id, rank)
+                JOIN doc_embedding h ON h.id = r.id
+                WHERE h.chapter_id IS NOT NULL
+            ),
+            chapter_rows AS (
+                SELECT c.id, c.chapter_id, c.tipo_embedding,
+                       row_number() OVER (PARTITION BY c.chapter_id, c.tipo_embedding
+                                          ORDER BY c.order_chapter, c.id) AS pos
+                FROM doc_embedding c
+                WHERE c.chapter_id IN (SELECT e.chapter_id FROM doc_embedding e JOIN hits ON e.id = hits.id)
+            ),
+            windows AS (
+                SELECT w.id, h.id AS hit_id, h.rank
+                FROM hits h
+                JOIN chapter_rows hp ON hp.id = h.id
+                JOIN chapter_rows w ON w.chapter_id = hp.chapter_id
+                                   AND w.tipo_embedding = hp.tipo_embedding
+                                   AND w.pos BETWEEN hp.pos - ? AND hp.pos + ?
+            )
+            SELECT DISTINCT ON (d.id) %1$s, w.hit_id
+            FROM windows w
+            JOIN doc_embedding d ON d.id = w.id
+            ORDER BY d.id, (w.id = w.hit_id) DESC, w.rank
+            """;
+
+    /**
+     * Vizinhos de cada resultado no mesmo capítulo ({@link #SQL_NEIGHBOR_WINDOWS}),
+     * substituindo uma chamada a {@link #findByCapituloId(Integer)} por resultado.
+     *
+     * @param hitIds - ids dos resultados, em ordem de ranking
+     * @param window - número de vizinhos antes e depois de cada resultado
+     * @param profile - perfil de execução, ou null
+     * @return id do resultado -&gt; chunks da sua janela (inclusive o próprio), por order_chapter
+     */
+    public Map<Integer, List<DocumentEmbedding>> findNeighborWindows(Integer[] hitIds, int window,
+                                                                     SearchProfile profile) {
+        Map<Integer, List<DocumentEmbedding>> windows = new HashMap<>();
+        if (hitIds == null || hitIds.length == 0 || window < 0) {
+            return windows;
+        }
+        String sql = SQL_NEIGHBOR_WINDOWS.formatted(searchColumns(false, maxTextoLength));
+        RowMapper<DocumentEmbedding> mapper = newRowMapper(getLibraryConfigs(), false, false);
+        int[] rows = { 0 };
+        SearchProfile.measure(profile, "sql_neighbor_windows", () -> {
+            jdbcTemplate.query(sql, rs -> {
+                DocumentEmbedding doc = mapper.mapRow(rs, rows[0]++);
+                windows.computeIfAbsent(rs.getInt("hit_id"), id -> new ArrayList<>()).add(doc);
+            }, toIntArray(hitIds), window, window);
+            return null;
+        });
+        if (profile != null) {
+            profile.getLastPhase().setRows(rows[0]);
+        }
+        Comparator<DocumentEmbedding> byOrder = Comparator.comparing(DocumentEmbedding::getOrderChapter,
+                Comparator.nullsLast(Comparator.naturalOrder()));
+        windows.values().forEach(list -> list.sort(byOrder.thenComparing(DocumentEmbedding::getId)));
+        return windows;
+    }
+
+    /**
+     * Pesquisa híbrida de várias consultas em um único round trip. Os vetores
+     * chegam concatenados em um único <code>real[]</code> (fatiado por
+     * <code>ord</code>) e as tsqueries em um <code>text[]</code>; cada consulta
+     * é executada por um LATERAL com a mesma fusão RRF de {@link #SQL_PESQUISA_HIBRIDA},
+     * sobre a origem FULL. <code>%1$s</code>: colunas, <code>%2$s</code>: operador
+     * de distância.
+     */
+    static final String SQL_PESQUISA_HIBRIDA_BATCH = """
+            WITH q AS MATERIALIZED (
+                SELECT t.ord,
+                       ((?::real[])[(t.ord - 1) * ? + 1 : t.ord * ?])::vector AS v,
+                       t.tsq::tsquery AS tsq
+                FROM unnest(?::text[]) WITH ORDINALITY AS t(tsq, ord)
+            )
+            SELECT q.ord AS query_ord, r.*
+            FROM q
+            CROSS JOIN LATERAL (
+                SELECT %1$s,
+                       COALESCE(s.score_semantic, 0.0) AS score_semantic,
+                       COALESCE(t.score_text, 0.0) AS score_text,
+                       (COALESCE(s.score_semantic, 0.0) * ? + COALESCE(t.score_text, 0.0) * ?) AS score
+                FROM (
+                    SELECT se.id, 1.0 / (? + RANK() OVER (ORDER BY se.dist)) AS score_semantic
+                    FROM (SELECT e.id, e.embedding_vector %2$s q.v AS dist
+                          FROM doc_embedding e
+                          WHERE e.library_id = ANY(?) AND e.vigente AND NOT e.deleted
+                          ORDER BY e.embedding_vector %2$s q.v
+                          LIMIT ?) se
+                ) s
+                FULL JOIN (
+                    SELECT te.id, 1.0 / (? + RANK() OVER (ORDER BY te.rank_cd DESC)) AS score_text
+                    FROM (SELECT e.id, ts_rank_cd(e.text_search_tsv, q.tsq) AS rank_cd
+                          FROM doc_embedding e
+                          WHERE e.library_id = ANY(?) AND e.vigente AND NOT e.deleted
+                          AND e.text_search_tsv @@ q.tsq
+                          ORDER BY rank_cd DESC
+                          LIMIT ?) te
+                ) t ON s.id = t.id
+                JOIN doc_embedding d ON d.id = COALESCE(s.id, t.id)
+                ORDER BY score DESC
+                LIMIT ?
+            ) r
+            ORDER BY q.ord, r.score DESC
+            """;
+
+    /**
+     * Pesquisa semântica de várias consultas em um único round trip (ver
+     * {@link #SQL_PESQUISA_HIBRIDA_BATCH}). <code>%3$s</code>: expressão de score.
+     */
+    static final String SQL_PESQUISA_SEMANTICA_BATCH = """
+            WITH q AS MATERIALIZED (
+                SELECT g.ord,
+                       ((?::real[])[(g.ord - 1) * ? + 1 : g.ord * ?])::vector AS v
+                FROM generate_series(1, ?) AS g(ord)
+            )
+            SELECT q.ord AS query_ord, r.*
+            FROM q
+            CROSS JOIN LATERAL (
+                SELECT %1$s,
+                       %3$s AS score_semantic,
+                       0.0 AS score_text,
+                       %3$s AS score
+                FROM doc_embedding d
+                WHERE d.library_id = ANY(?) AND d.vigente AND NOT d.deleted
+                ORDER BY d.embedding_vector %2$s q.v
+                LIMIT ?
+            ) r
+            ORDER BY q.ord, r.score DESC
+            """;
+
+    /**
+     * Pesquisa em lote: várias consultas nas mesmas bibliotecas em uma única
+     * consulta SQL ({@link #SQL_PESQUISA_HIBRIDA_BATCH} ou
+     * {@link #SQL_PESQUISA_SEMANTICA_BATCH}). Usa sempre o armazenamento FULL
+     * (índice HNSW de embedding_vector), sem os modos quantizados nem o índice
+     * em memória.
+     *
+     * @param embeddings - vetores das consultas, todos com a mesma dimensão
+     * @param queries - textos das consultas (mesma ordem), ou null para pesquisa
+     *        apenas semântica
+     * @param bibliotecaIds - bibliotecas pesquisadas
+     * @param k - resultados por consulta
+     * @param pesoSemantico - peso semântico (híbrida)
+     * @param pesoTextual - peso textual (híbrida)
+     * @param profile - perfil de execução, ou null
+     * @return resultados de cada consulta, na ordem de <code>embeddings</code>
+     */
+    public List<List<DocumentEmbedding>> pesquisaBatch(List<float[]> embeddings,
+                                                       List<String> queries,
+                                                       Integer[] bibliotecaIds,
+                                                       Integer k,
+                                                       Float pesoSemantico,
+                                                       Float pesoTextual,
+                                                       SearchProfile profile) {
+        if (k == null || k < 1) k = k_pesquisa;
+        if (pesoSemantico == null) pesoSemantico = 0.6f;
+        if (pesoTextual == null) pesoTextual = 0.4f;
+        int n = embeddings.size();
+        if (queries != null && queries.size() != n) {
+            throw new IllegalArgumentException("Número de consultas difere do número de vetores");
+        }
+        List<List<DocumentEmbedding>> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            results.add(new ArrayList<>());
+        }
+        if (n == 0) {
+            return results;
+        }
+
+        Map<Integer, MetaBiblioteca> configs = getLibraryConfigs();
+        MetricaDistancia metric = resolveDistanceMetric(configs, bibliotecaIds);
+        int dim = embeddings.get(0).length;
+        float[] flat = new float[n * dim];
+        for (int i = 0; i < n; i++) {
+            float[] vec = embeddings.get(i);
+            if (vec == null || vec.length != dim || dim == 0) {
+                throw new IllegalArgumentException("Vetor da consulta " + (i + 1) + " inválido ou com dimensão diferente");
+            }
+            System.arraycopy(vectorForMetric(vec, metric), 0, flat, i * dim, dim);
+        }
+        SqlTypeValue libIds = toIntArray(bibliotecaIds);
+
+        String sql;
+        Object[] params;
+        String phase;
+        if (queries != null) {
+            String[] tsqueries = SearchProfile.measure(profile, PHASE_QUERY_PREPROCESSING,
+                    () -> queries.stream().map(this::query_phraseto_websearch).toArray(String[]::new));
+            sql = SQL_PESQUISA_HIBRIDA_BATCH.formatted(searchColumns(false, maxTextoLength), metric.getOperator());
+            params = new Object[] { VectorCodec.toFloat4Array(flat), dim, dim, toTextArray(tsqueries),
+                                    pesoSemantico, pesoTextual,
+                                    k, libIds, k * 2,
+                                    k, libIds, k * 2,
+                                    k };
+            phase = "sql_hybrid_batch";
+        } else {
+            sql = SQL_PESQUISA_SEMANTICA_BATCH.formatted(searchColumns(false, maxTextoLength), metric.getOperator(),
+                    metric.scoreExpression("d.embedding_vector " + metric.getOperator() + " q.v"));
+            params = new Object[] { VectorCodec.toFloat4Array(flat), dim, dim, n, libIds, k };
+            phase = "sql_semantic_batch";
+        }
+
+        RowMapper<DocumentEmbedding> mapper = newRowMapper(configs, true, false);
+        int[] rows = { 0 };
+        SearchProfile.measure(profile, phase, () -> {
+            jdbcTemplate.query(sql, rs -> {
+                DocumentEmbedding doc = mapper.mapRow(rs, rows[0]++);
+                results.get(rs.getInt("query_ord") - 1).add(doc);
+            }, params);
+            return null;
+        });
+        if (profile != null) {
+            profile.getLastPhase().setRows(rows[0]);
+            profile.getLastPhase().setDetail("queries=" + n);
+        }
+        return results;
+    }
+
+    /**
+     * Converte textos em parâmetro <code>text[]</code>
+     */
+    static SqlTypeValue toTextArray(String[] values) {
+        return new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+                return con.createArrayOf("text", values);
+            }
+        };
+    }
+
+    /**
+     * Pesquisa textual em bibliotecas específicas
+     */
+    public List<DocumentEmbedding> pesquisaTextual(@NonNull String queryString,
+                                            @NonNull Integer[] bibliotecaIds,
+                                            Integer k) {
+        return pesquisaTextual(queryString, bibliotecaIds, k, null, false);
+    }
+
+    /**
+     * Pesquisa textual em bibliotecas específicas, com perfil de execução
+     *
+     * @param profile - perfil de execução, ou null para desabilitar
+     */
+    public List<DocumentEmbedding> pesquisaTextual(@NonNull String queryString,
+                                            @NonNull Integer[] bibliotecaIds,
+                                            Integer k,
+                                            SearchProfile profile) {
+        return pesquisaTextual(queryString, bibliotecaIds, k, profile, false);
+    }
+
+    /**
+     * Pesquisa textual completa.
+     *
+     * @param profile - perfil de execução, ou null para desabilitar
+     * @param includeVector - se true, retorna também embedding_vector
+     */
+    public List<DocumentEmbedding> pesquisaTextual(@NonNull String queryString,
+                                            @NonNull Integer[] bibliotecaIds,
+                                            Integer k,
+                                            SearchProfile profile,
+                                            boolean includeVector) {
+        return pesquisaTextual(queryString, bibliotecaIds, k, profile, includeVector, null);
+    }
+
+    /**
+     * Pesquisa textual completa, com filtro de metadados
+     *
+     * @param filter - filtro de metadados, ou null
+     */
+    public List<DocumentEmbedding> pesquisaTextual(@NonNull String queryString,
+                                            @NonNull Integer[] bibliotecaIds,
+                                            Integer k,
+                                            SearchProfile profile,
+                                            boolean includeVector,
+                                            MetadataFilter metadataFilter) {
+        if (k == null) k = k_pesquisa;
+
+        MetadataFilterSql filter = MetadataFilterSql.compile(metadataFilter);
+        String queryProcessed = SearchProfile.measure(profile, PHASE_QUERY_PREPROCESSING,
+                                                      () -> query_phraseto_websearch(queryString));
+        List<Object> params = new ArrayList<>(List.of(queryProcessed, queryProcessed, toIntArray(bibliotecaIds),
+                                                      queryProcessed));
+        params.addAll(filter.getParams());
+        params.add(k);
+        return executeSearch("sql_textual", SQL_PESQUISA_TEXTUAL, null, filter.getSql(), params.toArray(), profile,
+                             includeVector, TipoArmazenamentoVetor.FULL, 0, MetricaDistancia.COSINE, null);
+    }
+
+    // ======== PAGINAÇÃO POR KEYSET ========
+    // Resultados ordenados por cursor_key crescente e id; cada página começa
+    // depois de (lastKey, lastId) do cursor. Sempre usa o armazenamento FULL.
+    // Custo por página (não é O(página)):
+    // - semântica: o filtro (cursor_key, id) > cursor é aplicado sobre a
+    //   varredura HNSW, que percorre de novo as páginas anteriores: O(profundidade).
+    //   Roda com hnsw.iterative_scan = strict_order (KEYSET_SCAN_MODE),
+    //   ordem exata por distância, sem saltos nem repetições entre páginas;
+    // - textual: ts_rank_cd de todas as linhas que casam com a tsquery, a
+    //   cada página: O(ocorrências), ordem exata;
+    // - híbrida: fusão sobre listas de candidatos de tamanho fixo (pool) em
+    //   todas as páginas, de modo que os scores não mudam entre páginas:
+    //   O(pool) por página; a paginação termina no fim da lista fundida.
+
+    /** Chave anterior a qualquer resultado (primeira página) */
+    static final double FIRST_KEY = -Double.MAX_VALUE;
+
+    /** hnsw.iterative_scan das pesquisas por keyset: ordem exata entre páginas */
+    static final String KEYSET_SCAN_MODE = "strict_order";
+
+    /**
+     * Pesquisa semântica paginada: cursor_key é a distância
+     */
+    static final String SQL_PESQUISA_SEMANTICA_KEYSET = """
+            WITH qv AS MATERIALIZED (
+                SELECT ?::real[]::vector AS v
+            )
+            SELECT %1$s,
+            %4$s AS score_semantic,
+            0.0 AS score_text,
+            %4$s AS score,
+            (embedding_vector %3$s (SELECT v FROM qv))::float8 AS cursor_key
+            FROM doc_embedding d
+            WHERE d.library_id = ANY(?) AND d.vigente AND NOT d.deleted%5$s
+            AND ((embedding_vector %3$s (SELECT v FROM qv))::float8, d.id) > (?, ?)
+            ORDER BY embedding_vector %3$s (SELECT v FROM qv), d.id
+            LIMIT ?
+            """;
+
+    /**
+     * Pesquisa textual paginada: cursor_key é o ts_rank_cd negado
+     */
+    static final String SQL_PESQUISA_TEXTUAL_KEYSET = """
+            SELECT %1$s,
+                   0.0 AS score_semantic,
+                   ts_rank_cd(text_search_tsv, ?::tsquery) AS score_text,
+                   ts_rank_cd(text_search_tsv, ?::tsquery) AS score,
+                   (-ts_rank_cd(text_search_tsv, ?::tsquery))::float8 AS cursor_key
+            FROM doc_embedding d
+            WHERE library_id = ANY(?) AND vigente AND NOT deleted
+            AND text_search_tsv @@ ?::tsquery%5$s
+            AND ((-ts_rank_cd(text_search_tsv, ?::tsquery))::float8, d.id) > (?, ?)
+            ORDER BY cursor_key, d.id
+            LIMIT ?
+            """;
+
+    /**
+     * Pesquisa híbrida paginada: a mesma fusão de {@link #SQL_PESQUISA_HIBRIDA}
+     * (origem semântica FULL), com a constante RRF fixada pela primeira página e
+     * listas de candidatos de tamanho fixo, iguais em todas as páginas.
+     * cursor_key é o score negado.
+     */
+    static final String SQL_PESQUISA_HIBRIDA_KEYSET = """
+            WITH qv AS MATERIALIZED (
+                SELECT ?::real[]::vector AS v
+            ),
+            semantic_search AS (
+                SELECT id,
+                       1.0 / (? + RANK() OVER (ORDER BY embedding_vector %3$s (SELECT v FROM qv) ASC)) AS score_semantic,
+                       RANK() OVER (ORDER BY embedding_vector %3$s (SELECT v FROM qv) ASC) AS rank_semantic
+                FROM doc_embedding de
+                WHERE de.library_id = ANY(?) AND de.vigente AND NOT de.deleted%5$s
+                ORDER BY rank_semantic
+                LIMIT ?
+            ),
+            text_search AS (
+                SELECT id,
+                       1.0 / (? + RANK() OVER (ORDER BY ts_rank_cd(text_search_tsv, ?::tsquery) DESC)) AS score_text,
+                       RANK() OVER (ORDER BY ts_rank_cd(text_search_tsv, ?::tsquery) DESC) AS rank_text
+                FROM doc_embedding
+                WHERE library_id = ANY(?) AND vigente AND NOT deleted
+                AND text_search_tsv @@ ?::tsquery%5$s
+                ORDER BY rank_text
+                LIMIT ?
+            ),
+            fused AS (
+                SELECT %1$s,
+                       COALESCE(s.score_semantic, 0.0) AS score_semantic,
+                       COALESCE(t.score_text, 0.0) AS score_text,
+                       (COALESCE(s.score_semantic, 0.0) * ? + COALESCE(t.score_text, 0.0) * ?) AS score
+                FROM doc_embedding d
+                LEFT JOIN semantic_search s ON d.id = s.id
+                LEFT JOIN text_search t ON d.id = t.id
+                WHERE d.library_id = ANY(?)
+                AND (s.id IS NOT NULL OR t.id IS NOT NULL)
+            )
+            SELECT f.*, (-f.score)::float8 AS cursor_key
+            FROM fused f
+            WHERE ((-f.score)::float8, f.id) > (?, ?)
+            ORDER BY cursor_key, f.id
+            LIMIT ?
+            """;
+
+    /**
+     * Página de uma pesquisa por keyset, com a posição do último resultado
+     */
+    @Getter
+    public static final class KeysetPage {
+        private final List<DocumentEmbedding> results;
+        private final double lastKey;
+        private final int lastId;
+
+        public KeysetPage(List<DocumentEmbedding> results, double lastKey, int lastId) {
+            this.results = results;
+            this.lastKey = lastKey;
+            this.lastId = lastId;
+        }
+    }
+
+    /**
+     * Página de pesquisa semântica após <code>after</code> (null: primeira página)
+     *
+     * @param filter - filtro de metadados, ou null
+     */
+    public KeysetPage pesquisaSemanticaKeyset(@NonNull float[] vec, @NonNull Integer[] bibliotecaIds, int k,
+                                              MetadataFilter filter, SearchCursor after, SearchProfile profile) {
+        MetadataFilterSql where = MetadataFilterSql.compile(filter);
+        MetricaDistancia metric = resolveDistanceMetric(getLibraryConfigs(), bibliotecaIds);
+        List<Object> params = new ArrayList<>();
+        params.add(VectorCodec.toFloat4Array(vectorForMetric(vec, metric)));
+        params.add(toIntArray(bibliotecaIds));
+        params.addAll(where.getParams());
+        params.addAll(List.of(keyAfter(after), idAfter(after), k));
+        return withScanMode(KEYSET_SCAN_MODE, () -> executeKeyset("sql_semantic_keyset",
+                SQL_PESQUISA_SEMANTICA_KEYSET, where.getSql(), params.toArray(), profile, metric));
+    }
+
+    /**
+     * Página de pesquisa textual após <code>after</code> (null: primeira página)
+     *
+     * @param filter - filtro de metadados, ou null
+     */
+    public KeysetPage pesquisaTextualKeyset(@NonNull String queryString, @NonNull Integer[] bibliotecaIds, int k,
+                                            MetadataFilter filter, SearchCursor after, SearchProfile profile) {
+        MetadataFilterSql where = MetadataFilterSql.compile(filter);
+        String queryProcessed = SearchProfile.measure(profile, PHASE_QUERY_PREPROCESSING,
+                                                      () -> query_phraseto_websearch(queryString));
+        List<Object> params = new ArrayList<>(List.of(queryProcessed, queryProcessed, queryProcessed,
+                                                      toIntArray(bibliotecaIds), queryProcessed));
+        params.addAll(where.getParams());
+        params.addAll(List.of(queryProcessed, keyAfter(after), idAfter(after), k));
+        return executeKeyset("sql_textual_keyset", SQL_PESQUISA_TEXTUAL_KEYSET, where.getSql(), params.toArray(),
+                             profile, MetricaDistancia.COSINE);
+    }
+
+    /**
+     * Página de pesquisa híbrida após <code>after</code> (null: primeira página).
+     * A constante RRF é a de <code>after</code> (ou <code>k</code> na primeira
+     * página). Cada lista de candidatos tem <code>pool</code> linhas em todas as
+     * páginas: a lista fundida é a mesma a cada página, então o keyset não salta
+     * nem repete resultados, e termina depois de no máximo 2 * pool resultados.
+     *
+     * @param pool - candidatos por parte (semântica e textual), o mesmo em todas as páginas
+     * @param filter - filtro de metadados, ou null
+     */
+    public KeysetPage pesquisaHibridaKeyset(@NonNull float[] embedding, @NonNull String query,
+                                            @NonNull Integer[] bibliotecaIds, int k, int pool,
+                                            Float pesoSemantico, Float pesoTextual, MetadataFilter filter,
+                                            SearchCursor after, SearchProfile profile) {
+        if (pesoSemantico == null) pesoSemantico = 0.6f;
+        if (pesoTextual == null) pesoTextual = 0.4f;
+        int rrfK = after != null ? after.getRrfK() : k;
+
+        MetadataFilterSql where = MetadataFilterSql.compile(filter);
+        String queryProcessed = SearchProfile.measure(profile, PHASE_QUERY_PREPROCESSING,
+                                                      () -> query_phraseto_websearch(query));
+        SqlTypeValue libIds = toIntArray(bibliotecaIds);
+        MetricaDistancia metric = resolveDistanceMetric(getLibraryConfigs(), bibliotecaIds);
+        List<Object> params = new ArrayList<>(List.of(
+            VectorCodec.toFloat4Array(vectorForMetric(embedding, metric)), rrfK, libIds));
+        params.addAll(where.getParams());
+        params.addAll(List.of(pool, rrfK, queryProcessed, queryProcessed, libIds, queryProcessed));
+        params.addAll(where.getParams());
+        params.addAll(List.of(pool, pesoSemantico, pesoTextual, libIds, keyAfter(after), idAfter(after), k));
+        return withScanMode(KEYSET_SCAN_MODE, () -> executeKeyset("sql_hybrid_keyset",
+                SQL_PESQUISA_HIBRIDA_KEYSET, where.getSql(), params.toArray(), profile, metric));
+    }
+
+    private static double keyAfter(SearchCursor after) {
+        return after != null ? after.getLastKey() : FIRST_KEY;
+    }
+
+    private static int idAfter(SearchCursor after) {
+        return after != null ? after.getLastId() : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Executa uma consulta por keyset ({@link #executeSearch}), guardando o
+     * cursor_key exato (float8) da última linha
+     */
+    private KeysetPage executeKeyset(String phase, String template, String filter, Object[] params,
+                                     SearchProfile profile, MetricaDistancia metric) {
+        String sql = template.formatted(searchColumns(false, maxTextoLength), null, metric.getOperator(),
+                metric.scoreExpression("embedding_vector " + metric.getOperator() + " (SELECT v FROM qv)"), filter);
+        RowMapper<DocumentEmbedding> mapper = newRowMapper(getLibraryConfigs(), true, false);
+        double[] lastKey = { FIRST_KEY };
+        RowMapper<DocumentEmbedding> keyMapper = (rs, rowNum) -> {
+            DocumentEmbedding doc = mapper.mapRow(rs, rowNum);
+            lastKey[0] = rs.getDouble("cursor_key");
+            return doc;
+        };
+        List<DocumentEmbedding> results = SearchProfile.measure(profile, phase,
+                () -> jdbcTemplate.query(sql, keyMapper, params));
+        if (profile != null) {
+            profile.getLastPhase().setRows(results.size());
+            if (profile.isExplainAnalyze()) {
+                profile.addPlan(phase, explainAnalyze(sql, params));
+            }
+        }
+        int lastId = results.isEmpty() ? Integer.MIN_VALUE : results.get(results.size() - 1).getId();
+        return new KeysetPage(results, lastKey[0], lastId);
+    }
+
+    /**
+     * Converte ids de bibliotecas em parâmetro <code>integer[]</code> para
+     * <code>library_id = ANY(?)</code>, mantendo o texto SQL idêntico
+     * para qualquer conjunto de bibliotecas.
+     */
+    static SqlTypeValue toIntArray(Integer[] ids) {
+        return new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+                return con.createArrayOf("integer", ids);
+            }
+        };
+    }
+
+    /**
+     * Lista de colunas das pesquisas.
+     *
+     * @param includeVector - inclui d.embedding_vector
+     * @param maxTexto - trunca texto em maxTexto caracteres no servidor (0 = sem truncar)
+     */
+    static String searchColumns(boolean includeVector, int maxTexto) {
+        String texto = maxTexto > 0 ? "left(d.texto, " + maxTexto + ") AS texto" : "d.texto";
+        String cols = SEARCH_COLUMNS.formatted(texto);
+        return includeVector ? cols + VECTOR_COLUMN : cols;
+    }
+
+    /**
+     * Executa uma pesquisa filtrada por metadados com iterative scan do pgvector
+     * (<code>rag.pesquisa.filter.iterative-scan</code>, pgvector &gt;= 0.8.0): o
+     * índice ANN continua a varredura até encontrar linhas que passam no filtro,
+     * em vez de devolver só as <code>ef_search</code> mais próximas e descartá-las
+     * depois. Os parâmetros valem só para a transação da consulta (SET LOCAL).
+     * <p>
+     * Nos modos quantizados (HALFVEC, BINARY, MATRYOSHKA) o índice só gera
+     * candidatos, re-ranqueados depois com o vetor completo: a consulta usa
+     * <code>hnsw.ef_search</code> = número de candidatos e relaxed_order, com ou
+     * sem filtro, já que o filtro de bibliotecas também descarta candidatos.
+     *
+     * @param storage - modo de armazenamento da consulta
+     * @param candidates - candidatos do modo quantizado
+     */
+    private <T> T withIterativeScan(MetadataFilterSql filter, TipoArmazenamentoVetor storage, int candidates,
+                                    Supplier<T> search) {
+        if (storage == TipoArmazenamentoVetor.HALFVEC || storage == TipoArmazenamentoVetor.BINARY
+                || storage == TipoArmazenamentoVetor.MATRYOSHKA) {
+            int efSearch = Math.min(MAX_EF_SEARCH, Math.max(MIN_EF_SEARCH, candidates));
+            return withScanMode("relaxed_order", efSearch, search);
+        }
+        return withIterativeScan(filter, search);
+    }
+
+    private <T> T withIterativeScan(MetadataFilterSql filter, Supplier<T> search) {
+        if (filter.isEmpty() || "off".equals(iterativeScan)) {
+            return search.get();
+        }
+        if (!ITERATIVE_SCAN_MODES.contains(iterativeScan)) {
+            throw new IllegalStateException("rag.pesquisa.filter.iterative-scan inválido: " + iterativeScan);
+        }
+        return withScanMode(iterativeScan, search);
+    }
+
+    /**
+     * Executa a pesquisa com <code>hnsw.iterative_scan = mode</code> válido só
+     * para a transação da consulta (SET LOCAL)
+     */
+    private <T> T withScanMode(String mode, Supplier<T> search) {
+        return withScanMode(mode, 0, search);
+    }
+
+    /**
+     * Executa a pesquisa com <code>hnsw.iterative_scan = mode</code> e, se
+     * <code>efSearch</code> &gt; 0, <code>hnsw.ef_search = efSearch</code>, válidos
+     * só para a transação da consulta (SET LOCAL). Sem suporte a iterative scan
+     * (pgvector &lt; 0.8.0) só ef_search é aplicado.
+     */
+    private <T> T withScanMode(String mode, int efSearch, Supplier<T> search) {
+        boolean iterative = iterativeScanSupported;
+        if (transactionManager == null || (!iterative && efSearch <= 0)) {
+            return search.get();
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        return tx.execute(status -> {
+            if (efSearch > 0) {
+                jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + efSearch);
+            }
+            if (!iterative) {
+                return search.get();
+            }
+            jdbcTemplate.execute("SET LOCAL hnsw.iterative_scan = " + mode);
+            if ("relaxed_order".equals(mode)) {
+                // ivfflat only supports relaxed_order
+                jdbcTemplate.execute("SET LOCAL ivfflat.iterative_scan = relaxed_order");
+            }
+            return search.get();
+        });
+    }
+
+    /**
+     * Executa uma consulta de pesquisa. Com <code>profile</code> presente, registra
+     * o tempo e o número de linhas da fase e, se solicitado, o plano
+     * EXPLAIN ANALYZE da mesma consulta.
+     *
+     * @param phase - nome da fase SQL no perfil
+     * @param template - consulta, com <code>%1$s</code> no lugar da lista de colunas
+     *        e <code>%2$s</code> no lugar da origem semântica
+     * @param source - origem semântica ({@link #vectorSource}), ou null
+     * @param filter - predicado do filtro de metadados (<code>%5$s</code>), ou vazio
+     * @param params - parâmetros da consulta
+     * @param profile - perfil de execução, ou null
+     * @param includeVector - inclui embedding_vector no resultado
+     * @param storage - modo de armazenamento usado (registrado no perfil)
+     * @param candidates - candidatos re-ranqueados em modo quantizado (registrado no perfil)
+     * @param metric - métrica de distância (<code>%3$s</code> operador, <code>%4$s</code> score)
+     * @param sink - se não nulo, recebe as linhas à medida que são lidas (cursor) e
+     *        o método retorna uma lista vazia
+     */
+    private List<DocumentEmbedding> executeSearch(String phase, String template, String source, String filter,
+                                                  Object[] params, SearchProfile profile, boolean includeVector,
+                                                  TipoArmazenamentoVetor storage, int candidates,
+                                                  MetricaDistancia metric, Consumer<DocumentEmbedding> sink) {
+        String sql = template.formatted(searchColumns(includeVector, maxTextoLength), source, metric.getOperator(),
+                metric.scoreExpression("embedding_vector " + metric.getOperator() + " (SELECT v FROM qv)"), filter);
+        RowMapper<DocumentEmbedding> mapper = newRowMapper(getLibraryConfigs(), true, includeVector);
+        if (sink != null) {
+            int[] rows = { 0 };
+            SearchProfile.measure(profile, phase, () -> {
+                jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                                                                ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(streamFetchSize);
+                    new ArgumentPreparedStatementSetter(params).setValues(ps);
+                    return ps;
+                }, (RowCallbackHandler) rs -> sink.accept(mapper.mapRow(rs, rows[0]++)));
+                return null;
+            });
+            if (profile != null) {
+                profile.getLastPhase().setRows(rows[0]);
+            }
+            return List.of();
+        }
+        if (profile == null) {
+            return jdbcTemplate.query(sql, mapper, params);
+        }
+
+        List<DocumentEmbedding> results = profile.time(phase, () -> jdbcTemplate.query(sql, mapper, params));
+        profile.getLastPhase().setRows(results.size());
+        if (storage != TipoArmazenamentoVetor.FULL) {
+            profile.getLastPhase().setDetail("vector_storage=" + storage.getDbValue() + ", candidates=" + candidates);
+        }
+
+        if (profile.isExplainAnalyze()) {
+            profile.addPlan(phase, explainAnalyze(sql, params));
+        }
+        return results;
+    }
+
+    /**
+     * Retorna o plano de execução real (EXPLAIN ANALYZE) de uma consulta.
+     * <b>Atenção:</b> a consulta é efetivamente executada.
+     *
+     * @param sql - consulta
+     * @param params - parâmetros da consulta
+     * @return linhas do plano, ou a mensagem de erro se o EXPLAIN falhar
+     */
+    public List<String> explainAnalyze(String sql, Object... params) {
+        try {
+            return jdbcTemplate.queryForList("EXPLAIN (ANALYZE, BUFFERS, FORMAT TEXT) " + sql,
+                                             String.class, params);
+        } catch (DataAccessException e) {
+            return List.of("EXPLAIN ANALYZE failed: " + e.getMessage());
+        }
+    }
+
+    // ======== MÉTODOS DE PROCESSAMENTO DE QUERY ========
+
+    /**
+     * Transforma uma frase em query para PostgreSQL websearch_to_tsquery
+     */
+    public String query_phraseto_websearch(String frase) {
+        return query_phraseto_websearch(frase, true);
+    }
+
+    /**
+     * Transforma uma frase em query para PostgreSQL websearch_to_tsquery 
+     * dando opção de pesquisa ampla.
+     * 
+     * A tsquery compilada é mantida em cache LRU ({@link #getTsQueryCache()}) indexado
+     * pela frase normalizada; só há acesso ao banco na primeira ocorrência de cada frase,
+     * e em uma única consulta (ver {@link #SQL_COMPILE_TSQUERY}).
+     */
+    public String query_phraseto_websearch(String frase, boolean pesquisaAmpla) {
+        if (frase == null || frase.trim().isEmpty()) {
+            throw new IllegalArgumentException("Frase não pode ser nula ou vazia");
+        }
+
+        String tsQuery = tsQueryCache.computeIfAbsent(normalizeQueryKey(frase), this::compileTsQuery);
+
+        if (pesquisaAmpla && tsQuery != null) {
+            return tsQuery
+                .replace(TAG_EXCLUSAO, TAG_HOLD)
+                .replace(" & ", " | ")
+                .replace(TAG_HOLD, TAG_EXCLUSAO);
+        }
+
+        return tsQuery;
+    }
+
+    /**
+     * Compila a frase normalizada em tsquery, equivalente a {@link #fixQuery(String)}
+     * seguido de websearch_to_tsquery, porém em um único round trip.
+     */
+    private String compileTsQuery(String normalizedFrase) {
+        try {
+            return jdbcTemplate.queryForObject(SQL_COMPILE_TSQUERY, String.class,
+                                               normalizedFrase, normalizedFrase);
+        } catch (DataAccessException e) {
+            throw new IllegalArgumentException("Frase inválida após normalização", e);
+        }
+    }
+
+    /**
+     * Normaliza a frase para compilação e chave de cache: limpeza de {@link #cleanQuery(String)},
+     * caixa baixa e espaços colapsados. A configuração 'portuguese' já ignora caixa,
+     * portanto a tsquery resultante é a mesma.
+     */
+    static String normalizeQueryKey(String frase) {
+        return cleanQuery(frase)
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
+    /**
+     * Limpeza e conversão de operadores lógicos de uma query textual
+     */
+    static String cleanQuery(String query) {
+        query = query.replaceAll("[^\\p{L}\\p{Nd}\\s]+", " ");
+        query = query.replaceAll(" AND ", " ");
+        query = query.replaceAll(" NOT ", " -");
+        return query;
+    }
+
+    /**
+     * Corrige uma query textual
+     */
+    public String fixQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return query;
+        }
+
+        // Limpeza e conversão de operadores lógicos
+        query = cleanQuery(query);
+
+        try {
+            String tsquery = jdbcTemplate
+                    .queryForObject("SELECT websearch_to_tsquery('portuguese'::regconfig, ?) ",
+                                    String.class,
+                                    new Object[] { query });
+            return tsquery != null && !tsquery.isEmpty() ? tsquery : query;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ======== MÉTODOS CRUD AVANÇADOS ========
+
+    /**
+     * Normaliza o vetor do embedding conforme a métrica da sua biblioteca
+     * ({@link #vectorForMetric}), antes de gravar.
+     */
+    private void normalizeForLibrary(DocumentEmbedding doc) {
+        MetaBiblioteca config = getLibraryConfigs().get(doc.getLibraryId());
+        MetricaDistancia metric = config != null ? config.getDistanceMetric() : MetricaDistancia.COSINE;
+        doc.setEmbeddingVector(vectorForMetric(doc.getEmbeddingVector(), metric));
+    }
+
+    /**
+     * Salva um DocumentEmbedding
+     */
+    public Integer save(@NonNull DocumentEmbedding doc) throws DataAccessException, SQLException {
+        doOnce();
+
+        if (doc.getId() != null) {
+            update(doc);
+            return doc.getId();
+        }
+        normalizeForLibrary(doc);
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        final String sql = """
+            INSERT INTO doc_embedding
+            (library_id, documento_id, chapter_id, tipo_embedding,
+             texto, order_chapter, embedding_vector, metadados, vigente, deleted, created_at)
+            SELECT ?, d.id, ?, ?, ?, ?, ?::real[]::vector, ?::jsonb,
+                   coalesce(d.flag_vigente, true), d.deleted_at IS NOT NULL, CURRENT_TIMESTAMP
+            FROM documento d
+            WHERE d.id = ?
+            """;
+
+        final String metadados = metadadosJson(doc);
         jdbcTemplate.update(connection -> {
             PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             ps.setInt(1, doc.getLibraryId());
-            ps.setInt(2, doc.getDocumentoId());
-            ps.setObject(3, doc.getChapterId());
-            ps.setString(4, doc.getTipoEmbedding().getDbValue());
-            ps.setString(5, doc.getTexto());
-            ps.setObject(6, doc.getOrderChapter());
+            ps.setObject(2, doc.getChapterId());
+            ps.setString(3, doc.getTipoEmbedding().getDbValue());
+            ps.setString(4, doc.getTexto());
+            ps.setObject(5, doc.getOrderChapter());
 
             if (doc.getEmbeddingVector() != null) {
-                ps.setObject(7, new PGvector(doc.getEmbeddingVector()));
+                ps.setArray(6, connection.unwrap(PGConnection.class)
+                                         .createArrayOf("float4", doc.getEmbeddingVector()));
             } else {
-                ps.setObject(7, null);
+                ps.setNull(6, Types.ARRAY);
             }
 
-            // Metadados como JSON - em implementação real usaria Jackson
-            ps.setString(8, doc.getMetadados() != null ? "{}" : null);
+            ps.setString(7, metadados);
+            // vigente / deleted herdados do documento
+            ps.setInt(8, doc.getDocumentoId());
             return ps;
         }, keyHolder);
 
         Map<String, Object> map = keyHolder.getKeys();
+        if (map == null) {
+            throw new DataIntegrityViolationException("Documento não encontrado: " + doc.getDocumentoId());
+        }
         Object pk = map.get("id");
         if (pk instanceof Number) {
             int value = ((Number) pk).intValue();
             doc.setId(value);
+            // Linhas de documentos revogados ou removidos ficam fora dos índices
+            boolean live = !Boolean.FALSE.equals(map.get("vigente")) && !Boolean.TRUE.equals(map.get("deleted"));
+            if (live) {
+                Integer libraryId = doc.getLibraryId();
+                float[] vector = doc.getEmbeddingVector();
+                String texto = doc.getTexto();
+                AfterCommit.run(() -> syncIndexes(value, libraryId, vector, texto, metadados, true));
+            }
             return value;
         }
         return doc.getId();
@@ -595,40 +2064,165 @@ public class DocEmbeddingJdbcRepository {
         if (doc.getId() == null) {
             return save(doc);
         }
+        normalizeForLibrary(doc);
 
         final String sql = """
             UPDATE doc_embedding SET
             library_id = ?, documento_id = ?, chapter_id = ?,
             tipo_embedding = ?, texto = ?, order_chapter = ?,
-            embedding_vector = ?, metadados = ?::jsonb, updated_at = CURRENT_TIMESTAMP
+            embedding_vector = ?::real[]::vector, metadados = ?::jsonb, updated_at = CURRENT_TIMESTAMP
             WHERE id = ?
+            RETURNING vigente, deleted
             """;
 
-        return jdbcTemplate.update(sql,
+        final String metadados = metadadosJson(doc);
+        List<Boolean> live = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getBoolean("vigente") && !rs.getBoolean("deleted"),
             doc.getLibraryId(),
             doc.getDocumentoId(),
             doc.getChapterId(),
             doc.getTipoEmbedding().getDbValue(),
             doc.getTexto(),
             doc.getOrderChapter(),
-            doc.getEmbeddingVector() != null ? new PGvector(doc.getEmbeddingVector()) : null,
-            doc.getMetadados() != null ? "{}" : null, // JSON serialization
+            doc.getEmbeddingVector() != null ? VectorCodec.toFloat4Array(doc.getEmbeddingVector()) : null,
+            metadados,
             doc.getId()
         );
+        if (!live.isEmpty()) {
+            // library_id pode ter mudado: remove de todos os índices e reinsere, se pesquisável
+            boolean isLive = live.get(0);
+            int id = doc.getId();
+            Integer libraryId = doc.getLibraryId();
+            float[] vector = doc.getEmbeddingVector();
+            String texto = doc.getTexto();
+            AfterCommit.run(() -> syncIndexes(id, libraryId, vector, texto, metadados, isLive));
+        }
+        return live.size();
     }
 
     /**
-     * Deleta um registro da tabela doc_embedding
-     * 
+     * Remove um embedding dos índices em memória (HNSW, PQ e Lucene) e o
+     * reinsere se for pesquisável (vigente e não removido)
+     */
+    private void syncIndexes(int id, Integer libraryId, float[] vector, String texto, String metadados,
+                             boolean live) {
+        if (vectorIndex != null) {
+            vectorIndex.onDelete(id);
+        }
+        if (pqCodes != null) {
+            pqCodes.onDelete(id);
+        }
+        if (textIndex != null) {
+            textIndex.onDelete(id);
+        }
+        if (!live) {
+            return;
+        }
+        if (vector != null && vectorIndex != null) {
+            vectorIndex.onUpsert(libraryId, id, vector);
+        }
+        if (vector != null && pqCodes != null) {
+            pqCodes.onUpsert(libraryId, id, vector);
+        }
+        if (textIndex != null) {
+            textIndex.onUpsert(libraryId, id, texto, metadados);
+        }
+    }
+
+    /**
+     * Chaves que as pesquisas acrescentam aos metadados dos resultados; não
+     * são persistidas
+     */
+    static final Set<String> SEARCH_SCORE_KEYS = Set.of("score", "score_semantic", "score_text");
+
+    /**
+     * Metadados serializados para doc_embedding.metadados (filtros de
+     * metadados, text_search_tsv e índice Lucene), sem os scores de pesquisa
+     */
+    static String metadadosJson(DocumentEmbedding doc) {
+        if (doc.getMetadados() == null) {
+            return null;
+        }
+        MetaDoc metadados = new MetaDoc(doc.getMetadados());
+        metadados.keySet().removeAll(SEARCH_SCORE_KEYS);
+        try {
+            return JSON.writeValueAsString(metadados);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Metadados não serializáveis em JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Copia o estado do documento (vigência e remoção lógica) para as colunas
+     * denormalizadas <code>vigente</code> / <code>deleted</code> dos seus
+     * embeddings (changelog 019), que todas as pesquisas filtram sem join com
+     * documento. Linhas que deixam de ser pesquisáveis saem dos índices em
+     * memória; as que voltam a ser são reinseridas, depois do commit da
+     * transação (um rollback não altera os índices). <code>deleted_at</code>
+     * marca o início da retenção até o expurgo ({@link
+     * bor.tools.simplerag.service.EmbeddingMaintenanceService}).
+     *
+     * @param documentoId - id do documento
+     * @param vigente - documento.flag_vigente
+     * @param deleted - documento.deleted_at preenchido
+     * @return número de embeddings alterados
+     */
+    public int updateLiveFlags(@NonNull Integer documentoId, boolean vigente, boolean deleted) {
+        final String sql = """
+            UPDATE doc_embedding SET vigente = ?, deleted = ?,
+                   deleted_at = CASE WHEN ? THEN coalesce(deleted_at, CURRENT_TIMESTAMP) END,
+                   updated_at = CURRENT_TIMESTAMP
+            WHERE documento_id = ? AND (vigente <> ? OR deleted <> ?)
+            RETURNING id, library_id, vector_send(embedding_vector) AS embedding_vector_bin,
+                      texto, metadados::text AS metadados
+            """;
+        boolean live = vigente && !deleted;
+        List<Runnable> changes = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            int id = rs.getInt("id");
+            int libraryId = rs.getInt("library_id");
+            byte[] bin = rs.getBytes("embedding_vector_bin");
+            float[] vector = live && bin != null ? VectorCodec.decode(bin) : null;
+            String texto = rs.getString("texto");
+            String metadados = rs.getString("metadados");
+            changes.add(() -> syncIndexes(id, libraryId, vector, texto, metadados, live));
+        }, vigente, deleted, deleted, documentoId, vigente, deleted);
+        if (!changes.isEmpty()) {
+            AfterCommit.run(() -> changes.forEach(Runnable::run));
+        }
+        log.debug("Documento {}: {} embeddings com vigente={}, deleted={}", documentoId, changes.size(), vigente,
+                  deleted);
+        return changes.size();
+    }
+
+    /**
+     * Deleta um registro da tabela doc_embedding. Os índices em memória são
+     * atualizados depois do commit.
+     *
      */
     public int delete(int id) throws DataAccessException, SQLException {
-        return jdbcTemplate.update("DELETE FROM doc_embedding WHERE id = ?", id);
+        int rows = jdbcTemplate.update("DELETE FROM doc_embedding WHERE id = ?", id);
+        if (rows > 0) {
+            AfterCommit.run(() -> syncIndexes(id, null, null, null, null, false));
+        }
+        return rows;
     }
 
     /**
      * Delete
      */
     public int deleteAll()  throws DataAccessException, SQLException {
-        return jdbcTemplate.update("DELETE FROM doc_embedding WHERE id >= ?", 1);
+        int rows = jdbcTemplate.update("DELETE FROM doc_embedding WHERE id >= ?", 1);
+        AfterCommit.run(() -> {
+            if (vectorIndex != null) {
+                vectorIndex.reloadAll();
+            }
+            if (pqCodes != null) {
+                pqCodes.reloadAll();
+            }
+            if (textIndex != null) {
+                textIndex.reloadAll();
+            }
+        });
+        return rows;
     }
 }
\ No newline at end of file
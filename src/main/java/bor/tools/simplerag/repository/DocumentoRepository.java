@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +19,20 @@ import java.util.Optional;
 @Repository
 public interface DocumentoRepository extends JpaRepository<Documento, Integer> {
 
+    /**
+     * Projeção leve (id, título) - evita carregar conteudoMarkdown
+     */
+    interface TituloView {
+        Integer getId();
+        String getTitulo();
+    }
+
+    /**
+     * Busca apenas id e título dos documentos informados
+     */
+    @Query("SELECT d.id AS id, d.titulo AS titulo FROM Documento d WHERE d.id IN :ids")
+    List<TituloView> findTitulosByIdIn(@Param("ids") Collection<Integer> ids);
+
     /**
      * Busca documentos por biblioteca
      */
@@ -0,0 +1,143 @@
+package bor.tools.simplerag.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import bor.tools.simplerag.dto.MetadataFilter;
+import lombok.Getter;
+
+/**
+ * SQL predicate of a {@link MetadataFilter} over the <code>metadados</code>
+ * column of doc_embedding, appended to the WHERE clause of each search leg.
+ *
+ * <ul>
+ *   <li><code>equals</code>: <code>metadados @&gt; ?::jsonb</code> (one object with all pairs)</li>
+ *   <li><code>in</code>: <code>metadados @&gt; ANY(?::text[]::jsonb[])</code> per field</li>
+ *   <li><code>range</code>: <code>jsonb_path_exists(metadados, ?::jsonpath, ?::jsonb)</code>,
+ *       bounds passed as jsonpath variables</li>
+ *   <li><code>exists</code>: <code>metadados @? ?::jsonpath</code></li>
+ * </ul>
+ *
+ * <p>Containment and <code>@?</code> are served by the <code>jsonb_path_ops</code>
+ * GIN index (changelog 018, restricted to live rows since 019). Values are always
+ * bound as parameters; field names are validated and only then written into
+ * jsonpath expressions.</p>
+ */
+@Getter
+public final class MetadataFilterSql {
+
+    /** Filtro vazio */
+    public static final MetadataFilterSql NONE = new MetadataFilterSql("", List.of());
+
+    private static final Pattern FIELD = Pattern.compile("[\\p{L}_][\\p{L}\\p{N}_]{0,63}");
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * Predicate to append to a WHERE clause (starts with <code> AND</code>), or empty
+     */
+    private final String sql;
+
+    /**
+     * Parameters of {@link #sql}, in order
+     */
+    private final List<Object> params;
+
+    private MetadataFilterSql(String sql, List<Object> params) {
+        this.sql = sql;
+        this.params = Collections.unmodifiableList(params);
+    }
+
+    public boolean isEmpty() {
+        return sql.isEmpty();
+    }
+
+    /**
+     * Compiles a filter.
+     *
+     * @param filter - filter, or null
+     * @throws IllegalArgumentException for invalid field names or values
+     */
+    public static MetadataFilterSql compile(MetadataFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return NONE;
+        }
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+
+        if (filter.getEquals() != null && !filter.getEquals().isEmpty()) {
+            Map<String, Object> pairs = new LinkedHashMap<>();
+            filter.getEquals().forEach((field, value) -> pairs.put(field(field), value));
+            sql.append(" AND metadados @> ?::jsonb");
+            params.add(json(pairs));
+        }
+        if (filter.getIn() != null) {
+            filter.getIn().forEach((field, values) -> {
+                String key = field(field);
+                if (values == null || values.isEmpty()) {
+                    throw new IllegalArgumentException("Filtro 'in' sem valores: " + field);
+                }
+                String[] objects = values.stream().map(v -> json(Map.of(key, v))).toArray(String[]::new);
+                sql.append(" AND metadados @> ANY(?::text[]::jsonb[])");
+                params.add(DocEmbeddingJdbcRepository.toTextArray(objects));
+            });
+        }
+        if (filter.getRange() != null) {
+            filter.getRange().forEach((field, range) -> {
+                String key = field(field);
+                Map<String, Object> vars = new LinkedHashMap<>();
+                List<String> conditions = new ArrayList<>(2);
+                if (range != null && range.getGte() != null) {
+                    vars.put("gte", bound(field, range.getGte()));
+                    conditions.add("@ >= $gte");
+                }
+                if (range != null && range.getLte() != null) {
+                    vars.put("lte", bound(field, range.getLte()));
+                    conditions.add("@ <= $lte");
+                }
+                if (conditions.isEmpty()) {
+                    throw new IllegalArgumentException("Filtro 'range' sem limites: " + field);
+                }
+                sql.append(" AND jsonb_path_exists(metadados, ?::jsonpath, ?::jsonb)");
+                params.add("$.\"" + key + "\" ? (" + String.join(" && ", conditions) + ")");
+                params.add(json(vars));
+            });
+        }
+        if (filter.getExists() != null) {
+            for (String field : filter.getExists()) {
+                sql.append(" AND metadados @? ?::jsonpath");
+                params.add("$.\"" + field(field) + "\"");
+            }
+        }
+        return new MetadataFilterSql(sql.toString(), params);
+    }
+
+    private static String field(String field) {
+        if (field == null || !FIELD.matcher(field).matches()) {
+            throw new IllegalArgumentException("Campo de filtro inválido: " + field);
+        }
+        return field;
+    }
+
+    private static Object bound(String field, Object value) {
+        if (value instanceof Number || value instanceof String) {
+            return value;
+        }
+        throw new IllegalArgumentException("Limite de 'range' deve ser número ou texto: " + field);
+    }
+
+    private static String json(Object value) {
+        try {
+            return JSON.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Valor de filtro inválido: " + value, e);
+        }
+    }
+}
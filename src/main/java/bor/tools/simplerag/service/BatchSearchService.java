@@ -0,0 +1,117 @@
+package bor.tools.simplerag.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.dto.LibraryDTO;
+import bor.tools.simplerag.dto.SearchProfile;
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
+import bor.tools.splitter.EmbeddingProcessorInterface;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Batch search: many queries against the same libraries in one request.
+ *
+ * <p>Duplicate queries are answered once. The distinct queries are embedded
+ * concurrently (at most <code>rag.pesquisa.batch.embedding-concurrency</code>
+ * provider calls in flight) and then searched together in a single SQL round
+ * trip ({@link DocEmbeddingJdbcRepository#pesquisaBatch}).</p>
+ */
+@Service
+@Slf4j
+public class BatchSearchService {
+
+    /** Nome da fase no perfil de execução */
+    public static final String PHASE_EMBEDDING = "embedding_batch";
+
+    private final DocEmbeddingJdbcRepository embeddingRepository;
+    private final EmbeddingProcessorInterface embeddingProcessor;
+    private final int maxQueries;
+    private final ExecutorService executor;
+
+    public BatchSearchService(DocEmbeddingJdbcRepository embeddingRepository,
+                              EmbeddingProcessorInterface embeddingProcessor,
+                              @Value("${rag.pesquisa.batch.max-queries:200}") int maxQueries,
+                              @Value("${rag.pesquisa.batch.embedding-concurrency:8}") int concurrency) {
+        this.embeddingRepository = embeddingRepository;
+        this.embeddingProcessor = embeddingProcessor;
+        this.maxQueries = maxQueries;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread t = new Thread(r, "batch-embedding");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Executes the queries.
+     *
+     * @param queries - query texts
+     * @param library - library whose embedding configuration embeds the queries
+     * @param libraryIds - libraries searched
+     * @param k - results per query
+     * @param semantic - semantic-only search (otherwise hybrid)
+     * @param pesoSemantico - semantic weight (hybrid)
+     * @param pesoTextual - textual weight (hybrid)
+     * @param profile - perfil de execução, ou null
+     * @return results of each query, in the order of <code>queries</code>
+     */
+    public List<List<DocumentEmbedding>> search(List<String> queries, LibraryDTO library, Integer[] libraryIds,
+                                                int k, boolean semantic, Float pesoSemantico, Float pesoTextual,
+                                                SearchProfile profile) {
+        if (queries.size() > maxQueries) {
+            throw new IllegalArgumentException("Máximo de " + maxQueries + " consultas por lote: " + queries.size());
+        }
+        Map<String, Integer> distinct = new LinkedHashMap<>();
+        for (String query : queries) {
+            distinct.putIfAbsent(query, distinct.size());
+        }
+        List<String> texts = new ArrayList<>(distinct.keySet());
+
+        List<float[]> vectors = SearchProfile.measure(profile, PHASE_EMBEDDING, () -> embed(texts, library));
+        if (profile != null) {
+            profile.getLastPhase().setRows(texts.size());
+            profile.getLastPhase().setDetail("queries=" + queries.size() + ", distinct=" + texts.size());
+        }
+
+        List<List<DocumentEmbedding>> results = embeddingRepository.pesquisaBatch(
+                vectors, semantic ? null : texts, libraryIds, k, pesoSemantico, pesoTextual, profile);
+
+        List<List<DocumentEmbedding>> ordered = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            ordered.add(results.get(distinct.get(query)));
+        }
+        return ordered;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private List<float[]> embed(List<String> texts, LibraryDTO library) {
+        List<CompletableFuture<float[]>> calls = texts.stream()
+                .map(text -> CompletableFuture.supplyAsync(
+                        () -> embeddingProcessor.createSearchEmbeddings(text, library), executor))
+                .toList();
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (int i = 0; i < calls.size(); i++) {
+            float[] vector = calls.get(i).join();
+            if (vector == null || vector.length == 0) {
+                throw new IllegalStateException("Falha ao gerar embedding da consulta: " + texts.get(i));
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+}
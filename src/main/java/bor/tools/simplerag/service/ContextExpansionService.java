@@ -0,0 +1,131 @@
+package bor.tools.simplerag.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.dto.ContextChunkDTO;
+import bor.tools.simplerag.dto.SearchProfile;
+import bor.tools.simplerag.dto.SearchResultDTO;
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.repository.ChapterRepository;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Context-window expansion of search results, server side.
+ *
+ * <p>Instead of one <code>findByCapituloId</code> round trip per hit to build
+ * the answer context, a search can ask for:</p>
+ * <ul>
+ *   <li><code>contextWindow = N</code>: the N chunks before and after each hit
+ *       in its chapter, read for all hits in a single windowed query
+ *       ({@link DocEmbeddingJdbcRepository#findNeighborWindows}). A chunk in
+ *       the window of several hits is returned once, with the best ranked hit;</li>
+ *   <li><code>contextChapter = true</code>: the full chapter text, once per
+ *       chapter (on its best ranked hit), read in one projection query.</li>
+ * </ul>
+ */
+@Service
+@RequiredArgsConstructor
+public class ContextExpansionService {
+
+    /** Nome da fase no perfil de execução */
+    public static final String PHASE_CONTEXT = "context";
+
+    /** Maximum neighbors on each side of a hit */
+    public static final int MAX_WINDOW = 10;
+
+    private final DocEmbeddingJdbcRepository embeddingRepository;
+    private final ChapterRepository chapterRepository;
+
+    /**
+     * True if the parameters request any expansion
+     */
+    public boolean isActive(Integer contextWindow, Boolean contextChapter) {
+        return Boolean.TRUE.equals(contextChapter) || (contextWindow != null && contextWindow > 0);
+    }
+
+    /**
+     * Expands the results in place: {@link SearchResultDTO#getContexto()} with
+     * the neighbor chunks, or {@link SearchResultDTO#getCapituloTexto()} with
+     * the chapter text (which makes the window redundant).
+     *
+     * @param results - search results in ranking order
+     * @param contextWindow - neighbors before and after each hit (0 to {@value #MAX_WINDOW})
+     * @param contextChapter - return the chapter text instead of a window
+     * @param profile - perfil de execução, ou null
+     */
+    public void expand(List<SearchResultDTO> results, Integer contextWindow, Boolean contextChapter,
+                       SearchProfile profile) {
+        if (contextWindow != null && (contextWindow < 0 || contextWindow > MAX_WINDOW)) {
+            throw new IllegalArgumentException("contextWindow deve estar entre 0 e " + MAX_WINDOW + ": " + contextWindow);
+        }
+        if (results.isEmpty() || !isActive(contextWindow, contextChapter)) {
+            return;
+        }
+        if (Boolean.TRUE.equals(contextChapter)) {
+            expandChapters(results, profile);
+        } else {
+            expandWindows(results, contextWindow, profile);
+        }
+    }
+
+    private void expandWindows(List<SearchResultDTO> results, int window, SearchProfile profile) {
+        Integer[] hitIds = results.stream()
+                                  .map(SearchResultDTO::getEmbeddingId)
+                                  .filter(id -> id != null)
+                                  .distinct()
+                                  .toArray(Integer[]::new);
+        Map<Integer, List<DocumentEmbedding>> windows = embeddingRepository.findNeighborWindows(hitIds, window,
+                                                                                                profile);
+        Set<Integer> done = new HashSet<>();
+        for (SearchResultDTO result : results) {
+            List<DocumentEmbedding> chunks = windows.get(result.getEmbeddingId());
+            if (chunks == null || !done.add(result.getEmbeddingId())) {
+                continue;
+            }
+            List<ContextChunkDTO> contexto = new ArrayList<>(chunks.size());
+            for (DocumentEmbedding chunk : chunks) {
+                // The hit itself is the result texto
+                if (!chunk.getId().equals(result.getEmbeddingId())) {
+                    contexto.add(ContextChunkDTO.from(chunk));
+                }
+            }
+            result.setContexto(contexto);
+        }
+    }
+
+    private void expandChapters(List<SearchResultDTO> results, SearchProfile profile) {
+        Set<Integer> chapterIds = new LinkedHashSet<>();
+        for (SearchResultDTO result : results) {
+            if (result.getCapituloId() != null) {
+                chapterIds.add(result.getCapituloId());
+            }
+        }
+        if (chapterIds.isEmpty()) {
+            return;
+        }
+        Map<Integer, String> textos = new HashMap<>();
+        SearchProfile.measure(profile, PHASE_CONTEXT, () -> {
+            chapterRepository.findConteudosByIdIn(chapterIds).forEach(c -> textos.put(c.getId(), c.getConteudo()));
+            return null;
+        });
+        if (profile != null) {
+            profile.getLastPhase().setRows(textos.size());
+        }
+        Set<Integer> done = new HashSet<>();
+        for (SearchResultDTO result : results) {
+            Integer chapterId = result.getCapituloId();
+            if (chapterId != null && done.add(chapterId)) {
+                result.setCapituloTexto(textos.get(chapterId));
+            }
+        }
+    }
+}
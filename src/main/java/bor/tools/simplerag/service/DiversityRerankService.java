@@ -0,0 +1,153 @@
+package bor.tools.simplerag.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.entity.MetaDoc;
+import bor.tools.simplerag.util.VectorUtil;
+
+/**
+ * Diversity re-ranking of search results: Maximal Marginal Relevance (MMR)
+ * and a cap of results per documento.
+ *
+ * <p>Adjacent chunks of the same article tend to score alike and fill the
+ * top-k with near duplicates. The search fetches
+ * <code>k * rag.pesquisa.mmr.candidate-factor</code> candidates (with their
+ * vectors) and this stage greedily selects k of them, each maximizing</p>
+ * <pre>
+ * lambda * relevance(d) - (1 - lambda) * max cos(d, s), s already selected
+ * </pre>
+ * <p>where relevance is the retrieval score (hybrid or semantic) scaled to
+ * [0, 1] over the candidates. <code>lambda = 1</code> keeps the retrieval
+ * order; lower values trade relevance for coverage. Candidates of a documento
+ * that already has <code>maxPerDocumento</code> results are skipped.</p>
+ *
+ * <p>Runs in memory over the candidate vectors, which are dropped from the
+ * returned results.</p>
+ */
+@Service
+public class DiversityRerankService {
+
+    /** Nome da fase no perfil de execução */
+    public static final String PHASE_MMR = "mmr";
+
+    private final int candidateFactor;
+
+    public DiversityRerankService(@Value("${rag.pesquisa.mmr.candidate-factor:4}") int candidateFactor) {
+        this.candidateFactor = Math.max(1, candidateFactor);
+    }
+
+    /**
+     * True if the parameters request any re-ranking
+     */
+    public boolean isActive(Float lambda, Integer maxPerDocumento) {
+        return (lambda != null && lambda < 1.0f) || (maxPerDocumento != null && maxPerDocumento > 0);
+    }
+
+    /**
+     * Number of candidates to retrieve for <code>k</code> results
+     */
+    public int candidateLimit(int k) {
+        return k * candidateFactor;
+    }
+
+    /**
+     * Selects up to <code>k</code> diverse results from the candidates.
+     *
+     * @param candidates - results in retrieval order, with embedding_vector for MMR
+     *        (candidates without vector count as not redundant)
+     * @param k - number of results
+     * @param lambda - relevance / diversity trade-off in [0, 1]; null for 1 (cap only)
+     * @param maxPerDocumento - maximum results per documento; null or 0 for no cap
+     * @return selected results in selection order, without vectors
+     */
+    public List<DocumentEmbedding> rerank(List<DocumentEmbedding> candidates, int k, Float lambda,
+                                          Integer maxPerDocumento) {
+        if (lambda != null && (lambda < 0.0f || lambda > 1.0f)) {
+            throw new IllegalArgumentException("mmrLambda deve estar entre 0 e 1: " + lambda);
+        }
+        double l = lambda != null ? lambda : 1.0;
+        int cap = maxPerDocumento != null && maxPerDocumento > 0 ? maxPerDocumento : Integer.MAX_VALUE;
+        int n = candidates.size();
+
+        double[] relevance = relevance(candidates);
+        float[][] vectors = new float[n][];
+        if (l < 1.0) {
+            for (int i = 0; i < n; i++) {
+                float[] v = candidates.get(i).getEmbeddingVector();
+                vectors[i] = v != null && v.length > 0 ? VectorUtil.normalize(v) : null;
+            }
+        }
+
+        // Highest cosine similarity of each candidate to the selected ones
+        double[] redundancy = new double[n];
+        boolean[] taken = new boolean[n];
+        Map<Integer, Integer> perDocumento = new HashMap<>();
+        List<DocumentEmbedding> selected = new ArrayList<>(Math.min(k, n));
+
+        while (selected.size() < k) {
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (taken[i] || perDocumento.getOrDefault(candidates.get(i).getDocumentoId(), 0) >= cap) {
+                    continue;
+                }
+                double value = l * relevance[i] - (1.0 - l) * redundancy[i];
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            taken[best] = true;
+            DocumentEmbedding chosen = candidates.get(best);
+            perDocumento.merge(chosen.getDocumentoId(), 1, Integer::sum);
+            selected.add(chosen);
+
+            if (vectors[best] != null) {
+                for (int i = 0; i < n; i++) {
+                    if (!taken[i] && vectors[i] != null) {
+                        redundancy[i] = Math.max(redundancy[i], VectorUtil.dotProduct(vectors[i], vectors[best]));
+                    }
+                }
+            }
+        }
+
+        for (DocumentEmbedding doc : candidates) {
+            doc.setEmbeddingVector(null);
+        }
+        return selected;
+    }
+
+    /**
+     * Retrieval scores (metadados.score) scaled to [0, 1]; candidates without
+     * score, or already ordered by {@link RerankService}, rank by position
+     */
+    static double[] relevance(List<DocumentEmbedding> candidates) {
+        int n = candidates.size();
+        double[] scores = new double[n];
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        boolean reranked = n > 0 && candidates.get(0).getMetadados() != null
+                           && candidates.get(0).getMetadados().containsKey(RerankService.SCORE_KEY);
+        for (int i = 0; i < n; i++) {
+            MetaDoc metadados = candidates.get(i).getMetadados();
+            Object score = metadados != null && !reranked ? metadados.get("score") : null;
+            scores[i] = score instanceof Number num ? num.doubleValue() : (double) (n - i) / n;
+            min = Math.min(min, scores[i]);
+            max = Math.max(max, scores[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            scores[i] = max > min ? (scores[i] - min) / (max - min) : 1.0;
+        }
+        return scores;
+    }
+}
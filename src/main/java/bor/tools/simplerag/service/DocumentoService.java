@@ -30,6 +30,7 @@ import bor.tools.simplerag.entity.enums.TipoConteudo;
 import bor.tools.simplerag.repository.ChapterRepository;
 import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
 import bor.tools.simplerag.repository.DocumentoRepository;
+import bor.tools.simplerag.util.AfterCommit;
 import bor.tools.splitter.AsyncSplitterService;
 import bor.tools.splitter.DocumentRouter;
 import bor.tools.utils.DocumentConverter;
@@ -76,6 +77,8 @@ public class DocumentoService {
     private final DocumentConverter documentConverter;
     private final DocumentRouter documentRouter;
     private final AsyncSplitterService asyncSplitterService;
+    private final TitleCacheService titleCacheService;
+    private final SearchResultCacheService searchResultCache;
 
     /**
      * Upload document from text content (Fluxo step a)
@@ -328,6 +331,7 @@ public class DocumentoService {
         // 4. Update document status
         documento.setTokensTotal(calculateTotalTokens(result));
         documentoRepository.save(documento);
+        evictCachesAfterCommit(documento);
 
         log.debug("Document {} fully processed and persisted", documento.getId());
     }
@@ -470,23 +474,54 @@ public class DocumentoService {
     }
 
     /**
-     * Update document status
+     * Update document status. The embeddings' denormalized vigente flag
+     * follows, so search excludes revoked documents without a join.
      */
     @Transactional
     public void updateStatus(Integer documentId, boolean flagVigente) {
         Documento documento = documentoRepository.findById(documentId)
                 .orElseThrow(() -> new IllegalArgumentException("Document not found: " + documentId));
         documento.setFlagVigente(flagVigente);
-        documentoRepository.save(documento);
+        saveStatus(documento);
         log.info("Updated document {} status to vigente={}", documentId, flagVigente);
     }
 
     /**
-     * Delete document (soft delete by setting flagVigente=false)
+     * Delete document (soft delete: flagVigente=false and deletedAt set,
+     * also on its embeddings)
      */
     @Transactional
     public void delete(Integer documentId) {
-        updateStatus(documentId, false);
+        Documento documento = documentoRepository.findById(documentId)
+                .orElseThrow(() -> new IllegalArgumentException("Document not found: " + documentId));
+        documento.setFlagVigente(false);
+        documento.markAsDeleted();
+        saveStatus(documento);
+        log.info("Deleted document {}", documentId);
+    }
+
+    /**
+     * Saves the document status and copies it to the embeddings' vigente /
+     * deleted columns, then evicts cached titles and search results
+     */
+    private void saveStatus(Documento documento) {
+        documentoRepository.save(documento);
+        embeddingRepository.updateLiveFlags(documento.getId(), documento.isVigente(), documento.isDeleted());
+        evictCachesAfterCommit(documento);
+    }
+
+    /**
+     * Evicts cached titles and bumps the library version of the result cache
+     * once the transaction commits. Evicting earlier would let a concurrent
+     * search cache pre-commit rows under the new version.
+     */
+    private void evictCachesAfterCommit(Documento documento) {
+        Integer documentoId = documento.getId();
+        Integer bibliotecaId = documento.getBibliotecaId();
+        AfterCommit.run(() -> {
+            titleCacheService.evictDocumento(documentoId);
+            searchResultCache.invalidateLibrary(bibliotecaId);
+        });
     }
 
     /**
@@ -0,0 +1,303 @@
+package bor.tools.simplerag.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.dto.IndexHealthDTO;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Background purge and index compaction of doc_embedding.
+ *
+ * <p>Soft-deleted embeddings (<code>deleted = true</code>) are kept for
+ * <code>rag.manutencao.retention-days</code> and then hard-deleted in small
+ * batches (<code>FOR UPDATE SKIP LOCKED</code>, one short transaction each),
+ * followed by <code>VACUUM (ANALYZE)</code> so their index entries are
+ * reclaimed. Embeddings of revoked documents (<code>vigente = false</code>) are
+ * purged only when <code>rag.manutencao.revoked-retention-days</code> is set.</p>
+ *
+ * <p>HNSW graphs, IVFFlat lists and GIN posting trees degrade with churn even
+ * after vacuum (unreachable graph regions, lists trained on old data). Once the
+ * rows updated or deleted since the last reindex exceed
+ * <code>rag.manutencao.reindex-churn-ratio</code> of the live rows, the ANN and
+ * GIN indexes are rebuilt with <code>REINDEX INDEX CONCURRENTLY</code> (which
+ * also retrains IVFFlat lists) without blocking searches or ingestion. The churn
+ * baseline is kept in memory: after a restart the first run only records it.</p>
+ *
+ * <p>Runs hold a session-level advisory lock, so only one instance maintains
+ * the table at a time. Health report: <code>GET /api/v1/search/index/health</code>.</p>
+ */
+@Service
+@Slf4j
+public class EmbeddingMaintenanceService {
+
+    /** Advisory lock key of the maintenance run ("jsrag-mnt") */
+    static final long LOCK_KEY = 0x6A737261676DL;
+
+    static final String SQL_TRY_LOCK = "SELECT pg_try_advisory_lock(?)";
+
+    static final String SQL_UNLOCK = "SELECT pg_advisory_unlock(?)";
+
+    /**
+     * One batch of soft-deleted embeddings past the retention period
+     * (partial index idx_embedding_dead, changelog 020)
+     */
+    static final String SQL_PURGE_DELETED = """
+            DELETE FROM doc_embedding
+            WHERE id IN (
+                SELECT id FROM doc_embedding
+                WHERE deleted
+                AND coalesce(deleted_at, updated_at, created_at) < now() - make_interval(days => ?)
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            """;
+
+    /**
+     * One batch of embeddings of documents revoked before the retention period
+     */
+    static final String SQL_PURGE_REVOKED = """
+            DELETE FROM doc_embedding
+            WHERE id IN (
+                SELECT id FROM doc_embedding
+                WHERE NOT vigente AND NOT deleted
+                AND coalesce(updated_at, created_at) < now() - make_interval(days => ?)
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            """;
+
+    static final String SQL_VACUUM = "VACUUM (ANALYZE) doc_embedding";
+
+    static final String SQL_TABLE_STATS = """
+            SELECT n_live_tup, n_dead_tup, n_tup_upd + n_tup_del AS churn,
+                   greatest(last_vacuum, last_autovacuum) AS last_vacuum,
+                   greatest(last_analyze, last_autoanalyze) AS last_analyze
+            FROM pg_stat_user_tables
+            WHERE relid = 'doc_embedding'::regclass
+            """;
+
+    static final String SQL_PENDING = """
+            SELECT count(*) FILTER (WHERE deleted) AS deleted_rows,
+                   count(*) FILTER (WHERE NOT vigente AND NOT deleted) AS revoked_rows
+            FROM doc_embedding
+            WHERE deleted OR NOT vigente
+            """;
+
+    /**
+     * Indexes of doc_embedding. <code>indexrelid::regclass</code> yields a
+     * quoted (and schema-qualified when needed) name, safe to use in REINDEX.
+     */
+    static final String SQL_INDEXES = """
+            SELECT i.indexrelid::regclass::text AS name,
+                   am.amname AS method,
+                   pg_relation_size(i.indexrelid) AS size_bytes,
+                   coalesce(s.idx_scan, 0) AS scans,
+                   i.indisvalid AS valid,
+                   pg_get_expr(i.indpred, i.indrelid) AS predicate
+            FROM pg_index i
+            JOIN pg_class c ON c.oid = i.indexrelid
+            JOIN pg_am am ON am.oid = c.relam
+            LEFT JOIN pg_stat_user_indexes s ON s.indexrelid = i.indexrelid
+            WHERE i.indrelid = 'doc_embedding'::regclass
+            ORDER BY 1
+            """;
+
+    /** Index methods rebuilt by compaction */
+    static final List<String> REINDEX_METHODS = List.of("hnsw", "ivfflat", "gin");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int retentionDays;
+    private final int revokedRetentionDays;
+    private final int batchSize;
+    private final int maxBatches;
+    private final double reindexChurnRatio;
+
+    /** n_tup_upd + n_tup_del at the last reindex (or first observation) */
+    private volatile Long churnBaseline;
+    private volatile LocalDateTime lastRunAt;
+    private volatile Long lastPurgedRows;
+    private volatile LocalDateTime lastReindexAt;
+
+    public EmbeddingMaintenanceService(JdbcTemplate jdbcTemplate,
+                                       @Value("${rag.manutencao.enabled:true}") boolean enabled,
+                                       @Value("${rag.manutencao.retention-days:30}") int retentionDays,
+                                       @Value("${rag.manutencao.revoked-retention-days:0}") int revokedRetentionDays,
+                                       @Value("${rag.manutencao.batch-size:1000}") int batchSize,
+                                       @Value("${rag.manutencao.max-batches:100}") int maxBatches,
+                                       @Value("${rag.manutencao.reindex-churn-ratio:0.2}") double reindexChurnRatio) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.retentionDays = retentionDays;
+        this.revokedRetentionDays = revokedRetentionDays;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.reindexChurnRatio = reindexChurnRatio;
+    }
+
+    /**
+     * Scheduled maintenance run. Interval: rag.manutencao.interval-ms.
+     */
+    @Scheduled(fixedDelayString = "${rag.manutencao.interval-ms:3600000}",
+               initialDelayString = "${rag.manutencao.interval-ms:3600000}")
+    public void runMaintenance() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            // VACUUM and REINDEX CONCURRENTLY cannot run in a transaction: one
+            // auto-commit session, which also owns the advisory lock
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                JdbcTemplate session = new JdbcTemplate(new SingleConnectionDataSource(con, true));
+                if (!Boolean.TRUE.equals(session.queryForObject(SQL_TRY_LOCK, Boolean.class, LOCK_KEY))) {
+                    log.debug("Embedding maintenance running on another instance");
+                    return null;
+                }
+                try {
+                    maintain(session);
+                } finally {
+                    session.queryForObject(SQL_UNLOCK, Boolean.class, LOCK_KEY);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Embedding maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Purge, vacuum and, past the churn threshold, reindex
+     *
+     * @param session - auto-commit session holding the advisory lock
+     */
+    void maintain(JdbcTemplate session) {
+        long start = System.currentTimeMillis();
+        long purged = purge(session, SQL_PURGE_DELETED, retentionDays);
+        if (revokedRetentionDays > 0) {
+            purged += purge(session, SQL_PURGE_REVOKED, revokedRetentionDays);
+        }
+        if (purged > 0) {
+            session.execute(SQL_VACUUM);
+        }
+
+        Map<String, Object> stats = tableStats(session);
+        if (stats != null) {
+            long churn = asLong(stats.get("churn"));
+            Long baseline = churnBaseline;
+            if (baseline == null || churn < baseline) {
+                // first run of this instance, or statistics reset
+                churnBaseline = churn;
+            } else if (churnRatio(churn - baseline, asLong(stats.get("n_live_tup"))) >= reindexChurnRatio) {
+                reindex(session);
+                churnBaseline = churn;
+                lastReindexAt = LocalDateTime.now();
+            }
+        }
+        lastPurgedRows = purged;
+        lastRunAt = LocalDateTime.now();
+        log.info("Embedding maintenance: {} rows purged in {}ms", purged, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Health of doc_embedding and its indexes
+     */
+    public IndexHealthDTO getHealth() {
+        IndexHealthDTO.IndexHealthDTOBuilder health = IndexHealthDTO.builder()
+                .lastRunAt(lastRunAt)
+                .lastPurgedRows(lastPurgedRows)
+                .lastReindexAt(lastReindexAt);
+
+        Map<String, Object> stats = tableStats(jdbcTemplate);
+        if (stats != null) {
+            long live = asLong(stats.get("n_live_tup"));
+            long dead = asLong(stats.get("n_dead_tup"));
+            Long baseline = churnBaseline;
+            health.liveRows(live)
+                  .deadRows(dead)
+                  .deadRatio(live + dead > 0 ? (double) dead / (live + dead) : 0.0)
+                  .churnRatio(baseline != null ? churnRatio(asLong(stats.get("churn")) - baseline, live) : null)
+                  .lastVacuum(asDateTime(stats.get("last_vacuum")))
+                  .lastAnalyze(asDateTime(stats.get("last_analyze")));
+        }
+
+        Map<String, Object> pending = jdbcTemplate.queryForMap(SQL_PENDING);
+        health.deletedRows(asLong(pending.get("deleted_rows")))
+              .revokedRows(asLong(pending.get("revoked_rows")));
+
+        health.indexes(jdbcTemplate.query(SQL_INDEXES, (rs, rowNum) -> IndexHealthDTO.IndexStats.builder()
+                .name(rs.getString("name"))
+                .method(rs.getString("method"))
+                .sizeBytes(rs.getLong("size_bytes"))
+                .scans(rs.getLong("scans"))
+                .valid(rs.getBoolean("valid"))
+                .predicate(rs.getString("predicate"))
+                .build()));
+        return health.build();
+    }
+
+    /**
+     * Deletes in batches until a short batch or <code>rag.manutencao.max-batches</code>
+     */
+    private long purge(JdbcTemplate session, String sql, int days) {
+        long total = 0;
+        for (int i = 0; i < maxBatches; i++) {
+            int rows = session.update(sql, days, batchSize);
+            total += rows;
+            if (rows < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Rebuilds the valid ANN and GIN indexes, one at a time. Invalid indexes
+     * (failed concurrent builds) are only reported.
+     */
+    private void reindex(JdbcTemplate session) {
+        List<Map<String, Object>> indexes = session.queryForList(SQL_INDEXES);
+        for (Map<String, Object> index : indexes) {
+            String name = (String) index.get("name");
+            if (!REINDEX_METHODS.contains(index.get("method"))) {
+                continue;
+            }
+            if (!Boolean.TRUE.equals(index.get("valid"))) {
+                log.warn("Index {} is invalid (failed concurrent build): drop it manually", name);
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            session.execute("REINDEX INDEX CONCURRENTLY " + name);
+            log.info("Reindexed {} in {}ms", name, System.currentTimeMillis() - start);
+        }
+    }
+
+    private static Map<String, Object> tableStats(JdbcTemplate template) {
+        List<Map<String, Object>> rows = template.queryForList(SQL_TABLE_STATS);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Changed rows relative to the live rows
+     */
+    static double churnRatio(long changed, long live) {
+        return (double) Math.max(0, changed) / Math.max(1, live);
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number n ? n.longValue() : 0L;
+    }
+
+    private static LocalDateTime asDateTime(Object value) {
+        return value instanceof Timestamp t ? t.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,424 @@
+package bor.tools.simplerag.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.entity.MetaBiblioteca;
+import bor.tools.simplerag.util.HnswIndex;
+import bor.tools.simplerag.util.HnswSnapshot;
+import bor.tools.simplerag.util.VectorCodec;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-process HNSW indexes for "hot" libraries, with PostgreSQL as the source of truth.
+ *
+ * <p>Libraries with <code>metadados.in_memory_index = true</code> get an
+ * {@link HnswIndex} (vectors off-heap) built in background from doc_embedding,
+ * when the library config snapshot is (re)loaded, i.e. at startup and after
+ * library changes. Until an index is ready, searches use SQL.</p>
+ *
+ * <p>The ingestion path ({@link bor.tools.simplerag.repository.DocEmbeddingJdbcRepository}
+ * save/update/delete) keeps loaded indexes current, after the transaction
+ * commits.</p>
+ *
+ * <p>An index is rebuilt in background, while the previous one keeps serving,
+ * once removed entries exceed {@code rag.pesquisa.hnsw.max-deleted-ratio}.</p>
+ *
+ * <p>With {@code rag.pesquisa.hnsw.snapshot-dir} set, indexes are saved as
+ * {@link HnswSnapshot} files (periodically when changed, after each load and at
+ * shutdown) and a restart maps the snapshot instead of rebuilding. A snapshot
+ * is used only if no embedding up to its max id was created, updated or
+ * removed after it was taken; newer ids are then read from the database.
+ * Otherwise the index is rebuilt.</p>
+ *
+ * <p>Disabled unless <code>rag.pesquisa.hnsw.enabled=true</code>.</p>
+ */
+@Service
+@Slf4j
+public class InMemoryVectorIndexService {
+
+    /** Default dimension when the library does not configure one (doc_embedding.embedding_vector) */
+    static final int DEFAULT_DIMENSION = 768;
+
+    static final String SQL_LOAD_PAGE = """
+            SELECT id, vector_send(embedding_vector) AS embedding_vector_bin
+            FROM doc_embedding
+            WHERE library_id = ? AND id > ? AND embedding_vector IS NOT NULL AND vigente AND NOT deleted
+            ORDER BY id
+            LIMIT ?
+            """;
+
+    /**
+     * Embeddings up to the snapshot max id: count, and how many changed after
+     * the snapshot was taken
+     */
+    static final String SQL_SNAPSHOT_CHECK = """
+            SELECT count(*) AS n,
+                   count(*) FILTER (WHERE coalesce(updated_at, created_at) > ?) AS changed
+            FROM doc_embedding
+            WHERE library_id = ? AND id <= ? AND embedding_vector IS NOT NULL AND vigente AND NOT deleted
+            """;
+
+    /**
+     * Snapshot watermark, with a margin for transactions that were in flight
+     * (their timestamps precede their commit)
+     */
+    static final String SQL_SNAPSHOT_WATERMARK = "SELECT now() - interval '1 minute'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double maxDeletedRatio;
+    private final int loadPageSize;
+    private final Path snapshotDir;
+
+    private final Map<Integer, LibraryIndex> indexes = new ConcurrentHashMap<>();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "hnsw-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Index of one library: <code>current</code> serves searches, <code>building</code>
+     * is the index being (re)loaded. Writes go to both; writes and the swap of
+     * building into current synchronize on this object.
+     */
+    static final class LibraryIndex {
+        final int dimension;
+        volatile HnswIndex current;
+        volatile HnswIndex building;
+        /** Changed since the last snapshot */
+        volatile boolean dirty;
+
+        LibraryIndex(int dimension) {
+            this.dimension = dimension;
+        }
+    }
+
+    public InMemoryVectorIndexService(JdbcTemplate jdbcTemplate,
+                                      @Value("${rag.pesquisa.hnsw.enabled:false}") boolean enabled,
+                                      @Value("${rag.pesquisa.hnsw.m:16}") int m,
+                                      @Value("${rag.pesquisa.hnsw.ef-construction:100}") int efConstruction,
+                                      @Value("${rag.pesquisa.hnsw.ef-search:64}") int efSearch,
+                                      @Value("${rag.pesquisa.hnsw.max-deleted-ratio:0.3}") double maxDeletedRatio,
+                                      @Value("${rag.pesquisa.hnsw.load-page-size:5000}") int loadPageSize,
+                                      @Value("${rag.pesquisa.hnsw.snapshot-dir:}") String snapshotDir) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.maxDeletedRatio = maxDeletedRatio;
+        this.loadPageSize = loadPageSize;
+        this.snapshotDir = snapshotDir == null || snapshotDir.isBlank() ? null : Paths.get(snapshotDir);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Aligns the set of indexed libraries with the library configs: starts
+     * loading newly flagged libraries and drops the ones no longer flagged.
+     *
+     * @param configs - snapshot of library metadados by id
+     */
+    public void sync(Map<Integer, MetaBiblioteca> configs) {
+        if (!enabled) {
+            return;
+        }
+        for (Map.Entry<Integer, MetaBiblioteca> e : configs.entrySet()) {
+            if (e.getValue().isInMemoryIndex() && !indexes.containsKey(e.getKey())) {
+                Integer dim = e.getValue().getEmbeddingDimension();
+                LibraryIndex li = new LibraryIndex(dim != null && dim > 0 ? dim : DEFAULT_DIMENSION);
+                if (indexes.putIfAbsent(e.getKey(), li) == null) {
+                    scheduleLoad(e.getKey(), li, true);
+                }
+            }
+        }
+        indexes.keySet().removeIf(id -> {
+            MetaBiblioteca config = configs.get(id);
+            boolean drop = config == null || !config.isInMemoryIndex();
+            if (drop) {
+                log.info("Dropping in-memory index of library {}", id);
+            }
+            return drop;
+        });
+    }
+
+    /**
+     * True if every library has a loaded index
+     */
+    public boolean isReady(Integer[] libraryIds) {
+        if (!enabled || libraryIds == null || libraryIds.length == 0) {
+            return false;
+        }
+        for (Integer id : libraryIds) {
+            LibraryIndex li = indexes.get(id);
+            if (li == null || li.current == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * k nearest neighbors (L2) across the given libraries, which must be
+     * {@link #isReady(Integer[]) ready}.
+     *
+     * @return results ordered by ascending distance; libraries without a loaded
+     *         index contribute nothing
+     */
+    public List<HnswIndex.Result> search(Integer[] libraryIds, float[] query, int k) {
+        List<HnswIndex.Result> merged = new ArrayList<>();
+        for (Integer id : libraryIds) {
+            LibraryIndex li = indexes.get(id);
+            HnswIndex index = li != null ? li.current : null;
+            if (index != null && index.getDimension() == query.length) {
+                merged.addAll(index.search(query, k, efSearch));
+            }
+        }
+        if (libraryIds.length > 1) {
+            merged.sort(Comparator.comparingDouble(HnswIndex.Result::getDistance));
+        }
+        return merged.size() > k ? merged.subList(0, k) : merged;
+    }
+
+    /**
+     * Inserts or replaces an embedding in the index of its library, if any
+     */
+    public void onUpsert(Integer libraryId, Integer id, float[] vector) {
+        if (libraryId == null || id == null || vector == null) {
+            return;
+        }
+        LibraryIndex li = indexes.get(libraryId);
+        if (li == null) {
+            return;
+        }
+        if (vector.length != li.dimension) {
+            log.warn("Embedding {} has dimension {}, in-memory index of library {} expects {}",
+                     id, vector.length, libraryId, li.dimension);
+            return;
+        }
+        synchronized (li) {
+            add(li.current, id, vector);
+            add(li.building, id, vector);
+            li.dirty = true;
+        }
+    }
+
+    /**
+     * Removes an embedding from every index
+     */
+    public void onDelete(Integer id) {
+        if (id == null) {
+            return;
+        }
+        indexes.forEach((libraryId, li) -> {
+            synchronized (li) {
+                HnswIndex current = li.current;
+                HnswIndex building = li.building;
+                boolean removed = (current != null && current.remove(id)) | (building != null && building.remove(id));
+                li.dirty |= removed;
+                if (removed && current != null && building == null
+                        && current.getDeletedCount() > maxDeletedRatio * Math.max(1, current.size())) {
+                    log.info("In-memory index of library {} has {} removed entries, rebuilding",
+                             libraryId, current.getDeletedCount());
+                    scheduleLoad(libraryId, li, false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuilds every index from the database (e.g. after bulk deletes)
+     */
+    public void reloadAll() {
+        indexes.forEach((libraryId, li) -> scheduleLoad(libraryId, li, false));
+    }
+
+    /**
+     * Live vectors per indexed library (0 while loading)
+     */
+    public Map<Integer, Integer> getSizes() {
+        Map<Integer, Integer> sizes = new TreeMap<>();
+        indexes.forEach((id, li) -> sizes.put(id, li.current != null ? li.current.size() : 0));
+        return sizes;
+    }
+
+    /**
+     * Writes snapshots of the indexes changed since their last snapshot
+     */
+    @Scheduled(fixedDelayString = "${rag.pesquisa.hnsw.snapshot-interval-ms:600000}",
+               initialDelayString = "${rag.pesquisa.hnsw.snapshot-interval-ms:600000}")
+    public void writeSnapshots() {
+        if (!enabled || snapshotDir == null) {
+            return;
+        }
+        indexes.forEach((libraryId, li) -> {
+            if (li.dirty && li.current != null && li.building == null) {
+                writeSnapshot(libraryId, li, li.current);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+        writeSnapshots();
+    }
+
+    private static void add(HnswIndex index, Integer id, float[] vector) {
+        if (index != null) {
+            index.add(id, vector);
+        }
+    }
+
+    /**
+     * @param fromSnapshot - try the library snapshot first (warm start); false to
+     *        rebuild from the database
+     */
+    private void scheduleLoad(Integer libraryId, LibraryIndex li, boolean fromSnapshot) {
+        synchronized (li) {
+            if (li.building != null) {
+                return;
+            }
+            li.building = new HnswIndex(li.dimension, m, efConstruction);
+        }
+        loader.submit(() -> load(libraryId, li, fromSnapshot));
+    }
+
+    private Path snapshotFile(Integer libraryId) {
+        return snapshotDir.resolve("library-" + libraryId + ".hnsw");
+    }
+
+    /**
+     * Opens the library snapshot if it exists and still matches doc_embedding
+     *
+     * @return the snapshot, or null to rebuild from the database
+     */
+    private HnswSnapshot openSnapshot(Integer libraryId, LibraryIndex li) {
+        Path file = snapshotFile(libraryId);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            HnswSnapshot snapshot = HnswSnapshot.read(file);
+            HnswIndex index = snapshot.getIndex();
+            if (snapshot.getLibraryId() != libraryId || index.getDimension() != li.dimension
+                    || index.getM() != m || index.getEfConstruction() != efConstruction) {
+                log.info("Snapshot {} does not match library {} settings, rebuilding", file, libraryId);
+                return null;
+            }
+            Map<String, Object> check = jdbcTemplate.queryForMap(SQL_SNAPSHOT_CHECK,
+                    new Timestamp(snapshot.getTakenAt()), libraryId, snapshot.getMaxId());
+            long n = ((Number) check.get("n")).longValue();
+            long changed = ((Number) check.get("changed")).longValue();
+            if (n != snapshot.getLiveCount() || changed > 0) {
+                log.info("Snapshot {} is stale ({} embeddings vs {}, {} changed), rebuilding",
+                         file, n, snapshot.getLiveCount(), changed);
+                return null;
+            }
+            return snapshot;
+        } catch (IOException e) {
+            log.warn("Ignoring snapshot {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of an index, stamped with a database-side watermark
+     * taken before the write
+     */
+    private void writeSnapshot(Integer libraryId, LibraryIndex li, HnswIndex index) {
+        try {
+            Timestamp takenAt = jdbcTemplate.queryForObject(SQL_SNAPSHOT_WATERMARK, Timestamp.class);
+            li.dirty = false;
+            Files.createDirectories(snapshotDir);
+            long start = System.currentTimeMillis();
+            HnswSnapshot.write(index, libraryId, takenAt.getTime(), snapshotFile(libraryId));
+            log.debug("Snapshot of library {} written in {} ms", libraryId, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            li.dirty = true;
+            log.warn("Failed to write snapshot of library {}: {}", libraryId, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the library embeddings in id order, one page at a time (bounded
+     * driver memory), into <code>li.building</code> and then publishes it.
+     * With a valid snapshot, only ids above the snapshot max id are read.
+     */
+    private void load(Integer libraryId, LibraryIndex li, boolean fromSnapshot) {
+        long start = System.currentTimeMillis();
+        try {
+            int[] lastId = { 0 };
+            HnswSnapshot snapshot = fromSnapshot && snapshotDir != null ? openSnapshot(libraryId, li) : null;
+            if (snapshot != null) {
+                synchronized (li) {
+                    // Keep the writes the ingestion path made meanwhile
+                    HnswIndex restored = snapshot.getIndex();
+                    li.building.forEach(restored::add);
+                    li.building = restored;
+                }
+                lastId[0] = snapshot.getMaxId();
+            }
+            HnswIndex target = li.building;
+            int previous;
+            do {
+                previous = lastId[0];
+                jdbcTemplate.query(SQL_LOAD_PAGE, rs -> {
+                    int id = rs.getInt("id");
+                    float[] vector = VectorCodec.decode(rs.getBytes("embedding_vector_bin"));
+                    if (vector != null && vector.length == li.dimension) {
+                        // Entries written by the ingestion path meanwhile are newer: keep them
+                        synchronized (li) {
+                            if (!target.contains(id)) {
+                                target.add(id, vector);
+                            }
+                        }
+                    }
+                    lastId[0] = id;
+                }, libraryId, lastId[0], loadPageSize);
+            } while (lastId[0] != previous && indexes.get(libraryId) == li);
+
+            synchronized (li) {
+                li.current = target;
+                li.building = null;
+            }
+            log.info("In-memory index of library {} loaded{}: {} vectors, {} MiB off-heap, {} ms",
+                     libraryId, snapshot != null ? " from snapshot" : "", target.size(),
+                     target.getOffHeapBytes() >> 20, System.currentTimeMillis() - start);
+            boolean changed = snapshot == null || li.dirty || target.size() != snapshot.getLiveCount();
+            if (snapshotDir != null && changed && indexes.get(libraryId) == li) {
+                writeSnapshot(libraryId, li, target);
+            }
+        } catch (RuntimeException e) {
+            synchronized (li) {
+                li.building = null;
+            }
+            log.error("Failed to load in-memory index of library {}: {}", libraryId, e.getMessage(), e);
+        }
+    }
+}
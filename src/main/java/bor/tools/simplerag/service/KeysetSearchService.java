@@ -0,0 +1,150 @@
+package bor.tools.simplerag.service;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.dto.MetadataFilter;
+import bor.tools.simplerag.dto.SearchCursor;
+import bor.tools.simplerag.dto.SearchProfile;
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository.KeysetPage;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cursor-based (keyset) pagination of semantic, textual and hybrid search.
+ *
+ * <p>Each page ends with an opaque {@link SearchCursor} (last score and id,
+ * plus the query vector); the next request resumes after that position, so
+ * no row is skipped or repeated and no previous page is transferred. Pages are
+ * not free at depth, though:</p>
+ * <ul>
+ * <li>semantic: the HNSW scan (strict order) walks past the previous pages
+ *     again, O(depth);</li>
+ * <li>textual: every match of the query is ranked, O(matches);</li>
+ * <li>hybrid: both RRF candidate lists have
+ *     <code>rag.pesquisa.cursor.max-depth</code> rows on every page, so the
+ *     fused ranking is identical across pages, O(max-depth).</li>
+ * </ul>
+ * <p>Semantic and hybrid pagination stop at <code>rag.pesquisa.cursor.max-depth</code>.</p>
+ */
+@Service
+@Slf4j
+public class KeysetSearchService {
+
+    public static final String TIPO_HYBRID = "hybrid";
+    public static final String TIPO_SEMANTIC = "semantic";
+    public static final String TIPO_TEXTUAL = "textual";
+
+    /** Nome da fase no perfil de execução */
+    public static final String PHASE_EMBEDDING = "embedding";
+
+    private final DocEmbeddingJdbcRepository embeddingRepository;
+    private final int maxDepth;
+
+    /**
+     * One page of results and the cursor of the next one
+     */
+    @Getter
+    public static final class Page {
+        private final List<DocumentEmbedding> results;
+        /** Token of the next page, or null when this is the last page */
+        private final String nextCursor;
+
+        Page(List<DocumentEmbedding> results, String nextCursor) {
+            this.results = results;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    public KeysetSearchService(DocEmbeddingJdbcRepository embeddingRepository,
+                               @Value("${rag.pesquisa.cursor.max-depth:1000}") int maxDepth) {
+        this.embeddingRepository = embeddingRepository;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Whether a request asks for cursor pagination
+     */
+    public static boolean isActive(Boolean paginate, String cursor) {
+        return Boolean.TRUE.equals(paginate) || (cursor != null && !cursor.isBlank());
+    }
+
+    /**
+     * Executes one page of a search.
+     *
+     * @param tipo - {@link #TIPO_HYBRID}, {@link #TIPO_SEMANTIC} or {@link #TIPO_TEXTUAL}
+     * @param query - query text
+     * @param libraryIds - libraries searched
+     * @param limit - page size
+     * @param pesoSemantico - semantic weight (hybrid)
+     * @param pesoTextual - textual weight (hybrid)
+     * @param filter - metadados filter, or null
+     * @param token - cursor of a previous page, or null for the first page
+     * @param embedder - query embedding, called only on the first page
+     * @param profile - perfil de execução, ou null
+     * @throws IllegalArgumentException if the cursor is malformed or belongs to another search
+     */
+    public Page search(String tipo, String query, Integer[] libraryIds, Integer limit,
+                       Float pesoSemantico, Float pesoTextual, MetadataFilter filter, String token,
+                       Supplier<float[]> embedder, SearchProfile profile) {
+        int k = limit != null && limit > 0 ? limit : 10;
+        boolean hybrid = TIPO_HYBRID.equals(tipo);
+        int fingerprint = SearchCursor.fingerprint(tipo, query, libraryIds,
+                                                   hybrid ? pesoSemantico : null, hybrid ? pesoTextual : null,
+                                                   filter);
+
+        SearchCursor after = null;
+        if (token != null && !token.isBlank()) {
+            after = SearchCursor.decode(token);
+            if (!tipo.equals(after.getTipo()) || after.getFingerprint() != fingerprint) {
+                throw new IllegalArgumentException("Cursor não corresponde a esta pesquisa");
+            }
+        }
+        int depth = after != null ? after.getDepth() : 0;
+        if (!TIPO_TEXTUAL.equals(tipo) && depth + k > maxDepth) {
+            throw new IllegalArgumentException("Profundidade máxima da paginação: " + maxDepth);
+        }
+
+        float[] vector = null;
+        if (!TIPO_TEXTUAL.equals(tipo)) {
+            vector = after != null && after.getVector() != null
+                    ? after.getVector()
+                    : SearchProfile.measure(profile, PHASE_EMBEDDING, embedder);
+            if (vector == null || vector.length == 0) {
+                throw new IllegalStateException("Falha ao gerar embedding da consulta: " + query);
+            }
+        }
+
+        KeysetPage page = switch (tipo) {
+            case TIPO_HYBRID -> embeddingRepository.pesquisaHibridaKeyset(vector, query, libraryIds, k, maxDepth,
+                    pesoSemantico, pesoTextual, filter, after, profile);
+            case TIPO_SEMANTIC -> embeddingRepository.pesquisaSemanticaKeyset(vector, libraryIds, k, filter, after,
+                                                                              profile);
+            case TIPO_TEXTUAL -> embeddingRepository.pesquisaTextualKeyset(query, libraryIds, k, filter, after,
+                                                                          profile);
+            default -> throw new IllegalArgumentException("Tipo de pesquisa inválido: " + tipo);
+        };
+
+        String next = null;
+        if (page.getResults().size() == k) {
+            next = SearchCursor.builder()
+                    .tipo(tipo)
+                    .fingerprint(fingerprint)
+                    .lastKey(page.getLastKey())
+                    .lastId(page.getLastId())
+                    .depth(depth + k)
+                    .rrfK(after != null ? after.getRrfK() : k)
+                    .vector(vector)
+                    .build()
+                    .encode();
+        }
+        log.debug("Keyset page: tipo={}, depth={}, results={}, last={}",
+                  tipo, depth, page.getResults().size(), next == null);
+        return new Page(page.getResults(), next);
+    }
+}
@@ -18,9 +18,11 @@ import bor.tools.simplerag.dto.UserLibraryDTO;
 import bor.tools.simplerag.entity.Library;
 import bor.tools.simplerag.entity.User;
 import bor.tools.simplerag.entity.UserLibrary;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
 import bor.tools.simplerag.repository.LibraryRepository;
 import bor.tools.simplerag.repository.UserLibraryRepository;
 import bor.tools.simplerag.repository.UserRepository;
+import bor.tools.simplerag.util.AfterCommit;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -105,6 +107,8 @@ public class LibraryService {
     private final LibraryRepository libraryRepository;
     private final UserLibraryRepository userLibraryRepository;
     private final UserRepository userRepository;
+    private final SearchResultCacheService searchResultCache;
+    private final DocEmbeddingJdbcRepository embeddingRepository;
 
     /**
      * Save (create or update) library
@@ -133,6 +137,7 @@ public class LibraryService {
         }
 
         Library saved = libraryRepository.save(library);
+        invalidateAfterCommit(saved.getId());
         return LibraryDTO.from(saved);
     }
 
@@ -162,6 +167,20 @@ public class LibraryService {
             libraryRepository.save(library);
             log.info("Library soft deleted: {}", library.getNome());
         }
+        invalidateAfterCommit(library.getId());
+    }
+
+    /**
+     * Bumps the library version of the result cache and expires the embedding
+     * config snapshot once the transaction commits. Expiring earlier would let a
+     * concurrent search reload the pre-commit metadados and keep them until the
+     * snapshot expires again.
+     */
+    private void invalidateAfterCommit(Integer libraryId) {
+        AfterCommit.run(() -> {
+            searchResultCache.invalidateLibrary(libraryId);
+            embeddingRepository.invalidateLibraryConfig();
+        });
     }
 
     /**
@@ -0,0 +1,609 @@
+package bor.tools.simplerag.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.pt.PortugueseAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import bor.tools.simplerag.entity.MetaBiblioteca;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Embedded Lucene (BM25) lexical indexes, with PostgreSQL as the source of truth.
+ *
+ * <p>Libraries with <code>metadados.text_engine = lucene</code> get an index
+ * built in background from the live rows of doc_embedding when the library
+ * config snapshot is (re)loaded. Until it is ready, hybrid search ranks the
+ * textual leg with <code>ts_rank_cd</code> in SQL.</p>
+ *
+ * <p>Documents are analyzed with {@link PortugueseAnalyzer}. Each source of
+ * <code>text_search_tsv</code> (changelog 003) is a field whose boost is the
+ * <code>ts_rank_cd</code> weight of its class (A=1.0, B=0.4, C=0.2, D=0.1),
+ * so the relative importance of title, description, content and authorship
+ * is preserved. Queries are a bag of terms; words prefixed with <code>-</code>
+ * are exclusions, as in <code>websearch_to_tsquery</code>.</p>
+ *
+ * <p>The ingestion path ({@link bor.tools.simplerag.repository.DocEmbeddingJdbcRepository}
+ * save/update/delete/updateLiveFlags) keeps loaded indexes current; changes
+ * become searchable after the transaction commits, at the next refresh
+ * (<code>rag.pesquisa.lucene.refresh-ms</code>).</p>
+ *
+ * <p>With <code>rag.pesquisa.lucene.dir</code> empty the indexes live on the
+ * heap; otherwise in one directory per library (memory mapped), rebuilt at
+ * startup.</p>
+ *
+ * <p>Disabled unless <code>rag.pesquisa.lucene.enabled=true</code>.</p>
+ */
+@Service
+@Slf4j
+public class LuceneTextIndexService {
+
+    static final String FIELD_ID = "id";
+    static final String FIELD_TEXTO = "texto";
+
+    /**
+     * Metadados keys of text_search_tsv and their ts_rank_cd weights
+     */
+    static final Map<String, Float> METADATA_WEIGHTS = Map.of(
+            "nome", 1.0f,              // A
+            "capitulo", 1.0f,          // A
+            "descricao", 0.4f,         // B
+            "area_conhecimento", 0.2f, // C
+            "palavras_chave", 0.2f,    // C
+            "autor", 0.1f,             // D
+            "metadados", 0.1f);        // D
+
+    /** Weight of texto (class C) */
+    static final float TEXTO_WEIGHT = 0.2f;
+
+    /**
+     * Distinct query terms used; keeps the query below the clause limit of
+     * BooleanQuery (terms x fields)
+     */
+    static final int MAX_QUERY_TERMS = 64;
+
+    static final String SQL_LOAD_PAGE = """
+            SELECT id, texto, metadados::text AS metadados
+            FROM doc_embedding
+            WHERE library_id = ? AND id > ? AND vigente AND NOT deleted
+            ORDER BY id
+            LIMIT ?
+            """;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Path indexDir;
+    private final int loadPageSize;
+    private final Similarity similarity;
+    private final Analyzer analyzer = new PortugueseAnalyzer();
+
+    private final Map<Integer, LibraryIndex> indexes = new ConcurrentHashMap<>();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "lucene-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Index of one library. While <code>loading</code>, the ids written by the
+     * ingestion path are kept in <code>touched</code> so the load does not
+     * overwrite them with older rows; writes and that check synchronize on
+     * this object.
+     */
+    static final class LibraryIndex {
+        final Directory directory;
+        final IndexWriter writer;
+        final SearcherManager searchers;
+        final Set<Integer> touched = ConcurrentHashMap.newKeySet();
+        volatile boolean loading;
+        volatile boolean ready;
+        /** Written since the last refresh */
+        volatile boolean dirty;
+        /** A write failed: the index is recreated by the next sync */
+        volatile boolean failed;
+
+        LibraryIndex(Directory directory, IndexWriter writer, SearcherManager searchers) {
+            this.directory = directory;
+            this.writer = writer;
+            this.searchers = searchers;
+        }
+
+        void close() {
+            IOUtils.closeWhileHandlingException(searchers, writer, directory);
+        }
+    }
+
+    /**
+     * Ranked hit of a lexical search
+     */
+    public static final class Hit {
+        private final int id;
+        private final float score;
+
+        Hit(int id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /** BM25 score */
+        public float getScore() {
+            return score;
+        }
+    }
+
+    public LuceneTextIndexService(JdbcTemplate jdbcTemplate,
+                                  @Value("${rag.pesquisa.lucene.enabled:false}") boolean enabled,
+                                  @Value("${rag.pesquisa.lucene.dir:}") String indexDir,
+                                  @Value("${rag.pesquisa.lucene.load-page-size:2000}") int loadPageSize,
+                                  @Value("${rag.pesquisa.lucene.bm25-k1:1.2}") float k1,
+                                  @Value("${rag.pesquisa.lucene.bm25-b:0.75}") float b) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.indexDir = indexDir == null || indexDir.isBlank() ? null : Paths.get(indexDir);
+        this.loadPageSize = loadPageSize;
+        this.similarity = new BM25Similarity(k1, b);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Aligns the set of indexed libraries with the library configs: starts
+     * loading newly flagged libraries (and failed ones again) and drops the
+     * ones no longer flagged.
+     *
+     * @param configs - snapshot of library metadados by id
+     */
+    public void sync(Map<Integer, MetaBiblioteca> configs) {
+        if (!enabled) {
+            return;
+        }
+        for (Map.Entry<Integer, MetaBiblioteca> e : configs.entrySet()) {
+            LibraryIndex existing = indexes.get(e.getKey());
+            if (e.getValue().isLuceneTextEngine() && (existing == null || existing.failed)) {
+                LibraryIndex li = open(e.getKey());
+                if (li == null) {
+                    continue;
+                }
+                if (existing != null ? indexes.replace(e.getKey(), existing, li)
+                                     : indexes.putIfAbsent(e.getKey(), li) == null) {
+                    if (existing != null) {
+                        existing.close();
+                    }
+                    scheduleLoad(e.getKey(), li);
+                } else {
+                    li.close();
+                }
+            }
+        }
+        indexes.entrySet().removeIf(entry -> {
+            MetaBiblioteca config = configs.get(entry.getKey());
+            boolean drop = config == null || !config.isLuceneTextEngine();
+            if (drop) {
+                log.info("Dropping Lucene index of library {}", entry.getKey());
+                entry.getValue().close();
+            }
+            return drop;
+        });
+    }
+
+    /**
+     * True if every library has a loaded index
+     */
+    public boolean isReady(Integer[] libraryIds) {
+        if (!enabled || libraryIds == null || libraryIds.length == 0) {
+            return false;
+        }
+        for (Integer id : libraryIds) {
+            LibraryIndex li = indexes.get(id);
+            if (li == null || !li.ready || li.failed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Top k BM25 hits across the given libraries, which must be
+     * {@link #isReady(Integer[]) ready}. Several libraries are searched as one
+     * index, so term statistics (and scores) are comparable.
+     *
+     * @return hits ordered by descending score
+     */
+    public List<Hit> search(Integer[] libraryIds, String query, int k) {
+        BooleanQuery luceneQuery = buildQuery(query);
+        if (luceneQuery == null) {
+            return new ArrayList<>();
+        }
+        List<LibraryIndex> targets = new ArrayList<>();
+        for (Integer id : libraryIds) {
+            LibraryIndex li = indexes.get(id);
+            if (li != null && li.ready) {
+                targets.add(li);
+            }
+        }
+        if (targets.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        IndexSearcher[] acquired = new IndexSearcher[targets.size()];
+        try {
+            for (int i = 0; i < acquired.length; i++) {
+                acquired[i] = targets.get(i).searchers.acquire();
+            }
+            if (acquired.length == 1) {
+                return search(acquired[0], luceneQuery, k);
+            }
+            IndexReader[] readers = new IndexReader[acquired.length];
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = acquired[i].getIndexReader();
+            }
+            try (MultiReader multi = new MultiReader(readers, false)) {
+                return search(newSearcher(multi), luceneQuery, k);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lucene search failed", e);
+        } finally {
+            for (int i = 0; i < acquired.length; i++) {
+                if (acquired[i] != null) {
+                    release(targets.get(i), acquired[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts or replaces an embedding in the index of its library, if any
+     *
+     * @param metadados - doc_embedding.metadados as stored (JSON), or null
+     */
+    public void onUpsert(Integer libraryId, Integer id, String texto, String metadados) {
+        if (libraryId == null || id == null) {
+            return;
+        }
+        LibraryIndex li = indexes.get(libraryId);
+        if (li == null) {
+            return;
+        }
+        Document doc = toDocument(id, texto, metadados);
+        synchronized (li) {
+            if (li.loading) {
+                li.touched.add(id);
+            }
+            try {
+                li.writer.updateDocument(idTerm(id), doc);
+                li.dirty = true;
+            } catch (IOException | RuntimeException e) {
+                fail(libraryId, li, e);
+            }
+        }
+    }
+
+    /**
+     * Removes an embedding from every index
+     */
+    public void onDelete(Integer id) {
+        if (id == null) {
+            return;
+        }
+        indexes.forEach((libraryId, li) -> {
+            synchronized (li) {
+                if (li.loading) {
+                    li.touched.add(id);
+                }
+                try {
+                    li.writer.deleteDocuments(idTerm(id));
+                    li.dirty = true;
+                } catch (IOException | RuntimeException e) {
+                    fail(libraryId, li, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuilds every index from the database (e.g. after bulk deletes). Searches
+     * use SQL meanwhile.
+     */
+    public void reloadAll() {
+        indexes.forEach(this::scheduleLoad);
+    }
+
+    /**
+     * Makes the changes written since the last refresh searchable
+     */
+    @Scheduled(fixedDelayString = "${rag.pesquisa.lucene.refresh-ms:1000}",
+               initialDelayString = "${rag.pesquisa.lucene.refresh-ms:1000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        indexes.forEach((libraryId, li) -> {
+            if (li.dirty && !li.failed) {
+                li.dirty = false;
+                try {
+                    li.searchers.maybeRefresh();
+                } catch (IOException | RuntimeException e) {
+                    li.dirty = true;
+                    log.warn("Failed to refresh Lucene index of library {}: {}", libraryId, e.getMessage());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+        indexes.values().forEach(LibraryIndex::close);
+        indexes.clear();
+    }
+
+    /**
+     * Analyzed query: one clause per (term, field), boosted by the field weight
+     *
+     * @return the query, or null if no term survives analysis
+     */
+    BooleanQuery buildQuery(String query) {
+        if (query == null || query.isBlank()) {
+            return null;
+        }
+        StringBuilder include = new StringBuilder();
+        StringBuilder exclude = new StringBuilder();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.length() > 1 && word.charAt(0) == '-') {
+                exclude.append(word, 1, word.length()).append(' ');
+            } else {
+                include.append(word).append(' ');
+            }
+        }
+        Set<String> terms = analyze(include.toString());
+        if (terms.isEmpty()) {
+            return null;
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String term : terms) {
+            builder.add(boosted(FIELD_TEXTO, term, TEXTO_WEIGHT), BooleanClause.Occur.SHOULD);
+            METADATA_WEIGHTS.forEach((field, weight) ->
+                    builder.add(boosted(field, term, weight), BooleanClause.Occur.SHOULD));
+        }
+        for (String term : analyze(exclude.toString())) {
+            builder.add(new TermQuery(new Term(FIELD_TEXTO, term)), BooleanClause.Occur.MUST_NOT);
+            METADATA_WEIGHTS.keySet().forEach(field ->
+                    builder.add(new TermQuery(new Term(field, term)), BooleanClause.Occur.MUST_NOT));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Lucene document of an embedding: id, texto and the weighted metadados
+     * keys. Non-textual values (e.g. arrays) are indexed as JSON text, like
+     * <code>metadados->>'key'</code>.
+     */
+    static Document toDocument(int id, String texto, String metadados) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, Integer.toString(id), Field.Store.YES));
+        if (texto != null) {
+            doc.add(new TextField(FIELD_TEXTO, texto, Field.Store.NO));
+        }
+        if (metadados == null || metadados.isBlank()) {
+            return doc;
+        }
+        try {
+            JsonNode node = JSON.readTree(metadados);
+            for (String key : METADATA_WEIGHTS.keySet()) {
+                JsonNode value = node.get(key);
+                if (value != null && !value.isNull()) {
+                    doc.add(new TextField(key, value.isValueNode() ? value.asText() : value.toString(),
+                                          Field.Store.NO));
+                }
+            }
+        } catch (JsonProcessingException e) {
+            log.debug("Embedding {}: metadados is not valid JSON, indexing texto only", id);
+        }
+        return doc;
+    }
+
+    private Set<String> analyze(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text.isBlank()) {
+            return terms;
+        }
+        try (TokenStream stream = analyzer.tokenStream(FIELD_TEXTO, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken() && terms.size() < MAX_QUERY_TERMS) {
+                terms.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return terms;
+    }
+
+    private static BoostQuery boosted(String field, String term, float weight) {
+        return new BoostQuery(new TermQuery(new Term(field, term)), weight);
+    }
+
+    private static Term idTerm(int id) {
+        return new Term(FIELD_ID, Integer.toString(id));
+    }
+
+    private static List<Hit> search(IndexSearcher searcher, BooleanQuery query, int k) throws IOException {
+        TopDocs top = searcher.search(query, k);
+        StoredFields stored = searcher.storedFields();
+        List<Hit> hits = new ArrayList<>(top.scoreDocs.length);
+        for (ScoreDoc sd : top.scoreDocs) {
+            String id = stored.document(sd.doc, Set.of(FIELD_ID)).get(FIELD_ID);
+            hits.add(new Hit(Integer.parseInt(id), sd.score));
+        }
+        return hits;
+    }
+
+    private IndexSearcher newSearcher(IndexReader reader) {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setSimilarity(similarity);
+        return searcher;
+    }
+
+    private static void release(LibraryIndex li, IndexSearcher searcher) {
+        try {
+            li.searchers.release(searcher);
+        } catch (IOException e) {
+            log.warn("Failed to release Lucene searcher: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Opens an empty index for the library
+     *
+     * @return the index, or null on I/O error
+     */
+    private LibraryIndex open(Integer libraryId) {
+        Directory directory = null;
+        IndexWriter writer = null;
+        try {
+            directory = indexDir != null ? FSDirectory.open(indexDir.resolve("library-" + libraryId))
+                                         : new ByteBuffersDirectory();
+            IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                    .setSimilarity(similarity)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+            writer = new IndexWriter(directory, config);
+            SearcherManager searchers = new SearcherManager(writer, new SearcherFactory() {
+                @Override
+                public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                    return LuceneTextIndexService.this.newSearcher(reader);
+                }
+            });
+            return new LibraryIndex(directory, writer, searchers);
+        } catch (IOException e) {
+            IOUtils.closeWhileHandlingException(writer, directory);
+            log.error("Failed to open Lucene index of library {}: {}", libraryId, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Takes a failed index out of service: searches use SQL until the next
+     * sync recreates it
+     */
+    private void fail(Integer libraryId, LibraryIndex li, Exception e) {
+        li.failed = true;
+        li.ready = false;
+        log.error("Lucene index of library {} failed, falling back to SQL: {}", libraryId, e.getMessage(), e);
+    }
+
+    private void scheduleLoad(Integer libraryId, LibraryIndex li) {
+        synchronized (li) {
+            if (li.loading || li.failed) {
+                return;
+            }
+            li.loading = true;
+        }
+        loader.submit(() -> load(libraryId, li));
+    }
+
+    /**
+     * Reads the live rows of the library in id order, one page at a time
+     * (bounded driver memory), then publishes the index
+     */
+    private void load(Integer libraryId, LibraryIndex li) {
+        long start = System.currentTimeMillis();
+        try {
+            li.ready = false;
+            synchronized (li) {
+                li.writer.deleteAll();
+                li.touched.clear();
+            }
+            int[] lastId = { 0 };
+            int previous;
+            do {
+                previous = lastId[0];
+                jdbcTemplate.query(SQL_LOAD_PAGE, rs -> {
+                    int id = rs.getInt("id");
+                    Document doc = toDocument(id, rs.getString("texto"), rs.getString("metadados"));
+                    synchronized (li) {
+                        // Entries written by the ingestion path meanwhile are newer: keep them
+                        if (!li.touched.contains(id)) {
+                            try {
+                                li.writer.updateDocument(idTerm(id), doc);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    }
+                    lastId[0] = id;
+                }, libraryId, lastId[0], loadPageSize);
+            } while (lastId[0] != previous && indexes.get(libraryId) == li);
+
+            li.searchers.maybeRefreshBlocking();
+            synchronized (li) {
+                li.loading = false;
+                li.touched.clear();
+            }
+            li.ready = !li.failed;
+            log.info("Lucene index of library {} loaded: {} documents, {} ms",
+                     libraryId, li.writer.getDocStats().numDocs, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            synchronized (li) {
+                li.loading = false;
+            }
+            fail(libraryId, li, e);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package bor.tools.simplerag.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.entity.MetaBiblioteca;
+import bor.tools.simplerag.entity.enums.TipoArmazenamentoVetor;
+import bor.tools.simplerag.util.ProductQuantizationIndex;
+import bor.tools.simplerag.util.ProductQuantizer;
+import bor.tools.simplerag.util.VectorCodec;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Product-quantized codes of the libraries with
+ * <code>metadados.vector_storage = pq</code>, used as an in-memory candidate
+ * generator ({@link TipoArmazenamentoVetor#PQ}).
+ *
+ * <p>Per library, codebooks are trained in background from a random sample
+ * of doc_embedding rows and every embedding is then encoded. Searches
+ * scan the codes ({@link ProductQuantizationIndex}) and return a shortlist of
+ * ids that the repository re-ranks with the exact vectors in SQL. Until a
+ * library is loaded, its searches use the full-precision path.</p>
+ *
+ * <p>Like {@link InMemoryVectorIndexService}, the ingestion path keeps loaded
+ * libraries current and a library is rebuilt (codebooks retrained) once
+ * removed entries exceed {@code rag.pesquisa.pq.max-deleted-ratio}.</p>
+ */
+@Service
+@Slf4j
+public class ProductQuantizationService {
+
+    /** Default dimension when the library does not configure one (doc_embedding.embedding_vector) */
+    static final int DEFAULT_DIMENSION = 768;
+
+    static final String SQL_LIBRARY_ROWS = """
+            SELECT count(*) FROM doc_embedding
+            WHERE library_id = ? AND embedding_vector IS NOT NULL AND vigente AND NOT deleted
+            """;
+
+    /**
+     * Block sample of the table (reads only the sampled pages, no sort), filtered
+     * to the library. Parameters: sample percentage, library id, limit.
+     */
+    static final String SQL_TRAINING_SAMPLE = """
+            SELECT vector_send(embedding_vector) AS embedding_vector_bin
+            FROM doc_embedding TABLESAMPLE SYSTEM (?::real)
+            WHERE library_id = ? AND embedding_vector IS NOT NULL AND vigente AND NOT deleted
+            LIMIT ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int subspaces;
+    private final int trainingSample;
+    private final int iterations;
+    private final double maxDeletedRatio;
+    private final int loadPageSize;
+
+    private final Map<Integer, LibraryCodes> libraries = new ConcurrentHashMap<>();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "pq-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Codes of one library: <code>current</code> serves searches, <code>building</code>
+     * is being (re)loaded. Writes go to both; writes and the swap synchronize
+     * on this object. A write that arrives before the codebooks are trained is
+     * picked up by the load itself.
+     */
+    static final class LibraryCodes {
+        final int dimension;
+        volatile ProductQuantizationIndex current;
+        volatile ProductQuantizationIndex building;
+        volatile boolean loading;
+
+        LibraryCodes(int dimension) {
+            this.dimension = dimension;
+        }
+    }
+
+    public ProductQuantizationService(JdbcTemplate jdbcTemplate,
+                                      @Value("${rag.pesquisa.pq.subspaces:96}") int subspaces,
+                                      @Value("${rag.pesquisa.pq.training-sample:20000}") int trainingSample,
+                                      @Value("${rag.pesquisa.pq.iterations:20}") int iterations,
+                                      @Value("${rag.pesquisa.pq.max-deleted-ratio:0.3}") double maxDeletedRatio,
+                                      @Value("${rag.pesquisa.pq.load-page-size:5000}") int loadPageSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.subspaces = subspaces;
+        this.trainingSample = trainingSample;
+        this.iterations = iterations;
+        this.maxDeletedRatio = maxDeletedRatio;
+        this.loadPageSize = loadPageSize;
+    }
+
+    /**
+     * Aligns the set of quantized libraries with the library configs: starts
+     * loading newly configured libraries and drops the ones no longer configured.
+     *
+     * @param configs - snapshot of library metadados by id
+     */
+    public void sync(Map<Integer, MetaBiblioteca> configs) {
+        for (Map.Entry<Integer, MetaBiblioteca> e : configs.entrySet()) {
+            if (e.getValue().getVectorStorage() == TipoArmazenamentoVetor.PQ && !libraries.containsKey(e.getKey())) {
+                Integer dim = e.getValue().getEmbeddingDimension();
+                LibraryCodes lc = new LibraryCodes(dim != null && dim > 0 ? dim : DEFAULT_DIMENSION);
+                if (libraries.putIfAbsent(e.getKey(), lc) == null) {
+                    scheduleLoad(e.getKey(), lc);
+                }
+            }
+        }
+        libraries.keySet().removeIf(id -> {
+            MetaBiblioteca config = configs.get(id);
+            boolean drop = config == null || config.getVectorStorage() != TipoArmazenamentoVetor.PQ;
+            if (drop) {
+                log.info("Dropping PQ codes of library {}", id);
+            }
+            return drop;
+        });
+    }
+
+    /**
+     * True if every library has loaded codes
+     */
+    public boolean isReady(Integer[] libraryIds) {
+        if (libraryIds == null || libraryIds.length == 0) {
+            return false;
+        }
+        for (Integer id : libraryIds) {
+            LibraryCodes lc = libraries.get(id);
+            if (lc == null || lc.current == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Candidate ids: the <code>n</code> best by asymmetric distance in each
+     * library, to be re-ranked with the exact vectors
+     */
+    public Integer[] candidates(Integer[] libraryIds, float[] query, int n) {
+        List<Integer> ids = new ArrayList<>();
+        for (Integer id : libraryIds) {
+            LibraryCodes lc = libraries.get(id);
+            ProductQuantizationIndex index = lc != null ? lc.current : null;
+            if (index != null && lc.dimension == query.length) {
+                for (int candidate : index.search(query, n)) {
+                    ids.add(candidate);
+                }
+            }
+        }
+        return ids.toArray(Integer[]::new);
+    }
+
+    /**
+     * Inserts or replaces an embedding in the codes of its library, if any
+     */
+    public void onUpsert(Integer libraryId, Integer id, float[] vector) {
+        if (libraryId == null || id == null || vector == null) {
+            return;
+        }
+        LibraryCodes lc = libraries.get(libraryId);
+        if (lc == null || vector.length != lc.dimension) {
+            return;
+        }
+        synchronized (lc) {
+            add(lc.current, id, vector);
+            add(lc.building, id, vector);
+        }
+    }
+
+    /**
+     * Removes an embedding from every library
+     */
+    public void onDelete(Integer id) {
+        if (id == null) {
+            return;
+        }
+        libraries.forEach((libraryId, lc) -> {
+            synchronized (lc) {
+                ProductQuantizationIndex current = lc.current;
+                ProductQuantizationIndex building = lc.building;
+                boolean removed = (current != null && current.remove(id)) | (building != null && building.remove(id));
+                if (removed && current != null && !lc.loading
+                        && current.getDeletedCount() > maxDeletedRatio * Math.max(1, current.size())) {
+                    log.info("PQ codes of library {} have {} removed entries, rebuilding",
+                             libraryId, current.getDeletedCount());
+                    scheduleLoad(libraryId, lc);
+                }
+            }
+        });
+    }
+
+    /**
+     * Retrains and re-encodes every library (e.g. after bulk deletes)
+     */
+    public void reloadAll() {
+        libraries.forEach(this::scheduleLoad);
+    }
+
+    /**
+     * Live codes per quantized library (0 while loading)
+     */
+    public Map<Integer, Integer> getSizes() {
+        Map<Integer, Integer> sizes = new TreeMap<>();
+        libraries.forEach((id, lc) -> sizes.put(id, lc.current != null ? lc.current.size() : 0));
+        return sizes;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    private static void add(ProductQuantizationIndex index, Integer id, float[] vector) {
+        if (index != null) {
+            index.add(id, vector);
+        }
+    }
+
+    private void scheduleLoad(Integer libraryId, LibraryCodes lc) {
+        synchronized (lc) {
+            if (lc.loading) {
+                return;
+            }
+            lc.loading = true;
+        }
+        loader.submit(() -> load(libraryId, lc));
+    }
+
+    /**
+     * Random training sample of the library. The block sample percentage is
+     * sized so that about <code>rag.pesquisa.pq.training-sample</code> library rows
+     * are expected; an empty draw from a non-empty library reads all blocks.
+     */
+    private List<float[]> sampleTrainingVectors(Integer libraryId, int dimension) {
+        Long rows = jdbcTemplate.queryForObject(SQL_LIBRARY_ROWS, Long.class, libraryId);
+        if (rows == null || rows == 0) {
+            return List.of();
+        }
+        double percent = samplePercent(trainingSample, rows);
+        List<float[]> sample = readSample(libraryId, dimension, percent);
+        if (sample.isEmpty() && percent < 100.0) {
+            sample = readSample(libraryId, dimension, 100.0);
+        }
+        return sample;
+    }
+
+    private List<float[]> readSample(Integer libraryId, int dimension, double percent) {
+        List<float[]> sample = new ArrayList<>();
+        jdbcTemplate.query(SQL_TRAINING_SAMPLE, rs -> {
+            float[] vector = VectorCodec.decode(rs.getBytes("embedding_vector_bin"));
+            if (vector != null && vector.length == dimension) {
+                sample.add(vector);
+            }
+        }, percent, libraryId, trainingSample);
+        return sample;
+    }
+
+    /**
+     * TABLESAMPLE percentage expected to yield <code>sample</code> of <code>rows</code>
+     */
+    static double samplePercent(int sample, long rows) {
+        return Math.min(100.0, 100.0 * sample / Math.max(1, rows));
+    }
+
+    /**
+     * Trains the codebooks from a random sample, then encodes the library
+     * embeddings in id order, one page at a time, and publishes the codes
+     */
+    private void load(Integer libraryId, LibraryCodes lc) {
+        long start = System.currentTimeMillis();
+        try {
+            List<float[]> sample = sampleTrainingVectors(libraryId, lc.dimension);
+            if (sample.isEmpty()) {
+                log.info("Library {} has no embeddings to train PQ codebooks, retrying on next reload", libraryId);
+                synchronized (lc) {
+                    lc.loading = false;
+                }
+                libraries.remove(libraryId, lc);
+                return;
+            }
+            ProductQuantizer quantizer = ProductQuantizer.train(sample, subspaces, iterations, libraryId);
+            long trained = System.currentTimeMillis();
+
+            ProductQuantizationIndex target = new ProductQuantizationIndex(quantizer);
+            synchronized (lc) {
+                lc.building = target;
+            }
+            int[] lastId = { 0 };
+            int previous;
+            do {
+                previous = lastId[0];
+                jdbcTemplate.query(InMemoryVectorIndexService.SQL_LOAD_PAGE, rs -> {
+                    int id = rs.getInt("id");
+                    float[] vector = VectorCodec.decode(rs.getBytes("embedding_vector_bin"));
+                    if (vector != null && vector.length == lc.dimension) {
+                        // Entries written by the ingestion path meanwhile are newer: keep them
+                        synchronized (lc) {
+                            if (!target.contains(id)) {
+                                target.add(id, vector);
+                            }
+                        }
+                    }
+                    lastId[0] = id;
+                }, libraryId, lastId[0], loadPageSize);
+            } while (lastId[0] != previous && libraries.get(libraryId) == lc);
+
+            synchronized (lc) {
+                lc.current = target;
+                lc.building = null;
+                lc.loading = false;
+            }
+            log.info("PQ codes of library {} loaded: {} vectors x {} bytes, {} MiB, trained in {} ms, total {} ms",
+                     libraryId, target.size(), quantizer.getCodeSize(), target.getMemoryBytes() >> 20,
+                     trained - start, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            synchronized (lc) {
+                lc.building = null;
+                lc.loading = false;
+            }
+            log.error("Failed to load PQ codes of library {}: {}", libraryId, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package bor.tools.simplerag.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.entity.MetaDoc;
+import bor.tools.simplerag.service.rerank.RerankScorer;
+import bor.tools.utils.LRUCache;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Re-ranking stage of hybrid search: re-scores the top candidates with a
+ * pluggable {@link RerankScorer} (LLM completion or local scorer).
+ *
+ * <p>The top <code>rag.pesquisa.rerank.top-n</code> candidates are sent to the
+ * scorer in batches of <code>rag.pesquisa.rerank.batch-size</code> passages,
+ * one scorer call per batch, in retrieval order. Scoring stops early when:</p>
+ * <ul>
+ *   <li>the latency budget (<code>rag.pesquisa.rerank.budget-ms</code>) runs out:
+ *       a batch still running is abandoned;</li>
+ *   <li>k candidates already score at least <code>rag.pesquisa.rerank.early-stop-score</code>;</li>
+ *   <li>the scorer fails.</li>
+ * </ul>
+ * <p>Scored candidates come first, by descending score; the others keep their
+ * retrieval order after them. The score is returned in <code>metadados.score_rerank</code>.
+ * Scores are cached per (scorer, query, chunk) in a bounded LRU cache, so
+ * repeated and paginated queries only score new chunks.</p>
+ */
+@Service
+@Slf4j
+public class RerankService {
+
+    /** Nome da fase no perfil de execução */
+    public static final String PHASE_RERANK = "rerank";
+
+    /** metadados key of the re-ranker score */
+    public static final String SCORE_KEY = "score_rerank";
+
+    private final RerankScorer scorer;
+    private final int topN;
+    private final int batchSize;
+    private final long budgetMs;
+    private final double earlyStopScore;
+    private final LRUCache<String, Double> scoreCache;
+
+    private final ExecutorService executor;
+
+    /**
+     * Statistics of one re-ranking, for the search profile
+     */
+    @Getter
+    public static final class Outcome {
+        private final List<DocumentEmbedding> results;
+        private int scored;
+        private int cached;
+        private int batches;
+        private boolean timedOut;
+        private boolean earlyStop;
+        private boolean failed;
+
+        Outcome(List<DocumentEmbedding> results) {
+            this.results = results;
+        }
+
+        public String getDetail() {
+            return "scored=" + scored + ", cached=" + cached + ", batches=" + batches
+                   + (timedOut ? ", budget exhausted" : "") + (earlyStop ? ", early stop" : "")
+                   + (failed ? ", scorer failed" : "");
+        }
+    }
+
+    public RerankService(List<RerankScorer> scorers,
+                         @Value("${rag.pesquisa.rerank.scorer:local}") String scorerName,
+                         @Value("${rag.pesquisa.rerank.top-n:20}") int topN,
+                         @Value("${rag.pesquisa.rerank.batch-size:10}") int batchSize,
+                         @Value("${rag.pesquisa.rerank.budget-ms:800}") long budgetMs,
+                         @Value("${rag.pesquisa.rerank.early-stop-score:0.9}") double earlyStopScore,
+                         @Value("${rag.pesquisa.rerank.cache-size:10000}") int cacheSize,
+                         @Value("${rag.pesquisa.rerank.threads:4}") int threads) {
+        this.scorer = scorers.stream()
+                             .filter(s -> s.getName().equalsIgnoreCase(scorerName))
+                             .findFirst()
+                             .orElse(null);
+        if (this.scorer == null && scorerName != null && !scorerName.isBlank()
+                && !"none".equalsIgnoreCase(scorerName)) {
+            throw new IllegalArgumentException("Re-ranker desconhecido: " + scorerName);
+        }
+        this.topN = Math.max(1, topN);
+        this.batchSize = Math.max(1, batchSize);
+        this.budgetMs = budgetMs;
+        this.earlyStopScore = earlyStopScore;
+        this.scoreCache = new LRUCache<>(cacheSize);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "rerank-scorer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * True if re-ranking was requested and a scorer is configured
+     */
+    public boolean isActive(Boolean rerank) {
+        return Boolean.TRUE.equals(rerank) && scorer != null;
+    }
+
+    /**
+     * Name of the configured scorer, or null
+     */
+    public String getScorerName() {
+        return scorer != null ? scorer.getName() : null;
+    }
+
+    /**
+     * Number of candidates to retrieve for <code>k</code> results
+     */
+    public int candidateLimit(int k) {
+        return Math.max(k, topN);
+    }
+
+    /**
+     * Re-scores the top candidates.
+     *
+     * @param query - user query
+     * @param candidates - results in retrieval order
+     * @param k - number of results wanted (early stop)
+     * @return all candidates, re-ordered, and the statistics of the stage
+     */
+    public Outcome rerank(String query, List<DocumentEmbedding> candidates, int k) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        int n = Math.min(topN, candidates.size());
+        Map<DocumentEmbedding, Double> scores = new IdentityHashMap<>();
+        List<DocumentEmbedding> pending = new ArrayList<>();
+        List<DocumentEmbedding> results = new ArrayList<>(candidates.size());
+        Outcome outcome = new Outcome(results);
+
+        for (DocumentEmbedding doc : candidates.subList(0, n)) {
+            Double cached = scoreCache.get(cacheKey(query, doc));
+            if (cached != null) {
+                scores.put(doc, cached);
+                outcome.cached++;
+            } else {
+                pending.add(doc);
+            }
+        }
+
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            if (scores.values().stream().filter(s -> s >= earlyStopScore).count() >= k) {
+                outcome.earlyStop = true;
+                break;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                outcome.timedOut = true;
+                break;
+            }
+            List<DocumentEmbedding> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+            List<String> passages = batch.stream().map(d -> d.getTexto() != null ? d.getTexto() : "").toList();
+            Future<double[]> call = executor.submit(() -> scorer.score(query, passages));
+            double[] batchScores;
+            try {
+                batchScores = call.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                call.cancel(true);
+                outcome.timedOut = true;
+                break;
+            } catch (ExecutionException e) {
+                log.warn("Re-ranker {} failed, keeping retrieval order: {}", scorer.getName(),
+                         e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                outcome.failed = true;
+                break;
+            } catch (InterruptedException e) {
+                call.cancel(true);
+                Thread.currentThread().interrupt();
+                break;
+            }
+            outcome.batches++;
+            for (int i = 0; i < batch.size() && i < batchScores.length; i++) {
+                DocumentEmbedding doc = batch.get(i);
+                scores.put(doc, batchScores[i]);
+                scoreCache.put(cacheKey(query, doc), batchScores[i]);
+                outcome.scored++;
+            }
+        }
+        if (outcome.timedOut) {
+            log.debug("Re-ranking budget of {} ms exhausted after {} batches", budgetMs, outcome.batches);
+        }
+
+        List<DocumentEmbedding> scored = new ArrayList<>(scores.keySet());
+        scored.sort(Comparator.comparingDouble((DocumentEmbedding d) -> scores.get(d)).reversed());
+        for (DocumentEmbedding doc : scored) {
+            MetaDoc metadados = doc.getMetadados();
+            if (metadados != null) {
+                metadados.put(SCORE_KEY, (float) scores.get(doc).doubleValue());
+            }
+        }
+        results.addAll(scored);
+        for (DocumentEmbedding doc : candidates) {
+            if (!scores.containsKey(doc)) {
+                results.add(doc);
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * Clears the score cache
+     */
+    public void clearCache() {
+        scoreCache.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * (scorer, query, chunk) key; the text hash keeps updated chunks from
+     * reusing old scores
+     */
+    private String cacheKey(String query, DocumentEmbedding doc) {
+        String texto = doc.getTexto();
+        return scorer.getName() + '\u0000' + query + '\u0000' + doc.getId() + ':'
+               + (texto != null ? texto.hashCode() : 0);
+    }
+}
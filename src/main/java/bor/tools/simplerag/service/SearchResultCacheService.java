@@ -0,0 +1,205 @@
+package bor.tools.simplerag.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.dto.SearchCacheStatsDTO;
+import bor.tools.simplerag.dto.SearchProfile;
+import bor.tools.simplerag.dto.SearchResultDTO;
+import bor.tools.utils.LRUCache;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache of enriched search results.
+ *
+ * <p>The key is the normalized request (search type, query, sorted library ids,
+ * limit and weights) plus the current <b>version</b> of every library involved.
+ * A library version is a counter bumped by {@link #invalidateLibrary(Integer)}
+ * whenever documents or embeddings of the library change (processing completes,
+ * status update, delete). After a bump, old keys are never produced again and
+ * the stale entries age out of the LRU. No scan of the cache is needed.</p>
+ *
+ * <p>A hit skips both embedding generation and SQL. Requests with
+ * <code>explainAnalyze=true</code> bypass the cache, since they ask for real
+ * execution plans.</p>
+ *
+ * <p>Hits and misses are counted per library. A request spanning several
+ * libraries counts for each of them.</p>
+ */
+@Service
+@Slf4j
+public class SearchResultCacheService {
+
+    /** Profile phase name (explain mode) */
+    public static final String PHASE_RESULT_CACHE = "result_cache";
+
+    private final LRUCache<String, List<SearchResultDTO>> cache;
+
+    private final Map<Integer, LibraryCounters> libraries = new ConcurrentHashMap<>();
+
+    public SearchResultCacheService(@Value("${rag.pesquisa.result-cache-size:1000}") int cacheSize) {
+        this.cache = new LRUCache<>(cacheSize);
+    }
+
+    /**
+     * Returns cached results or executes the search and caches its results.
+     *
+     * @param tipo - search type (hybrid, semantic, textual)
+     * @param query - user query
+     * @param libraryIds - libraries searched
+     * @param limit - maximum number of results
+     * @param pesoSemantico - semantic weight (may be null)
+     * @param pesoTextual - textual weight (may be null)
+     * @param profile - explain profile (may be null)
+     * @param search - search to run on a miss
+     * @return search results (a copy; callers may modify it)
+     */
+    public List<SearchResultDTO> getOrSearch(String tipo, String query, Integer[] libraryIds, Integer limit,
+                                             Float pesoSemantico, Float pesoTextual,
+                                             SearchProfile profile,
+                                             Supplier<List<SearchResultDTO>> search) {
+        if (cache.getCapacity() == 0 || (profile != null && profile.isExplainAnalyze())) {
+            return search.get();
+        }
+
+        Integer[] libs = sortedDistinct(libraryIds);
+        // The key captures the versions *before* searching: a concurrent change
+        // bumps the version, so a result computed from stale data is never reused.
+        String key = buildKey(tipo, query, libs, limit, pesoSemantico, pesoTextual);
+
+        long start = System.nanoTime();
+        List<SearchResultDTO> cached = cache.get(key);
+        if (cached != null) {
+            countAll(libs, true);
+            if (profile != null) {
+                profile.record(PHASE_RESULT_CACHE, System.nanoTime() - start).setDetail("hit");
+            }
+            return new ArrayList<>(cached);
+        }
+
+        countAll(libs, false);
+        List<SearchResultDTO> results = search.get();
+        if (results != null) {
+            cache.put(key, List.copyOf(results));
+        }
+        return results;
+    }
+
+    /**
+     * Invalidates all cached results involving the library.
+     * Call after any change to its documents or embeddings has committed
+     * ({@link bor.tools.simplerag.util.AfterCommit}).
+     *
+     * @param libraryId - library id (null ignored)
+     */
+    public void invalidateLibrary(Integer libraryId) {
+        if (libraryId == null) {
+            return;
+        }
+        long version = counters(libraryId).version.incrementAndGet();
+        log.debug("Search result cache invalidated for library {} (version {})", libraryId, version);
+    }
+
+    /**
+     * Current version of a library (0 if never changed since startup)
+     */
+    public long getLibraryVersion(Integer libraryId) {
+        LibraryCounters c = libraries.get(libraryId);
+        return c == null ? 0L : c.version.get();
+    }
+
+    /**
+     * Removes all cached results and resets statistics.
+     */
+    public void clear() {
+        cache.clear();
+        cache.resetStatistics();
+        libraries.values().forEach(c -> {
+            c.hits.reset();
+            c.misses.reset();
+        });
+    }
+
+    /**
+     * Global and per-library statistics.
+     */
+    public SearchCacheStatsDTO getStats() {
+        List<SearchCacheStatsDTO.LibraryStats> perLibrary = new ArrayList<>();
+        libraries.forEach((id, c) -> {
+            long hits = c.hits.sum();
+            long misses = c.misses.sum();
+            perLibrary.add(SearchCacheStatsDTO.LibraryStats.builder()
+                    .libraryId(id)
+                    .version(c.version.get())
+                    .hits(hits)
+                    .misses(misses)
+                    .hitRate(hits + misses == 0 ? 0.0 : (double) hits / (hits + misses))
+                    .build());
+        });
+        perLibrary.sort((a, b) -> a.getLibraryId().compareTo(b.getLibraryId()));
+
+        return SearchCacheStatsDTO.builder()
+                .size(cache.size())
+                .capacity(cache.getCapacity())
+                .hits(cache.getHits())
+                .misses(cache.getMisses())
+                .evictions(cache.getEvictions())
+                .hitRate(cache.getHitRate())
+                .libraries(perLibrary)
+                .build();
+    }
+
+    /**
+     * Builds the cache key. Query whitespace is collapsed; case is kept because
+     * the semantic leg embeds the raw text.
+     */
+    String buildKey(String tipo, String query, Integer[] sortedLibs, Integer limit,
+                    Float pesoSemantico, Float pesoTextual) {
+        StringBuilder sb = new StringBuilder(tipo).append('|');
+        sb.append(query == null ? "" : query.trim().replaceAll("\\s+", " ")).append('|');
+        for (Integer id : sortedLibs) {
+            sb.append(id).append('@').append(getLibraryVersion(id)).append(',');
+        }
+        sb.append('|').append(limit)
+          .append('|').append(pesoSemantico)
+          .append('|').append(pesoTextual);
+        return sb.toString();
+    }
+
+    private static Integer[] sortedDistinct(Integer[] ids) {
+        if (ids == null) {
+            return new Integer[0];
+        }
+        return Arrays.stream(ids).filter(Objects::nonNull).distinct().sorted().toArray(Integer[]::new);
+    }
+
+    private void countAll(Integer[] libs, boolean hit) {
+        for (Integer id : libs) {
+            LibraryCounters c = counters(id);
+            (hit ? c.hits : c.misses).increment();
+        }
+    }
+
+    private LibraryCounters counters(Integer libraryId) {
+        return libraries.computeIfAbsent(libraryId, id -> new LibraryCounters());
+    }
+
+    /**
+     * Version and hit/miss counters of a library
+     */
+    private static class LibraryCounters {
+        final AtomicLong version = new AtomicLong();
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+}
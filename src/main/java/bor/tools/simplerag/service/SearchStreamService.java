@@ -0,0 +1,188 @@
+package bor.tools.simplerag.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import bor.tools.simplerag.dto.LibraryDTO;
+import bor.tools.simplerag.dto.SearchRequest;
+import bor.tools.simplerag.dto.SearchResultDTO;
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
+import bor.tools.splitter.EmbeddingProcessorInterface;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streaming hybrid search: results are written as events as soon as each
+ * stage produces them, as NDJSON (one JSON object per line) or Server-Sent
+ * Events.
+ *
+ * <p>Events, in order:</p>
+ * <ol>
+ *   <li><code>textual</code>: the best <code>rag.pesquisa.stream.textual-preview</code>
+ *       hits of the textual leg, which needs no embedding, so a UI can show
+ *       something while the query embedding is generated;</li>
+ *   <li><code>result</code>: the fused hybrid ranking, one event per result,
+ *       read from a database cursor and enriched in pages of
+ *       <code>rag.pesquisa.stream.page-size</code>. Memory does not grow with
+ *       <code>limit</code> (up to <code>rag.pesquisa.stream.max-limit</code>);</li>
+ *   <li><code>done</code> (totals and time) or <code>error</code>.</li>
+ * </ol>
+ * <p>Each event carries <code>event</code>; result events carry
+ * <code>rank</code> (1-based) and <code>result</code> ({@link SearchResultDTO}).</p>
+ */
+@Service
+@Slf4j
+public class SearchStreamService {
+
+    private final DocEmbeddingJdbcRepository embeddingRepository;
+    private final EmbeddingProcessorInterface embeddingProcessor;
+    private final ObjectMapper objectMapper;
+    private final int textualPreview;
+    private final int pageSize;
+    private final int maxLimit;
+
+    public SearchStreamService(DocEmbeddingJdbcRepository embeddingRepository,
+                               EmbeddingProcessorInterface embeddingProcessor,
+                               ObjectMapper objectMapper,
+                               @Value("${rag.pesquisa.stream.textual-preview:10}") int textualPreview,
+                               @Value("${rag.pesquisa.stream.page-size:100}") int pageSize,
+                               @Value("${rag.pesquisa.stream.max-limit:10000}") int maxLimit) {
+        this.embeddingRepository = embeddingRepository;
+        this.embeddingProcessor = embeddingProcessor;
+        this.objectMapper = objectMapper;
+        this.textualPreview = textualPreview;
+        this.pageSize = Math.max(1, pageSize);
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Maximum <code>limit</code> of a streaming search
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Runs the search and writes its events to <code>out</code>. Failures after
+     * the first byte are reported as an <code>error</code> event.
+     *
+     * @param request - hybrid search request (already validated)
+     * @param library - library whose embedding configuration embeds the query
+     * @param sse - Server-Sent Events framing; otherwise NDJSON
+     * @param enricher - adds documento / chapter titles to a page of results
+     * @param out - response body
+     */
+    public void stream(SearchRequest request, LibraryDTO library, boolean sse,
+                       Function<List<DocumentEmbedding>, List<SearchResultDTO>> enricher,
+                       OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        int k = request.getLimit() != null && request.getLimit() > 0 ? request.getLimit() : 10;
+        if (k > maxLimit) {
+            throw new IllegalArgumentException("limit máximo em streaming: " + maxLimit);
+        }
+        EventWriter writer = new EventWriter(out, sse);
+        try {
+            // Textual leg first: no embedding needed
+            int preview = Math.min(k, textualPreview);
+            if (preview > 0) {
+                List<SearchResultDTO> textual = enricher.apply(embeddingRepository.pesquisaTextual(
+                        request.getQuery(), request.getLibraryIds(), preview, null, false, request.getFilter()));
+                for (int i = 0; i < textual.size(); i++) {
+                    writer.result("textual", i + 1, textual.get(i));
+                }
+                writer.flush();
+            }
+
+            float[] queryEmbedding = embeddingProcessor.createSearchEmbeddings(request.getQuery(), library);
+
+            // Fused ranking, page by page as rows arrive from the cursor
+            List<DocumentEmbedding> page = new ArrayList<>(pageSize);
+            int[] rank = { 0 };
+            embeddingRepository.streamHibrida(queryEmbedding, request.getQuery(), request.getLibraryIds(), k,
+                    request.getPesoSemantico(), request.getPesoTextual(), request.getFilter(), null, doc -> {
+                        page.add(doc);
+                        if (page.size() == pageSize) {
+                            writePage(writer, enricher, page, rank);
+                        }
+                    });
+            writePage(writer, enricher, page, rank);
+
+            Map<String, Object> done = new LinkedHashMap<>();
+            done.put("totalResults", rank[0]);
+            done.put("executionTimeMs", System.currentTimeMillis() - start);
+            writer.event("done", done);
+            writer.flush();
+            log.info("Streaming search completed: {} results in {}ms", rank[0], System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("Error in streaming search: {}", e.getMessage(), e);
+            Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+            if (cause instanceof IOException io) {
+                // Client went away: nothing left to write to
+                throw io;
+            }
+            writer.event("error", Map.of("message", String.valueOf(e.getMessage())));
+            writer.flush();
+        }
+    }
+
+    private void writePage(EventWriter writer, Function<List<DocumentEmbedding>, List<SearchResultDTO>> enricher,
+                           List<DocumentEmbedding> page, int[] rank) {
+        if (page.isEmpty()) {
+            return;
+        }
+        try {
+            for (SearchResultDTO result : enricher.apply(page)) {
+                writer.result("result", ++rank[0], result);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        page.clear();
+    }
+
+    /**
+     * NDJSON or SSE framing of the events
+     */
+    private final class EventWriter {
+        private final OutputStream out;
+        private final boolean sse;
+
+        EventWriter(OutputStream out, boolean sse) {
+            this.out = out;
+            this.sse = sse;
+        }
+
+        void result(String event, int rank, SearchResultDTO result) throws IOException {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("rank", rank);
+            data.put("result", result);
+            event(event, data);
+        }
+
+        void event(String event, Map<String, Object> data) throws IOException {
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("event", event);
+            payload.putAll(data);
+            String json = objectMapper.writeValueAsString(payload);
+            String frame = sse ? "event: " + event + "\ndata: " + json + "\n\n" : json + "\n";
+            out.write(frame.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package bor.tools.simplerag.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import bor.tools.simplerag.repository.ChapterRepository;
+import bor.tools.simplerag.repository.DocumentoRepository;
+import bor.tools.utils.LRUCache;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory cache of Documento and Chapter titles used to enrich search results.
+ *
+ * <p>Search results only need titles, but loading them through
+ * <code>findAllById</code> reads the full entities, including
+ * <code>conteudoMarkdown</code> and chapter <code>conteudo</code>. This service
+ * loads misses through the lightweight projections
+ * {@link DocumentoRepository#findTitulosByIdIn} and
+ * {@link ChapterRepository#findTitulosByIdIn} (one query per entity type, only
+ * for ids not cached) and keeps them in bounded LRU caches.</p>
+ *
+ * <p>Entries are evicted by {@link DocumentoService} whenever a document or its
+ * chapters are updated or deleted. See {@link #evictDocumento(Integer)}.</p>
+ */
+@Service
+@Slf4j
+public class TitleCacheService {
+
+    private final DocumentoRepository documentoRepository;
+    private final ChapterRepository chapterRepository;
+
+    /**
+     * documento id -> título (empty for untitled documents, since
+     * {@link LRUCache#put} ignores null values)
+     */
+    @Getter
+    private final LRUCache<Integer, Optional<String>> documentoTitles;
+
+    /**
+     * chapter id -> (documento id, título)
+     */
+    @Getter
+    private final LRUCache<Integer, ChapterRepository.TituloView> chapterTitles;
+
+    public TitleCacheService(DocumentoRepository documentoRepository,
+                             ChapterRepository chapterRepository,
+                             @Value("${rag.pesquisa.title-cache-size:10000}") int cacheSize) {
+        this.documentoRepository = documentoRepository;
+        this.chapterRepository = chapterRepository;
+        this.documentoTitles = new LRUCache<>(cacheSize);
+        this.chapterTitles = new LRUCache<>(cacheSize);
+    }
+
+    /**
+     * Returns titles of the given documents. Missing ids are loaded in one query.
+     *
+     * @param ids - documento ids (nulls ignored)
+     * @return map id -> título (ids not found are absent)
+     */
+    public Map<Integer, String> getDocumentoTitles(Collection<Integer> ids) {
+        Map<Integer, String> result = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            if (id == null || result.containsKey(id)) {
+                continue;
+            }
+            Optional<String> titulo = documentoTitles.get(id);
+            if (titulo != null) {
+                result.put(id, titulo.orElse(null));
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (DocumentoRepository.TituloView view : documentoRepository.findTitulosByIdIn(missing)) {
+                documentoTitles.put(view.getId(), Optional.ofNullable(view.getTitulo()));
+                result.put(view.getId(), view.getTitulo());
+            }
+            log.debug("Loaded {} documento titles", missing.size());
+        }
+        return result;
+    }
+
+    /**
+     * Returns titles of the given chapters. Missing ids are loaded in one query.
+     *
+     * @param ids - chapter ids (nulls ignored)
+     * @return map id -> título (ids not found are absent)
+     */
+    public Map<Integer, String> getChapterTitles(Collection<Integer> ids) {
+        Map<Integer, String> result = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            if (id == null || result.containsKey(id)) {
+                continue;
+            }
+            ChapterRepository.TituloView view = chapterTitles.get(id);
+            if (view != null) {
+                result.put(id, view.getTitulo());
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (ChapterRepository.TituloView view : chapterRepository.findTitulosByIdIn(missing)) {
+                chapterTitles.put(view.getId(), view);
+                result.put(view.getId(), view.getTitulo());
+            }
+            log.debug("Loaded {} chapter titles", missing.size());
+        }
+        return result;
+    }
+
+    /**
+     * Evicts a document title and the titles of all its chapters.
+     * Must be called after the document or its chapters are updated or deleted.
+     *
+     * @param documentoId - documento id
+     */
+    public void evictDocumento(Integer documentoId) {
+        if (documentoId == null) {
+            return;
+        }
+        documentoTitles.remove(documentoId);
+        chapterTitles.removeEntriesIf((id, view) -> Objects.equals(view.getDocumentoId(), documentoId));
+    }
+
+    /**
+     * Evicts a single chapter title.
+     */
+    public void evictChapter(Integer chapterId) {
+        if (chapterId != null) {
+            chapterTitles.remove(chapterId);
+        }
+    }
+
+    /**
+     * Clears both caches.
+     */
+    public void clear() {
+        documentoTitles.clear();
+        chapterTitles.clear();
+    }
+}
@@ -6,6 +6,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import bor.tools.simplellm.*;
 import bor.tools.simplellm.ModelEmbedding.Embeddings_Op;
 import bor.tools.simplellm.exceptions.LLMException;
+import bor.tools.simplerag.util.VectorUtil;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -423,25 +424,10 @@ public class LLMServiceManager {
      * Calculates cosine similarity between two vectors.
      */
     private float cosineSimilarity(float[] vec1, float[] vec2) {
-        if (vec1.length != vec2.length) {
+        if (vec1.length != vec2.length || vec1.length == 0) {
             return 0f;
         }
-
-        float dotProduct = 0f;
-        float norm1 = 0f;
-        float norm2 = 0f;
-
-        for (int i = 0; i < vec1.length; i++) {
-            dotProduct += vec1[i] * vec2[i];
-            norm1 += vec1[i] * vec1[i];
-            norm2 += vec2[i] * vec2[i];
-        }
-
-        if (norm1 == 0f || norm2 == 0f) {
-            return 0f;
-        }
-
-        return dotProduct / (float) (Math.sqrt(norm1) * Math.sqrt(norm2));
+        return (float) VectorUtil.cosineSimilarity(vec1, vec2);
     }
 
     // ============ Statistics and Monitoring ============
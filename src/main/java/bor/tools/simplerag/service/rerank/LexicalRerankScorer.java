@@ -0,0 +1,78 @@
+package bor.tools.simplerag.service.rerank;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Local scorer, without model calls: weighted coverage of the query terms.
+ *
+ * <p>The score of a passage is the fraction of the query terms it contains,
+ * each term weighted by its inverse frequency among the passages of the batch,
+ * so rare terms decide the order. Terms are lower-cased and accent-stripped;
+ * terms shorter than 3 characters are ignored.</p>
+ *
+ * <p>Stands in for a local cross-encoder: cheap enough to score every
+ * candidate within the budget, and a baseline to compare the LLM scorer against.</p>
+ */
+@Component
+public class LexicalRerankScorer implements RerankScorer {
+
+    public static final String NAME = "local";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public double[] score(String query, List<String> passages) {
+        Set<String> terms = terms(query);
+        double[] scores = new double[passages.size()];
+        if (terms.isEmpty() || passages.isEmpty()) {
+            return scores;
+        }
+
+        List<Set<String>> passageTerms = passages.stream().map(LexicalRerankScorer::terms).toList();
+        Map<String, Double> idf = new HashMap<>();
+        double total = 0;
+        for (String term : terms) {
+            long df = passageTerms.stream().filter(p -> p.contains(term)).count();
+            double w = Math.log(1.0 + (passages.size() - df + 0.5) / (df + 0.5));
+            idf.put(term, w);
+            total += w;
+        }
+        for (int i = 0; i < scores.length; i++) {
+            double sum = 0;
+            for (String term : terms) {
+                if (passageTerms.get(i).contains(term)) {
+                    sum += idf.get(term);
+                }
+            }
+            scores[i] = total > 0 ? sum / total : 0;
+        }
+        return scores;
+    }
+
+    static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        String plain = Normalizer.normalize(text, Normalizer.Form.NFD)
+                                 .replaceAll("\\p{M}", "")
+                                 .toLowerCase(Locale.ROOT);
+        for (String term : plain.split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() >= 3) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,98 @@
+package bor.tools.simplerag.service.rerank;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import bor.tools.simplerag.service.llm.LLMServiceManager;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LLM scorer: one completion per batch, through {@link LLMServiceManager}.
+ *
+ * <p>The prompt lists the numbered passages (truncated to
+ * <code>rag.pesquisa.rerank.llm.max-passage-chars</code>) and asks for one
+ * <code>number: score</code> line per passage, score from 0 to 10. Passages
+ * missing from the answer score 0.</p>
+ */
+@Component
+@Slf4j
+public class LlmRerankScorer implements RerankScorer {
+
+    public static final String NAME = "llm";
+
+    static final String SYSTEM_PROMPT = """
+            You rate how relevant each passage is to answer the query.
+            Reply only with one line per passage, in the form <number>: <score>,
+            where score is an integer from 0 (irrelevant) to 10 (answers the query).
+            """;
+
+    private static final Pattern SCORE_LINE = Pattern.compile("(?m)^\\W*(\\d+)\\W*[:=-]\\s*(\\d+(?:[.,]\\d+)?)");
+    private static final Pattern THINK = Pattern.compile("(?s)<think>.*?</think>");
+
+    private final LLMServiceManager llmServiceManager;
+    private final String model;
+    private final int maxPassageChars;
+
+    public LlmRerankScorer(LLMServiceManager llmServiceManager,
+                           @Value("${rag.pesquisa.rerank.llm.model:qwen/qwen3-1.7b}") String model,
+                           @Value("${rag.pesquisa.rerank.llm.max-passage-chars:1000}") int maxPassageChars) {
+        this.llmServiceManager = llmServiceManager;
+        this.model = model;
+        this.maxPassageChars = maxPassageChars;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public double[] score(String query, List<String> passages) {
+        String answer = llmServiceManager.generateCompletion(SYSTEM_PROMPT, prompt(query, passages, maxPassageChars),
+                                                             model);
+        return parse(answer, passages.size());
+    }
+
+    static String prompt(String query, List<String> passages, int maxPassageChars) {
+        StringBuilder sb = new StringBuilder("Query: ").append(query).append("\n\n");
+        for (int i = 0; i < passages.size(); i++) {
+            String text = passages.get(i) != null ? passages.get(i).replaceAll("\\s+", " ").trim() : "";
+            if (maxPassageChars > 0 && text.length() > maxPassageChars) {
+                text = text.substring(0, maxPassageChars) + "...";
+            }
+            sb.append('[').append(i + 1).append("] ").append(text).append("\n\n");
+        }
+        sb.append("Scores (").append(passages.size()).append(" lines):");
+        return sb.toString();
+    }
+
+    /**
+     * Reads the <code>number: score</code> lines of the answer
+     *
+     * @return scores scaled to [0, 1]; 0 for passages without a line
+     */
+    static double[] parse(String answer, int count) {
+        double[] scores = new double[count];
+        if (answer == null) {
+            return scores;
+        }
+        Matcher m = SCORE_LINE.matcher(THINK.matcher(answer).replaceAll(""));
+        int found = 0;
+        while (m.find()) {
+            int index = Integer.parseInt(m.group(1)) - 1;
+            if (index >= 0 && index < count) {
+                double score = Double.parseDouble(m.group(2).replace(',', '.'));
+                scores[index] = Math.max(0.0, Math.min(1.0, score / 10.0));
+                found++;
+            }
+        }
+        if (found < count) {
+            log.debug("LLM re-ranker scored {} of {} passages", found, count);
+        }
+        return scores;
+    }
+}
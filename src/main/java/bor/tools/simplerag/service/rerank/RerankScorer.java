@@ -0,0 +1,28 @@
+package bor.tools.simplerag.service.rerank;
+
+import java.util.List;
+
+/**
+ * Relevance scorer of the re-ranking stage ({@link bor.tools.simplerag.service.RerankService}).
+ *
+ * <p>Implementations are Spring beans selected by name through
+ * <code>rag.pesquisa.rerank.scorer</code>. A call scores one batch of passages
+ * against the query (one LLM / model round trip per batch), so implementations
+ * should not loop over the passages with remote calls.</p>
+ */
+public interface RerankScorer {
+
+    /**
+     * Name used in <code>rag.pesquisa.rerank.scorer</code> and in the score cache key
+     */
+    String getName();
+
+    /**
+     * Scores passages against the query.
+     *
+     * @param query - user query
+     * @param passages - passage texts of one batch
+     * @return relevance of each passage in [0, 1], in the order of <code>passages</code>
+     */
+    double[] score(String query, List<String> passages);
+}
@@ -0,0 +1,33 @@
+package bor.tools.simplerag.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers changes to non-transactional state (caches, in-memory indexes) to
+ * after the commit of the current transaction, so concurrent readers never
+ * pair new cache versions with uncommitted rows and a rollback leaves that
+ * state untouched.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Runs <code>action</code> after the current transaction commits (not on
+     * rollback), or immediately when no transaction is active
+     */
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
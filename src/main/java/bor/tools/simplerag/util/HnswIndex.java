@@ -0,0 +1,534 @@
+package bor.tools.simplerag.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory HNSW (Hierarchical Navigable Small World) index over Euclidean (L2)
+ * distance, the same metric as <code>embedding_vector &lt;-&gt; ?</code> in
+ * {@link bor.tools.simplerag.repository.DocEmbeddingJdbcRepository}.
+ *
+ * <p>Vectors live off-heap in an {@link OffHeapVectorStore}; only the graph
+ * (about <code>2 * M</code> ints per vector) and the id maps are on the heap.
+ * Distances use the SIMD kernels of {@link VectorUtil}.</p>
+ *
+ * <p>Concurrency: any number of concurrent searches, inserts and removals
+ * serialized behind a write lock. Removal is logical (tombstone): the node keeps
+ * routing searches but is never returned. Rebuild the index when
+ * {@link #getDeletedCount()} grows large.</p>
+ *
+ * <p>Reference: Malkov &amp; Yashunin, "Efficient and robust approximate nearest
+ * neighbor search using Hierarchical Navigable Small World graphs" (2016).</p>
+ */
+public class HnswIndex {
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+
+    private final OffHeapVectorStore vectors;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** External id per node */
+    private int[] nodeIds = new int[1024];
+    /** links[node][level] = {count, neighbor...} */
+    private int[][][] links = new int[1024][][];
+    private final Map<Integer, Integer> idToNode = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ThreadLocal<float[]> scratchA;
+    private final ThreadLocal<float[]> scratchB;
+
+    /**
+     * Search result: external id and L2 distance to the query
+     */
+    public static final class Result {
+        private final int id;
+        private final float distance;
+
+        Result(int id, float distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public float getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * @param dimension vector dimension
+     * @param m maximum links per node on upper layers (2 * m on layer 0), typically 16
+     * @param efConstruction candidate list size while inserting, typically 100-200
+     * @throws IllegalArgumentException if any argument is out of range
+     */
+    public HnswIndex(int dimension, int m, int efConstruction) {
+        this(dimension, m, efConstruction, new OffHeapVectorStore(dimension));
+    }
+
+    private HnswIndex(int dimension, int m, int efConstruction, OffHeapVectorStore vectors) {
+        if (m < 2) {
+            throw new IllegalArgumentException("M must be at least 2");
+        }
+        if (efConstruction < m) {
+            throw new IllegalArgumentException("efConstruction must be at least M");
+        }
+        this.dimension = dimension;
+        this.vectors = vectors;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.scratchA = ThreadLocal.withInitial(() -> new float[dimension]);
+        this.scratchB = ThreadLocal.withInitial(() -> new float[dimension]);
+    }
+
+    /**
+     * Restores an index from its parts (see {@link HnswSnapshot}).
+     * The id map is rebuilt from the live nodes.
+     */
+    HnswIndex(int m, int efConstruction, OffHeapVectorStore vectors, int[] nodeIds, int[][][] links,
+              BitSet deleted, int entryPoint, int maxLevel) {
+        this(vectors.getDimension(), m, efConstruction, vectors);
+        int count = vectors.size();
+        this.nodeIds = Arrays.copyOf(nodeIds, Math.max(count, 1024));
+        this.links = Arrays.copyOf(links, Math.max(count, 1024));
+        this.deleted.or(deleted);
+        this.entryPoint = entryPoint;
+        this.maxLevel = maxLevel;
+        for (int node = 0; node < count; node++) {
+            if (!deleted.get(node)) {
+                idToNode.put(nodeIds[node], node);
+            }
+        }
+    }
+
+    /**
+     * Inserts a vector, replacing any previous vector with the same id.
+     *
+     * @param id external id (doc_embedding.id)
+     * @param vector vector of {@link #getDimension()} components
+     * @throws IllegalArgumentException if the dimension does not match
+     */
+    public void add(int id, float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("Vector must have dimension " + dimension);
+        }
+        lock.writeLock().lock();
+        try {
+            Integer previous = idToNode.get(id);
+            if (previous != null) {
+                deleted.set(previous);
+            }
+            int node = vectors.add(vector);
+            ensureCapacity(node + 1);
+            int level = randomLevel();
+            nodeIds[node] = id;
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+            }
+            idToNode.put(id, node);
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+
+            int current = entryPoint;
+            float currentDist = distance(vector, current);
+            for (int l = maxLevel; l > level; l--) {
+                boolean changed = true;
+                while (changed) {
+                    changed = false;
+                    int[] neighbors = links[current][l];
+                    for (int i = 1; i <= neighbors[0]; i++) {
+                        float d = distance(vector, neighbors[i]);
+                        if (d < currentDist) {
+                            currentDist = d;
+                            current = neighbors[i];
+                            changed = true;
+                        }
+                    }
+                }
+            }
+
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                long[] candidates = searchLayer(vector, current, efConstruction, l);
+                int maxLinks = l == 0 ? maxM0 : m;
+                int[] selected = selectNeighbors(candidates, maxLinks);
+                int[] own = links[node][l];
+                for (int s : selected) {
+                    own[++own[0]] = s;
+                    connect(s, node, l, maxLinks);
+                }
+                current = node(candidates[0]);
+            }
+
+            if (level > maxLevel) {
+                entryPoint = node;
+                maxLevel = level;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the vector with the given id.
+     *
+     * @return true if the id was present
+     */
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Integer node = idToNode.remove(id);
+            if (node == null) {
+                return false;
+            }
+            deleted.set(node);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate k nearest neighbors of the query.
+     *
+     * @param query query vector
+     * @param k number of results
+     * @param ef candidate list size on layer 0 (recall / latency trade-off), raised to k if smaller
+     * @return results ordered by ascending distance
+     * @throws IllegalArgumentException if the dimension does not match
+     */
+    public List<Result> search(float[] query, int k, int ef) {
+        if (query == null || query.length != dimension) {
+            throw new IllegalArgumentException("Vector must have dimension " + dimension);
+        }
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            int current = entryPoint;
+            float currentDist = distance(query, current);
+            for (int l = maxLevel; l > 0; l--) {
+                boolean changed = true;
+                while (changed) {
+                    changed = false;
+                    int[] neighbors = links[current][l];
+                    for (int i = 1; i <= neighbors[0]; i++) {
+                        float d = distance(query, neighbors[i]);
+                        if (d < currentDist) {
+                            currentDist = d;
+                            current = neighbors[i];
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            // Tombstones occupy candidate slots: widen the list proportionally
+            int deletedCount = deleted.cardinality();
+            int live = idToNode.size();
+            int width = Math.max(ef, k);
+            if (deletedCount > 0 && live > 0) {
+                width = (int) Math.min((long) width * (live + deletedCount) / live, vectors.size());
+            }
+
+            long[] candidates = searchLayer(query, current, width, 0);
+            List<Result> results = new ArrayList<>(k);
+            for (long c : candidates) {
+                int node = node(c);
+                if (!deleted.get(node)) {
+                    results.add(new Result(nodeIds[node], (float) Math.sqrt(dist(c))));
+                    if (results.size() == k) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of live (not removed) vectors
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idToNode.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of removed nodes still present in the graph
+     */
+    public int getDeletedCount() {
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(int id) {
+        lock.readLock().lock();
+        try {
+            return idToNode.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    /**
+     * Visits every live entry; the vector is a copy
+     */
+    public void forEach(BiConsumer<Integer, float[]> action) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Integer, Integer> e : idToNode.entrySet()) {
+                float[] v = new float[dimension];
+                vectors.get(e.getValue(), v);
+                action.accept(e.getKey(), v);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Direct memory used by the vectors, in bytes
+     */
+    public long getOffHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return vectors.getOffHeapBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ======== SNAPSHOT ACCESS (HnswSnapshot, under the read lock) ========
+
+    ReentrantReadWriteLock.ReadLock readLock() {
+        return lock.readLock();
+    }
+
+    OffHeapVectorStore vectors() {
+        return vectors;
+    }
+
+    int[] nodeIds() {
+        return nodeIds;
+    }
+
+    int[][][] links() {
+        return links;
+    }
+
+    BitSet deleted() {
+        return deleted;
+    }
+
+    int entryPoint() {
+        return entryPoint;
+    }
+
+    int maxLevel() {
+        return maxLevel;
+    }
+
+    // ======== INTERNALS ========
+
+    /*
+     * Candidates are encoded as long: high 32 bits = float bits of the squared
+     * distance (non-negative floats order like their int bits), low 32 bits = node.
+     */
+    private static long encode(float dist, int node) {
+        return ((long) Float.floatToRawIntBits(dist) << 32) | node;
+    }
+
+    private static int node(long encoded) {
+        return (int) encoded;
+    }
+
+    private static float dist(long encoded) {
+        return Float.intBitsToFloat((int) (encoded >>> 32));
+    }
+
+    /**
+     * Greedy best-first search on one layer.
+     *
+     * @return candidates ordered by ascending distance (at most ef)
+     */
+    private long[] searchLayer(float[] query, int entry, int ef, int level) {
+        BitSet visited = new BitSet(vectors.size());
+        PriorityQueue<Long> candidates = new PriorityQueue<>();
+        PriorityQueue<Long> results = new PriorityQueue<>((a, b) -> Long.compare(b, a));
+
+        long first = encode(distance(query, entry), entry);
+        visited.set(entry);
+        candidates.add(first);
+        results.add(first);
+
+        while (!candidates.isEmpty()) {
+            long c = candidates.poll();
+            if (dist(c) > dist(results.peek()) && results.size() >= ef) {
+                break;
+            }
+            int[] neighbors = links[node(c)][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int n = neighbors[i];
+                if (visited.get(n)) {
+                    continue;
+                }
+                visited.set(n);
+                float d = distance(query, n);
+                if (results.size() < ef || d < dist(results.peek())) {
+                    long e = encode(d, n);
+                    candidates.add(e);
+                    results.add(e);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        long[] sorted = new long[results.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = results.poll();
+        }
+        return sorted;
+    }
+
+    /**
+     * Neighbor selection heuristic (paper, algorithm 4): a candidate is kept only
+     * if it is closer to the base than to every neighbor already selected, which
+     * favors diverse directions; remaining slots are filled with the nearest
+     * pruned candidates.
+     *
+     * @param candidates ascending by distance to the base
+     */
+    private int[] selectNeighbors(long[] candidates, int maxLinks) {
+        if (candidates.length <= maxLinks) {
+            int[] all = new int[candidates.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = node(candidates[i]);
+            }
+            return all;
+        }
+        int[] selected = new int[maxLinks];
+        int count = 0;
+        long[] pruned = new long[candidates.length];
+        int prunedCount = 0;
+        for (long c : candidates) {
+            if (count == maxLinks) {
+                break;
+            }
+            int cn = node(c);
+            boolean keep = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(cn, selected[i]) < dist(c)) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = cn;
+            } else {
+                pruned[prunedCount++] = c;
+            }
+        }
+        for (int i = 0; i < prunedCount && count < maxLinks; i++) {
+            selected[count++] = node(pruned[i]);
+        }
+        return count == maxLinks ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Adds a back link from <code>node</code> to <code>neighbor</code>, pruning
+     * the neighbor list with the heuristic when it overflows
+     */
+    private void connect(int node, int neighbor, int level, int maxLinks) {
+        int[] list = links[node][level];
+        if (list[0] < maxLinks) {
+            list[++list[0]] = neighbor;
+            return;
+        }
+        long[] candidates = new long[list[0] + 1];
+        for (int i = 1; i <= list[0]; i++) {
+            candidates[i - 1] = encode(distance(node, list[i]), list[i]);
+        }
+        candidates[list[0]] = encode(distance(node, neighbor), neighbor);
+        Arrays.sort(candidates);
+        int[] selected = selectNeighbors(candidates, maxLinks);
+        list[0] = selected.length;
+        System.arraycopy(selected, 0, list, 1, selected.length);
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > nodeIds.length) {
+            int newLength = Math.max(capacity, nodeIds.length * 2);
+            nodeIds = Arrays.copyOf(nodeIds, newLength);
+            links = Arrays.copyOf(links, newLength);
+        }
+    }
+
+    /** Squared L2 distance between a query and a stored node */
+    private float distance(float[] query, int node) {
+        float[] v = scratchA.get();
+        vectors.get(node, v);
+        return (float) VectorUtil.OPS.squareDistance(query, 0, v, 0, dimension);
+    }
+
+    /** Squared L2 distance between two stored nodes */
+    private float distance(int nodeA, int nodeB) {
+        float[] a = scratchA.get();
+        float[] b = scratchB.get();
+        vectors.get(nodeA, a);
+        vectors.get(nodeB, b);
+        return (float) VectorUtil.OPS.squareDistance(a, 0, b, 0, dimension);
+    }
+}
@@ -0,0 +1,331 @@
+package bor.tools.simplerag.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.zip.Checksum;
+
+import bor.tools.utils.CRC64;
+
+/**
+ * Snapshot file of an {@link HnswIndex}, for warm starts without re-reading
+ * the vectors from PostgreSQL.
+ *
+ * <p>Layout (little-endian):</p>
+ * <pre>
+ * header (128 bytes)  magic "JSRHNSW1", format version, library id, dimension, M,
+ *                     efConstruction, node count, entry point, max level,
+ *                     taken-at (epoch ms), live count, max id, graph and vector offsets
+ * node ids            int[nodeCount]
+ * deleted             int words, long[words]
+ * graph               per node: int levels, per level: int count, int[count]
+ * vectors             float32[nodeCount * dimension], 64-byte aligned
+ * trailer             CRC64 of all preceding bytes
+ * </pre>
+ *
+ * <p>Reading verifies magic, version and CRC64, loads ids and graph on the heap
+ * and memory-maps the vector block ({@link OffHeapVectorStore#map}), so a restart
+ * costs a sequential checksum pass instead of rebuilding the graph. Writes go
+ * to a temporary file atomically renamed over the previous snapshot.</p>
+ *
+ * <p>The snapshot carries no database state: the caller records when it was
+ * taken and validates it against doc_embedding before use.</p>
+ */
+public class HnswSnapshot {
+
+    static final long MAGIC = 0x3157534E4852534AL; // "JSRHNSW1" read little-endian
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 128;
+    private static final int VECTOR_ALIGNMENT = 64;
+    private static final int IO_BUFFER_BYTES = 1 << 20;
+    private static final long MAX_MAP_BYTES = 1L << 30;
+
+    private final HnswIndex index;
+    private final int libraryId;
+    private final long takenAt;
+    private final int liveCount;
+    private final int maxId;
+
+    private HnswSnapshot(HnswIndex index, int libraryId, long takenAt, int liveCount, int maxId) {
+        this.index = index;
+        this.libraryId = libraryId;
+        this.takenAt = takenAt;
+        this.liveCount = liveCount;
+        this.maxId = maxId;
+    }
+
+    public HnswIndex getIndex() {
+        return index;
+    }
+
+    public int getLibraryId() {
+        return libraryId;
+    }
+
+    /**
+     * Instant (epoch ms) the snapshot reflects, as given to {@link #write}
+     */
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    /**
+     * Live ids in the snapshot
+     */
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Largest live id in the snapshot, 0 if empty
+     */
+    public int getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * Writes a snapshot of the index. Holds the index read lock while writing:
+     * searches continue, inserts and removals wait.
+     *
+     * @param index index to write
+     * @param libraryId library of the index
+     * @param takenAt instant (epoch ms) recorded in the header
+     * @param file destination file (replaced atomically)
+     */
+    public static void write(HnswIndex index, int libraryId, long takenAt, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        index.readLock().lock();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            OffHeapVectorStore vectors = index.vectors();
+            int nodeCount = vectors.size();
+            int[] nodeIds = index.nodeIds();
+            int[][][] links = index.links();
+            long[] deletedWords = index.deleted().toLongArray();
+
+            int liveCount = 0;
+            int maxId = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                if (!index.deleted().get(node)) {
+                    liveCount++;
+                    maxId = Math.max(maxId, nodeIds[node]);
+                }
+            }
+
+            long graphBytes = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                graphBytes += Integer.BYTES;
+                for (int[] level : links[node]) {
+                    graphBytes += Integer.BYTES * (1L + level[0]);
+                }
+            }
+            long graphOffset = HEADER_BYTES + (long) Integer.BYTES * nodeCount
+                    + Integer.BYTES + (long) Long.BYTES * deletedWords.length;
+            long vectorsOffset = align(graphOffset + graphBytes);
+
+            Checksum crc = new CRC64();
+            Output out = new Output(channel, crc);
+            out.putLong(MAGIC);
+            out.putInt(FORMAT_VERSION);
+            out.putInt(libraryId);
+            out.putInt(vectors.getDimension());
+            out.putInt(index.getM());
+            out.putInt(index.getEfConstruction());
+            out.putInt(nodeCount);
+            out.putInt(index.entryPoint());
+            out.putInt(index.maxLevel());
+            out.putLong(takenAt);
+            out.putInt(liveCount);
+            out.putInt(maxId);
+            out.putLong(graphOffset);
+            out.putLong(vectorsOffset);
+            out.padTo(HEADER_BYTES);
+
+            for (int node = 0; node < nodeCount; node++) {
+                out.putInt(nodeIds[node]);
+            }
+            out.putInt(deletedWords.length);
+            for (long word : deletedWords) {
+                out.putLong(word);
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                int[][] levels = links[node];
+                out.putInt(levels.length);
+                for (int[] level : levels) {
+                    for (int i = 0; i <= level[0]; i++) {
+                        out.putInt(level[i]);
+                    }
+                }
+            }
+            out.padTo(vectorsOffset);
+            out.flush();
+
+            vectors.writeTo(channel, crc);
+
+            ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putLong(crc.getValue()).flip();
+            while (trailer.hasRemaining()) {
+                channel.write(trailer);
+            }
+            channel.force(false);
+        } finally {
+            index.readLock().unlock();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads and verifies a snapshot.
+     *
+     * @param file snapshot file
+     * @return the restored index and header information
+     * @throws IOException if the file cannot be read, is not a snapshot, or fails the checksum
+     */
+    public static HnswSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Long.BYTES) {
+                throw new IOException("Snapshot too small: " + file);
+            }
+            verifyChecksum(channel, size - Long.BYTES);
+
+            ByteBuffer header = readFully(channel, 0, HEADER_BYTES);
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Not an HNSW snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            int libraryId = header.getInt();
+            int dimension = header.getInt();
+            int m = header.getInt();
+            int efConstruction = header.getInt();
+            int nodeCount = header.getInt();
+            int entryPoint = header.getInt();
+            int maxLevel = header.getInt();
+            long takenAt = header.getLong();
+            int liveCount = header.getInt();
+            int maxId = header.getInt();
+            header.getLong(); // graph offset, implied by the sequential layout
+            long vectorsOffset = header.getLong();
+
+            if (vectorsOffset - HEADER_BYTES > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot graph section too large: " + file);
+            }
+            ByteBuffer in = readFully(channel, HEADER_BYTES, (int) (vectorsOffset - HEADER_BYTES));
+
+            int[] nodeIds = new int[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                nodeIds[node] = in.getInt();
+            }
+            long[] words = new long[in.getInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.getLong();
+            }
+            int maxM0 = 2 * m;
+            int[][][] links = new int[nodeCount][][];
+            for (int node = 0; node < nodeCount; node++) {
+                int levels = in.getInt();
+                links[node] = new int[levels][];
+                for (int l = 0; l < levels; l++) {
+                    int[] level = new int[(l == 0 ? maxM0 : m) + 1];
+                    level[0] = in.getInt();
+                    for (int i = 1; i <= level[0]; i++) {
+                        level[i] = in.getInt();
+                    }
+                    links[node][l] = level;
+                }
+            }
+
+            OffHeapVectorStore vectors = OffHeapVectorStore.map(channel, vectorsOffset, nodeCount, dimension);
+            HnswIndex index = new HnswIndex(m, efConstruction, vectors, nodeIds, links,
+                                            BitSet.valueOf(words), entryPoint, maxLevel);
+            return new HnswSnapshot(index, libraryId, takenAt, liveCount, maxId);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, IndexOutOfBounds...: treat as corruption
+            throw new IOException("Invalid snapshot " + file + ": " + e, e);
+        }
+    }
+
+    private static void verifyChecksum(FileChannel channel, long length) throws IOException {
+        Checksum crc = new CRC64();
+        for (long pos = 0; pos < length; pos += MAX_MAP_BYTES) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                                  Math.min(MAX_MAP_BYTES, length - pos));
+            crc.update(window);
+        }
+        long expected = readFully(channel, length, Long.BYTES).getLong();
+        if (crc.getValue() != expected) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static long align(long offset) {
+        return (offset + VECTOR_ALIGNMENT - 1) / VECTOR_ALIGNMENT * VECTOR_ALIGNMENT;
+    }
+
+    /**
+     * Buffered little-endian writer that feeds the checksum on flush
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final Checksum crc;
+        private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long written;
+
+        Output(FileChannel channel, Checksum crc) {
+            this.channel = channel;
+            this.crc = crc;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void padTo(long offset) throws IOException {
+            while (written + buffer.position() < offset) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package bor.tools.simplerag.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Checksum;
+
+/**
+ * Append-only store of fixed-dimension float vectors kept outside the Java heap.
+ *
+ * <p>Vectors are laid out contiguously in direct buffers, allocated in chunks of
+ * {@value #CHUNK_VECTORS} vectors (12 MiB for 768 dimensions), so millions of
+ * embeddings add neither heap pressure nor GC scanning work. Direct memory is bounded by
+ * <code>-XX:MaxDirectMemorySize</code> (default: the maximum heap size) and is
+ * released when the store becomes unreachable.</p>
+ *
+ * <p>Vectors are stored little-endian, the layout of the snapshot files written by
+ * {@link HnswSnapshot}: a store can be {@link #map(FileChannel, long, int, int) mapped}
+ * directly from such a file, without copying or parsing.</p>
+ *
+ * <p>Not thread-safe: writes must be serialized and must not run concurrently
+ * with reads (see {@link HnswIndex}).</p>
+ */
+public class OffHeapVectorStore {
+
+    private static final int CHUNK_SHIFT = 12;
+
+    /** Vectors per direct buffer */
+    public static final int CHUNK_VECTORS = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_VECTORS - 1;
+
+    private final int dimension;
+    private final List<ByteBuffer> byteChunks = new ArrayList<>();
+    private final List<FloatBuffer> chunks = new ArrayList<>();
+    private int size;
+
+    /**
+     * @param dimension vector dimension
+     * @throws IllegalArgumentException if dimension is not positive or exceeds 65535
+     */
+    public OffHeapVectorStore(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Dimension must be positive");
+        }
+        if (dimension > 0xFFFF) {
+            throw new IllegalArgumentException("Dimension too large: " + dimension);
+        }
+        this.dimension = dimension;
+    }
+
+    /**
+     * Appends a vector.
+     *
+     * @param vector vector of {@link #getDimension()} components
+     * @return index of the stored vector
+     * @throws IllegalArgumentException if the dimension does not match
+     */
+    public int add(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("Vector must have dimension " + dimension);
+        }
+        int index = size;
+        int chunk = index >>> CHUNK_SHIFT;
+        if (chunk == chunks.size()) {
+            addChunk(ByteBuffer.allocateDirect(chunkBytes()));
+        }
+        chunks.get(chunk).put((index & CHUNK_MASK) * dimension, vector);
+        size++;
+        return index;
+    }
+
+    /**
+     * Copies the vector at <code>index</code> into <code>dst</code>.
+     *
+     * @param index index returned by {@link #add(float[])}
+     * @param dst destination array of at least {@link #getDimension()} floats
+     */
+    public void get(int index, float[] dst) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Vector index " + index + " out of bounds for size " + size);
+        }
+        chunks.get(index >>> CHUNK_SHIFT).get((index & CHUNK_MASK) * dimension, dst, 0, dimension);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Direct and mapped memory in use, in bytes
+     */
+    public long getOffHeapBytes() {
+        return (long) chunks.size() * chunkBytes();
+    }
+
+    /**
+     * Writes the vectors contiguously (little-endian float32) to a channel.
+     *
+     * @param out destination channel
+     * @param checksum updated with the bytes written
+     */
+    void writeTo(WritableByteChannel out, Checksum checksum) throws IOException {
+        for (int i = 0; i < byteChunks.size(); i++) {
+            int vectorsInChunk = Math.min(CHUNK_VECTORS, size - i * CHUNK_VECTORS);
+            ByteBuffer data = byteChunks.get(i).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            data.position(0).limit(vectorsInChunk * dimension * Float.BYTES);
+            checksum.update(data.duplicate());
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        }
+    }
+
+    /**
+     * Creates a store over <code>count</code> vectors written by
+     * {@link #writeTo(WritableByteChannel, Checksum)} at <code>offset</code> of a file.
+     * Full chunks are memory-mapped read-only (pages are loaded lazily by the OS);
+     * the last, partial chunk is copied into direct memory so it can take appends.
+     */
+    static OffHeapVectorStore map(FileChannel channel, long offset, int count, int dimension) throws IOException {
+        OffHeapVectorStore store = new OffHeapVectorStore(dimension);
+        long chunkBytes = store.chunkBytes();
+        int fullChunks = count / CHUNK_VECTORS;
+        for (int i = 0; i < fullChunks; i++) {
+            store.addChunk(channel.map(FileChannel.MapMode.READ_ONLY, offset + i * chunkBytes, chunkBytes));
+        }
+        int tail = count - fullChunks * CHUNK_VECTORS;
+        if (tail > 0) {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(store.chunkBytes());
+            chunk.limit(tail * dimension * Float.BYTES);
+            long position = offset + fullChunks * chunkBytes;
+            while (chunk.hasRemaining()) {
+                int read = channel.read(chunk, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of vector block");
+                }
+                position += read;
+            }
+            chunk.clear();
+            store.addChunk(chunk);
+        }
+        store.size = count;
+        return store;
+    }
+
+    private void addChunk(ByteBuffer chunk) {
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        byteChunks.add(chunk);
+        chunks.add(chunk.asFloatBuffer());
+    }
+
+    private int chunkBytes() {
+        return CHUNK_VECTORS * dimension * Float.BYTES;
+    }
+}
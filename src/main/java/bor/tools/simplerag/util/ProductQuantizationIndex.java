@@ -0,0 +1,228 @@
+package bor.tools.simplerag.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Flat index of product-quantized codes ({@link ProductQuantizer}) for
+ * first-stage candidate generation.
+ *
+ * <p>Each vector takes {@link ProductQuantizer#getCodeSize()} bytes plus its
+ * id, so tens of millions of vectors fit in memory. A search scans every code
+ * with asymmetric distances and keeps the best <code>n</code>; the caller
+ * re-ranks them with the exact vectors.</p>
+ *
+ * <p>Codes live in fixed-size heap chunks (no single array limit). Removal
+ * marks the slot as deleted; rebuild the index once many slots are deleted.
+ * Thread-safe: searches run concurrently, inserts and removals are serialized.</p>
+ */
+public class ProductQuantizationIndex {
+
+    /** Vectors per code chunk */
+    static final int CHUNK_VECTORS = 16384;
+
+    private final ProductQuantizer quantizer;
+    private final int codeSize;
+    private final List<byte[]> chunks = new ArrayList<>();
+    private int[] slotIds = new int[1024];
+    private int slots;
+    private final BitSet deleted = new BitSet();
+    private final Map<Integer, Integer> idToSlot = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ProductQuantizationIndex(ProductQuantizer quantizer) {
+        this.quantizer = quantizer;
+        this.codeSize = quantizer.getCodeSize();
+    }
+
+    public ProductQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    /**
+     * Encodes and adds a vector, replacing any previous vector of the same id
+     */
+    public void add(int id, float[] vector) {
+        byte[] code = quantizer.encode(vector);
+        lock.writeLock().lock();
+        try {
+            Integer previous = idToSlot.get(id);
+            if (previous != null) {
+                deleted.set(previous);
+            }
+            int slot = slots++;
+            if (slot % CHUNK_VECTORS == 0) {
+                chunks.add(new byte[CHUNK_VECTORS * codeSize]);
+            }
+            System.arraycopy(code, 0, chunks.get(slot / CHUNK_VECTORS), (slot % CHUNK_VECTORS) * codeSize, codeSize);
+            if (slot == slotIds.length) {
+                slotIds = Arrays.copyOf(slotIds, slotIds.length * 2);
+            }
+            slotIds[slot] = id;
+            idToSlot.put(id, slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the id was present
+     */
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = idToSlot.remove(id);
+            if (slot == null) {
+                return false;
+            }
+            deleted.set(slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(int id) {
+        lock.readLock().lock();
+        try {
+            return idToSlot.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the <code>n</code> codes closest to the query (asymmetric L2)
+     *
+     * @return ids ordered by ascending approximate distance
+     */
+    public int[] search(float[] query, int n) {
+        if (n < 1) {
+            return new int[0];
+        }
+        float[] table = quantizer.distanceTable(query);
+        lock.readLock().lock();
+        try {
+            // Max-heap of (distance, slot) encoded as longs: the root is the worst kept
+            long[] heap = new long[Math.max(1, Math.min(n, idToSlot.size()))];
+            int size = 0;
+            for (int c = 0; c < chunks.size(); c++) {
+                byte[] chunk = chunks.get(c);
+                int base = c * CHUNK_VECTORS;
+                int end = Math.min(CHUNK_VECTORS, slots - base);
+                for (int i = 0; i < end; i++) {
+                    float d = quantizer.distance(table, chunk, i * codeSize);
+                    if (size == heap.length && d >= dist(heap[0])) {
+                        continue;
+                    }
+                    int slot = base + i;
+                    if (deleted.get(slot)) {
+                        continue;
+                    }
+                    long e = encode(d, slot);
+                    if (size < heap.length) {
+                        siftUp(heap, size++, e);
+                    } else {
+                        siftDown(heap, size, e);
+                    }
+                }
+            }
+            long[] sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted);
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = slotIds[(int) sorted[i]];
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of live (not removed) vectors
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idToSlot.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of removed slots still scanned
+     */
+    public int getDeletedCount() {
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap bytes of codes and ids
+     */
+    public long getMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) chunks.size() * CHUNK_VECTORS * codeSize + (long) slotIds.length * Integer.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Non-negative distances order like their float bits: the encoded longs
+     * sort by distance, then slot
+     */
+    private static long encode(float dist, int slot) {
+        return ((long) Float.floatToRawIntBits(dist) << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    private static float dist(long encoded) {
+        return Float.intBitsToFloat((int) (encoded >>> 32));
+    }
+
+    private static void siftUp(long[] heap, int index, long e) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] >= e) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = e;
+    }
+
+    /**
+     * Replaces the root with <code>e</code>
+     */
+    private static void siftDown(long[] heap, int size, long e) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (heap[child] <= e) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = e;
+    }
+}
@@ -0,0 +1,250 @@
+package bor.tools.simplerag.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Product quantization (PQ) codec for compact approximate L2 scoring.
+ *
+ * <p>A vector of <code>dimension</code> components is split into
+ * <code>subspaces</code> contiguous sub-vectors; each one is replaced by the
+ * index of its nearest centroid in a codebook of {@value #CENTROIDS} entries
+ * trained with k-means, so a vector is encoded in <code>subspaces</code> bytes
+ * (e.g. 768d float32, 3072 bytes, into 96 bytes).</p>
+ *
+ * <p>Search uses asymmetric distance computation (ADC): the query stays in
+ * full precision, {@link #distanceTable(float[])} precomputes its squared
+ * distance to every centroid of every subspace, and the distance to an encoded
+ * vector is a sum of <code>subspaces</code> table lookups
+ * ({@link #distance(float[], byte[], int)}). ADC distances are approximate and
+ * meant for candidate generation; candidates are re-ranked with exact vectors.</p>
+ *
+ * <p>Immutable once trained; safe for concurrent use.</p>
+ */
+public class ProductQuantizer {
+
+    /** Centroids per subspace (one byte per code) */
+    public static final int CENTROIDS = 256;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int subDimension;
+    /** codebooks[s][c * subDimension + j] */
+    private final float[][] codebooks;
+
+    private ProductQuantizer(int dimension, int subspaces, float[][] codebooks) {
+        this.dimension = dimension;
+        this.subspaces = subspaces;
+        this.subDimension = dimension / subspaces;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * Trains the codebooks with k-means (k-means++ seeding) over sample vectors.
+     *
+     * @param samples training vectors, all with the same dimension; ideally a
+     *        random sample of at least a few thousand vectors
+     * @param subspaces number of subspaces (bytes per code); must divide the dimension
+     * @param iterations k-means iterations per subspace
+     * @param seed random seed
+     */
+    public static ProductQuantizer train(List<float[]> samples, int subspaces, int iterations, long seed) {
+        if (samples == null || samples.isEmpty()) {
+            throw new IllegalArgumentException("No training samples");
+        }
+        int dimension = samples.get(0).length;
+        if (subspaces < 1 || dimension % subspaces != 0) {
+            throw new IllegalArgumentException("Subspaces (" + subspaces + ") must divide the dimension (" + dimension + ")");
+        }
+        for (float[] v : samples) {
+            if (v.length != dimension) {
+                throw new IllegalArgumentException("Training vectors must have the same dimension");
+            }
+        }
+        int subDimension = dimension / subspaces;
+        int n = samples.size();
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] codebooks = new float[subspaces][];
+        float[] points = new float[n * subDimension];
+
+        for (int s = 0; s < subspaces; s++) {
+            int offset = s * subDimension;
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(samples.get(i), offset, points, i * subDimension, subDimension);
+            }
+            codebooks[s] = kmeans(points, n, subDimension, iterations, random);
+        }
+        return new ProductQuantizer(dimension, subspaces, codebooks);
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getSubspaces() {
+        return subspaces;
+    }
+
+    /**
+     * Bytes per encoded vector
+     */
+    public int getCodeSize() {
+        return subspaces;
+    }
+
+    /**
+     * Encodes a vector into <code>getCodeSize()</code> bytes at <code>out[offset]</code>
+     */
+    public void encode(float[] vector, byte[] out, int offset) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector dimension " + vector.length + " != " + dimension);
+        }
+        for (int s = 0; s < subspaces; s++) {
+            out[offset + s] = (byte) nearest(codebooks[s], vector, s * subDimension, subDimension);
+        }
+    }
+
+    /**
+     * @return the code of a vector
+     */
+    public byte[] encode(float[] vector) {
+        byte[] code = new byte[subspaces];
+        encode(vector, code, 0);
+        return code;
+    }
+
+    /**
+     * Approximate vector represented by a code (concatenated centroids)
+     */
+    public float[] decode(byte[] codes, int offset) {
+        float[] v = new float[dimension];
+        for (int s = 0; s < subspaces; s++) {
+            int c = codes[offset + s] & 0xFF;
+            System.arraycopy(codebooks[s], c * subDimension, v, s * subDimension, subDimension);
+        }
+        return v;
+    }
+
+    /**
+     * Squared L2 distances from the query sub-vectors to every centroid,
+     * laid out as <code>table[s * CENTROIDS + c]</code>
+     */
+    public float[] distanceTable(float[] query) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Query dimension " + query.length + " != " + dimension);
+        }
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            float[] codebook = codebooks[s];
+            int offset = s * subDimension;
+            for (int c = 0; c < CENTROIDS; c++) {
+                table[s * CENTROIDS + c] = (float) VectorUtil.OPS.squareDistance(query, offset, codebook, c * subDimension,
+                                                                                  subDimension);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Asymmetric squared L2 distance between the query of <code>table</code>
+     * and the code at <code>codes[offset]</code>
+     */
+    public float distance(float[] table, byte[] codes, int offset) {
+        float sum = 0f;
+        int base = 0;
+        for (int s = 0; s < subspaces; s++, base += CENTROIDS) {
+            sum += table[base + (codes[offset + s] & 0xFF)];
+        }
+        return sum;
+    }
+
+    private static int nearest(float[] codebook, float[] v, int offset, int subDimension) {
+        int best = 0;
+        float bestDist = Float.MAX_VALUE;
+        int k = codebook.length / subDimension;
+        for (int c = 0; c < k; c++) {
+            float d = (float) VectorUtil.OPS.squareDistance(v, offset, codebook, c * subDimension, subDimension);
+            if (d < bestDist) {
+                bestDist = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Lloyd's k-means over <code>n</code> points of <code>dim</code> components.
+     * With fewer points than centroids, the surplus centroids repeat sample points.
+     *
+     * @return CENTROIDS * dim centroid components
+     */
+    private static float[] kmeans(float[] points, int n, int dim, int iterations, SplittableRandom random) {
+        float[] centroids = new float[CENTROIDS * dim];
+
+        // k-means++ seeding
+        float[] minDist = new float[n];
+        Arrays.fill(minDist, Float.MAX_VALUE);
+        int first = random.nextInt(n);
+        System.arraycopy(points, first * dim, centroids, 0, dim);
+        for (int c = 1; c < CENTROIDS; c++) {
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                float d = (float) VectorUtil.OPS.squareDistance(points, i * dim, centroids, (c - 1) * dim, dim);
+                if (d < minDist[i]) {
+                    minDist[i] = d;
+                }
+                total += minDist[i];
+            }
+            int chosen = random.nextInt(n);
+            if (total > 0) {
+                double r = random.nextDouble() * total;
+                for (int i = 0; i < n; i++) {
+                    r -= minDist[i];
+                    if (r <= 0) {
+                        chosen = i;
+                        break;
+                    }
+                }
+            }
+            System.arraycopy(points, chosen * dim, centroids, c * dim, dim);
+        }
+
+        int[] assignment = new int[n];
+        double[] sums = new double[CENTROIDS * dim];
+        int[] counts = new int[CENTROIDS];
+        for (int it = 0; it < iterations; it++) {
+            boolean changed = false;
+            for (int i = 0; i < n; i++) {
+                int c = nearest(centroids, points, i * dim, dim);
+                if (c != assignment[i] || it == 0) {
+                    changed = true;
+                    assignment[i] = c;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                int c = assignment[i];
+                counts[c]++;
+                for (int j = 0; j < dim; j++) {
+                    sums[c * dim + j] += points[i * dim + j];
+                }
+            }
+            for (int c = 0; c < CENTROIDS; c++) {
+                if (counts[c] == 0) {
+                    // Empty cluster: restart it from a random point
+                    System.arraycopy(points, random.nextInt(n) * dim, centroids, c * dim, dim);
+                    continue;
+                }
+                for (int j = 0; j < dim; j++) {
+                    centroids[c * dim + j] = (float) (sums[c * dim + j] / counts[c]);
+                }
+            }
+        }
+        return centroids;
+    }
+}
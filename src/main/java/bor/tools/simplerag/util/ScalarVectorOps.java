@@ -0,0 +1,55 @@
+package bor.tools.simplerag.util;
+
+/**
+ * Portable scalar implementation of {@link VectorOps}, accumulating in double.
+ * Used when the Vector API (jdk.incubator.vector) is not available.
+ */
+final class ScalarVectorOps implements VectorOps {
+
+    static final ScalarVectorOps INSTANCE = new ScalarVectorOps();
+
+    private ScalarVectorOps() {
+    }
+
+    @Override
+    public double dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        double sum = 0.0;
+        for (int i = 0; i < len; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double squareDistance(float[] a, int aOff, float[] b, int bOff, int len) {
+        double sum = 0.0;
+        for (int i = 0; i < len; i++) {
+            double diff = a[aOff + i] - b[bOff + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double cosine(float[] a, int aOff, float[] b, int bOff, int len) {
+        double dot = 0.0;
+        double norm1 = 0.0;
+        double norm2 = 0.0;
+        for (int i = 0; i < len; i++) {
+            float x = a[aOff + i];
+            float y = b[bOff + i];
+            dot += x * y;
+            norm1 += x * x;
+            norm2 += y * y;
+        }
+        if (norm1 == 0.0 || norm2 == 0.0) {
+            return 0.0;
+        }
+        return dot / (Math.sqrt(norm1) * Math.sqrt(norm2));
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
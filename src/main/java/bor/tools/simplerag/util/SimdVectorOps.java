@@ -0,0 +1,106 @@
+package bor.tools.simplerag.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorOps} implemented with the Java Vector API (jdk.incubator.vector).
+ *
+ * <p>Uses the widest species supported by the CPU (e.g. 8 floats with AVX2,
+ * 16 with AVX-512) and fused multiply-add, accumulating lanes in float and
+ * reducing once per call; the tail shorter than one vector is processed in
+ * scalar code. Float accumulation differs from {@link ScalarVectorOps} by a
+ * relative error of about 1e-6 for 768-dimensional embeddings, which is
+ * irrelevant for ranking.</p>
+ *
+ * <p>Only loaded by {@link VectorUtil} when the module is present at runtime
+ * (<code>--add-modules jdk.incubator.vector</code>).</p>
+ */
+final class SimdVectorOps implements VectorOps {
+
+    static final SimdVectorOps INSTANCE = new SimdVectorOps();
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private SimdVectorOps() {
+    }
+
+    /**
+     * False when the preferred species is too narrow to beat the scalar loop
+     * (e.g. no SIMD support, where the API falls back to 64-bit vectors)
+     */
+    static boolean isSupported() {
+        return SPECIES.length() >= 4;
+    }
+
+    @Override
+    public double dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double squareDistance(float[] a, int aOff, float[] b, int bOff, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, aOff + i)
+                                          .sub(FloatVector.fromArray(SPECIES, b, bOff + i));
+            acc = diff.fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            float diff = a[aOff + i] - b[bOff + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double cosine(float[] a, int aOff, float[] b, int bOff, int len) {
+        FloatVector dotAcc = FloatVector.zero(SPECIES);
+        FloatVector norm1Acc = FloatVector.zero(SPECIES);
+        FloatVector norm2Acc = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            dotAcc = va.fma(vb, dotAcc);
+            norm1Acc = va.fma(va, norm1Acc);
+            norm2Acc = vb.fma(vb, norm2Acc);
+        }
+        float dot = dotAcc.reduceLanes(VectorOperators.ADD);
+        float norm1 = norm1Acc.reduceLanes(VectorOperators.ADD);
+        float norm2 = norm2Acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            float x = a[aOff + i];
+            float y = b[bOff + i];
+            dot += x * y;
+            norm1 += x * x;
+            norm2 += y * y;
+        }
+        if (norm1 == 0f || norm2 == 0f) {
+            return 0.0;
+        }
+        return dot / (Math.sqrt(norm1) * Math.sqrt(norm2));
+    }
+
+    @Override
+    public String name() {
+        return "simd-" + SPECIES.vectorBitSize();
+    }
+}
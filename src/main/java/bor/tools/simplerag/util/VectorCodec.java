@@ -0,0 +1,74 @@
+package bor.tools.simplerag.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
+
+/**
+ * Binary codec for the PGVector <code>vector</code> type.
+ *
+ * <p>Reading: select <code>vector_send(embedding_vector)</code> (a <code>bytea</code>)
+ * and decode it with {@link #decode(byte[])}. The wire layout is the one produced by
+ * pgvector's send function: int16 dimension, int16 unused, followed by
+ * <code>dim</code> big-endian float4 values. No text parsing is involved.</p>
+ *
+ * <p>Writing: bind {@link #toFloat4Array(float[])} and cast in SQL with
+ * <code>?::real[]::vector</code>. pgjdbc encodes primitive <code>float[]</code>
+ * arrays directly (binary when binary transfer is active), avoiding the
+ * <code>"[0.1,0.2,...]"</code> string built by <code>PGvector.toString()</code>.</p>
+ */
+public class VectorCodec {
+
+    /** Header size of the binary vector representation (dim + unused) */
+    public static final int HEADER_BYTES = 4;
+
+    private VectorCodec() {
+    }
+
+    /**
+     * Decodes the output of <code>vector_send</code> into a float array.
+     *
+     * @param bytes binary vector representation (may be null)
+     * @return decoded vector, or null if bytes is null
+     * @throws IllegalArgumentException if the buffer is truncated
+     */
+    public static float[] decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Invalid binary vector: " + bytes.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN);
+        int dim = buffer.getShort() & 0xFFFF;
+        buffer.getShort(); // unused
+        if (buffer.remaining() < dim * Float.BYTES) {
+            throw new IllegalArgumentException("Invalid binary vector: expected " + dim
+                    + " dimensions, got " + buffer.remaining() + " bytes");
+        }
+        float[] vector = new float[dim];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * Creates a query parameter that binds the vector as a PostgreSQL
+     * <code>real[]</code>. Cast it in the SQL text with <code>?::real[]::vector</code>.
+     *
+     * @param vector the vector to bind
+     * @return parameter value for JdbcTemplate
+     */
+    public static SqlTypeValue toFloat4Array(float[] vector) {
+        return new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+                return con.unwrap(PGConnection.class).createArrayOf("float4", vector);
+            }
+        };
+    }
+}
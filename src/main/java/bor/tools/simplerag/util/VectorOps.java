@@ -0,0 +1,35 @@
+package bor.tools.simplerag.util;
+
+/**
+ * Kernel of the vector arithmetic used by {@link VectorUtil}.
+ *
+ * <p>Operates on slices (<code>array, offset, length</code>) so batch variants can
+ * score one query against many vectors stored contiguously in a single
+ * <code>float[]</code> (row-major, one vector after the other). Arguments are not
+ * validated here; {@link VectorUtil} does it once per call.</p>
+ *
+ * @see ScalarVectorOps
+ * @see SimdVectorOps
+ */
+interface VectorOps {
+
+    /**
+     * Dot product of <code>a[aOff..aOff+len)</code> and <code>b[bOff..bOff+len)</code>
+     */
+    double dot(float[] a, int aOff, float[] b, int bOff, int len);
+
+    /**
+     * Squared Euclidean distance of the two slices
+     */
+    double squareDistance(float[] a, int aOff, float[] b, int bOff, int len);
+
+    /**
+     * Cosine similarity of the two slices, 0 if either one is the zero vector
+     */
+    double cosine(float[] a, int aOff, float[] b, int bOff, int len);
+
+    /**
+     * Implementation name, for logs and benchmarks
+     */
+    String name();
+}
@@ -1,15 +1,59 @@
 package bor.tools.simplerag.util;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Utilities for vector operations, particularly for embedding normalization and similarity calculations.
  *
  * Based on the VecUtil class from the reference implementation,
  * adapted for JSimpleRag's requirements.
+ *
+ * <p>Dot product, norm, cosine similarity and Euclidean distance run on SIMD
+ * instructions through the Java Vector API when the JVM is started with
+ * <code>--add-modules jdk.incubator.vector</code>, and on a scalar loop otherwise
+ * (or with <code>-Drag.vector.simd=false</code>). See {@link #getImplementation()}.</p>
+ *
+ * <p>The <code>*Batch</code> methods score one query against many vectors stored
+ * contiguously in a single array (see {@link #pack(List)}), which avoids one
+ * array per candidate and keeps the scan sequential in memory.</p>
  */
 public class VectorUtil {
 
+    /**
+     * Active implementation, chosen once at class initialization
+     */
+    static final VectorOps OPS = selectOps();
+
+    /**
+     * Uses {@link SimdVectorOps} if jdk.incubator.vector is present and the CPU
+     * offers vectors of at least 4 floats; {@link ScalarVectorOps} otherwise.
+     * SimdVectorOps is loaded by name so this class never links against the
+     * incubator module when it is absent.
+     */
+    static VectorOps selectOps() {
+        if (!Boolean.parseBoolean(System.getProperty("rag.vector.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return ScalarVectorOps.INSTANCE;
+        }
+        try {
+            Class<?> simd = Class.forName("bor.tools.simplerag.util.SimdVectorOps");
+            if ((Boolean) simd.getDeclaredMethod("isSupported").invoke(null)) {
+                return (VectorOps) simd.getDeclaredField("INSTANCE").get(null);
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // fall back to scalar
+        }
+        return ScalarVectorOps.INSTANCE;
+    }
+
+    /**
+     * Name of the active implementation: "scalar" or "simd-&lt;bits&gt;"
+     */
+    public static String getImplementation() {
+        return OPS.name();
+    }
+
     /**
      * Normalizes a vector to unit length (L2 normalization).
      *
@@ -23,11 +67,7 @@ public class VectorUtil {
         }
 
         // Calculate the L2 norm (Euclidean norm)
-        double norm = 0.0;
-        for (float value : vector) {
-            norm += value * value;
-        }
-        norm = Math.sqrt(norm);
+        double norm = Math.sqrt(OPS.dot(vector, 0, vector, 0, vector.length));
 
         // If the norm is 0, return the original vector (avoid division by zero)
         if (norm == 0.0) {
@@ -62,24 +102,8 @@ public class VectorUtil {
             throw new IllegalArgumentException("Vectors cannot be empty");
         }
 
-        double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-
-        for (int i = 0; i < vector1.length; i++) {
-            dotProduct += vector1[i] * vector2[i];
-            norm1 += vector1[i] * vector1[i];
-            norm2 += vector2[i] * vector2[i];
-        }
-
-        norm1 = Math.sqrt(norm1);
-        norm2 = Math.sqrt(norm2);
-
-        if (norm1 == 0.0 || norm2 == 0.0) {
-            return 0.0; // If either vector is zero, similarity is 0
-        }
-
-        return dotProduct / (norm1 * norm2);
+        // If either vector is zero, similarity is 0
+        return OPS.cosine(vector1, 0, vector2, 0, vector1.length);
     }
 
     /**
@@ -101,13 +125,7 @@ public class VectorUtil {
             throw new IllegalArgumentException("Vectors cannot be empty");
         }
 
-        double sum = 0.0;
-        for (int i = 0; i < vector1.length; i++) {
-            double diff = vector1[i] - vector2[i];
-            sum += diff * diff;
-        }
-
-        return Math.sqrt(sum);
+        return Math.sqrt(OPS.squareDistance(vector1, 0, vector2, 0, vector1.length));
     }
 
     /**
@@ -129,12 +147,7 @@ public class VectorUtil {
             throw new IllegalArgumentException("Vectors cannot be empty");
         }
 
-        double result = 0.0;
-        for (int i = 0; i < vector1.length; i++) {
-            result += vector1[i] * vector2[i];
-        }
-
-        return result;
+        return OPS.dot(vector1, 0, vector2, 0, vector1.length);
     }
 
     /**
@@ -149,12 +162,100 @@ public class VectorUtil {
             throw new IllegalArgumentException("Vector cannot be null or empty");
         }
 
-        double sum = 0.0;
-        for (float value : vector) {
-            sum += value * value;
+        return Math.sqrt(OPS.dot(vector, 0, vector, 0, vector.length));
+    }
+
+    // ======== BATCH OPERATIONS ========
+
+    /**
+     * Packs vectors of the same dimension into one contiguous array
+     * (row-major), the layout expected by the <code>*Batch</code> methods.
+     *
+     * @param vectors the vectors to pack
+     * @return array of <code>vectors.size() * dimension</code> floats
+     * @throws IllegalArgumentException if the list is null or empty, or dimensions differ
+     */
+    public static float[] pack(List<float[]> vectors) {
+        if (vectors == null || vectors.isEmpty()) {
+            throw new IllegalArgumentException("Vectors cannot be null or empty");
+        }
+        int dimension = vectors.get(0).length;
+        float[] packed = new float[vectors.size() * dimension];
+        for (int i = 0; i < vectors.size(); i++) {
+            float[] v = vectors.get(i);
+            if (v == null || v.length != dimension) {
+                throw new IllegalArgumentException("Vectors must have the same dimension");
+            }
+            System.arraycopy(v, 0, packed, i * dimension, dimension);
+        }
+        return packed;
+    }
+
+    /**
+     * Dot product of a query against each vector of a packed array.
+     *
+     * @param query the query vector
+     * @param vectors vectors of the same dimension stored contiguously (see {@link #pack(List)})
+     * @return one score per packed vector
+     * @throws IllegalArgumentException if arguments are null, empty or of incompatible size
+     */
+    public static float[] dotProductBatch(float[] query, float[] vectors) {
+        int dim = checkBatch(query, vectors);
+        float[] scores = new float[vectors.length / dim];
+        for (int i = 0, off = 0; i < scores.length; i++, off += dim) {
+            scores[i] = (float) OPS.dot(query, 0, vectors, off, dim);
         }
+        return scores;
+    }
 
-        return Math.sqrt(sum);
+    /**
+     * Cosine similarity of a query against each vector of a packed array.
+     *
+     * @param query the query vector
+     * @param vectors vectors of the same dimension stored contiguously (see {@link #pack(List)})
+     * @return one similarity per packed vector
+     * @throws IllegalArgumentException if arguments are null, empty or of incompatible size
+     */
+    public static float[] cosineSimilarityBatch(float[] query, float[] vectors) {
+        int dim = checkBatch(query, vectors);
+        float[] scores = new float[vectors.length / dim];
+        for (int i = 0, off = 0; i < scores.length; i++, off += dim) {
+            scores[i] = (float) OPS.cosine(query, 0, vectors, off, dim);
+        }
+        return scores;
+    }
+
+    /**
+     * Euclidean distance of a query to each vector of a packed array.
+     *
+     * @param query the query vector
+     * @param vectors vectors of the same dimension stored contiguously (see {@link #pack(List)})
+     * @return one distance per packed vector
+     * @throws IllegalArgumentException if arguments are null, empty or of incompatible size
+     */
+    public static float[] euclideanDistanceBatch(float[] query, float[] vectors) {
+        int dim = checkBatch(query, vectors);
+        float[] distances = new float[vectors.length / dim];
+        for (int i = 0, off = 0; i < distances.length; i++, off += dim) {
+            distances[i] = (float) Math.sqrt(OPS.squareDistance(query, 0, vectors, off, dim));
+        }
+        return distances;
+    }
+
+    /**
+     * Validates batch arguments and returns the dimension
+     */
+    private static int checkBatch(float[] query, float[] vectors) {
+        if (query == null || vectors == null) {
+            throw new IllegalArgumentException("Vectors cannot be null");
+        }
+        if (query.length == 0) {
+            throw new IllegalArgumentException("Vectors cannot be empty");
+        }
+        if (vectors.length % query.length != 0) {
+            throw new IllegalArgumentException("Packed vectors length must be a multiple of the query dimension");
+        }
+        return query.length;
     }
 
     /**
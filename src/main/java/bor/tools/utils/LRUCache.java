@@ -0,0 +1,200 @@
+package bor.tools.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Thread-safe, bounded LRU (least recently used) cache.
+ *
+ * <p>Backed by an access-ordered {@link LinkedHashMap}. When the capacity is
+ * exceeded the least recently accessed entry is evicted. Hit, miss and eviction
+ * counters are kept for monitoring.</p>
+ *
+ * <p>{@link #computeIfAbsent(Object, Function)} runs the loader <b>outside</b> the
+ * cache lock, so a slow loader (e.g. a database query) never blocks other
+ * readers. Two threads missing the same key may both run the loader; the last
+ * value wins, which is harmless for idempotent loaders.</p>
+ *
+ * <pre>
+ * LRUCache&lt;String, String&gt; cache = new LRUCache&lt;&gt;(1024);
+ * String value = cache.computeIfAbsent("key", k -&gt; expensiveLoad(k));
+ * System.out.println("hit rate: " + cache.getHitRate());
+ * </pre>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LRUCache<K, V> {
+
+    private final int capacity;
+    private final LinkedHashMap<K, V> map;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most <code>capacity</code> entries.
+     *
+     * @param capacity - maximum number of entries; zero disables caching
+     */
+    public LRUCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must be >= 0");
+        }
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<>(Math.min(capacity, 1024) + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                boolean evict = size() > LRUCache.this.capacity;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value, or null if absent. Counts a hit or a miss.
+     */
+    public V get(K key) {
+        V value;
+        synchronized (map) {
+            value = map.get(key);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Stores a value. Null values are ignored.
+     */
+    public void put(K key, V value) {
+        if (value == null || capacity == 0) {
+            return;
+        }
+        synchronized (map) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the cached value or loads, stores and returns it.
+     *
+     * @param key - cache key
+     * @param loader - loader executed on a miss (outside the cache lock)
+     * @return cached or loaded value (null if the loader returned null)
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(key);
+        put(key, value);
+        return value;
+    }
+
+    /**
+     * Removes an entry.
+     * @return the removed value, or null
+     */
+    public V remove(K key) {
+        synchronized (map) {
+            return map.remove(key);
+        }
+    }
+
+    /**
+     * Removes all entries whose key matches the predicate.
+     * @return number of removed entries
+     */
+    public int removeIf(Predicate<? super K> predicate) {
+        synchronized (map) {
+            int before = map.size();
+            map.keySet().removeIf(predicate);
+            return before - map.size();
+        }
+    }
+
+    /**
+     * Removes all entries matching the predicate on key and value.
+     * @return number of removed entries
+     */
+    public int removeEntriesIf(BiPredicate<? super K, ? super V> predicate) {
+        synchronized (map) {
+            int before = map.size();
+            map.entrySet().removeIf(e -> predicate.test(e.getKey(), e.getValue()));
+            return before - map.size();
+        }
+    }
+
+    /**
+     * Removes all entries (statistics are kept).
+     */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    /**
+     * Current number of entries
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Ratio hits / (hits + misses), or 0 when the cache was never queried.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Resets hit, miss and eviction counters.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LRUCache[size=%d/%d, hits=%d, misses=%d, evictions=%d, hitRate=%.2f]",
+                             size(), capacity, getHits(), getMisses(), getEvictions(), getHitRate());
+    }
+}
@@ -0,0 +1,94 @@
+package bor.tools.simplerag.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for SearchProfile (explain mode)
+ */
+class SearchProfileTest {
+
+    @Test
+    void testOfRequiresExplainFlag() {
+        assertNull(SearchProfile.of(null, null));
+        assertNull(SearchProfile.of(false, false));
+        assertFalse(SearchProfile.of(true, null).isExplainAnalyze());
+        // explainAnalyze implies explain
+        assertTrue(SearchProfile.of(null, true).isExplainAnalyze());
+    }
+
+    @Test
+    void testPhasesInExecutionOrderWithRowsAndDetail() {
+        SearchProfile profile = new SearchProfile(false);
+
+        assertEquals("tsquery", SearchProfile.measure(profile, "query_preprocessing", () -> "tsquery"));
+        SearchProfile.measure(profile, "sql_hybrid", () -> List.of(1, 2, 3));
+        profile.getLastPhase().setRows(3);
+        profile.record("result_cache", 2_500_000L).setDetail("hit");
+
+        assertEquals(List.of("query_preprocessing", "sql_hybrid", "result_cache"),
+                     profile.getPhases().stream().map(SearchProfile.Phase::getName).toList());
+        assertEquals(3, profile.getPhases().get(1).getRows());
+        assertEquals("hit", profile.getLastPhase().getDetail());
+        assertEquals(2.5, profile.getLastPhase().getDurationMs(), 1e-9);
+        assertTrue(profile.getTotalMs() >= 2.5);
+    }
+
+    @Test
+    void testNullProfileOnlyRunsTheStep() {
+        assertEquals(42, SearchProfile.measure(null, "sql_semantic", () -> 42));
+    }
+
+    @Test
+    void testPhaseIsRecordedWhenStepFails() {
+        SearchProfile profile = new SearchProfile(false);
+        try {
+            profile.time("embedding", () -> {
+                throw new IllegalStateException("provider down");
+            });
+        } catch (IllegalStateException expected) {
+            // the failed phase is still timed
+        }
+        assertEquals("embedding", profile.getLastPhase().getName());
+    }
+
+    @Test
+    void testPlansKeepPhaseOrder() {
+        SearchProfile profile = new SearchProfile(true);
+        assertNull(profile.getPlans());
+
+        profile.addPlan("sql_semantic", List.of("Limit", "  ->  Index Scan"));
+        profile.addPlan("sql_fetch_by_id", List.of("Index Scan"));
+
+        assertEquals(List.of("sql_semantic", "sql_fetch_by_id"), List.copyOf(profile.getPlans().keySet()));
+    }
+
+    @Test
+    void testExplainResponseIncludesProfile() throws Exception {
+        SearchProfile profile = new SearchProfile(true);
+        profile.record("sql_semantic", 1_000_000L).setRows(5);
+        profile.addPlan("sql_semantic", List.of("Limit"));
+
+        SearchResponse response = SearchResponse.from("q", new Integer[] {1}, 1.0f, 0.0f, List.of());
+        response.setProfile(profile);
+        JsonNode json = new ObjectMapper().valueToTree(response);
+
+        assertEquals("sql_semantic", json.at("/profile/phases/0/name").asText());
+        assertEquals(5, json.at("/profile/phases/0/rows").asInt());
+        assertEquals("Limit", json.at("/profile/plans/sql_semantic/0").asText());
+        assertFalse(json.at("/profile").has("lastPhase"));
+
+        // no explain: no profile in the response
+        response.setProfile(null);
+        assertFalse(new ObjectMapper().valueToTree(response).has("profile"));
+    }
+}
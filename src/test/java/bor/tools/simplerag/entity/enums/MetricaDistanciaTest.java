@@ -0,0 +1,52 @@
+package bor.tools.simplerag.entity.enums;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import bor.tools.simplerag.util.VectorUtil;
+
+/**
+ * Unit tests for MetricaDistancia: the in-memory index score
+ * ({@link MetricaDistancia#scoreFromL2}) must equal the SQL score of the metric.
+ */
+class MetricaDistanciaTest {
+
+    private static final double EPSILON = 1e-4;
+
+    @Test
+    void testScoreFromL2MatchesCosineAndInnerProductForUnitVectors() {
+        for (int i = 0; i < 20; i++) {
+            float[] a = VectorUtil.randomNormalized(64);
+            float[] b = VectorUtil.randomNormalized(64);
+            float l2 = (float) VectorUtil.euclideanDistance(a, b);
+
+            // cosine: 1 - (a <=> b); inner_product: -(a <#> b) = a . b
+            assertEquals(VectorUtil.cosineSimilarity(a, b), MetricaDistancia.COSINE.scoreFromL2(l2), EPSILON);
+            assertEquals(VectorUtil.dotProduct(a, b), MetricaDistancia.INNER_PRODUCT.scoreFromL2(l2), EPSILON);
+        }
+    }
+
+    @Test
+    void testScoreFromL2ForL2() {
+        assertEquals(1.0f, MetricaDistancia.L2.scoreFromL2(0.0f), EPSILON);
+        assertEquals(1.0f / 3.0f, MetricaDistancia.L2.scoreFromL2(2.0f), EPSILON);
+    }
+
+    @Test
+    void testScoreExpression() {
+        assertEquals("(1.0 - (d))", MetricaDistancia.COSINE.scoreExpression("d"));
+        assertEquals("(-(d))", MetricaDistancia.INNER_PRODUCT.scoreExpression("d"));
+        assertEquals("(1.0 / (1.0 + (d)))", MetricaDistancia.L2.scoreExpression("d"));
+    }
+
+    @Test
+    void testFromString() {
+        assertEquals(MetricaDistancia.COSINE, MetricaDistancia.fromString(null));
+        assertEquals(MetricaDistancia.COSINE, MetricaDistancia.fromString(" "));
+        assertEquals(MetricaDistancia.INNER_PRODUCT, MetricaDistancia.fromString(" Inner_Product "));
+        assertEquals(MetricaDistancia.L2, MetricaDistancia.fromString("l2"));
+        assertThrows(IllegalArgumentException.class, () -> MetricaDistancia.fromString("manhattan"));
+    }
+}
@@ -7,8 +7,11 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,11 +20,15 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
+import bor.tools.simplerag.dto.MetadataFilter;
+import bor.tools.simplerag.dto.SearchCursor;
 import bor.tools.simplerag.entity.Chapter;
 import bor.tools.simplerag.entity.DocumentEmbedding;
 import bor.tools.simplerag.entity.Documento;
 import bor.tools.simplerag.entity.Library;
+import bor.tools.simplerag.entity.MetaDoc;
 import bor.tools.simplerag.entity.enums.TipoEmbedding;
+import bor.tools.simplerag.util.VectorUtil;
 
 /**
  * Basic integration test for DocEmbeddingJdbcRepository
@@ -404,15 +411,184 @@ class DocEmbeddingJdbcRepositoryTest {
         assertNotNull(results, "Search results should not be null");
     }
 
+    @Test
+    void testPesquisaComFiltroDeMetadados() throws SQLException {
+        // Given - Embeddings whose metadados differ in area_conhecimento
+        MetaDoc direito = new MetaDoc();
+        direito.put("area_conhecimento", "Direito");
+        direito.put("ano", 2021);
+        DocumentEmbedding match = createAndSaveTestEmbedding(direito);
+
+        MetaDoc medicina = new MetaDoc();
+        medicina.put("area_conhecimento", "Medicina");
+        medicina.put("ano", 2019);
+        createAndSaveTestEmbedding(medicina);
+
+        Integer[] libraries = new Integer[]{testLibrary.getId()};
+
+        // Then - metadados are persisted as JSON
+        assertEquals("Direito", embeddingRepository.findById(match.getId()).get()
+                                                   .getMetadados().get("area_conhecimento"));
+
+        // equals (jsonb containment)
+        MetadataFilter equals = MetadataFilter.builder()
+                .equals(Map.of("area_conhecimento", "Direito"))
+                .build();
+        List<DocumentEmbedding> results = embeddingRepository.pesquisaSemantica(
+                createTestVector(768), libraries, 10, null, false, equals);
+        assertEquals(List.of(match.getId()), results.stream().map(DocumentEmbedding::getId).toList());
+
+        // range
+        MetadataFilter range = MetadataFilter.builder()
+                .range(Map.of("ano", MetadataFilter.Range.builder().gte(2020).build()))
+                .build();
+        results = embeddingRepository.pesquisaSemantica(createTestVector(768), libraries, 10, null, false, range);
+        assertEquals(List.of(match.getId()), results.stream().map(DocumentEmbedding::getId).toList());
+    }
+
+    @Test
+    void testSave_NormalizesVectorForCosineLibrary() throws SQLException {
+        // Given - a vector of norm 3 in a library with the default (cosine) metric
+        float[] vector = createTestVector(768);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= 3.0f;
+        }
+        DocumentEmbedding embedding = DocumentEmbedding.builder()
+                .libraryId(testLibrary.getId())
+                .documentoId(testDocument.getId())
+                .tipoEmbedding(TipoEmbedding.TRECHO)
+                .texto("Vetor não normalizado")
+                .embeddingVector(vector)
+                .build();
+
+        // When
+        Integer id = embeddingRepository.save(embedding);
+
+        // Then - stored with unit length
+        Optional<DocumentEmbedding> stored = embeddingRepository.findById(id);
+        assertTrue(stored.isPresent());
+        assertEquals(1.0, VectorUtil.norm(stored.get().getEmbeddingVector()), 1e-4);
+    }
+
+    @Test
+    void testRevokedDocumentoLeavesAndReentersSearchResults() throws SQLException {
+        // Given - an embedding found by semantic and textual search
+        float[] vector = createTestVector(768);
+        Integer id = embeddingRepository.save(DocumentEmbedding.builder()
+                .libraryId(testLibrary.getId())
+                .documentoId(testDocument.getId())
+                .tipoEmbedding(TipoEmbedding.TRECHO)
+                .texto("Cláusula de rescisão unilateral")
+                .embeddingVector(vector)
+                .build());
+        Integer[] libraries = new Integer[]{testLibrary.getId()};
+        assertTrue(searchIds(vector, libraries).contains(id));
+        assertTrue(textIds(libraries).contains(id));
+
+        // When - documento revoked (as DocumentoService.updateStatus does)
+        testDocument.setFlagVigente(false);
+        documentoRepository.saveAndFlush(testDocument);
+        assertEquals(1, embeddingRepository.updateLiveFlags(testDocument.getId(), false, false));
+
+        // Then - out of both searches, and embeddings saved meanwhile inherit the flag
+        Integer later = embeddingRepository.save(DocumentEmbedding.builder()
+                .libraryId(testLibrary.getId())
+                .documentoId(testDocument.getId())
+                .tipoEmbedding(TipoEmbedding.TRECHO)
+                .texto("Rescisão por interesse público")
+                .embeddingVector(vector)
+                .build());
+        assertFalse(searchIds(vector, libraries).contains(id));
+        assertFalse(textIds(libraries).contains(id));
+        assertFalse(textIds(libraries).contains(later));
+
+        // When - documento restored: both are searchable again
+        testDocument.setFlagVigente(true);
+        documentoRepository.saveAndFlush(testDocument);
+        assertEquals(2, embeddingRepository.updateLiveFlags(testDocument.getId(), true, false));
+        assertTrue(searchIds(vector, libraries).containsAll(List.of(id, later)));
+        assertTrue(textIds(libraries).containsAll(List.of(id, later)));
+
+        // Unchanged flags touch no row
+        assertEquals(0, embeddingRepository.updateLiveFlags(testDocument.getId(), true, false));
+    }
+
+    private List<Integer> searchIds(float[] vector, Integer[] libraries) {
+        return embeddingRepository.pesquisaSemantica(vector, libraries, 10).stream()
+                .map(DocumentEmbedding::getId).toList();
+    }
+
+    private List<Integer> textIds(Integer[] libraries) {
+        return embeddingRepository.pesquisaTextual("rescisão", libraries, 10).stream()
+                .map(DocumentEmbedding::getId).toList();
+    }
+
+    @Test
+    void testKeysetPaginationSemSaltosNemRepeticoes() throws SQLException {
+        // Given - 23 embeddings matching the query (ties in ts_rank_cd, random vectors)
+        for (int i = 0; i < 23; i++) {
+            embeddingRepository.save(DocumentEmbedding.builder()
+                    .libraryId(testLibrary.getId())
+                    .documentoId(testDocument.getId())
+                    .tipoEmbedding(TipoEmbedding.TRECHO)
+                    .texto("Cláusula " + i + " do contrato administrativo")
+                    .embeddingVector(createTestVector(768))
+                    .build());
+        }
+        Integer[] libraries = new Integer[]{testLibrary.getId()};
+        float[] query = createTestVector(768);
+        int k = 5;
+        // first-page cursor with the RRF constant of the paged search
+        SearchCursor start = SearchCursor.builder()
+                .lastKey(-Double.MAX_VALUE).lastId(Integer.MIN_VALUE).rrfK(k).build();
+
+        // Then - the pages, concatenated, are the single-page ranking
+        assertPagesMatch(k, after -> embeddingRepository.pesquisaSemanticaKeyset(
+                query, libraries, after == null ? 100 : k, null, after, null));
+        assertPagesMatch(k, after -> embeddingRepository.pesquisaTextualKeyset(
+                "contrato", libraries, after == null ? 100 : k, null, after, null));
+        assertPagesMatch(k, after -> embeddingRepository.pesquisaHibridaKeyset(
+                query, "contrato", libraries, after == null ? 100 : k, 50, 0.6f, 0.4f, null,
+                after == null ? start : after, null));
+    }
+
+    /**
+     * Pages through a keyset search (<code>search.apply(cursor)</code>, page size
+     * k) and compares it with the whole ranking (<code>search.apply(null)</code>)
+     */
+    private void assertPagesMatch(int k, Function<SearchCursor, DocEmbeddingJdbcRepository.KeysetPage> search) {
+        List<Integer> expected = search.apply(null).getResults().stream().map(DocumentEmbedding::getId).toList();
+        assertEquals(23, expected.size());
+
+        List<Integer> paged = new ArrayList<>();
+        SearchCursor after = SearchCursor.builder()
+                .lastKey(-Double.MAX_VALUE).lastId(Integer.MIN_VALUE).rrfK(k).build();
+        while (true) {
+            DocEmbeddingJdbcRepository.KeysetPage page = search.apply(after);
+            page.getResults().forEach(doc -> paged.add(doc.getId()));
+            if (page.getResults().size() < k) {
+                break;
+            }
+            after = SearchCursor.builder().lastKey(page.getLastKey()).lastId(page.getLastId())
+                    .depth(paged.size()).rrfK(k).build();
+        }
+        assertEquals(expected, paged, "no gaps, duplicates or reordering across pages");
+    }
+
     // ============ Helper Methods ============
 
     private DocumentEmbedding createAndSaveTestEmbedding() throws SQLException {
+        return createAndSaveTestEmbedding(null);
+    }
+
+    private DocumentEmbedding createAndSaveTestEmbedding(MetaDoc metadados) throws SQLException {
         DocumentEmbedding embedding = DocumentEmbedding.builder()
                 .libraryId(testLibrary.getId())
                 .documentoId(testDocument.getId())
                 .tipoEmbedding(TipoEmbedding.DOCUMENTO)
                 .texto("Test embedding text content")
                 .embeddingVector(createTestVector(768))
+                .metadados(metadados)
                 .build();
 
         embeddingRepository.save(embedding);
@@ -0,0 +1,57 @@
+package bor.tools.simplerag.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import bor.tools.simplerag.dto.MetadataFilter;
+
+/**
+ * Unit tests for MetadataFilterSql
+ */
+class MetadataFilterSqlTest {
+
+    @Test
+    void testCompileConditions() {
+        Map<String, Object> equals = new LinkedHashMap<>();
+        equals.put("area_conhecimento", "Direito");
+        equals.put("ano", 2021);
+        MetadataFilter filter = MetadataFilter.builder()
+                .equals(equals)
+                .range(Map.of("data_publicacao", new MetadataFilter.Range("2020-01-01", null)))
+                .exists(List.of("isbn"))
+                .build();
+
+        MetadataFilterSql sql = MetadataFilterSql.compile(filter);
+
+        assertEquals(" AND metadados @> ?::jsonb"
+                     + " AND jsonb_path_exists(metadados, ?::jsonpath, ?::jsonb)"
+                     + " AND metadados @? ?::jsonpath", sql.getSql());
+        assertEquals(List.of("{\"area_conhecimento\":\"Direito\",\"ano\":2021}",
+                             "$.\"data_publicacao\" ? (@ >= $gte)",
+                             "{\"gte\":\"2020-01-01\"}",
+                             "$.\"isbn\""), sql.getParams());
+    }
+
+    @Test
+    void testEmptyAndInvalidFilters() {
+        assertSame(MetadataFilterSql.NONE, MetadataFilterSql.compile(null));
+        assertSame(MetadataFilterSql.NONE, MetadataFilterSql.compile(new MetadataFilter()));
+
+        // Field names are written into jsonpath expressions
+        assertThrows(IllegalArgumentException.class, () -> MetadataFilterSql.compile(
+                MetadataFilter.builder().exists(List.of("isbn\" || $.x")).build()));
+        assertThrows(IllegalArgumentException.class, () -> MetadataFilterSql.compile(
+                MetadataFilter.builder().in(Map.of("autor", List.of())).build()));
+        assertThrows(IllegalArgumentException.class, () -> MetadataFilterSql.compile(
+                MetadataFilter.builder().range(Map.of("ano", new MetadataFilter.Range())).build()));
+        assertThrows(IllegalArgumentException.class, () -> MetadataFilterSql.compile(
+                MetadataFilter.builder().range(Map.of("ano", new MetadataFilter.Range(List.of(1), null))).build()));
+    }
+}
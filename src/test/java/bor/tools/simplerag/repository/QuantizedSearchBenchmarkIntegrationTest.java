@@ -0,0 +1,180 @@
+package bor.tools.simplerag.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.entity.Documento;
+import bor.tools.simplerag.entity.Library;
+import bor.tools.simplerag.entity.MetaBiblioteca;
+import bor.tools.simplerag.entity.enums.TipoArmazenamentoVetor;
+import bor.tools.simplerag.entity.enums.TipoEmbedding;
+import bor.tools.simplerag.util.VectorUtil;
+
+/**
+ * Benchmark: recall, latency and index size of the vector storage modes
+ * (full, halfvec, binary, matryoshka) of {@link TipoArmazenamentoVetor}.
+ *
+ * <p>The same corpus is loaded into one library per mode. Recall@k of each
+ * quantized mode is measured against the exact (full) results.</p>
+ *
+ * <p>Opt-in, requires PostgreSQL with pgvector &gt;= 0.7:</p>
+ * <pre>
+ * mvn test -Dtest=QuantizedSearchBenchmarkIntegrationTest -Dbenchmark=true
+ * </pre>
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Tag("integration")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class QuantizedSearchBenchmarkIntegrationTest {
+
+    private static final int CORPUS_SIZE = 5000;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+    private static final int DIMENSION = 768;
+
+    @Autowired
+    private DocEmbeddingJdbcRepository embeddingRepository;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private DocumentoRepository documentoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Integer> libraryIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        Random random = new Random(42);
+        List<float[]> corpus = new ArrayList<>();
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            corpus.add(clusteredVector(random));
+        }
+
+        for (TipoArmazenamentoVetor mode : TipoArmazenamentoVetor.values()) {
+            MetaBiblioteca meta = new MetaBiblioteca();
+            meta.setVectorStorage(mode);
+
+            Library library = new Library();
+            library.setNome("Quantized Benchmark " + mode + " " + System.nanoTime());
+            library.setAreaConhecimento("Benchmark");
+            library.setMetadados(meta);
+            library = libraryRepository.save(library);
+            libraryIds.add(library.getId());
+
+            Documento documento = documentoRepository.save(Documento.builder()
+                    .bibliotecaId(library.getId())
+                    .titulo("Quantized Benchmark " + mode)
+                    .conteudoMarkdown("# Benchmark")
+                    .flagVigente(true)
+                    .dataPublicacao(LocalDate.now())
+                    .build());
+
+            for (int i = 0; i < CORPUS_SIZE; i++) {
+                embeddingRepository.save(DocumentEmbedding.builder()
+                        .libraryId(library.getId())
+                        .documentoId(documento.getId())
+                        .tipoEmbedding(TipoEmbedding.TRECHO)
+                        .texto("chunk-" + i)
+                        .embeddingVector(corpus.get(i))
+                        .build());
+            }
+        }
+        jdbcTemplate.execute("ANALYZE doc_embedding");
+        embeddingRepository.invalidateLibraryConfig();
+    }
+
+    @AfterEach
+    void tearDown() {
+        libraryRepository.deleteAllById(libraryIds);
+    }
+
+    @Test
+    void benchmarkStorageModes() {
+        Random random = new Random(7);
+        List<float[]> queries = new ArrayList<>();
+        for (int q = 0; q < QUERIES; q++) {
+            queries.add(clusteredVector(random));
+        }
+
+        TipoArmazenamentoVetor[] modes = TipoArmazenamentoVetor.values();
+        List<List<Set<String>>> resultsByMode = new ArrayList<>();
+
+        for (int m = 0; m < modes.length; m++) {
+            Integer[] lib = { libraryIds.get(m) };
+            // warm up
+            embeddingRepository.pesquisaSemantica(queries.get(0), lib, K);
+
+            List<Set<String>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (float[] query : queries) {
+                results.add(embeddingRepository.pesquisaSemantica(query, lib, K).stream()
+                        .map(DocumentEmbedding::getTexto)
+                        .collect(Collectors.toSet()));
+            }
+            double avgMs = (System.nanoTime() - start) / 1e6 / QUERIES;
+            resultsByMode.add(results);
+
+            double recall = recall(resultsByMode.get(0), results);
+            System.out.printf("%-8s avg %7.2f ms  recall@%d %.3f%n", modes[m].getDbValue(), avgMs, K, recall);
+        }
+
+        for (String index : List.of("idx_embedding_vector", "idx_embedding_live_halfvec_hnsw",
+                                     "idx_embedding_live_bit_hnsw", "idx_embedding_live_prefix128_hnsw",
+                                     "idx_embedding_live_prefix256_hnsw")) {
+            Long bytes = jdbcTemplate.queryForObject(
+                    "SELECT pg_relation_size(to_regclass(?))", Long.class, index);
+            System.out.printf("%-34s %10d KiB%n", index, bytes == null ? 0 : bytes / 1024);
+        }
+
+        assertEquals(1.0, recall(resultsByMode.get(0), resultsByMode.get(0)), 1e-9);
+    }
+
+    private static double recall(List<Set<String>> exact, List<Set<String>> approx) {
+        int hits = 0;
+        int total = 0;
+        for (int i = 0; i < exact.size(); i++) {
+            Set<String> common = new HashSet<>(exact.get(i));
+            common.retainAll(approx.get(i));
+            hits += common.size();
+            total += exact.get(i).size();
+        }
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * Random vector near one of a few centroids, closer to real embedding
+     * distributions than uniform noise.
+     */
+    private static float[] clusteredVector(Random random) {
+        Random centroidRandom = new Random(random.nextInt(16));
+        float[] v = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            v[i] = (float) (centroidRandom.nextGaussian() + 0.35 * random.nextGaussian());
+        }
+        return VectorUtil.normalize(v);
+    }
+}
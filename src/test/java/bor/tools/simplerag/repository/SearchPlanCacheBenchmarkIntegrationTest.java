@@ -0,0 +1,183 @@
+package bor.tools.simplerag.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.pgvector.PGvector;
+
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.entity.Documento;
+import bor.tools.simplerag.entity.Library;
+import bor.tools.simplerag.entity.enums.TipoEmbedding;
+import bor.tools.simplerag.util.VectorUtil;
+
+/**
+ * Benchmark: stable search SQL (library_id = ANY(?)) versus the former
+ * string-formatted library list, under concurrent load.
+ *
+ * <p>With the formatted list every library combination is a different SQL text,
+ * so PostgreSQL parses and plans each execution and the driver cannot reuse
+ * server-side prepared statements. The stable form is prepared once per pooled
+ * connection.</p>
+ *
+ * <p>Opt-in, requires PostgreSQL with PGVector:</p>
+ * <pre>
+ * mvn test -Dtest=SearchPlanCacheBenchmarkIntegrationTest -Dbenchmark=true
+ * </pre>
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Tag("integration")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SearchPlanCacheBenchmarkIntegrationTest {
+
+    private static final int LIBRARIES = 6;
+    private static final int EMBEDDINGS_PER_LIBRARY = 300;
+    private static final int THREADS = 16;
+    private static final int QUERIES_PER_THREAD = 200;
+    private static final int DIMENSION = 768;
+
+    @Autowired
+    private DocEmbeddingJdbcRepository embeddingRepository;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private DocumentoRepository documentoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Integer> libraryIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        for (int l = 0; l < LIBRARIES; l++) {
+            Library library = new Library();
+            library.setNome("Benchmark Library " + l + " " + System.nanoTime());
+            library.setAreaConhecimento("Benchmark");
+            library = libraryRepository.save(library);
+            libraryIds.add(library.getId());
+
+            Documento documento = documentoRepository.save(Documento.builder()
+                    .bibliotecaId(library.getId())
+                    .titulo("Benchmark Document " + l)
+                    .conteudoMarkdown("# Benchmark")
+                    .flagVigente(true)
+                    .dataPublicacao(LocalDate.now())
+                    .build());
+
+            for (int i = 0; i < EMBEDDINGS_PER_LIBRARY; i++) {
+                embeddingRepository.save(DocumentEmbedding.builder()
+                        .libraryId(library.getId())
+                        .documentoId(documento.getId())
+                        .tipoEmbedding(TipoEmbedding.DOCUMENTO)
+                        .texto("Benchmark text " + i)
+                        .embeddingVector(VectorUtil.randomNormalized(DIMENSION))
+                        .build());
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Cascades to documento and doc_embedding
+        libraryRepository.deleteAllById(libraryIds);
+    }
+
+    @Test
+    void benchmarkStableVersusFormattedSql() throws Exception {
+        // Warm up both paths
+        runConcurrent(this::stableQuery, 2);
+        runConcurrent(this::formattedQuery, 2);
+
+        double formattedQps = runConcurrent(this::formattedQuery, QUERIES_PER_THREAD);
+        double stableQps = runConcurrent(this::stableQuery, QUERIES_PER_THREAD);
+
+        System.out.printf("Formatted IN (...) SQL : %8.1f queries/s%n", formattedQps);
+        System.out.printf("Stable ANY(?) SQL      : %8.1f queries/s (%.2fx)%n",
+                          stableQps, stableQps / formattedQps);
+    }
+
+    private void stableQuery(Integer[] libs) {
+        List<DocumentEmbedding> result = embeddingRepository.pesquisaSemantica(
+                VectorUtil.randomNormalized(DIMENSION), libs, 10);
+        assertEquals(10, result.size());
+    }
+
+    private void formattedQuery(Integer[] libs) {
+        String ids = Arrays.stream(libs).map(String::valueOf).collect(Collectors.joining(", "));
+        String sql = """
+                SELECT d.id, 1.0 / (1 + (embedding_vector <-> ?)) AS score
+                FROM doc_embedding d
+                WHERE library_id IN (%s)
+                ORDER BY embedding_vector <-> ?
+                LIMIT ?
+                """.formatted(ids);
+        PGvector vec = new PGvector(VectorUtil.randomNormalized(DIMENSION));
+        List<Integer> result = jdbcTemplate.queryForList(sql, Integer.class, vec, vec, 10);
+        assertEquals(10, result.size());
+    }
+
+    /**
+     * Runs the query from THREADS threads, each with random library subsets.
+     * @return throughput in queries per second
+     */
+    private double runConcurrent(Consumer<Integer[]> query, int queriesPerThread) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                for (int q = 0; q < queriesPerThread; q++) {
+                    query.accept(randomSubset(random));
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        return THREADS * queriesPerThread / seconds;
+    }
+
+    private Integer[] randomSubset(Random random) {
+        List<Integer> subset = new ArrayList<>();
+        for (Integer id : libraryIds) {
+            if (random.nextBoolean()) {
+                subset.add(id);
+            }
+        }
+        if (subset.isEmpty()) {
+            subset.add(libraryIds.get(random.nextInt(libraryIds.size())));
+        }
+        return subset.toArray(new Integer[0]);
+    }
+}
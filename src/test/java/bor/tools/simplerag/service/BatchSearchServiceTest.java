@@ -0,0 +1,85 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import bor.tools.simplerag.dto.LibraryDTO;
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
+import bor.tools.splitter.EmbeddingProcessorInterface;
+
+/**
+ * Unit tests for BatchSearchService
+ */
+@ExtendWith(MockitoExtension.class)
+class BatchSearchServiceTest {
+
+    @Mock
+    private DocEmbeddingJdbcRepository embeddingRepository;
+
+    @Mock
+    private EmbeddingProcessorInterface embeddingProcessor;
+
+    private BatchSearchService service;
+
+    private final LibraryDTO library = new LibraryDTO();
+
+    @BeforeEach
+    void setUp() {
+        service = new BatchSearchService(embeddingRepository, embeddingProcessor, 3, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testDuplicateQueriesSearchedOnce() {
+        Integer[] libs = {1};
+        when(embeddingProcessor.createSearchEmbeddings(eq("café"), any())).thenReturn(new float[] {1f, 0f});
+        when(embeddingProcessor.createSearchEmbeddings(eq("leite"), any())).thenReturn(new float[] {0f, 1f});
+        List<DocumentEmbedding> cafe = List.of(new DocumentEmbedding());
+        List<DocumentEmbedding> leite = List.of(new DocumentEmbedding(), new DocumentEmbedding());
+        when(embeddingRepository.pesquisaBatch(anyList(), eq(List.of("café", "leite")), eq(libs), eq(5),
+                                               any(), any(), isNull()))
+            .thenReturn(List.of(cafe, leite));
+
+        List<List<DocumentEmbedding>> results = service.search(List.of("café", "leite", "café"), library, libs, 5,
+                                                               false, 0.6f, 0.4f, null);
+
+        assertEquals(3, results.size());
+        assertSame(cafe, results.get(0));
+        assertSame(leite, results.get(1));
+        assertSame(cafe, results.get(2));
+        verify(embeddingProcessor, times(1)).createSearchEmbeddings(eq("café"), any());
+    }
+
+    @Test
+    void testLimitsAndEmbeddingFailure() {
+        Integer[] libs = {1};
+        assertThrows(IllegalArgumentException.class,
+                () -> service.search(List.of("a", "b", "c", "d"), library, libs, 5, true, 1f, 0f, null));
+
+        when(embeddingProcessor.createSearchEmbeddings(eq("erro"), any())).thenReturn(new float[0]);
+        assertThrows(IllegalStateException.class,
+                () -> service.search(List.of("erro"), library, libs, 5, true, 1f, 0f, null));
+    }
+}
@@ -0,0 +1,108 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import bor.tools.simplerag.dto.ContextChunkDTO;
+import bor.tools.simplerag.dto.SearchResultDTO;
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.repository.ChapterRepository;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
+
+/**
+ * Unit tests for ContextExpansionService
+ */
+@ExtendWith(MockitoExtension.class)
+class ContextExpansionServiceTest {
+
+    @Mock
+    private DocEmbeddingJdbcRepository embeddingRepository;
+
+    @Mock
+    private ChapterRepository chapterRepository;
+
+    @InjectMocks
+    private ContextExpansionService service;
+
+    @Test
+    void testNeighborWindows() {
+        // Hits 11 and 13 of the same chapter: 12 belongs to the best ranked window only
+        when(embeddingRepository.findNeighborWindows(eq(new Integer[] {11, 13}), eq(1), any()))
+            .thenReturn(Map.of(11, List.of(chunk(10, 1), chunk(11, 2), chunk(12, 3)),
+                               13, List.of(chunk(13, 4), chunk(14, 5))));
+        List<SearchResultDTO> results = List.of(result(11, 7), result(13, 7));
+
+        service.expand(results, 1, false, null);
+
+        assertEquals(List.of(10, 12), ids(results.get(0).getContexto()));
+        assertEquals(List.of(14), ids(results.get(1).getContexto()));
+        assertNull(results.get(0).getCapituloTexto());
+    }
+
+    @Test
+    void testChapterText() {
+        when(chapterRepository.findConteudosByIdIn(any())).thenReturn(List.of(conteudo(7, "Capítulo 7")));
+        List<SearchResultDTO> results = List.of(result(11, 7), result(13, 7));
+
+        service.expand(results, 2, true, null);
+
+        assertEquals("Capítulo 7", results.get(0).getCapituloTexto());
+        assertNull(results.get(1).getCapituloTexto());
+        assertNull(results.get(0).getContexto());
+        verifyNoInteractions(embeddingRepository);
+    }
+
+    @Test
+    void testInvalidWindow() {
+        List<SearchResultDTO> results = new ArrayList<>(List.of(result(1, 1)));
+        assertThrows(IllegalArgumentException.class, () -> service.expand(results, 11, false, null));
+        service.expand(results, 0, null, null);
+        assertNull(results.get(0).getContexto());
+    }
+
+    private static SearchResultDTO result(int id, int chapterId) {
+        return SearchResultDTO.builder().embeddingId(id).capituloId(chapterId).build();
+    }
+
+    private static DocumentEmbedding chunk(int id, int order) {
+        DocumentEmbedding doc = new DocumentEmbedding();
+        doc.setId(id);
+        doc.setOrderChapter(order);
+        doc.setTexto("chunk " + id);
+        return doc;
+    }
+
+    private static ChapterRepository.ConteudoView conteudo(int id, String texto) {
+        return new ChapterRepository.ConteudoView() {
+            @Override
+            public Integer getId() {
+                return id;
+            }
+
+            @Override
+            public String getConteudo() {
+                return texto;
+            }
+        };
+    }
+
+    private static List<Integer> ids(List<ContextChunkDTO> chunks) {
+        return chunks.stream().map(ContextChunkDTO::getEmbeddingId).collect(Collectors.toList());
+    }
+}
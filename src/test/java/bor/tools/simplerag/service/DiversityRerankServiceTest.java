@@ -0,0 +1,82 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.entity.MetaDoc;
+
+/**
+ * Unit tests for DiversityRerankService
+ */
+class DiversityRerankServiceTest {
+
+    private final DiversityRerankService service = new DiversityRerankService(4);
+
+    @Test
+    void testMmrDemotesNearDuplicates() {
+        List<DocumentEmbedding> candidates = new ArrayList<>();
+        // Three near-identical chunks of documento 1 score highest
+        candidates.add(doc(1, 1, 0.95f, new float[] {1f, 0f, 0f}));
+        candidates.add(doc(2, 1, 0.94f, new float[] {0.99f, 0.01f, 0f}));
+        candidates.add(doc(3, 1, 0.93f, new float[] {0.98f, 0.02f, 0f}));
+        candidates.add(doc(4, 2, 0.80f, new float[] {0f, 1f, 0f}));
+        candidates.add(doc(5, 3, 0.70f, new float[] {0f, 0f, 1f}));
+
+        List<Integer> relevanceOnly = ids(service.rerank(copy(candidates), 3, 1.0f, null));
+        assertEquals(List.of(1, 2, 3), relevanceOnly);
+
+        List<DocumentEmbedding> diverse = service.rerank(candidates, 3, 0.5f, null);
+        assertEquals(List.of(1, 4, 5), ids(diverse));
+        assertNull(diverse.get(0).getEmbeddingVector());
+    }
+
+    @Test
+    void testMaxPerDocumento() {
+        List<DocumentEmbedding> candidates = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            candidates.add(doc(i, i <= 4 ? 1 : 2, 1.0f - i * 0.1f, null));
+        }
+        assertTrue(service.isActive(null, 2));
+        assertFalse(service.isActive(1.0f, null));
+        assertEquals(40, service.candidateLimit(10));
+
+        List<DocumentEmbedding> selected = service.rerank(candidates, 4, null, 2);
+        assertEquals(List.of(1, 2, 5, 6), ids(selected));
+
+        // Not enough documentos: fewer results than k
+        assertEquals(2, service.rerank(candidates, 4, null, 1).size());
+        assertThrows(IllegalArgumentException.class, () -> service.rerank(candidates, 4, 1.5f, null));
+    }
+
+    private static DocumentEmbedding doc(int id, int documentoId, float score, float[] vector) {
+        DocumentEmbedding doc = new DocumentEmbedding();
+        doc.setId(id);
+        doc.setDocumentoId(documentoId);
+        doc.setEmbeddingVector(vector);
+        MetaDoc metadados = new MetaDoc();
+        metadados.put("score", score);
+        doc.setMetadados(metadados);
+        return doc;
+    }
+
+    private static List<DocumentEmbedding> copy(List<DocumentEmbedding> docs) {
+        return docs.stream()
+                   .map(d -> doc(d.getId(), d.getDocumentoId(), (Float) d.getMetadados().get("score"),
+                                 d.getEmbeddingVector()))
+                   .collect(Collectors.toList());
+    }
+
+    private static List<Integer> ids(List<DocumentEmbedding> docs) {
+        return docs.stream().map(DocumentEmbedding::getId).collect(Collectors.toList());
+    }
+}
@@ -22,6 +22,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
@@ -62,6 +64,12 @@ class DocumentoServiceTest {
     @Mock
     private AsyncSplitterService asyncSplitterService;
 
+    @Mock
+    private TitleCacheService titleCacheService;
+
+    @Mock
+    private SearchResultCacheService searchResultCache;
+
     @InjectMocks
     private DocumentoService documentoService;
 
@@ -477,6 +485,26 @@ class DocumentoServiceTest {
         verify(documentoRepository).save(argThat(doc ->
                 doc.getFlagVigente() == false
         ));
+        verify(embeddingRepository).updateLiveFlags(1, false, false);
+    }
+
+    @Test
+    void testUpdateStatus_EvictsCachesAfterCommit() {
+        when(documentoRepository.findById(1)).thenReturn(Optional.of(testDocumento));
+        when(documentoRepository.save(any(Documento.class))).thenReturn(testDocumento);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            documentoService.updateStatus(1, false);
+            verify(searchResultCache, never()).invalidateLibrary(any());
+            verify(titleCacheService, never()).evictDocumento(any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(titleCacheService).evictDocumento(1);
+        verify(searchResultCache).invalidateLibrary(1);
     }
 
     @Test
@@ -501,8 +529,11 @@ class DocumentoServiceTest {
 
         // Then
         verify(documentoRepository).save(argThat(doc ->
-                doc.getFlagVigente() == false
+                doc.getFlagVigente() == false && doc.isDeleted()
         ));
+        verify(embeddingRepository).updateLiveFlags(1, false, true);
+        verify(titleCacheService).evictDocumento(1);
+        verify(searchResultCache).invalidateLibrary(1);
     }
 
     // ============ Helper Method Tests ============
@@ -0,0 +1,59 @@
+package bor.tools.simplerag.service;
+
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Unit tests for EmbeddingMaintenanceService
+ */
+@ExtendWith(MockitoExtension.class)
+class EmbeddingMaintenanceServiceTest {
+
+    @Mock
+    private JdbcTemplate session;
+
+    private EmbeddingMaintenanceService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new EmbeddingMaintenanceService(session, true, 30, 0, 2, 10, 0.2);
+    }
+
+    @Test
+    void testPurgesInBatchesAndReindexesPastChurnThreshold() {
+        when(session.update(EmbeddingMaintenanceService.SQL_PURGE_DELETED, 30, 2)).thenReturn(2, 1, 0);
+        when(session.queryForList(EmbeddingMaintenanceService.SQL_TABLE_STATS)).thenReturn(
+                List.of(Map.of("n_live_tup", 100L, "n_dead_tup", 3L, "churn", 50L)),
+                List.of(Map.of("n_live_tup", 100L, "n_dead_tup", 0L, "churn", 80L)));
+        when(session.queryForList(EmbeddingMaintenanceService.SQL_INDEXES)).thenReturn(List.of(
+                Map.of("name", "idx_embedding_live_ip_hnsw", "method", "hnsw", "valid", true),
+                Map.of("name", "idx_embedding_live_tsv_ccnew", "method", "gin", "valid", false),
+                Map.of("name", "doc_embedding_pkey", "method", "btree", "valid", true)));
+
+        // First run: two batches (the second one short), vacuum, churn baseline only
+        service.maintain(session);
+        verify(session, times(2)).update(EmbeddingMaintenanceService.SQL_PURGE_DELETED, 30, 2);
+        verify(session).execute(EmbeddingMaintenanceService.SQL_VACUUM);
+        verify(session, never()).execute("REINDEX INDEX CONCURRENTLY idx_embedding_live_ip_hnsw");
+
+        // Second run: nothing to purge, 30 changed rows of 100 live: reindex valid ANN / GIN indexes
+        service.maintain(session);
+        verify(session, times(1)).execute(EmbeddingMaintenanceService.SQL_VACUUM);
+        verify(session).execute("REINDEX INDEX CONCURRENTLY idx_embedding_live_ip_hnsw");
+        // btree and invalid (failed concurrent build) indexes are skipped
+        verify(session, times(1)).execute(startsWith("REINDEX"));
+    }
+}
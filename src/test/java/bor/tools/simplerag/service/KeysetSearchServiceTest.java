@@ -0,0 +1,102 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import bor.tools.simplerag.dto.SearchCursor;
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository.KeysetPage;
+
+/**
+ * Unit tests for KeysetSearchService
+ */
+@ExtendWith(MockitoExtension.class)
+class KeysetSearchServiceTest {
+
+    @Mock
+    private DocEmbeddingJdbcRepository embeddingRepository;
+
+    private KeysetSearchService service;
+
+    private final Integer[] libs = {1, 2};
+    private final float[] vector = {0.6f, 0.8f};
+
+    @BeforeEach
+    void setUp() {
+        service = new KeysetSearchService(embeddingRepository, 4);
+    }
+
+    @Test
+    void testContinuationResumesAfterLastResult() {
+        AtomicInteger embeddings = new AtomicInteger();
+        when(embeddingRepository.pesquisaHibridaKeyset(any(), eq("café"), eq(libs), eq(2), eq(4), eq(0.6f), eq(0.4f),
+                                                       isNull(), isNull(), any()))
+            .thenReturn(new KeysetPage(List.of(doc(5), doc(3)), -0.031, 3));
+        when(embeddingRepository.pesquisaHibridaKeyset(any(), eq("café"), eq(libs), eq(2), eq(4), eq(0.6f), eq(0.4f),
+                isNull(), argThat(c -> c != null && c.getLastId() == 3 && c.getDepth() == 2), any()))
+            .thenReturn(new KeysetPage(List.of(doc(8)), -0.02, 8));
+
+        KeysetSearchService.Page first = service.search("hybrid", "café", libs, 2, 0.6f, 0.4f, null, null,
+                () -> { embeddings.incrementAndGet(); return vector; }, null);
+        assertEquals(2, first.getResults().size());
+        assertNotNull(first.getNextCursor());
+
+        SearchCursor cursor = SearchCursor.decode(first.getNextCursor());
+        assertEquals(-0.031, cursor.getLastKey());
+        assertEquals(2, cursor.getRrfK());
+        assertArrayEquals(vector, cursor.getVector());
+
+        // Continuation reuses the query vector and ends the pagination
+        KeysetSearchService.Page second = service.search("hybrid", "café", libs, 2, 0.6f, 0.4f, null,
+                first.getNextCursor(), () -> { embeddings.incrementAndGet(); return vector; }, null);
+        assertEquals(1, second.getResults().size());
+        assertNull(second.getNextCursor());
+        assertEquals(1, embeddings.get());
+    }
+
+    @Test
+    void testInvalidCursors() {
+        String textual = SearchCursor.builder().tipo("textual")
+                .fingerprint(SearchCursor.fingerprint("textual", "café", libs, null, null, null))
+                .lastKey(-0.5).lastId(7).depth(2).build().encode();
+
+        // Another query, another search type, a malformed token
+        assertThrows(IllegalArgumentException.class,
+                () -> service.search("textual", "leite", libs, 2, null, null, null, textual, null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.search("semantic", "café", libs, 2, null, null, null, textual, () -> vector, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.search("textual", "café", libs, 2, null, null, null, "x" + textual, null, null));
+
+        // Hybrid depth limit
+        String deep = SearchCursor.builder().tipo("hybrid")
+                .fingerprint(SearchCursor.fingerprint("hybrid", "café", libs, 0.6f, 0.4f, null))
+                .depth(4).rrfK(2).vector(vector).build().encode();
+        assertThrows(IllegalArgumentException.class,
+                () -> service.search("hybrid", "café", libs, 2, 0.6f, 0.4f, null, deep, null, null));
+    }
+
+    private static DocumentEmbedding doc(int id) {
+        DocumentEmbedding doc = new DocumentEmbedding();
+        doc.setId(id);
+        return doc;
+    }
+}
@@ -0,0 +1,75 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import bor.tools.simplerag.entity.MetaBiblioteca;
+
+/**
+ * Unit tests for LuceneTextIndexService
+ */
+@ExtendWith(MockitoExtension.class)
+class LuceneTextIndexServiceTest {
+
+    private static final Integer[] LIBRARY = { 1 };
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private LuceneTextIndexService service;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        service = new LuceneTextIndexService(jdbcTemplate, true, "", 100, 1.2f, 0.75f);
+        MetaBiblioteca config = new MetaBiblioteca();
+        config.setTextEngine(MetaBiblioteca.TEXT_ENGINE_LUCENE);
+        service.sync(Map.of(1, config));
+
+        // empty library: the background load only has to publish the index
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!service.isReady(LIBRARY) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(service.isReady(LIBRARY));
+
+        service.onUpsert(1, 10, "Regras gerais sobre contratos administrativos e licitações.", "{}");
+        service.onUpsert(1, 20, "Disposições finais.", "{\"nome\": \"Lei de Licitações\"}");
+        service.onUpsert(1, 30, "Tributos municipais.", "{\"nome\": \"Código Tributário\"}");
+        service.refresh();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testTitleMatchOutranksContentMatch() {
+        // nome (weight A) over texto (weight C)
+        assertEquals(List.of(20, 10), ids(service.search(LIBRARY, "licitações", 10)));
+    }
+
+    @Test
+    void testExclusionAndDelete() {
+        assertEquals(List.of(20), ids(service.search(LIBRARY, "licitações -contratos", 10)));
+
+        service.onDelete(20);
+        service.refresh();
+        assertEquals(List.of(10), ids(service.search(LIBRARY, "licitações", 10)));
+    }
+
+    private static List<Integer> ids(List<LuceneTextIndexService.Hit> hits) {
+        return hits.stream().map(LuceneTextIndexService.Hit::getId).toList();
+    }
+}
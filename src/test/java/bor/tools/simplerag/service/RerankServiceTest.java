@@ -0,0 +1,114 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.entity.MetaDoc;
+import bor.tools.simplerag.service.rerank.LexicalRerankScorer;
+import bor.tools.simplerag.service.rerank.RerankScorer;
+
+/**
+ * Unit tests for RerankService
+ */
+class RerankServiceTest {
+
+    @Test
+    void testRerankBatchesAndCachesScores() {
+        AtomicInteger calls = new AtomicInteger();
+        RerankScorer byLength = scorer("test", calls, 0);
+        RerankService service = new RerankService(List.of(byLength), "test", 4, 2, 5000, 2.0, 100, 1);
+
+        // Longer texts score higher; the 5th candidate is outside top-n
+        List<DocumentEmbedding> candidates = List.of(doc(1, "a"), doc(2, "aaa"), doc(3, "aa"), doc(4, "aaaa"),
+                                                     doc(5, "aaaaa"));
+        RerankService.Outcome outcome = service.rerank("q", candidates, 2);
+        assertEquals(List.of(4, 2, 3, 1, 5), ids(outcome.getResults()));
+        assertEquals(2, outcome.getBatches());
+        assertEquals(4, outcome.getScored());
+        assertEquals(2, calls.get());
+        assertEquals(1.0f, outcome.getResults().get(0).getMetadados().get(RerankService.SCORE_KEY));
+
+        // Same query: every score comes from the cache
+        outcome = service.rerank("q", candidates, 2);
+        assertEquals(List.of(4, 2, 3, 1, 5), ids(outcome.getResults()));
+        assertEquals(4, outcome.getCached());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testBudgetAndEarlyStop() {
+        AtomicInteger calls = new AtomicInteger();
+        // Each call takes longer than the budget: retrieval order is kept
+        RerankService slow = new RerankService(List.of(scorer("slow", calls, 500)), "slow", 4, 2, 50, 2.0, 100, 1);
+        RerankService.Outcome outcome = slow.rerank("q", List.of(doc(1, "a"), doc(2, "aa"), doc(3, "aaa")), 2);
+        assertTrue(outcome.isTimedOut());
+        assertEquals(List.of(1, 2, 3), ids(outcome.getResults()));
+
+        // The first batch already has k confident results
+        calls.set(0);
+        RerankService early = new RerankService(List.of(scorer("fast", calls, 0)), "fast", 10, 2, 5000, 0.5, 100, 1);
+        outcome = early.rerank("q", List.of(doc(1, "aaaa"), doc(2, "aaaa"), doc(3, "a"), doc(4, "a")), 2);
+        assertTrue(outcome.isEarlyStop());
+        assertEquals(1, calls.get());
+
+        assertFalse(early.isActive(null));
+        assertTrue(early.isActive(true));
+        assertFalse(new RerankService(List.of(new LexicalRerankScorer()), "none", 4, 2, 50, 1, 0, 1).isActive(true));
+    }
+
+    @Test
+    void testLexicalScorer() {
+        double[] scores = new LexicalRerankScorer().score("licitação dispensa",
+                List.of("Hipóteses de dispensa de licitacao", "Dispensa de ponto", "Horário de expediente"));
+        assertEquals(1.0, scores[0], 1e-9);
+        assertTrue(scores[1] > 0 && scores[1] < 1);
+        assertEquals(0.0, scores[2], 1e-9);
+    }
+
+    /**
+     * Scores texts by length (4 chars = 1.0)
+     */
+    private static RerankScorer scorer(String name, AtomicInteger calls, long delayMs) {
+        return new RerankScorer() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public double[] score(String query, List<String> passages) {
+                calls.incrementAndGet();
+                if (delayMs > 0) {
+                    try {
+                        Thread.sleep(delayMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return passages.stream().mapToDouble(p -> Math.min(1.0, p.length() / 4.0)).toArray();
+            }
+        };
+    }
+
+    private static DocumentEmbedding doc(int id, String texto) {
+        DocumentEmbedding doc = new DocumentEmbedding();
+        doc.setId(id);
+        doc.setDocumentoId(id);
+        doc.setTexto(texto);
+        doc.setMetadados(new MetaDoc());
+        return doc;
+    }
+
+    private static List<Integer> ids(List<DocumentEmbedding> docs) {
+        return docs.stream().map(DocumentEmbedding::getId).collect(Collectors.toCollection(ArrayList::new));
+    }
+}
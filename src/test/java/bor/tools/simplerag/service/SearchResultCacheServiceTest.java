@@ -0,0 +1,101 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import bor.tools.simplerag.dto.SearchCacheStatsDTO;
+import bor.tools.simplerag.dto.SearchProfile;
+import bor.tools.simplerag.dto.SearchResultDTO;
+
+/**
+ * Unit tests for SearchResultCacheService
+ */
+class SearchResultCacheServiceTest {
+
+    private SearchResultCacheService cache;
+    private AtomicInteger searches;
+    private Supplier<List<SearchResultDTO>> search;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SearchResultCacheService(100);
+        searches = new AtomicInteger();
+        search = () -> {
+            searches.incrementAndGet();
+            return List.of(new SearchResultDTO());
+        };
+    }
+
+    @Test
+    void testIdenticalRequestsHitCache() {
+        cache.getOrSearch("hybrid", "café leite", new Integer[] {2, 1}, 10, 0.6f, 0.4f, null, search);
+        // Same request: whitespace and library order do not matter
+        List<SearchResultDTO> results =
+                cache.getOrSearch("hybrid", "  café   leite ", new Integer[] {1, 2}, 10, 0.6f, 0.4f, null, search);
+
+        assertEquals(1, searches.get());
+        assertEquals(1, results.size());
+
+        // Different weights or type are different requests
+        cache.getOrSearch("hybrid", "café leite", new Integer[] {1, 2}, 10, 0.5f, 0.5f, null, search);
+        cache.getOrSearch("textual", "café leite", new Integer[] {1, 2}, 10, null, null, null, search);
+        assertEquals(3, searches.get());
+    }
+
+    @Test
+    void testLibraryChangeInvalidatesOnlyItsResults() {
+        cache.getOrSearch("semantic", "q", new Integer[] {1}, 10, null, null, null, search);
+        cache.getOrSearch("semantic", "q", new Integer[] {2}, 10, null, null, null, search);
+
+        cache.invalidateLibrary(1);
+
+        cache.getOrSearch("semantic", "q", new Integer[] {1}, 10, null, null, null, search);
+        cache.getOrSearch("semantic", "q", new Integer[] {2}, 10, null, null, null, search);
+
+        assertEquals(3, searches.get());
+        assertEquals(1, cache.getLibraryVersion(1));
+
+        SearchCacheStatsDTO stats = cache.getStats();
+        assertEquals(2, stats.getLibraries().size());
+        SearchCacheStatsDTO.LibraryStats lib1 = stats.getLibraries().get(0);
+        SearchCacheStatsDTO.LibraryStats lib2 = stats.getLibraries().get(1);
+        assertEquals(0L, lib1.getHits());
+        assertEquals(2L, lib1.getMisses());
+        assertEquals(1L, lib2.getHits());
+        assertEquals(0.5, lib2.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testExplainAnalyzeBypassesCacheAndHitIsProfiled() {
+        cache.getOrSearch("textual", "q", new Integer[] {1}, 10, null, null, new SearchProfile(true), search);
+        cache.getOrSearch("textual", "q", new Integer[] {1}, 10, null, null, new SearchProfile(true), search);
+        assertEquals(2, searches.get());
+
+        cache.getOrSearch("textual", "q", new Integer[] {1}, 10, null, null, null, search);
+        SearchProfile profile = new SearchProfile(false);
+        cache.getOrSearch("textual", "q", new Integer[] {1}, 10, null, null, profile, search);
+
+        assertEquals(3, searches.get());
+        assertNotNull(profile.getLastPhase());
+        assertEquals(SearchResultCacheService.PHASE_RESULT_CACHE, profile.getLastPhase().getName());
+        assertEquals("hit", profile.getLastPhase().getDetail());
+    }
+
+    @Test
+    void testExplainAnalyzeDoesNotPopulateCache() {
+        cache.getOrSearch("semantic", "q", new Integer[] {1}, 10, null, null, new SearchProfile(true), search);
+        cache.getOrSearch("semantic", "q", new Integer[] {1}, 10, null, null, null, search);
+        assertEquals(2, searches.get());
+
+        // plain explain is served from the cache
+        cache.getOrSearch("semantic", "q", new Integer[] {1}, 10, null, null, SearchProfile.of(true, false), search);
+        assertEquals(2, searches.get());
+    }
+}
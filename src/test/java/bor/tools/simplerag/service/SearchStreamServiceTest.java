@@ -0,0 +1,120 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import bor.tools.simplerag.dto.LibraryDTO;
+import bor.tools.simplerag.dto.SearchRequest;
+import bor.tools.simplerag.dto.SearchResultDTO;
+import bor.tools.simplerag.entity.DocumentEmbedding;
+import bor.tools.simplerag.repository.DocEmbeddingJdbcRepository;
+import bor.tools.splitter.EmbeddingProcessorInterface;
+
+/**
+ * Unit tests for SearchStreamService
+ */
+@ExtendWith(MockitoExtension.class)
+class SearchStreamServiceTest {
+
+    @Mock
+    private DocEmbeddingJdbcRepository embeddingRepository;
+
+    @Mock
+    private EmbeddingProcessorInterface embeddingProcessor;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SearchStreamService service;
+
+    private final SearchRequest request = SearchRequest.builder()
+            .query("café")
+            .libraryIds(new Integer[] {1})
+            .limit(3)
+            .build();
+
+    @BeforeEach
+    void setUp() {
+        // Textual preview of 1 hit, pages of 2 results
+        service = new SearchStreamService(embeddingRepository, embeddingProcessor, objectMapper, 1, 2, 100);
+        when(embeddingRepository.pesquisaTextual(eq("café"), any(), eq(1), isNull(), eq(false), isNull()))
+            .thenReturn(List.of(doc(9)));
+    }
+
+    @Test
+    void testNdjsonEvents() throws Exception {
+        when(embeddingProcessor.createSearchEmbeddings(anyString(), any())).thenReturn(new float[] {1f});
+        doAnswer(inv -> {
+            Consumer<DocumentEmbedding> sink = inv.getArgument(8);
+            sink.accept(doc(1));
+            sink.accept(doc(2));
+            sink.accept(doc(3));
+            return null;
+        }).when(embeddingRepository).streamHibrida(any(), eq("café"), any(), eq(3), any(), any(), any(), any(), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stream(request, new LibraryDTO(), false, SearchStreamServiceTest::enrich, out);
+
+        List<JsonNode> events = out.toString(StandardCharsets.UTF_8).lines()
+                .map(this::parse)
+                .collect(Collectors.toList());
+        assertEquals(List.of("textual", "result", "result", "result", "done"),
+                     events.stream().map(e -> e.get("event").asText()).collect(Collectors.toList()));
+        assertEquals(9, events.get(0).get("result").get("embeddingId").asInt());
+        assertEquals(3, events.get(3).get("rank").asInt());
+        assertEquals(3, events.get(4).get("totalResults").asInt());
+    }
+
+    @Test
+    void testSseErrorEvent() throws Exception {
+        when(embeddingProcessor.createSearchEmbeddings(anyString(), any()))
+            .thenThrow(new IllegalStateException("LLM offline"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.stream(request, new LibraryDTO(), true, SearchStreamServiceTest::enrich, out);
+
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.startsWith("event: textual\ndata: {"));
+        assertTrue(body.contains("event: error\ndata: {\"event\":\"error\",\"message\":\"LLM offline\"}\n\n"));
+    }
+
+    private JsonNode parse(String line) {
+        try {
+            return objectMapper.readTree(line);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<SearchResultDTO> enrich(List<DocumentEmbedding> docs) {
+        return docs.stream().map(SearchResultDTO::from).collect(Collectors.toList());
+    }
+
+    private static DocumentEmbedding doc(int id) {
+        DocumentEmbedding doc = new DocumentEmbedding();
+        doc.setId(id);
+        doc.setDocumentoId(id);
+        doc.setTexto("texto " + id);
+        return doc;
+    }
+}
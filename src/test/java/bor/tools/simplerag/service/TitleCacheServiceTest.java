@@ -0,0 +1,80 @@
+package bor.tools.simplerag.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import bor.tools.simplerag.repository.ChapterRepository;
+import bor.tools.simplerag.repository.DocumentoRepository;
+
+/**
+ * Unit tests for TitleCacheService
+ */
+@ExtendWith(MockitoExtension.class)
+class TitleCacheServiceTest {
+
+    @Mock
+    private DocumentoRepository documentoRepository;
+
+    @Mock
+    private ChapterRepository chapterRepository;
+
+    private TitleCacheService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new TitleCacheService(documentoRepository, chapterRepository, 100);
+    }
+
+    @Test
+    void testUntitledDocumentIsCached() {
+        when(documentoRepository.findTitulosByIdIn(anyCollection()))
+                .thenReturn(List.of(documento(1, null), documento(2, "Lei 8.666")));
+
+        for (int i = 0; i < 2; i++) {
+            Map<Integer, String> titles = service.getDocumentoTitles(List.of(1, 2));
+            assertTrue(titles.containsKey(1));
+            assertNull(titles.get(1));
+            assertEquals("Lei 8.666", titles.get(2));
+        }
+        verify(documentoRepository, times(1)).findTitulosByIdIn(anyCollection());
+    }
+
+    @Test
+    void testEvictReloadsUntitledDocument() {
+        when(documentoRepository.findTitulosByIdIn(anyCollection())).thenReturn(List.of(documento(1, null)));
+        service.getDocumentoTitles(List.of(1));
+
+        service.evictDocumento(1);
+        service.getDocumentoTitles(List.of(1));
+
+        verify(documentoRepository, times(2)).findTitulosByIdIn(anyCollection());
+    }
+
+    private static DocumentoRepository.TituloView documento(Integer id, String titulo) {
+        return new DocumentoRepository.TituloView() {
+            @Override
+            public Integer getId() {
+                return id;
+            }
+
+            @Override
+            public String getTitulo() {
+                return titulo;
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+package bor.tools.simplerag.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for HnswIndex and OffHeapVectorStore
+ */
+class HnswIndexTest {
+
+    private static final int DIM = 32;
+
+    @Test
+    void testRecallAgainstBruteForce() {
+        HnswIndex index = new HnswIndex(DIM, 16, 100);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            float[] v = VectorUtil.randomNormalized(DIM);
+            vectors.add(v);
+            index.add(i + 1, v);
+        }
+        assertEquals(2000, index.size());
+
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = VectorUtil.randomNormalized(DIM);
+            Set<Integer> exact = bruteForce(vectors, query, 10);
+            List<HnswIndex.Result> results = index.search(query, 10, 64);
+
+            assertEquals(10, results.size());
+            for (int i = 1; i < results.size(); i++) {
+                assertTrue(results.get(i - 1).getDistance() <= results.get(i).getDistance());
+            }
+            hits += (int) results.stream().filter(r -> exact.contains(r.getId())).count();
+        }
+        double recall = (double) hits / (queries * 10);
+        assertTrue(recall >= 0.9, "recall@10 = " + recall);
+    }
+
+    @Test
+    void testRemoveAndReplace() {
+        HnswIndex index = new HnswIndex(DIM, 8, 32);
+        for (int i = 1; i <= 200; i++) {
+            index.add(i, VectorUtil.randomNormalized(DIM));
+        }
+        float[] target = VectorUtil.randomNormalized(DIM);
+        index.add(500, target);
+        assertEquals(500, index.search(target, 1, 32).get(0).getId());
+
+        assertTrue(index.remove(500));
+        assertFalse(index.remove(500));
+        assertFalse(index.contains(500));
+        Set<Integer> ids = index.search(target, 10, 32).stream()
+                                .map(HnswIndex.Result::getId).collect(Collectors.toSet());
+        assertFalse(ids.contains(500));
+
+        // Replacing an id keeps a single live entry pointing at the new vector
+        index.add(7, target);
+        index.add(7, target);
+        assertEquals(200, index.size());
+        assertEquals(7, index.search(target, 1, 32).get(0).getId());
+        assertEquals(0.0f, index.search(target, 1, 32).get(0).getDistance(), 1e-6);
+    }
+
+    @Test
+    void testOffHeapStoreSpansChunks() {
+        OffHeapVectorStore store = new OffHeapVectorStore(3);
+        int n = OffHeapVectorStore.CHUNK_VECTORS + 10;
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, store.add(new float[] {i, i + 1, i + 2}));
+        }
+        float[] v = new float[3];
+        store.get(n - 1, v);
+        assertEquals(n - 1, v[0]);
+        assertEquals(n + 1, v[2]);
+        assertEquals(2L * OffHeapVectorStore.CHUNK_VECTORS * 3 * Float.BYTES, store.getOffHeapBytes());
+    }
+
+    private static Set<Integer> bruteForce(List<float[]> vectors, float[] query, int k) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < vectors.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Double.compare(VectorUtil.euclideanDistance(query, vectors.get(a)),
+                                            VectorUtil.euclideanDistance(query, vectors.get(b))));
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < k; i++) {
+            ids.add(order.get(i) + 1);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,77 @@
+package bor.tools.simplerag.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for HnswSnapshot
+ */
+class HnswSnapshotTest {
+
+    private static final int DIM = 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRoundTrip() throws IOException {
+        HnswIndex index = new HnswIndex(DIM, 8, 32);
+        int n = OffHeapVectorStore.CHUNK_VECTORS + 100;
+        for (int i = 1; i <= n; i++) {
+            index.add(i, VectorUtil.randomNormalized(DIM));
+        }
+        index.remove(10);
+        Path file = dir.resolve("library-1.hnsw");
+        HnswSnapshot.write(index, 1, 123456789L, file);
+
+        HnswSnapshot snapshot = HnswSnapshot.read(file);
+        HnswIndex restored = snapshot.getIndex();
+        assertEquals(1, snapshot.getLibraryId());
+        assertEquals(123456789L, snapshot.getTakenAt());
+        assertEquals(n - 1, snapshot.getLiveCount());
+        assertEquals(n, snapshot.getMaxId());
+        assertEquals(n - 1, restored.size());
+        assertFalse(restored.contains(10));
+
+        for (int q = 0; q < 20; q++) {
+            float[] query = VectorUtil.randomNormalized(DIM);
+            List<HnswIndex.Result> expected = index.search(query, 10, 32);
+            List<HnswIndex.Result> actual = restored.search(query, 10, 32);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            }
+        }
+
+        // The restored index keeps accepting writes
+        float[] target = VectorUtil.randomNormalized(DIM);
+        restored.add(n + 1, target);
+        assertEquals(n + 1, restored.search(target, 1, 32).get(0).getId());
+    }
+
+    @Test
+    void testCorruptionDetected() throws IOException {
+        HnswIndex index = new HnswIndex(DIM, 8, 32);
+        for (int i = 1; i <= 100; i++) {
+            index.add(i, VectorUtil.randomNormalized(DIM));
+        }
+        Path file = dir.resolve("library-2.hnsw");
+        HnswSnapshot.write(index, 2, 0L, file);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0x7f }), channel.size() / 2);
+        }
+        assertThrows(IOException.class, () -> HnswSnapshot.read(file));
+    }
+}
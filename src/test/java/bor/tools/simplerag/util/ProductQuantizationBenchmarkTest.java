@@ -0,0 +1,93 @@
+package bor.tools.simplerag.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Benchmark: recall@k of product quantization versus memory per vector.
+ *
+ * <p>For several code sizes, reports the recall@k of the raw ADC ranking and
+ * of the ADC shortlist (k * rerank factor) re-ranked with exact distances,
+ * against brute force, plus scan latency. No database needed.</p>
+ *
+ * <pre>
+ * mvn test -Dtest=ProductQuantizationBenchmarkTest -Dbenchmark=true
+ * </pre>
+ */
+@Tag("integration")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProductQuantizationBenchmarkTest {
+
+    private static final int CORPUS_SIZE = 20000;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+    private static final int RERANK_FACTOR = 10;
+    private static final int DIMENSION = 768;
+    private static final int[] SUBSPACES = { 24, 48, 96, 192 };
+
+    @Test
+    void benchmarkRecallVersusMemory() {
+        Random random = new Random(42);
+        List<float[]> corpus = new ArrayList<>();
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            corpus.add(clusteredVector(random));
+        }
+        List<float[]> queries = new ArrayList<>();
+        List<int[]> exact = new ArrayList<>();
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = clusteredVector(random);
+            queries.add(query);
+            exact.add(ProductQuantizerTest.exactTopK(corpus, query, K, null));
+        }
+
+        System.out.printf("%nPQ, %d x %dd vectors (float32: %d bytes/vector), recall@%d, shortlist %d%n",
+                          CORPUS_SIZE, DIMENSION, DIMENSION * Float.BYTES, K, K * RERANK_FACTOR);
+        System.out.printf("%-10s %-12s %-10s %-14s %-10s %-10s%n",
+                          "subspaces", "bytes/vec", "train ms", "scan ms/query", "adc", "reranked");
+
+        for (int subspaces : SUBSPACES) {
+            long start = System.currentTimeMillis();
+            ProductQuantizer pq = ProductQuantizer.train(corpus.subList(0, 5000), subspaces, 15, 7);
+            long trainMs = System.currentTimeMillis() - start;
+            ProductQuantizationIndex index = new ProductQuantizationIndex(pq);
+            for (int i = 0; i < corpus.size(); i++) {
+                index.add(i, corpus.get(i));
+            }
+
+            int adcHits = 0;
+            int rerankHits = 0;
+            long scanNanos = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                float[] query = queries.get(q);
+                long t = System.nanoTime();
+                int[] shortlist = index.search(query, K * RERANK_FACTOR);
+                scanNanos += System.nanoTime() - t;
+                adcHits += overlap(exact.get(q), Arrays.copyOf(shortlist, K));
+                rerankHits += overlap(exact.get(q), ProductQuantizerTest.exactTopK(corpus, query, K, shortlist));
+            }
+            System.out.printf("%-10d %-12d %-10d %-14.2f %-10.3f %-10.3f%n",
+                              subspaces, pq.getCodeSize() + Integer.BYTES, trainMs,
+                              scanNanos / 1e6 / QUERIES,
+                              (double) adcHits / (QUERIES * K), (double) rerankHits / (QUERIES * K));
+        }
+    }
+
+    private static int overlap(int[] expected, int[] actual) {
+        return (int) Arrays.stream(actual).filter(id -> Arrays.stream(expected).anyMatch(e -> e == id)).count();
+    }
+
+    private static float[] clusteredVector(Random random) {
+        Random centroidRandom = new Random(random.nextInt(16));
+        float[] v = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            v[i] = (float) (centroidRandom.nextGaussian() + 0.35 * random.nextGaussian());
+        }
+        return VectorUtil.normalize(v);
+    }
+}
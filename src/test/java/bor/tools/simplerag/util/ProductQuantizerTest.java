@@ -0,0 +1,107 @@
+package bor.tools.simplerag.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for ProductQuantizer and ProductQuantizationIndex
+ */
+class ProductQuantizerTest {
+
+    private static final int DIM = 32;
+
+    @Test
+    void testAsymmetricDistanceMatchesDecodedVector() {
+        List<float[]> vectors = clustered(new Random(1), 1000);
+        ProductQuantizer pq = ProductQuantizer.train(vectors, 8, 10, 7);
+        assertEquals(8, pq.getCodeSize());
+
+        float[] query = vectors.get(3);
+        float[] table = pq.distanceTable(query);
+        byte[] code = pq.encode(vectors.get(10));
+        float[] decoded = pq.decode(code, 0);
+        double expected = Math.pow(VectorUtil.euclideanDistance(query, decoded), 2);
+        assertEquals(expected, pq.distance(table, code, 0), 1e-3);
+
+        // Encoding is deterministic and a centroid encodes to itself
+        assertArrayEquals(code, pq.encode(decoded));
+        assertThrows(IllegalArgumentException.class, () -> ProductQuantizer.train(vectors, 7, 10, 7));
+    }
+
+    @Test
+    void testShortlistRecallWithExactRerank() {
+        Random random = new Random(2);
+        List<float[]> vectors = clustered(random, 3000);
+        ProductQuantizationIndex index = new ProductQuantizationIndex(ProductQuantizer.train(vectors, 8, 15, 7));
+        for (int i = 0; i < vectors.size(); i++) {
+            index.add(i, vectors.get(i));
+        }
+
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = clustered(random, 1).get(0);
+            int[] exact = exactTopK(vectors, query, 10, null);
+            int[] reranked = exactTopK(vectors, query, 10, index.search(query, 100));
+            hits += (int) Arrays.stream(reranked).filter(id -> Arrays.stream(exact).anyMatch(e -> e == id)).count();
+        }
+        double recall = (double) hits / (queries * 10);
+        assertTrue(recall >= 0.9, "recall@10 = " + recall);
+    }
+
+    @Test
+    void testRemoveAndReplace() {
+        List<float[]> vectors = clustered(new Random(3), 500);
+        ProductQuantizationIndex index = new ProductQuantizationIndex(ProductQuantizer.train(vectors, 4, 5, 7));
+        for (int i = 0; i < vectors.size(); i++) {
+            index.add(i, vectors.get(i));
+        }
+        float[] target = vectors.get(42);
+        assertTrue(Arrays.stream(index.search(target, 5)).anyMatch(id -> id == 42));
+
+        assertTrue(index.remove(42));
+        assertFalse(index.remove(42));
+        assertFalse(Arrays.stream(index.search(target, 50)).anyMatch(id -> id == 42));
+
+        index.add(7, target);
+        index.add(7, target);
+        assertEquals(499, index.size());
+        assertEquals(3, index.getDeletedCount());
+        assertEquals(0, index.search(target, 0).length);
+    }
+
+    static List<float[]> clustered(Random random, int n) {
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Random centroid = new Random(random.nextInt(16));
+            float[] v = new float[DIM];
+            for (int j = 0; j < DIM; j++) {
+                v[j] = (float) (centroid.nextGaussian() + 0.35 * random.nextGaussian());
+            }
+            vectors.add(VectorUtil.normalize(v));
+        }
+        return vectors;
+    }
+
+    /**
+     * Exact top-k ids (indexes into vectors), over all vectors or only the candidates
+     */
+    static int[] exactTopK(List<float[]> vectors, float[] query, int k, int[] candidates) {
+        int[] ids = candidates != null ? candidates : IntStream.range(0, vectors.size()).toArray();
+        return Arrays.stream(ids).boxed()
+                     .sorted((a, b) -> Double.compare(VectorUtil.euclideanDistance(query, vectors.get(a)),
+                                                      VectorUtil.euclideanDistance(query, vectors.get(b))))
+                     .limit(k).mapToInt(Integer::intValue).toArray();
+    }
+}
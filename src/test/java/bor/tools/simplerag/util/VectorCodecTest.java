@@ -0,0 +1,31 @@
+package bor.tools.simplerag.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for VectorCodec
+ */
+class VectorCodecTest {
+
+    @Test
+    void testDecodesVectorSendLayout() {
+        // vector_send('[1,2]'): dim=2, unused=0, then big-endian float4 values
+        byte[] bytes = {
+            0, 2, 0, 0,
+            0x3F, (byte) 0x80, 0, 0,   // 1.0f
+            0x40, 0, 0, 0              // 2.0f
+        };
+
+        assertArrayEquals(new float[] {1.0f, 2.0f}, VectorCodec.decode(bytes));
+    }
+
+    @Test
+    void testInvalidInput() {
+        assertNull(VectorCodec.decode(null));
+        assertThrows(IllegalArgumentException.class, () -> VectorCodec.decode(new byte[] {0, 3, 0, 0, 1}));
+    }
+}
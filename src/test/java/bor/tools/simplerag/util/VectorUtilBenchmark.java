@@ -0,0 +1,123 @@
+package bor.tools.simplerag.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark: scalar vs SIMD (Vector API) kernels of {@link VectorUtil},
+ * for a single pair and for one query against a packed batch of candidates
+ * (the in-JVM re-ranking case).
+ *
+ * <p>Run:</p>
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=bor.tools.simplerag.util.VectorUtilBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class VectorUtilBenchmark {
+
+    @Param({ "384", "768", "1536" })
+    int dimension;
+
+    @Param({ "1000" })
+    int candidates;
+
+    private final VectorOps scalar = ScalarVectorOps.INSTANCE;
+    private final VectorOps simd = SimdVectorOps.INSTANCE;
+
+    private float[] query;
+    private float[] other;
+    private float[] packed;
+
+    @Setup
+    public void setUp() {
+        query = VectorUtil.randomNormalized(dimension);
+        other = VectorUtil.randomNormalized(dimension);
+        List<float[]> vectors = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            vectors.add(VectorUtil.randomNormalized(dimension));
+        }
+        packed = VectorUtil.pack(vectors);
+    }
+
+    @Benchmark
+    public double dotScalar() {
+        return scalar.dot(query, 0, other, 0, dimension);
+    }
+
+    @Benchmark
+    public double dotSimd() {
+        return simd.dot(query, 0, other, 0, dimension);
+    }
+
+    @Benchmark
+    public double cosineScalar() {
+        return scalar.cosine(query, 0, other, 0, dimension);
+    }
+
+    @Benchmark
+    public double cosineSimd() {
+        return simd.cosine(query, 0, other, 0, dimension);
+    }
+
+    @Benchmark
+    public double euclideanScalar() {
+        return scalar.squareDistance(query, 0, other, 0, dimension);
+    }
+
+    @Benchmark
+    public double euclideanSimd() {
+        return simd.squareDistance(query, 0, other, 0, dimension);
+    }
+
+    @Benchmark
+    public void batchCosineScalar(Blackhole bh) {
+        for (int off = 0; off < packed.length; off += dimension) {
+            bh.consume(scalar.cosine(query, 0, packed, off, dimension));
+        }
+    }
+
+    @Benchmark
+    public void batchCosineSimd(Blackhole bh) {
+        for (int off = 0; off < packed.length; off += dimension) {
+            bh.consume(simd.cosine(query, 0, packed, off, dimension));
+        }
+    }
+
+    /**
+     * Public API, whichever implementation was selected at startup
+     */
+    @Benchmark
+    public float[] batchDotVectorUtil() {
+        return VectorUtil.dotProductBatch(query, packed);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(VectorUtilBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
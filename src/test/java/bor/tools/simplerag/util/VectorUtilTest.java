@@ -0,0 +1,63 @@
+package bor.tools.simplerag.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for VectorUtil: the active implementation (SIMD when the Vector
+ * API module is present) must agree with the scalar reference
+ */
+class VectorUtilTest {
+
+    @Test
+    void testActiveImplementationMatchesScalar() {
+        VectorOps scalar = ScalarVectorOps.INSTANCE;
+        // Odd dimensions exercise the scalar tail of the SIMD loop
+        for (int dim : new int[] {1, 3, 17, 768, 1001}) {
+            float[] a = VectorUtil.random(dim);
+            float[] b = VectorUtil.random(dim);
+
+            assertEquals(scalar.dot(a, 0, b, 0, dim), VectorUtil.dotProduct(a, b), 1e-4);
+            assertEquals(scalar.cosine(a, 0, b, 0, dim), VectorUtil.cosineSimilarity(a, b), 1e-5);
+            assertEquals(Math.sqrt(scalar.squareDistance(a, 0, b, 0, dim)),
+                         VectorUtil.euclideanDistance(a, b), 1e-4);
+        }
+    }
+
+    @Test
+    void testBatchMatchesPairwise() {
+        float[] query = VectorUtil.randomNormalized(37);
+        List<float[]> vectors = List.of(VectorUtil.randomNormalized(37),
+                                        VectorUtil.randomNormalized(37),
+                                        new float[37]);
+        float[] packed = VectorUtil.pack(vectors);
+
+        float[] dots = VectorUtil.dotProductBatch(query, packed);
+        float[] cosines = VectorUtil.cosineSimilarityBatch(query, packed);
+        float[] distances = VectorUtil.euclideanDistanceBatch(query, packed);
+
+        assertEquals(3, dots.length);
+        for (int i = 0; i < vectors.size(); i++) {
+            assertEquals(VectorUtil.dotProduct(query, vectors.get(i)), dots[i], 1e-5);
+            assertEquals(VectorUtil.cosineSimilarity(query, vectors.get(i)), cosines[i], 1e-5);
+            assertEquals(VectorUtil.euclideanDistance(query, vectors.get(i)), distances[i], 1e-5);
+        }
+        // Zero vector: similarity 0, distance = |query| = 1
+        assertEquals(0.0f, cosines[2]);
+        assertEquals(1.0f, distances[2], 1e-5);
+    }
+
+    @Test
+    void testInvalidBatchInput() {
+        assertThrows(IllegalArgumentException.class, () -> VectorUtil.dotProductBatch(new float[3], new float[7]));
+        assertThrows(IllegalArgumentException.class, () -> VectorUtil.cosineSimilarityBatch(null, new float[3]));
+        assertThrows(IllegalArgumentException.class,
+                     () -> VectorUtil.pack(List.of(new float[2], new float[3])));
+        assertArrayEquals(new float[] {1, 2, 3, 4}, VectorUtil.pack(List.of(new float[] {1, 2}, new float[] {3, 4})));
+    }
+}
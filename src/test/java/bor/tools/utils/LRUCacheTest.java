@@ -0,0 +1,64 @@
+package bor.tools.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for LRUCache
+ */
+class LRUCacheTest {
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        LRUCache<String, Integer> cache = new LRUCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        // Touch "a" so "b" becomes the eldest
+        assertEquals(1, cache.get("a"));
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"), "Least recently used entry should be evicted");
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testComputeIfAbsentLoadsOnce() {
+        LRUCache<String, String> cache = new LRUCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            cache.computeIfAbsent("key", k -> {
+                loads.incrementAndGet();
+                return k.toUpperCase();
+            });
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.8, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testRemoveIfAndZeroCapacity() {
+        LRUCache<Integer, String> cache = new LRUCache<>(10);
+        for (int i = 0; i < 6; i++) {
+            cache.put(i, "v" + i);
+        }
+        assertEquals(3, cache.removeIf(k -> k % 2 == 0));
+        assertEquals(3, cache.size());
+
+        LRUCache<Integer, String> disabled = new LRUCache<>(0);
+        disabled.put(1, "x");
+        assertEquals(0, disabled.size());
+    }
+}